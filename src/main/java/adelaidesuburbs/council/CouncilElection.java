@@ -1,14 +1,19 @@
 package adelaidesuburbs.council;
 
+import paxos.network.MessageRouter;
+import paxos.network.NetworkServer;
+import paxos.participants.PaxosConfig;
 import paxos.participants.PaxosParticipant.DelayProfile;
 import paxos.participants.PaxosParticipant.Node;
 import paxos.participants.PaxosProposer;
 import paxos.participants.PaxosAcceptor;
+import paxos.participants.PaxosLearner;
+import paxos.participants.QuorumSystem;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import java.util.logging.*;
 import java.util.stream.Collectors;
@@ -46,28 +51,53 @@ import java.util.stream.Collectors;
  * On the day of the vote, one of the councillors will send out an email/message to 
  * all councillors with a proposal for a president. A majority (half+1) is required 
  * for somebody to be elected president.
+ *
+ * The council can also run with Flexible Paxos quorums set in its PaxosConfig, for example a phase 2 quorum of
+ * three fast members paired with a phase 1 quorum of seven, as long as the two sizes add up to more than nine.
+ * With thrifty proposers, requests go to the quorum of members that have answered fastest lately, so slow
+ * members like M2 and M3 are only emailed when that quorum is late to answer.
  */
 
 public class CouncilElection {
     private List<CouncilMember> members;
     private List<Node> nodes;
+    private PaxosConfig config;
     private static final int acceptorPortBase = 8000;
     private static final int proposerPortBase = 9000;
+    private static final int learnerPortBase = 10000;
 
     private static final Logger logger = Logger.getLogger(CouncilElection.class.getName());
 
     public CouncilElection(boolean useImmediateResponses, int proposerCount) {
+        this(useImmediateResponses, proposerCount, new PaxosConfig());
+    }
+
+    public CouncilElection(boolean useImmediateResponses, int proposerCount, PaxosConfig config) {
+        this.config = config;
         this.nodes = new ArrayList<>();
         this.members = new ArrayList<>();
         initialiseNodes();
+        // Reject quorum sizes that do not fit the council before any member starts listening
+        QuorumSystem.of(config, nodes);
         initialiseMembers(useImmediateResponses, proposerCount);
     }
 
     private void initialiseNodes() {
         // Create nodes for each council member
         for (int memberId = 1; memberId <= 9; memberId++) {
-            nodes.add(new Node("M" + memberId, "localhost", acceptorPortBase + memberId, proposerPortBase + memberId));
+            nodes.add(createNode(memberId));
+        }
+    }
+
+    private Node createNode(int memberId) {
+        if (config.isSharedListener()) {
+            // Both roles listen on one port
+            return new Node("M" + memberId, "localhost", acceptorPortBase + memberId);
+        }
+        if (config.getLearnerDissemination() != PaxosLearner.Dissemination.NONE) {
+            return new Node("M" + memberId, "localhost", acceptorPortBase + memberId, proposerPortBase + memberId, learnerPortBase + memberId);
         }
+        return new Node("M" + memberId, "localhost", acceptorPortBase + memberId, proposerPortBase + memberId);
     }
 
     private void initialiseMembers(boolean useImmediateResponses, int proposerCount) {
@@ -79,7 +109,7 @@ public class CouncilElection {
         // Create council members
         for (int memberId = 1; memberId <= 9; memberId++) {
             boolean isProposer = determineIfMemberIsProposer(memberId, proposerCount);
-            Node serverNode = new Node("M" + memberId, "localhost", acceptorPortBase + memberId, proposerPortBase + memberId);
+            Node serverNode = createNode(memberId);
 
             DelayProfile profile;
             if (useImmediateResponses) {
@@ -90,7 +120,7 @@ public class CouncilElection {
                 profile = profiles[memberId % profiles.length]; // Assign profiles in a round-robin fashion
             }
 
-            CouncilMember member = new CouncilMember(memberId, serverNode, nodes, isProposer, profile);
+            CouncilMember member = new CouncilMember(memberId, serverNode, nodes, isProposer, profile, config);
             members.add(member);
             member.startParticipant();  // Start the Paxos roles for the member
         }
@@ -113,7 +143,7 @@ public class CouncilElection {
             throw new IllegalStateException("No proposer found.");
         }
     
-        ExecutorService executor = Executors.newFixedThreadPool(proposers.size());
+        ExecutorService executor = config.getExecutionMode().newTaskExecutor();
 
         for (CouncilMember proposer : proposers) {
             executor.submit(() -> proposer.startProposal(proposer.selfNode.getNodeName()));
@@ -135,19 +165,16 @@ public class CouncilElection {
     public void announceResult() {
         logger.info("ANNOUNCING RESULT");
         
-        // Wait for all proposals to finish
-        while (true) {
-            boolean proposalFinished = false;
-            for (CouncilMember member : members) {
-                if (member.isProposer() && member.proposerRole.isFinished()) {
-                    proposalFinished = true;
-                    break;
-                }
-            }
-            if (proposalFinished) {
-                break;
+        // Wait for one of the proposals to be chosen
+        List<CompletableFuture<String>> chosen = new ArrayList<>();
+        for (CouncilMember member : members) {
+            if (member.isProposer()) {
+                chosen.add(member.proposerRole.whenChosen());
             }
         }
+        if (!chosen.isEmpty()) {
+            CompletableFuture.anyOf(chosen.toArray(new CompletableFuture<?>[0])).join();
+        }
 
         cleanup();
 
@@ -162,16 +189,18 @@ public class CouncilElection {
                 resultBuilder.append(String.format("    The council member %s was elected as president.\n", acceptedValue));
             }
         }
+        for (CouncilMember member : members) {
+            if (member.learnerRole != null && member.learnerRole.getLearnedValue() != null) {
+                resultBuilder.append(String.format("    Council member M%s learned that %s was elected.\n", member.memberId, member.learnerRole.getLearnedValue()));
+            }
+        }
         logger.info(resultBuilder.toString());
     }
 
     private void cleanup() {
         // Stop all the servers
         for (CouncilMember member : members) {
-            member.acceptorRole.stop();
-            if (member.proposerRole != null) {
-                member.proposerRole.stop();
-            }
+            member.stop();
         }
 
         try {
@@ -199,6 +228,9 @@ public class CouncilElection {
             if (member.acceptorRole != null) {
                 roles.add("Acceptor");
             }
+            if (member.learnerRole != null) {
+                roles.add("Learner");
+            }
             String rolesString = String.join(", ", roles);
             councilDetails.append("    Role: ").append(rolesString).append("\n\n");
         }
@@ -212,19 +244,44 @@ public class CouncilElection {
         private Node selfNode;
         private PaxosAcceptor acceptorRole;
         private PaxosProposer proposerRole;
+        // Set when acceptors disseminate to learners
+        private PaxosLearner learnerRole;
         private List<Node> connectedNodes;
         private DelayProfile profile;
+        // Set when the roles share one server
+        private NetworkServer sharedServer;
     
         public CouncilMember(int memberId, Node selfNode, List<Node> connectedNodes, boolean isProposer, DelayProfile profile) {
+            this(memberId, selfNode, connectedNodes, isProposer, profile, new PaxosConfig());
+        }
+
+        public CouncilMember(int memberId, Node selfNode, List<Node> connectedNodes, boolean isProposer, DelayProfile profile, PaxosConfig config) {
             this.memberId = memberId;
             this.selfNode = selfNode;
             this.profile = profile;
             this.connectedNodes = new ArrayList<>(connectedNodes);
 
             // Initialise the Paxos roles for the member
-            this.acceptorRole = new PaxosAcceptor(selfNode, connectedNodes, profile);
+            boolean hasLearner = config.getLearnerDissemination() != PaxosLearner.Dissemination.NONE;
+            if (config.isSharedListener()) {
+                // One server for the member, routing each message to the role that handles its type
+                MessageRouter router = new MessageRouter();
+                this.sharedServer = config.createServer(selfNode.getAcceptorPort(), router);
+                this.acceptorRole = new PaxosAcceptor(selfNode, connectedNodes, profile, config, router);
+                if (isProposer) {
+                    this.proposerRole = new PaxosProposer(selfNode, connectedNodes, profile, config, router);
+                }
+                if (hasLearner) {
+                    this.learnerRole = new PaxosLearner(selfNode, connectedNodes, profile, config, router);
+                }
+                return;
+            }
+            this.acceptorRole = new PaxosAcceptor(selfNode, connectedNodes, profile, config);
             if (isProposer) {
-                this.proposerRole = new PaxosProposer(selfNode, connectedNodes, profile);
+                this.proposerRole = new PaxosProposer(selfNode, connectedNodes, profile, config);
+            }
+            if (hasLearner) {
+                this.learnerRole = new PaxosLearner(selfNode, connectedNodes, profile, config);
             }
         }
 
@@ -239,6 +296,25 @@ public class CouncilElection {
             if (this.proposerRole != null) {
                 this.proposerRole.start();
             }
+            if (this.learnerRole != null) {
+                this.learnerRole.start();
+            }
+            if (this.sharedServer != null) {
+                this.sharedServer.startServer();
+            }
+        }
+
+        public void stop() {
+            this.acceptorRole.stop();
+            if (this.proposerRole != null) {
+                this.proposerRole.stop();
+            }
+            if (this.learnerRole != null) {
+                this.learnerRole.stop();
+            }
+            if (this.sharedServer != null) {
+                this.sharedServer.stop();
+            }
         }
 
         public boolean isProposer() {
@@ -260,6 +336,9 @@ public class CouncilElection {
             if (isProposer()) {
                 roles.add("Proposer");
             }
+            if (learnerRole != null) {
+                roles.add("Learner");
+            }
             return String.join(", ", roles);
         }
 
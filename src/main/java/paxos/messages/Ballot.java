@@ -0,0 +1,64 @@
+package paxos.messages;
+
+/**
+ * Packs a proposer's round and node ID into a single long proposal number.
+ *
+ * A ballot is (round << NODE_ID_BITS) | nodeId. Every proposer owns the ballots ending in its own node ID, so two
+ * proposers never issue the same ballot, and ballots order first by round and then by node ID with a plain long
+ * comparison. Proposal numbers are carried, compared and stored as these longs end to end.
+ */
+public final class Ballot {
+    public static final int NODE_ID_BITS = 16;
+    public static final int MAX_NODE_ID = (1 << NODE_ID_BITS) - 1;
+    // Proposal number of a slot or decision that has accepted nothing
+    public static final long NONE = -1;
+
+    private Ballot() {
+    }
+
+    /**
+     * Pack a round and a node ID into a ballot.
+     * @param round The proposer's round, not negative.
+     * @param nodeId The proposer's node ID, from 0 to MAX_NODE_ID.
+     * @return The ballot.
+     */
+    public static long of(long round, int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node ID " + nodeId + " does not fit into a ballot");
+        }
+        if (round < 0 || round > Long.MAX_VALUE >> NODE_ID_BITS) {
+            throw new IllegalArgumentException("Round " + round + " does not fit into a ballot");
+        }
+        return round << NODE_ID_BITS | nodeId;
+    }
+
+    /**
+     * Get the smallest ballot owned by a node that is above the given ballot.
+     * @param ballot The ballot to beat, or NONE.
+     * @param nodeId The node ID of the proposer that needs the ballot.
+     * @return The next ballot of the node.
+     */
+    public static long above(long ballot, int nodeId) {
+        long round = Math.max(0, round(ballot));
+        long candidate = of(round, nodeId);
+        return candidate > ballot ? candidate : of(round + 1, nodeId);
+    }
+
+    /**
+     * Get the round of a ballot.
+     * @param ballot The ballot.
+     * @return The round.
+     */
+    public static long round(long ballot) {
+        return ballot >> NODE_ID_BITS;
+    }
+
+    /**
+     * Get the node ID of the proposer that owns a ballot.
+     * @param ballot The ballot.
+     * @return The node ID.
+     */
+    public static int nodeId(long ballot) {
+        return (int) (ballot & MAX_NODE_ID);
+    }
+}
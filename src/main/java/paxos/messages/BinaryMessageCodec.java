@@ -0,0 +1,236 @@
+package paxos.messages;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.logging.*;
+
+/**
+ * Compact binary wire format for PaxosMessage.
+ *
+ * A frame is: FRAME_MARKER, varint payload length, payload. The payload is the message type code as one byte,
+ * the proposal number as a 64-bit zig-zag varint, then the participant ID and the value as length-prefixed UTF-8.
+ * A string length is written as length + 1, so that 0 can stand for null. A nonzero Multi-Paxos instance
+ * follows as a zig-zag varint; it is left out for single decision messages.
+ *
+ * FRAME_MARKER is not a valid first byte of a text message, so a server can tell binary frames from
+ * text lines on the same connection and accept both during a mixed rollout.
+ */
+public final class BinaryMessageCodec {
+    public static final byte FRAME_MARKER = (byte) 0xB1;
+    // Sent back by a server that understands binary frames, in answer to HELLO_FRAME
+    public static final byte HELLO_ACK = (byte) 0xB1;
+    // Largest payload a receiver accepts, guards against reading a corrupt length
+    public static final int MAX_PAYLOAD_LENGTH = 16 * 1024 * 1024;
+
+    // Payload type code reserved for the negotiation handshake
+    private static final byte HELLO_TYPE = '\n';
+    // Message type codes start above HELLO_TYPE so the two can never collide
+    private static final int TYPE_CODE_OFFSET = 0x20;
+    private static final PaxosMessage.Type[] TYPES = PaxosMessage.Type.values();
+
+    /**
+     * Handshake frame a client sends on a new connection to ask whether the server understands binary frames.
+     * Its payload is a single newline, so a text-only server sees one unparseable line and carries on.
+     */
+    private static final byte[] HELLO_FRAME = { FRAME_MARKER, 1, HELLO_TYPE };
+
+    private static final Logger LOGGER = Logger.getLogger(BinaryMessageCodec.class.getName());
+
+    private BinaryMessageCodec() {
+    }
+
+    /**
+     * Encode a message into a new framed buffer, ready to be written.
+     * @param message The message to encode.
+     * @return A read-only buffer holding one frame.
+     */
+    public static ByteBuffer encode(PaxosMessage message) {
+        byte[] participantID = utf8(message.getParticipantID());
+        byte[] value = utf8(message.getValue());
+        int payloadLength = 1
+                + varlongSize(zigZag(message.getProposalNumber()))
+                + stringSize(participantID)
+                + stringSize(value)
+                + (message.getInstance() != 0 ? varintSize(zigZag(message.getInstance())) : 0);
+
+        // A heap buffer: a frame lives for one send, too briefly to repay the cost of allocating native memory
+        ByteBuffer frame = ByteBuffer.allocate(1 + varintSize(payloadLength) + payloadLength);
+        frame.put(FRAME_MARKER);
+        putVarint(frame, payloadLength);
+        frame.put((byte) (message.getType().ordinal() + TYPE_CODE_OFFSET));
+        putVarlong(frame, zigZag(message.getProposalNumber()));
+        putString(frame, participantID);
+        putString(frame, value);
+        if (message.getInstance() != 0) {
+            putVarint(frame, zigZag(message.getInstance()));
+        }
+        frame.flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    /**
+     * Decode a frame payload (without the marker and length) into a message.
+     * @param payload The payload bytes, from position to limit.
+     * @return An Optional containing the PaxosMessage object, or empty if the payload is malformed.
+     */
+    public static Optional<PaxosMessage> decode(ByteBuffer payload) {
+        try {
+            int typeCode = payload.get() - TYPE_CODE_OFFSET;
+            if (typeCode < 0 || typeCode >= TYPES.length) {
+                LOGGER.warning("Invalid binary message type code: " + (typeCode + TYPE_CODE_OFFSET));
+                return Optional.empty();
+            }
+            long proposalNumber = unZigZag(getVarlong(payload));
+            String participantID = getString(payload);
+            String value = getString(payload);
+            int instance = payload.hasRemaining() ? unZigZag(getVarint(payload)) : 0;
+            if (payload.hasRemaining()) {
+                LOGGER.warning("Trailing bytes in binary message.");
+                return Optional.empty();
+            }
+            return Optional.of(new PaxosMessage(TYPES[typeCode], proposalNumber, value, participantID, instance));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            LOGGER.warning("Truncated or malformed binary message.");
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Get the handshake frame a client sends to negotiate the binary format.
+     * @return A new buffer holding the frame.
+     */
+    public static ByteBuffer helloFrame() {
+        return ByteBuffer.wrap(HELLO_FRAME).asReadOnlyBuffer();
+    }
+
+    /**
+     * Check if a frame payload is the negotiation handshake.
+     * @param payload The payload bytes, from position to limit.
+     * @return true if the payload is a HELLO.
+     */
+    public static boolean isHello(ByteBuffer payload) {
+        return payload.remaining() == 1 && payload.get(payload.position()) == HELLO_TYPE;
+    }
+
+    /**
+     * Read a varint from the buffer.
+     * @param buffer The buffer to read from.
+     * @return The decoded value.
+     * @throws BufferUnderflowException if the buffer ends inside the varint.
+     * @throws IllegalArgumentException if the varint is longer than 32 bits.
+     */
+    public static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    private static long getVarlong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static void putVarlong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int varlongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(byte[] bytes) {
+        int length = bytes == null ? 0 : bytes.length + 1;
+        return varintSize(length) + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            putVarint(buffer, 0);
+            return;
+        }
+        putVarint(buffer, bytes.length + 1);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = getVarint(buffer);
+        if (length == 0) {
+            return null;
+        }
+        length--;
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("String length out of range");
+        }
+        String s;
+        if (buffer.hasArray()) {
+            s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+}
@@ -1,7 +1,6 @@
 package paxos.messages;
 
 import java.util.Optional;
-import java.util.logging.*;
 
 /**
  * Represents a Paxos message passed between participants.
@@ -9,10 +8,10 @@ import java.util.logging.*;
 public class PaxosMessage {
     private Type type;
     private String value;
-    private int proposalNumber;
+    private long proposalNumber;
     private String participantID;
-
-    private static final Logger LOGGER = Logger.getLogger(PaxosMessage.class.getName());
+    // The Multi-Paxos instance this message is about, 0 for a single decision
+    private int instance;
 
     /**
      * Enum for PaxosMessage types.
@@ -21,115 +20,99 @@ public class PaxosMessage {
         PREPARE,
         PROMISE,
         ACCEPT,
-        ACCEPTED
+        ACCEPTED,
+        // Sent by a distinguished learner to the other learners once a value is chosen
+        DECIDED,
+        // One chunk of a state machine snapshot, streamed to a peer that lags behind a compacted log
+        SNAPSHOT,
+        // Sent by an acceptor that refused a PREPARE or ACCEPT because it promised a higher proposal number
+        NACK
     }
 
-    private PaxosMessage(Type type, int proposalNumber, String value, String participantID) {
+    PaxosMessage(Type type, long proposalNumber, String value, String participantID) {
         this.type = type;
         this.proposalNumber = proposalNumber;
         this.value = value;
         this.participantID = participantID;
     }
 
+    PaxosMessage(Type type, long proposalNumber, String value, String participantID, int instance) {
+        this(type, proposalNumber, value, participantID);
+        this.instance = instance;
+    }
+
     // Static factory method for PREPARE message
-    public static PaxosMessage prepareMessage(int proposalNumber, String participantID) {
+    public static PaxosMessage prepareMessage(long proposalNumber, String participantID) {
         return new PaxosMessage(Type.PREPARE, proposalNumber, null, participantID);
     }
 
     // Static factory method for PROMISE message
-    public static PaxosMessage promiseMessage(int proposalNumber, String promisedValue, int lastAcceptedProposalNumber, String participantID) {
+    public static PaxosMessage promiseMessage(long proposalNumber, String promisedValue, long lastAcceptedProposalNumber, String participantID) {
         String combinedValue = promisedValue + ":" + lastAcceptedProposalNumber;
         return new PaxosMessage(Type.PROMISE, proposalNumber, combinedValue, participantID);
     }
 
     // Static factory method for ACCEPT message
-    public static PaxosMessage acceptRequestMessage(int proposalNumber, String value, String participantID) {
+    public static PaxosMessage acceptRequestMessage(long proposalNumber, String value, String participantID) {
         return new PaxosMessage(Type.ACCEPT, proposalNumber, value, participantID);
     }
 
     // Static factory method for ACCEPTED message
-    public static PaxosMessage acceptedMessage(int proposalNumber, String acceptedValue, String participantID) {
+    public static PaxosMessage acceptedMessage(long proposalNumber, String acceptedValue, String participantID) {
         return new PaxosMessage(Type.ACCEPTED, proposalNumber, acceptedValue, participantID);
     }
 
+    // Static factory method for DECIDED message
+    public static PaxosMessage decidedMessage(long proposalNumber, String value, String participantID, int instance) {
+        return new PaxosMessage(Type.DECIDED, proposalNumber, value, participantID, instance);
+    }
+
+    // Static factory method for SNAPSHOT message. The value is <chunkCount>:<Base64 chunk>, the instance is the snapshot's slot.
+    public static PaxosMessage snapshotChunkMessage(long chunkIndex, String value, String participantID, int slot) {
+        return new PaxosMessage(Type.SNAPSHOT, chunkIndex, value, participantID, slot);
+    }
+
+    // Static factory method for NACK message. The proposal number is the acceptor's promise, the value the refused proposal number.
+    public static PaxosMessage nackMessage(long promisedProposalNumber, long rejectedProposalNumber, String participantID, int instance) {
+        return new PaxosMessage(Type.NACK, promisedProposalNumber, Long.toString(rejectedProposalNumber), participantID, instance);
+    }
+
+    // Static factory method for a Multi-Paxos PREPARE message, covering the given instance and every later one
+    public static PaxosMessage prepareMessage(long proposalNumber, String participantID, int instance) {
+        return new PaxosMessage(Type.PREPARE, proposalNumber, null, participantID, instance);
+    }
+
+    // Static factory method for a Multi-Paxos PROMISE message, reporting what was accepted for one instance
+    public static PaxosMessage promiseMessage(long proposalNumber, String promisedValue, long lastAcceptedProposalNumber, String participantID, int instance) {
+        String combinedValue = promisedValue + ":" + lastAcceptedProposalNumber;
+        return new PaxosMessage(Type.PROMISE, proposalNumber, combinedValue, participantID, instance);
+    }
+
+    // Static factory method for a Multi-Paxos ACCEPT message
+    public static PaxosMessage acceptRequestMessage(long proposalNumber, String value, String participantID, int instance) {
+        return new PaxosMessage(Type.ACCEPT, proposalNumber, value, participantID, instance);
+    }
+
+    // Static factory method for a Multi-Paxos ACCEPTED message
+    public static PaxosMessage acceptedMessage(long proposalNumber, String acceptedValue, String participantID, int instance) {
+        return new PaxosMessage(Type.ACCEPTED, proposalNumber, acceptedValue, participantID, instance);
+    }
+
     /**
      * Convert a string representation of a message into a PaxosMessage object.
-     * The expected message format is: <type>;<proposalNumber>;<participantID>;<value>
+     * The expected message format is: <type>;<proposalNumber>;<participantID>;<value>[;<instance>]
      * For example: "PREPARE;123;M1;SomeValue"
+     * Use TextMessageParser directly to parse into a reused view without allocating.
      * 
      * @param messageString The string representation of the message.
      * @return An Optional containing the PaxosMessage object, or empty if the format is invalid.
      */
     public static Optional<PaxosMessage> parseMessageFromString(String messageString) {
-        // Ensure message is not empty or null
-        if (messageString == null || messageString.isEmpty()) {
-            LOGGER.warning("Message cannot be empty.");
+        PaxosMessageView view = new PaxosMessageView();
+        if (!TextMessageParser.parse(messageString, view)) {
             return Optional.empty();
         }
-
-        String[] parts = messageString.split(";");
-        if (parts.length != 4) {
-            LOGGER.warning("Invalid message format. Expected format: <type>;<proposalNumber>;<participantID>;<value>");
-            return Optional.empty();
-        }
-
-        String typeStr = parts[0];
-        if (!isValidType(typeStr)) {
-            LOGGER.warning("Invalid message type: " + typeStr);
-            return Optional.empty();
-        }
-        Type type = Type.valueOf(typeStr);
-
-        int proposalNumber;
-        try {
-            proposalNumber = Integer.parseInt(parts[1]);
-        } catch (NumberFormatException e) {
-            LOGGER.warning("Proposal number must be an integer. Found: " + parts[1]);
-            return Optional.empty();
-        }
-        
-        String participantID = parts[2];
-        String value = parts[3];
-        int lastAcceptedProposalNumber = -1; // Default value
-
-        if (type == Type.PROMISE) {
-            String[] valueParts = value.split(":");
-            if (valueParts.length != 2) {
-                LOGGER.warning("Invalid value format for PROMISE message: " + value);
-                return Optional.empty();
-            }
-            value = valueParts[0];
-            try {
-                lastAcceptedProposalNumber = Integer.parseInt(valueParts[1]);
-            } catch (NumberFormatException e) {
-                LOGGER.warning("Invalid last accepted proposal number: " + valueParts[1]);
-                return Optional.empty();
-            }
-        }
-
-        // Use the factory methods to create the message
-        switch (type) {
-            case PREPARE:
-                return Optional.of(PaxosMessage.prepareMessage(proposalNumber, participantID));
-            case PROMISE:
-                return Optional.of(PaxosMessage.promiseMessage(proposalNumber, value, lastAcceptedProposalNumber, participantID));
-            case ACCEPT:
-                return Optional.of(PaxosMessage.acceptRequestMessage(proposalNumber, value, participantID));
-            case ACCEPTED:
-                return Optional.of(PaxosMessage.acceptedMessage(proposalNumber, value, participantID));
-            default:
-                LOGGER.warning("Unsupported message type: " + type);
-                return Optional.empty();
-        }
-    }
-
-    private static boolean isValidType(String typeStr) {
-        for (Type type : Type.values()) {
-            if (type.name().equals(typeStr)) {
-                return true;
-            }
-        }
-        return false;
+        return Optional.of(view.toMessage());
     }
 
     /**
@@ -139,7 +122,9 @@ public class PaxosMessage {
      */
     @Override
     public String toString() {
-        return this.type + ";" + this.proposalNumber + ";" + this.participantID + ";" + this.value;
+        String message = this.type + ";" + this.proposalNumber + ";" + this.participantID + ";" + this.value;
+        // The instance is only written for Multi-Paxos, so single decision messages keep the original format
+        return this.instance != 0 ? message + ";" + this.instance : message;
     }
 
     /**
@@ -151,10 +136,10 @@ public class PaxosMessage {
     }
 
     /**
-     * Get the proposal number.
+     * Get the proposal number, a ballot packed by Ballot.
      * @return The proposal number.
      */
-    public int getProposalNumber() {
+    public long getProposalNumber() {
         return proposalNumber;
     }
 
@@ -169,4 +154,12 @@ public class PaxosMessage {
     public String getParticipantID() {
         return participantID;
     }
+
+    /**
+     * Get the Multi-Paxos instance.
+     * @return The instance, or 0 for a single decision message.
+     */
+    public int getInstance() {
+        return instance;
+    }
 }
\ No newline at end of file
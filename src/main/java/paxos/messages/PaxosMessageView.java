@@ -0,0 +1,131 @@
+package paxos.messages;
+
+/**
+ * A reusable, mutable view of a text message, filled in by TextMessageParser.
+ *
+ * The view keeps the parsed type and numbers, and remembers where the participant ID and value are in the
+ * source text instead of copying them. Strings are only created when asked for, so parsing into a reused
+ * view allocates nothing.
+ *
+ * A view is only valid until it is parsed into again, and is not thread-safe.
+ */
+public class PaxosMessageView {
+    private CharSequence source;
+    private PaxosMessage.Type type;
+    private long proposalNumber;
+    private long lastAcceptedProposalNumber;
+    private int participantIDStart;
+    private int participantIDEnd;
+    private int valueStart;
+    private int valueEnd;
+    private int instance;
+
+    void set(CharSequence source, PaxosMessage.Type type, long proposalNumber, int participantIDStart, int participantIDEnd,
+            int valueStart, int valueEnd, long lastAcceptedProposalNumber, int instance) {
+        this.source = source;
+        this.type = type;
+        this.proposalNumber = proposalNumber;
+        this.participantIDStart = participantIDStart;
+        this.participantIDEnd = participantIDEnd;
+        this.valueStart = valueStart;
+        this.valueEnd = valueEnd;
+        this.lastAcceptedProposalNumber = lastAcceptedProposalNumber;
+        this.instance = instance;
+    }
+
+    public PaxosMessage.Type getType() {
+        return type;
+    }
+
+    public long getProposalNumber() {
+        return proposalNumber;
+    }
+
+    /**
+     * Get the last accepted proposal number carried by a PROMISE.
+     * @return The last accepted proposal number, or -1 for other message types.
+     */
+    public long getLastAcceptedProposalNumber() {
+        return lastAcceptedProposalNumber;
+    }
+
+    /**
+     * Get the Multi-Paxos instance.
+     * @return The instance, or 0 for a single decision message.
+     */
+    public int getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get the participant ID. This creates a new String.
+     * @return The participant ID.
+     */
+    public String getParticipantID() {
+        return source.subSequence(participantIDStart, participantIDEnd).toString();
+    }
+
+    /**
+     * Get the value. For a PROMISE this is the promised value without the last accepted proposal number.
+     * This creates a new String.
+     * @return The value.
+     */
+    public String getValue() {
+        return source.subSequence(valueStart, valueEnd).toString();
+    }
+
+    /**
+     * Check the participant ID without creating a String.
+     * @param participantID The participant ID to compare with.
+     * @return true if the participant IDs are equal.
+     */
+    public boolean participantIDEquals(CharSequence participantID) {
+        return regionEquals(participantIDStart, participantIDEnd, participantID);
+    }
+
+    /**
+     * Check the value without creating a String.
+     * @param value The value to compare with.
+     * @return true if the values are equal.
+     */
+    public boolean valueEquals(CharSequence value) {
+        return regionEquals(valueStart, valueEnd, value);
+    }
+
+    /**
+     * Create a PaxosMessage with the same content, through the PaxosMessage factory methods.
+     * @return A new PaxosMessage.
+     */
+    public PaxosMessage toMessage() {
+        switch (type) {
+            case PREPARE:
+                return PaxosMessage.prepareMessage(proposalNumber, getParticipantID(), instance);
+            case PROMISE:
+                return PaxosMessage.promiseMessage(proposalNumber, getValue(), lastAcceptedProposalNumber, getParticipantID(), instance);
+            case ACCEPT:
+                return PaxosMessage.acceptRequestMessage(proposalNumber, getValue(), getParticipantID(), instance);
+            case DECIDED:
+                return PaxosMessage.decidedMessage(proposalNumber, getValue(), getParticipantID(), instance);
+            case SNAPSHOT:
+                return PaxosMessage.snapshotChunkMessage(proposalNumber, getValue(), getParticipantID(), instance);
+            case NACK:
+                // The refused proposal number is carried as the value and checked by the proposer
+                return new PaxosMessage(PaxosMessage.Type.NACK, proposalNumber, getValue(), getParticipantID(), instance);
+            case ACCEPTED:
+            default:
+                return PaxosMessage.acceptedMessage(proposalNumber, getValue(), getParticipantID(), instance);
+        }
+    }
+
+    private boolean regionEquals(int start, int end, CharSequence other) {
+        if (other == null || other.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (source.charAt(i) != other.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,195 @@
+package paxos.messages;
+
+import java.util.logging.*;
+
+/**
+ * Single-pass parser for the text message format <type>;<proposalNumber>;<participantID>;<value>[;<instance>].
+ *
+ * The parser scans the input with indices and fills a reusable PaxosMessageView, so a successful parse
+ * allocates nothing. It accepts exactly the messages the original split-based parser accepted:
+ * trailing separators are ignored as String.split ignores trailing empty fields, and numbers follow
+ * Long.parseLong for proposal numbers and Integer.parseInt for the instance, including an optional sign.
+ * Long.MIN_VALUE marks an invalid number, so it is the one proposal number that is refused. The Multi-Paxos
+ * instance field is optional and defaults to 0.
+ */
+public final class TextMessageParser {
+    private static final long INVALID_NUMBER = Long.MIN_VALUE;
+
+    private static final Logger LOGGER = Logger.getLogger(TextMessageParser.class.getName());
+
+    private TextMessageParser() {
+    }
+
+    /**
+     * Parse a text message into a view.
+     * @param input The message text.
+     * @param view The view to fill. It is left unchanged if the message is invalid.
+     * @return true if the message was valid and the view was filled, false otherwise.
+     */
+    public static boolean parse(CharSequence input, PaxosMessageView view) {
+        // Ensure message is not empty or null
+        if (input == null || input.length() == 0) {
+            LOGGER.warning("Message cannot be empty.");
+            return false;
+        }
+
+        // Trailing separators produce no fields, as with String.split
+        int end = trimTrailing(input, 0, input.length(), ';');
+        int typeEnd = indexOf(input, 0, end, ';');
+        int proposalEnd = indexOf(input, typeEnd + 1, end, ';');
+        int participantIDEnd = indexOf(input, proposalEnd + 1, end, ';');
+        int valueEnd = participantIDEnd < 0 ? -1 : indexOf(input, participantIDEnd + 1, end, ';');
+        if (typeEnd < 0 || proposalEnd < 0 || participantIDEnd < 0
+                || (valueEnd >= 0 && indexOf(input, valueEnd + 1, end, ';') >= 0)) {
+            LOGGER.warning("Invalid message format. Expected format: <type>;<proposalNumber>;<participantID>;<value>[;<instance>]");
+            return false;
+        }
+        long instance = 0;
+        if (valueEnd >= 0) {
+            instance = parseNumber(input, valueEnd + 1, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            if (instance == INVALID_NUMBER) {
+                LOGGER.warning("Instance must be an integer. Found: " + input.subSequence(valueEnd + 1, end));
+                return false;
+            }
+        } else {
+            valueEnd = end;
+        }
+
+        PaxosMessage.Type type = parseType(input, typeEnd);
+        if (type == null) {
+            LOGGER.warning("Invalid message type: " + input.subSequence(0, typeEnd));
+            return false;
+        }
+
+        long proposalNumber = parseNumber(input, typeEnd + 1, proposalEnd, Long.MIN_VALUE, Long.MAX_VALUE);
+        if (proposalNumber == INVALID_NUMBER) {
+            LOGGER.warning("Proposal number must be an integer. Found: " + input.subSequence(typeEnd + 1, proposalEnd));
+            return false;
+        }
+
+        int valueStart = participantIDEnd + 1;
+        long lastAcceptedProposalNumber = -1; // Default value
+
+        if (type == PaxosMessage.Type.PROMISE) {
+            // The value is <promisedValue>:<lastAcceptedProposalNumber>
+            int promiseEnd = trimTrailing(input, valueStart, valueEnd, ':');
+            int colon = indexOf(input, valueStart, promiseEnd, ':');
+            if (colon < 0 || indexOf(input, colon + 1, promiseEnd, ':') >= 0) {
+                LOGGER.warning("Invalid value format for PROMISE message: " + input.subSequence(valueStart, valueEnd));
+                return false;
+            }
+            lastAcceptedProposalNumber = parseNumber(input, colon + 1, promiseEnd, Long.MIN_VALUE, Long.MAX_VALUE);
+            if (lastAcceptedProposalNumber == INVALID_NUMBER) {
+                LOGGER.warning("Invalid last accepted proposal number: " + input.subSequence(colon + 1, promiseEnd));
+                return false;
+            }
+            valueEnd = colon;
+        }
+
+        view.set(input, type, proposalNumber, proposalEnd + 1, participantIDEnd, valueStart, valueEnd,
+                lastAcceptedProposalNumber, (int) instance);
+        return true;
+    }
+
+    /**
+     * Read only the type of a text message, without validating the rest.
+     * @param input The message text.
+     * @return The message type, or null if the first field is not a type name.
+     */
+    public static PaxosMessage.Type parseType(CharSequence input) {
+        if (input == null) {
+            return null;
+        }
+        int typeEnd = indexOf(input, 0, input.length(), ';');
+        return typeEnd < 0 ? null : parseType(input, typeEnd);
+    }
+
+    /**
+     * Match the type name by its length and a distinguishing character, then confirm the whole name.
+     */
+    private static PaxosMessage.Type parseType(CharSequence input, int end) {
+        PaxosMessage.Type candidate;
+        switch (end) {
+            case 4:
+                candidate = PaxosMessage.Type.NACK;
+                break;
+            case 6:
+                candidate = PaxosMessage.Type.ACCEPT;
+                break;
+            case 7:
+                char third = input.charAt(2);
+                candidate = third == 'O' ? PaxosMessage.Type.PROMISE
+                        : third == 'C' ? PaxosMessage.Type.DECIDED : PaxosMessage.Type.PREPARE;
+                break;
+            case 8:
+                candidate = input.charAt(0) == 'S' ? PaxosMessage.Type.SNAPSHOT : PaxosMessage.Type.ACCEPTED;
+                break;
+            default:
+                return null;
+        }
+        String name = candidate.name();
+        for (int i = 0; i < end; i++) {
+            if (input.charAt(i) != name.charAt(i)) {
+                return null;
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * Parse a decimal number in the given range the way Long.parseLong does.
+     * @return The number, or INVALID_NUMBER if Long.parseLong would throw or the number is out of range.
+     */
+    private static long parseNumber(CharSequence input, int start, int end, long min, long max) {
+        if (start >= end) {
+            return INVALID_NUMBER;
+        }
+        boolean negative = false;
+        long limit = -max;
+        int i = start;
+        char first = input.charAt(i);
+        if (first < '0') {
+            if (first == '-') {
+                negative = true;
+                limit = min;
+            } else if (first != '+') {
+                return INVALID_NUMBER;
+            }
+            if (end - start == 1) {
+                return INVALID_NUMBER;
+            }
+            i++;
+        }
+        // Accumulate negatively, so that the minimum does not overflow
+        long multmin = limit / 10;
+        long result = 0;
+        while (i < end) {
+            int digit = Character.digit(input.charAt(i++), 10);
+            if (digit < 0 || result < multmin) {
+                return INVALID_NUMBER;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return INVALID_NUMBER;
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private static int indexOf(CharSequence input, int start, int end, char c) {
+        for (int i = start; i < end; i++) {
+            if (input.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int trimTrailing(CharSequence input, int start, int end, char c) {
+        while (end > start && input.charAt(end - 1) == c) {
+            end--;
+        }
+        return end;
+    }
+}
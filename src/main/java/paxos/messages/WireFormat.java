@@ -0,0 +1,14 @@
+package paxos.messages;
+
+/**
+ * Enum for the encoding used when sending PaxosMessages.
+ * Servers always accept both encodings, so this only affects what a participant sends.
+ */
+public enum WireFormat {
+    // Text lines of the form <type>;<proposalNumber>;<participantID>;<value>
+    TEXT,
+    // BinaryMessageCodec frames, for clusters where every peer understands them
+    BINARY,
+    // Binary to peers that acknowledge the binary handshake, text to the rest, for mixed rollouts
+    NEGOTIATE
+}
@@ -0,0 +1,302 @@
+package paxos.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import paxos.messages.BinaryMessageCodec;
+
+/**
+ * Keeps long-lived outbound connections to peers, keyed by host:port.
+ *
+ * Connections are opened lazily on first use and reused for every later message to the same peer.
+ * A connection that turns out to be closed or broken is reopened once before the send fails.
+ * Connections that have been idle for longer than the idle timeout are evicted, and the pool
+ * never holds more than the configured number of connections (least recently used goes first).
+ *
+ * When a caller offers both a text and a binary encoding of a message, the connection negotiates the
+ * format once: it sends BinaryMessageCodec's HELLO frame and uses binary only if the peer acknowledges it.
+ *
+ * This class is thread-safe.
+ */
+public class ConnectionPool {
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30000;
+    // How long to wait for a peer to acknowledge the binary format before falling back to text
+    public static final long NEGOTIATION_TIMEOUT_MILLIS = 200;
+
+    private final int maxConnections;
+    private final long idleTimeoutMillis;
+    // Access ordered, so the eldest entry is always the least recently used connection
+    private final Map<String, PooledConnection> connections = new LinkedHashMap<>(16, 0.75f, true);
+    private volatile long lastEvictionRun = System.currentTimeMillis();
+
+    public ConnectionPool() {
+        this(DEFAULT_MAX_CONNECTIONS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructor for ConnectionPool.
+     * @param maxConnections The maximum number of connections kept open at once.
+     * @param idleTimeoutMillis How long a connection may stay unused before it is closed.
+     */
+    public ConnectionPool(int maxConnections, long idleTimeoutMillis) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Pool must allow at least one connection");
+        }
+        this.maxConnections = maxConnections;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Write a frame to the peer, opening or reopening the pooled connection if needed.
+     * The buffer's position is not modified.
+     *
+     * @param frame The encoded bytes to send.
+     * @param host The peer host.
+     * @param port The peer port.
+     * @throws IOException if the frame could not be written even after reconnecting.
+     */
+    public void send(ByteBuffer frame, String host, int port) throws IOException {
+        send(frame, null, host, port);
+    }
+
+    /**
+     * Write a message to the peer in whichever format the connection negotiated.
+     * The buffers' positions are not modified.
+     *
+     * @param textFrame The message encoded as a text line.
+     * @param binaryFrame The message encoded as a binary frame, or null to always send text.
+     * @param host The peer host.
+     * @param port The peer port.
+     * @throws IOException if the message could not be written even after reconnecting.
+     */
+    public void send(ByteBuffer textFrame, ByteBuffer binaryFrame, String host, int port) throws IOException {
+        while (true) {
+            PooledConnection connection = acquire(host, port);
+            if (connection.write(textFrame, binaryFrame)) {
+                return;
+            }
+            // The connection was retired by eviction between acquire and write, pick up a fresh one
+        }
+    }
+
+    /**
+     * Close connections that have not been used within the idle timeout.
+     */
+    public void evictIdleConnections() {
+        List<PooledConnection> evicted = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (connections) {
+            Iterator<PooledConnection> it = connections.values().iterator();
+            while (it.hasNext()) {
+                PooledConnection connection = it.next();
+                if (now - connection.lastUsed > idleTimeoutMillis) {
+                    it.remove();
+                    evicted.add(connection);
+                }
+            }
+            lastEvictionRun = now;
+        }
+        evicted.forEach(PooledConnection::retire);
+    }
+
+    /**
+     * Close every pooled connection. The pool can still be used afterwards.
+     */
+    public void close() {
+        List<PooledConnection> evicted;
+        synchronized (connections) {
+            evicted = new ArrayList<>(connections.values());
+            connections.clear();
+        }
+        evicted.forEach(PooledConnection::retire);
+    }
+
+    /**
+     * Get the number of connections currently held by the pool.
+     * @return The pool size.
+     */
+    public int size() {
+        synchronized (connections) {
+            return connections.size();
+        }
+    }
+
+    private PooledConnection acquire(String host, int port) {
+        if (System.currentTimeMillis() - lastEvictionRun > idleTimeoutMillis / 2) {
+            evictIdleConnections();
+        }
+
+        String key = host + ":" + port;
+        PooledConnection evicted = null;
+        PooledConnection connection;
+        synchronized (connections) {
+            connection = connections.get(key);
+            if (connection == null) {
+                if (connections.size() >= maxConnections) {
+                    Iterator<PooledConnection> eldest = connections.values().iterator();
+                    evicted = eldest.next();
+                    eldest.remove();
+                }
+                connection = new PooledConnection(host, port);
+                connections.put(key, connection);
+            }
+        }
+        // Close outside the map lock so a slow writer on the evicted connection does not stall other peers
+        if (evicted != null) {
+            evicted.retire();
+        }
+        return connection;
+    }
+
+    /**
+     * A single outbound connection. Writes from concurrent senders are serialised by the lock.
+     */
+    private static class PooledConnection {
+        private final String host;
+        private final int port;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ByteBuffer probe = ByteBuffer.allocate(64);
+        private SocketChannel channel;
+        // Whether the peer acknowledged binary frames, null until negotiated on this channel
+        private Boolean acceptsBinary = null;
+        private boolean retired = false;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        /**
+         * Write the frame, reconnecting once if the connection is stale or the write fails.
+         * @return false if the connection was retired and the caller should acquire another.
+         */
+        boolean write(ByteBuffer textFrame, ByteBuffer binaryFrame) throws IOException {
+            lock.lock();
+            try {
+                if (retired) {
+                    return false;
+                }
+                for (int attempt = 0; ; attempt++) {
+                    try {
+                        ensureConnected();
+                        ByteBuffer frame = textFrame;
+                        if (binaryFrame != null) {
+                            if (acceptsBinary == null) {
+                                acceptsBinary = negotiate();
+                            }
+                            if (acceptsBinary) {
+                                frame = binaryFrame;
+                            }
+                        }
+                        ByteBuffer pending = frame.duplicate();
+                        while (pending.hasRemaining()) {
+                            channel.write(pending);
+                        }
+                        lastUsed = System.currentTimeMillis();
+                        return true;
+                    } catch (IOException e) {
+                        closeChannel();
+                        if (attempt > 0) {
+                            throw e;
+                        }
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void retire() {
+            lock.lock();
+            try {
+                retired = true;
+                closeChannel();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void ensureConnected() throws IOException {
+            if (channel != null && !isStale()) {
+                return;
+            }
+            closeChannel();
+            channel = SocketChannel.open(new InetSocketAddress(host, port));
+            channel.socket().setTcpNoDelay(true);
+        }
+
+        /**
+         * Send the HELLO frame and wait briefly for the peer's acknowledgement.
+         * A text-only peer ignores the HELLO as an unparseable line and never answers.
+         */
+        private boolean negotiate() throws IOException {
+            ByteBuffer hello = BinaryMessageCodec.helloFrame();
+            while (hello.hasRemaining()) {
+                channel.write(hello);
+            }
+            long deadline = System.currentTimeMillis() + NEGOTIATION_TIMEOUT_MILLIS;
+            channel.configureBlocking(false);
+            try {
+                try (Selector selector = Selector.open()) {
+                    channel.register(selector, SelectionKey.OP_READ);
+                    while (true) {
+                        probe.clear();
+                        int bytesRead = channel.read(probe);
+                        if (bytesRead > 0) {
+                            return probe.get(0) == BinaryMessageCodec.HELLO_ACK;
+                        }
+                        if (bytesRead < 0) {
+                            throw new IOException("Connection closed during negotiation");
+                        }
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            return false;
+                        }
+                        selector.select(remaining);
+                    }
+                }
+            } finally {
+                channel.configureBlocking(true);
+            }
+        }
+
+        /**
+         * Apart from the negotiation acknowledgement, peers never write back on this connection, so a non-blocking read only returns -1
+         * once the peer has closed its end (for example, because its server was stopped).
+         */
+        private boolean isStale() throws IOException {
+            channel.configureBlocking(false);
+            try {
+                probe.clear();
+                return channel.read(probe) < 0;
+            } finally {
+                channel.configureBlocking(true);
+            }
+        }
+
+        private void closeChannel() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to do with a connection that failed to close
+            }
+            channel = null;
+            acceptsBinary = null;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package paxos.network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import paxos.messages.BinaryMessageCodec;
+import paxos.messages.PaxosMessage;
+import paxos.messages.WireFormat;
+
+/**
+ * A message encoded once for the wire, ready to be written to any number of peers.
+ *
+ * The frames are read-only heap buffers. Every send works on a duplicate, so one instance can be shared by
+ * concurrent senders. Allocating a direct buffer per message costs more than the copy the socket makes into
+ * its own reused direct buffer when writing from the heap, so frames are not allocated off the heap.
+ */
+public final class EncodedMessage {
+    private final ByteBuffer textFrame;
+    private final ByteBuffer binaryFrame;
+
+    private EncodedMessage(ByteBuffer textFrame, ByteBuffer binaryFrame) {
+        this.textFrame = textFrame;
+        this.binaryFrame = binaryFrame;
+    }
+
+    /**
+     * Encode a message for the given wire format.
+     * @param message The message to encode.
+     * @param wireFormat The wire format. NEGOTIATE encodes both forms, so each connection can pick one.
+     * @return The encoded message.
+     */
+    public static EncodedMessage encode(PaxosMessage message, WireFormat wireFormat) {
+        switch (wireFormat) {
+            case BINARY:
+                return new EncodedMessage(BinaryMessageCodec.encode(message), null);
+            case NEGOTIATE:
+                return new EncodedMessage(encodeText(message.toString()), BinaryMessageCodec.encode(message));
+            case TEXT:
+            default:
+                return new EncodedMessage(encodeText(message.toString()), null);
+        }
+    }
+
+    /**
+     * Encode a raw text message as a line.
+     * @param message The message text, without the line terminator.
+     * @return The encoded message.
+     */
+    public static EncodedMessage text(String message) {
+        return new EncodedMessage(encodeText(message), null);
+    }
+
+    /**
+     * Get the frame to send when the binary format has not been negotiated. For BINARY this is the binary frame.
+     * @return A read-only buffer holding the frame.
+     */
+    public ByteBuffer getTextFrame() {
+        return textFrame != null ? textFrame : binaryFrame;
+    }
+
+    /**
+     * Get the binary frame to send once a connection negotiated it.
+     * @return A read-only buffer holding the frame, or null if the connection should not negotiate.
+     */
+    public ByteBuffer getBinaryFrame() {
+        return textFrame != null ? binaryFrame : null;
+    }
+
+    private static ByteBuffer encodeText(String message) {
+        return ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+    }
+}
@@ -1,24 +1,147 @@
 package paxos.network;
 
 import java.net.Socket;
+import java.util.Iterator;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import paxos.messages.PaxosMessage;
 
 /**
  * Represents message queue for producers and consumers.
- * 
+ *
+ * The queue can be bounded. When a bounded queue is full, the overflow policy decides whether the
+ * producer waits or which message is dropped. Depth, enqueue rate and drop counts are exposed as gauges.
+ *
+ * Two backends are available: a LinkedBlockingQueue, and a preallocated lock-free ring for the usual case
+ * of many server threads producing into one processing thread.
+ *
  * This class is thread-safe.
  */
-public class MessageQueue {
-    private final BlockingQueue<ClientMessage> queue = new LinkedBlockingQueue<>();
+public class MessageQueue implements MessageSink {
+    public static final int DEFAULT_RING_CAPACITY = 4096;
+    private static final long RATE_WINDOW_MILLIS = 1000;
+
+    // Exactly one of these is set, depending on the backend
+    private final BlockingQueue<ClientMessage> queue;
+    private final MpscRingBuffer<ClientMessage> ring;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+
+    // Enqueue counters are striped so concurrent producers do not contend on one cache line
+    private final LongAdder enqueuedCount = new LongAdder();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong rateWindowStart = new AtomicLong(System.currentTimeMillis());
+    private final LongAdder rateWindowCount = new LongAdder();
+    private volatile double enqueueRate = 0;
+
+    /**
+     * Enum for what a full queue does with a new message.
+     */
+    public enum OverflowPolicy {
+        // Wait until the consumer makes room
+        BLOCK,
+        // Drop the message at the head of the queue to make room
+        DROP_OLDEST,
+        // Drop the new message
+        DROP_NEWEST,
+        // Drop queued PREPARE messages first, then drop new PREPAREs, and only block for other message types
+        SHED_PREPARE_FIRST
+    }
+
+    /**
+     * Enum for the data structure behind the queue.
+     */
+    public enum Backend {
+        // LinkedBlockingQueue, supports every overflow policy
+        LINKED,
+        // Lock-free ring for a single consumer, supports BLOCK and DROP_NEWEST
+        MPSC_RING
+    }
+
+    /**
+     * Constructor for an unbounded MessageQueue.
+     */
+    public MessageQueue() {
+        this(Integer.MAX_VALUE, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Constructor for MessageQueue.
+     * @param capacity The maximum number of queued messages.
+     * @param overflowPolicy What to do with a new message when the queue is full.
+     */
+    public MessageQueue(int capacity, OverflowPolicy overflowPolicy) {
+        this(capacity, overflowPolicy, Backend.LINKED, MpscRingBuffer.WaitStrategy.PARK);
+    }
+
+    /**
+     * Constructor for MessageQueue.
+     * @param capacity The maximum number of queued messages. The ring backend rounds it up to a power of two.
+     * @param overflowPolicy What to do with a new message when the queue is full.
+     * @param backend The data structure behind the queue.
+     * @param waitStrategy How the ring backend waits when empty or full. Ignored by the linked backend.
+     * @throws IllegalArgumentException if the backend does not support the overflow policy.
+     */
+    public MessageQueue(int capacity, OverflowPolicy overflowPolicy, Backend backend, MpscRingBuffer.WaitStrategy waitStrategy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        if (backend == Backend.MPSC_RING) {
+            if (overflowPolicy != OverflowPolicy.BLOCK && overflowPolicy != OverflowPolicy.DROP_NEWEST) {
+                // Only the consumer may remove from the ring, so producers cannot drop queued messages
+                throw new IllegalArgumentException("Ring backend does not support overflow policy " + overflowPolicy);
+            }
+            this.queue = null;
+            this.ring = new MpscRingBuffer<>(capacity, waitStrategy);
+            this.capacity = ring.capacity();
+        } else {
+            this.queue = new LinkedBlockingQueue<>(capacity);
+            this.ring = null;
+            this.capacity = capacity;
+        }
+        this.overflowPolicy = overflowPolicy;
+    }
 
     /**
      * Add a message to the queue.
      * @param message The message to be added.
      * @throws InterruptedException
      */
+    @Override
     public void produceMessage(ClientMessage message) throws InterruptedException {
-        queue.put(message); // This may block if the queue has a capacity limit
+        if (ring != null) {
+            produceToRing(message);
+            return;
+        }
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                while (!queue.offer(message)) {
+                    if (queue.poll() != null) {
+                        droppedCount.incrementAndGet();
+                    }
+                }
+                break;
+            case DROP_NEWEST:
+                if (!queue.offer(message)) {
+                    droppedCount.incrementAndGet();
+                    return;
+                }
+                break;
+            case SHED_PREPARE_FIRST:
+                if (!offerSheddingPrepares(message)) {
+                    droppedCount.incrementAndGet();
+                    return;
+                }
+                break;
+            case BLOCK:
+            default:
+                queue.put(message); // This blocks while the queue is at capacity
+                break;
+        }
+        recordEnqueue();
     }
 
     /**
@@ -27,11 +150,111 @@ public class MessageQueue {
      * @throws InterruptedException
      */
     public ClientMessage consumeMessage() throws InterruptedException {
+        if (ring != null) {
+            return ring.take(); // Waits with the ring's wait strategy
+        }
         return queue.take(); // This will block until a message is available
     }
 
+    /**
+     * Get the number of messages waiting in the queue.
+     * @return The queue depth.
+     */
+    public int getDepth() {
+        return ring != null ? ring.size() : queue.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Get the total number of messages accepted into the queue.
+     * @return The enqueued message count.
+     */
+    public long getEnqueuedCount() {
+        return enqueuedCount.sum();
+    }
+
+    /**
+     * Get the total number of messages dropped by the overflow policy.
+     * @return The dropped message count.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Get the enqueue rate measured over the last completed one second window. A window is also closed here once
+     * it has run its length, so the rate falls to 0 when messages stop arriving.
+     * @return Messages enqueued per second.
+     */
+    public double getEnqueueRate() {
+        closeRateWindow(System.currentTimeMillis());
+        return enqueueRate;
+    }
+
+    private void produceToRing(ClientMessage message) throws InterruptedException {
+        if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+            if (!ring.offer(message)) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+        } else {
+            ring.put(message);
+        }
+        recordEnqueue();
+    }
+
+    private boolean offerSheddingPrepares(ClientMessage message) throws InterruptedException {
+        while (!queue.offer(message)) {
+            if (removeOldestPrepare()) {
+                droppedCount.incrementAndGet();
+                continue;
+            }
+            if (message.isPrepare()) {
+                return false;
+            }
+            // Nothing left to shed, so apply backpressure rather than lose a later phase message
+            queue.put(message);
+            return true;
+        }
+        return true;
+    }
+
+    private boolean removeOldestPrepare() {
+        Iterator<ClientMessage> it = queue.iterator();
+        while (it.hasNext()) {
+            if (it.next().isPrepare()) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void recordEnqueue() {
+        enqueuedCount.increment();
+        rateWindowCount.increment();
+        closeRateWindow(System.currentTimeMillis());
+    }
+
+    private void closeRateWindow(long now) {
+        long windowStart = rateWindowStart.get();
+        long elapsed = now - windowStart;
+        // Only the thread that wins the swap closes the window
+        if (elapsed >= RATE_WINDOW_MILLIS && rateWindowStart.compareAndSet(windowStart, now)) {
+            enqueueRate = rateWindowCount.sumThenReset() * 1000.0 / elapsed;
+        }
+    }
+
     public static class ClientMessage {
         private String message;
+        private PaxosMessage paxosMessage;
         private Socket clientSocket;
 
         public ClientMessage(String message, Socket clientSocket) {
@@ -39,12 +262,48 @@ public class MessageQueue {
             this.clientSocket = clientSocket;
         }
 
+        /**
+         * Constructor for a message that arrived already decoded, for example as a binary frame.
+         * @param paxosMessage The decoded message.
+         * @param clientSocket The connection the message arrived on.
+         */
+        public ClientMessage(PaxosMessage paxosMessage, Socket clientSocket) {
+            this.paxosMessage = paxosMessage;
+            this.clientSocket = clientSocket;
+        }
+
+        /**
+         * Get the message text. For a message that arrived decoded, this is its text form.
+         * @return The message text.
+         */
         public String getMessage() {
+            if (message == null && paxosMessage != null) {
+                message = paxosMessage.toString();
+            }
             return message;
         }
 
+        /**
+         * Get the decoded message, if it arrived decoded.
+         * @return The decoded message, or null if only the text is available.
+         */
+        public PaxosMessage getPaxosMessage() {
+            return paxosMessage;
+        }
+
         public Socket getClientSocket() {
             return clientSocket;
         }
+
+        /**
+         * Check if this is a PREPARE message, without parsing it.
+         * @return true if the message is a PREPARE, false otherwise.
+         */
+        public boolean isPrepare() {
+            if (paxosMessage != null) {
+                return paxosMessage.getType() == PaxosMessage.Type.PREPARE;
+            }
+            return message != null && message.startsWith("PREPARE;");
+        }
     }
 }
@@ -0,0 +1,68 @@
+package paxos.network;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.*;
+
+import paxos.messages.PaxosMessage;
+import paxos.messages.TextMessageParser;
+import paxos.network.MessageQueue.ClientMessage;
+
+/**
+ * Routes the messages received on one shared server to the queues of the roles hosted by a node.
+ *
+ * A node that runs both an acceptor and a proposer can listen on a single port: the server adds every
+ * message to the router, and the router hands it to every queue registered for the message type.
+ * The router itself holds no messages, it is only a sink that servers produce into.
+ *
+ * Register all routes before starting the server. Routing is thread-safe once the server is running.
+ */
+public class MessageRouter implements MessageSink {
+    private final Map<PaxosMessage.Type, List<MessageQueue>> routes = new EnumMap<>(PaxosMessage.Type.class);
+    private final AtomicLong unroutedCount = new AtomicLong();
+
+    private static final Logger logger = Logger.getLogger(MessageRouter.class.getName());
+
+    /**
+     * Send messages of the given types to a queue, in addition to any queue already registered for them.
+     * @param messageQueue The queue of the role that handles these types.
+     * @param types The message types to route to the queue.
+     */
+    public void route(MessageQueue messageQueue, PaxosMessage.Type... types) {
+        for (PaxosMessage.Type type : types) {
+            routes.computeIfAbsent(type, t -> new ArrayList<>()).add(messageQueue);
+        }
+    }
+
+    /**
+     * Hand a message to the queues registered for its type. Messages without a route are logged and dropped.
+     * @param message The message to be routed.
+     * @throws InterruptedException if interrupted while the target queue applies backpressure.
+     */
+    @Override
+    public void produceMessage(ClientMessage message) throws InterruptedException {
+        PaxosMessage.Type type = message.getPaxosMessage() != null
+                ? message.getPaxosMessage().getType()
+                : TextMessageParser.parseType(message.getMessage());
+        List<MessageQueue> targets = type != null ? routes.get(type) : null;
+        if (targets == null) {
+            unroutedCount.incrementAndGet();
+            logger.warning("No route for message: " + message.getMessage());
+            return;
+        }
+        for (MessageQueue target : targets) {
+            target.produceMessage(message);
+        }
+    }
+
+    /**
+     * Get the total number of messages dropped because no queue was registered for them.
+     * @return The unrouted message count.
+     */
+    public long getUnroutedCount() {
+        return unroutedCount.get();
+    }
+}
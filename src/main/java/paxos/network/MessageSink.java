@@ -0,0 +1,18 @@
+package paxos.network;
+
+import paxos.network.MessageQueue.ClientMessage;
+
+/**
+ * Receives the messages a server reads from its connections, for example a participant's message queue or a
+ * router that hands them on to the queues of a node's roles.
+ *
+ * Implementations must be thread-safe, since every connection of a server produces into the same sink.
+ */
+public interface MessageSink {
+    /**
+     * Hand on a received message.
+     * @param message The message.
+     * @throws InterruptedException if interrupted while the sink applies backpressure.
+     */
+    void produceMessage(ClientMessage message) throws InterruptedException;
+}
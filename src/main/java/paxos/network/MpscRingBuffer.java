@@ -0,0 +1,235 @@
+package paxos.network;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free, multi-producer/single-consumer ring buffer.
+ *
+ * Slots are preallocated, so nothing is allocated per message. Producers claim a slot with a CAS on the
+ * producer index and publish it through the slot's sequence number; the single consumer never takes a lock.
+ * The producer and consumer indexes are padded onto separate cache lines so they do not false-share.
+ *
+ * Only one thread may call poll and take at a time. Any number of threads may offer and put.
+ *
+ * @param <E> The element type.
+ */
+public class MpscRingBuffer<E> extends MpscRingBufferConsumerIndex {
+    // Bound on how long a parked consumer sleeps before rechecking, in case a wake-up is missed
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long PRODUCER_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    private static final VarHandle PRODUCER_INDEX;
+    private static final VarHandle CONSUMER_INDEX;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            PRODUCER_INDEX = lookup.findVarHandle(MpscRingBufferProducerIndex.class, "producerIndex", long.class);
+            CONSUMER_INDEX = lookup.findVarHandle(MpscRingBufferConsumerIndex.class, "consumerIndex", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private volatile Thread parkedConsumer = null;
+
+    /**
+     * Enum for how a thread waits on an empty (consumer) or full (producer) ring.
+     */
+    public enum WaitStrategy {
+        // Spin on the CPU, lowest latency but burns a core while idle
+        BUSY_SPIN,
+        // Yield the CPU between checks
+        YIELD,
+        // Park the thread, producers wake a parked consumer
+        PARK
+    }
+
+    /**
+     * Constructor for MpscRingBuffer.
+     * @param capacity The number of slots, rounded up to the next power of two.
+     * @param waitStrategy How blocked producers and the consumer wait.
+     */
+    public MpscRingBuffer(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Ring capacity must be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Add an element if there is room.
+     * @param element The element to add.
+     * @return true if the element was added, false if the ring is full.
+     */
+    public boolean offer(E element) {
+        while (true) {
+            long index = (long) PRODUCER_INDEX.getVolatile(this);
+            int slot = (int) (index & mask);
+            long difference = sequences.get(slot) - index;
+            if (difference == 0) {
+                if (PRODUCER_INDEX.compareAndSet(this, index, index + 1)) {
+                    buffer[slot] = element;
+                    // Publishing the sequence makes the element visible to the consumer
+                    sequences.lazySet(slot, index + 1);
+                    wakeConsumer();
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+            // Another producer claimed the slot first, retry with the new index
+        }
+    }
+
+    /**
+     * Add an element, waiting with the wait strategy while the ring is full.
+     * @param element The element to add.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void put(E element) throws InterruptedException {
+        while (!offer(element)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            switch (waitStrategy) {
+                case BUSY_SPIN:
+                    Thread.onSpinWait();
+                    break;
+                case YIELD:
+                    Thread.yield();
+                    break;
+                case PARK:
+                default:
+                    LockSupport.parkNanos(this, PRODUCER_BACKOFF_NANOS);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Remove the next element if one is available. Must only be called by the consumer thread.
+     * @return The element, or null if the ring is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long index = (long) CONSUMER_INDEX.getOpaque(this);
+        int slot = (int) (index & mask);
+        if (sequences.get(slot) != index + 1) {
+            return null;
+        }
+        E element = (E) buffer[slot];
+        buffer[slot] = null;
+        // Hand the slot back to producers for the next lap around the ring
+        sequences.lazySet(slot, index + buffer.length);
+        CONSUMER_INDEX.setRelease(this, index + 1);
+        return element;
+    }
+
+    /**
+     * Remove the next element, waiting with the wait strategy while the ring is empty.
+     * Must only be called by the consumer thread.
+     * @return The element.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public E take() throws InterruptedException {
+        E element;
+        while ((element = poll()) == null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            switch (waitStrategy) {
+                case BUSY_SPIN:
+                    Thread.onSpinWait();
+                    break;
+                case YIELD:
+                    Thread.yield();
+                    break;
+                case PARK:
+                default:
+                    parkUntilOffered();
+                    break;
+            }
+        }
+        return element;
+    }
+
+    /**
+     * Get an estimate of the number of elements in the ring.
+     * @return The number of elements.
+     */
+    public int size() {
+        long consumer = (long) CONSUMER_INDEX.getVolatile(this);
+        long producer = (long) PRODUCER_INDEX.getVolatile(this);
+        return (int) Math.max(0, Math.min(producer - consumer, buffer.length));
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    private void parkUntilOffered() {
+        parkedConsumer = Thread.currentThread();
+        // Recheck after advertising, so an offer that raced with us is not missed
+        if (!hasPublishedElement()) {
+            LockSupport.parkNanos(this, PARK_NANOS);
+        }
+        parkedConsumer = null;
+    }
+
+    private boolean hasPublishedElement() {
+        long index = (long) CONSUMER_INDEX.getOpaque(this);
+        return sequences.get((int) (index & mask)) == index + 1;
+    }
+
+    private void wakeConsumer() {
+        if (waitStrategy != WaitStrategy.PARK) {
+            return;
+        }
+        // Order the sequence publish before reading the parked consumer, pairing with parkUntilOffered
+        VarHandle.fullFence();
+        Thread consumer = parkedConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+}
+
+/**
+ * Padding and index fields for MpscRingBuffer. The class hierarchy fixes the field layout,
+ * keeping each index on its own cache line.
+ */
+abstract class MpscRingBufferPad0 {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class MpscRingBufferProducerIndex extends MpscRingBufferPad0 {
+    volatile long producerIndex;
+}
+
+abstract class MpscRingBufferPad1 extends MpscRingBufferProducerIndex {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class MpscRingBufferConsumerIndex extends MpscRingBufferPad1 {
+    volatile long consumerIndex;
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+}
@@ -1,27 +1,66 @@
 package paxos.network;
 
 import java.io.*;
-import java.net.Socket;
-import java.net.UnknownHostException;
+import java.nio.channels.UnresolvedAddressException;
+
+import paxos.messages.PaxosMessage;
+import paxos.messages.WireFormat;
 
 import java.util.logging.*;
 
 /**
  * The NetworkClient class is responsible for sending messages to a server on a specified port.
+ * Messages are written over pooled, long-lived connections rather than a new socket per message.
  */
 public class NetworkClient {
 
     private static final Logger logger = Logger.getLogger(NetworkClient.class.getName());
 
+    private static volatile ConnectionPool connectionPool = new ConnectionPool();
+
     public static void sendMessage(String message, String host, int port) {
-        try (Socket socket = new Socket(host, port);
-            PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
-            out.println(message);
+        sendMessage(EncodedMessage.text(message), host, port);
+    }
+
+    /**
+     * Send a message in the given wire format.
+     * @param message The message to send.
+     * @param host The peer host.
+     * @param port The peer port.
+     * @param wireFormat The encoding to use, or NEGOTIATE to let the connection pick.
+     */
+    public static void sendMessage(PaxosMessage message, String host, int port, WireFormat wireFormat) {
+        sendMessage(EncodedMessage.encode(message, wireFormat), host, port);
+    }
+
+    /**
+     * Send an already encoded message. The same instance can be sent to many peers without encoding it again.
+     * @param message The encoded message.
+     * @param host The peer host.
+     * @param port The peer port.
+     */
+    public static void sendMessage(EncodedMessage message, String host, int port) {
+        try {
+            connectionPool.send(message.getTextFrame(), message.getBinaryFrame(), host, port);
             // logger.info("Sent message: " + message);
-        } catch (UnknownHostException e) {
+        } catch (UnresolvedAddressException e) {
             logger.warning("Don't know about host " + host);
         } catch (IOException e) {
             logger.warning("Couldn't get I/O for the connection to " + host);
         }
     }
+
+    /**
+     * Replace the connection pool used for outgoing messages. The previous pool is closed.
+     * @param pool The pool to use from now on.
+     */
+    public static void setConnectionPool(ConnectionPool pool) {
+        ConnectionPool previous = connectionPool;
+        connectionPool = pool;
+        previous.close();
+    }
+
+    public static ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
 }
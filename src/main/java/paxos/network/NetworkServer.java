@@ -3,28 +3,75 @@ package paxos.network;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.*;
 
-import paxos.network.MessageQueue.ClientMessage;
+import paxos.messages.BinaryMessageCodec;
+import paxos.utils.ExecutionMode;
 
 /**
  * The NetworkServer class is responsible for accepting TCP connections from clients on a specified port.
  * It implements the Runnable interface, allowing it to be run on a separate thread.
  */
 public class NetworkServer implements Runnable {
-    private int serverPort;
+    protected int serverPort;
     private ServerSocket serverSocket = null;
-    private MessageQueue messageQueue = null;
+    protected MessageSink messageQueue = null;
+    protected ExecutionMode executionMode = ExecutionMode.PLATFORM;
     private boolean isStopped = false;
     private Thread runningThread = null;
+    // Connections stay open across many messages, so they are tracked to be closed on stop
+    private final Set<Socket> clientSockets = ConcurrentHashMap.newKeySet();
 
     private static final Logger logger = Logger.getLogger(NetworkServer.class.getName());
 
-    public NetworkServer(int port, MessageQueue messageQueue) {
+    /**
+     * Enum for the ways a server can handle its client connections.
+     */
+    public enum Mode {
+        // One blocking handler thread per accepted connection
+        THREAD_PER_CONNECTION,
+        // A fixed set of selector threads shared by all connections
+        NIO
+    }
+
+    public NetworkServer(int port, MessageSink messageQueue) {
         this.serverPort = port;
         this.messageQueue = messageQueue;
     }
 
+    /**
+     * Constructor for NetworkServer.
+     * @param port The port to listen on.
+     * @param messageQueue The queue or router that received messages are added to.
+     * @param executionMode The kind of threads used for client handlers.
+     */
+    public NetworkServer(int port, MessageSink messageQueue, ExecutionMode executionMode) {
+        this(port, messageQueue);
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * Create a server for the given mode.
+     * @param mode How client connections are handled.
+     * @param port The port to listen on.
+     * @param messageQueue The queue or router that received messages are added to.
+     * @param ioThreads The number of selector threads, only used in NIO mode.
+     * @param executionMode The kind of threads used for client handlers, only used in thread-per-connection mode.
+     * @return The server, not yet started.
+     */
+    public static NetworkServer create(Mode mode, int port, MessageSink messageQueue, int ioThreads, ExecutionMode executionMode) {
+        switch (mode) {
+            case NIO:
+                return new NioNetworkServer(port, messageQueue, ioThreads);
+            case THREAD_PER_CONNECTION:
+            default:
+                return new NetworkServer(port, messageQueue, executionMode);
+        }
+    }
+
     /**
      * The entry point for the server thread. This method is called when the server thread is started.
      * It listens for incoming client connections and handles them using ClientHandler threads.
@@ -45,7 +92,8 @@ public class NetworkServer implements Runnable {
                 }
                 throw new RuntimeException("Error accepting client connection", e);
             }
-            new Thread(new ClientHandler(clientSocket, this.messageQueue)).start();
+            clientSockets.add(clientSocket);
+            executionMode.newThread(new ClientHandler(clientSocket, this.messageQueue, clientSockets), "client-handler-" + serverPort).start();
         }
         logger.info("Server stopped");
     }
@@ -71,20 +119,31 @@ public class NetworkServer implements Runnable {
      *
      * @return true if the server is stopped, false otherwise.
      */
-    private synchronized boolean isStopped() {
+    protected synchronized boolean isStopped() {
         return this.isStopped;
     }
 
     /**
      * Stops the server. This method closes the server socket and stops accepting new connections.
+     * Open client connections are closed as well, so pooled senders reconnect to whichever server takes the port next.
      */
     public synchronized void stop() {
         this.isStopped = true;
         try {
-            this.serverSocket.close();
+            if (this.serverSocket != null) {
+                this.serverSocket.close();
+            }
         } catch (IOException e) {
             throw new RuntimeException("Error closing server", e);
         }
+        for (Socket clientSocket : clientSockets) {
+            try {
+                clientSocket.close();
+            } catch (IOException e) {
+                logger.warning("Error closing client connection");
+            }
+        }
+        clientSockets.clear();
     }
     
     /**
@@ -102,15 +161,17 @@ public class NetworkServer implements Runnable {
 
     /**
      * The ClientHandler class is a helper class that handles communication with a single client socket.
-     * It reads input from the client and prints it to the server's standard output.
+     * It reads every message the client sends, text or binary, until the connection is closed.
      */
     private static class ClientHandler extends Thread {
         private Socket clientSocket;
-        private MessageQueue messageQueue;
+        private MessageSink messageQueue;
+        private Set<Socket> clientSockets;
 
-        public ClientHandler(Socket socket, MessageQueue messageQueue) {
+        public ClientHandler(Socket socket, MessageSink messageQueue, Set<Socket> clientSockets) {
             this.clientSocket = socket;
             this.messageQueue = messageQueue;
+            this.clientSockets = clientSockets;
         }
 
         /**
@@ -118,20 +179,30 @@ public class NetworkServer implements Runnable {
          * Adds messages received from the client to the message queue.
          */
         public void run() {
-            try (BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()))) {
-                String inputLine;
-                while ((inputLine = in.readLine()) != null) {
+            try (InputStream in = clientSocket.getInputStream()) {
+                OutputStream out = clientSocket.getOutputStream();
+                WireFrameDecoder decoder = new WireFrameDecoder(messageQueue, clientSocket, () -> {
+                    out.write(BinaryMessageCodec.HELLO_ACK);
+                    out.flush();
+                });
+                byte[] buffer = new byte[8192];
+                int bytesRead;
+                while ((bytesRead = in.read(buffer)) != -1) {
                     try {
-                        ClientMessage clientMessage = new ClientMessage(inputLine, clientSocket);
-                        // Add message to message queue
-                        messageQueue.produceMessage(clientMessage);
+                        // Add completed messages to message queue
+                        decoder.consume(ByteBuffer.wrap(buffer, 0, bytesRead));
                     } catch (InterruptedException e) {
                         // Thread was interrupted during wait
                         Thread.currentThread().interrupt();
+                        return;
                     }
                 }
             } catch (IOException e) {
-                logger.severe("Error handling client connection");
+                if (!clientSocket.isClosed()) {
+                    logger.severe("Error handling client connection");
+                }
+            } finally {
+                clientSockets.remove(clientSocket);
             }
         }
     }
@@ -0,0 +1,214 @@
+package paxos.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.*;
+
+import paxos.messages.BinaryMessageCodec;
+
+/**
+ * A non-blocking variant of NetworkServer built on a Selector.
+ *
+ * The server thread only accepts connections and hands them to a fixed set of I/O threads.
+ * Each I/O thread reads text and binary framed messages from its connections straight into the message queue,
+ * so the number of threads stays the same no matter how many peers connect or how many messages arrive.
+ */
+public class NioNetworkServer extends NetworkServer {
+    private final IoWorker[] workers;
+    private ServerSocketChannel serverChannel = null;
+    private int nextWorker = 0;
+
+    private static final Logger logger = Logger.getLogger(NioNetworkServer.class.getName());
+
+    /**
+     * Constructor for NioNetworkServer.
+     * @param port The port to listen on.
+     * @param messageQueue The queue or router that received messages are added to.
+     * @param ioThreads The number of selector threads serving client connections.
+     */
+    public NioNetworkServer(int port, MessageSink messageQueue, int ioThreads) {
+        super(port, messageQueue);
+        if (ioThreads < 1) {
+            throw new IllegalArgumentException("At least one I/O thread is required");
+        }
+        this.workers = new IoWorker[ioThreads];
+    }
+
+    /**
+     * The entry point for the server thread. Opens the listening channel, starts the I/O threads,
+     * then accepts connections and spreads them over the I/O threads round-robin.
+     */
+    @Override
+    public void run() {
+        openServerChannel();
+        for (int i = 0; i < workers.length; i++) {
+            Thread workerThread = new Thread(workers[i], "nio-server-" + serverPort + "-io-" + i);
+            workerThread.start();
+        }
+
+        while (!isStopped()) {
+            SocketChannel clientChannel;
+            try {
+                clientChannel = serverChannel.accept();
+            } catch (IOException e) {
+                if (isStopped()) {
+                    break;
+                }
+                throw new RuntimeException("Error accepting client connection", e);
+            }
+            workers[nextWorker].register(clientChannel);
+            nextWorker = (nextWorker + 1) % workers.length;
+        }
+        logger.info("Server stopped");
+    }
+
+    /**
+     * Stops the server. Closes the listening channel and every client connection, and ends the I/O threads.
+     */
+    @Override
+    public synchronized void stop() {
+        super.stop();
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error closing server", e);
+        }
+        for (IoWorker worker : workers) {
+            if (worker != null) {
+                worker.selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Opens the listening channel and the I/O thread selectors.
+     *
+     * @throws RuntimeException if the port cannot be opened.
+     */
+    private void openServerChannel() {
+        try {
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new IoWorker(Selector.open());
+            }
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(serverPort));
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot open port " + serverPort, e);
+        }
+    }
+
+    /**
+     * Serves reads for the connections registered with its selector.
+     */
+    private class IoWorker implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> pendingRegistrations = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(16 * 1024);
+
+        IoWorker(Selector selector) {
+            this.selector = selector;
+        }
+
+        /**
+         * Hand a newly accepted connection to this worker. Registration happens on the worker thread,
+         * since registering while another thread is blocked in select would block.
+         */
+        void register(SocketChannel channel) {
+            pendingRegistrations.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isStopped()) {
+                    selector.select();
+                    registerPending();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (key.isValid() && key.isReadable()) {
+                            read(key);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                if (!isStopped()) {
+                    logger.severe("Error in I/O thread for port " + serverPort);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                closeAll();
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel channel;
+            while ((channel = pendingRegistrations.poll()) != null) {
+                try {
+                    channel.configureBlocking(false);
+                    channel.register(selector, SelectionKey.OP_READ, newDecoder(channel));
+                } catch (IOException e) {
+                    logger.warning("Could not register client connection");
+                    closeQuietly(channel);
+                }
+            }
+        }
+
+        private void read(SelectionKey key) throws InterruptedException {
+            SocketChannel channel = (SocketChannel) key.channel();
+            WireFrameDecoder decoder = (WireFrameDecoder) key.attachment();
+            readBuffer.clear();
+            try {
+                if (channel.read(readBuffer) < 0) {
+                    throw new IOException("Connection closed by client");
+                }
+                readBuffer.flip();
+                decoder.consume(readBuffer);
+            } catch (IOException e) {
+                key.cancel();
+                closeQuietly(channel);
+            }
+        }
+
+        private WireFrameDecoder newDecoder(SocketChannel channel) {
+            return new WireFrameDecoder(messageQueue, channel.socket(), () -> {
+                // A single byte always fits in the empty send buffer of a fresh connection
+                channel.write(ByteBuffer.wrap(new byte[] { BinaryMessageCodec.HELLO_ACK }));
+            });
+        }
+
+        private void closeAll() {
+            pendingRegistrations.forEach(NioNetworkServer::closeQuietly);
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.warning("Error closing selector");
+            }
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing left to do with a connection that failed to close
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package paxos.network;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.logging.*;
+
+import paxos.messages.BinaryMessageCodec;
+import paxos.messages.PaxosMessage;
+import paxos.network.MessageQueue.ClientMessage;
+
+/**
+ * Splits the byte stream of one client connection into messages and adds them to a message queue.
+ *
+ * Text messages are newline-terminated lines. Binary messages are frames starting with
+ * BinaryMessageCodec.FRAME_MARKER, which never starts a text line, so both can arrive on the same connection.
+ * Partial messages are kept until the rest arrives.
+ *
+ * An instance belongs to one connection and is not thread-safe.
+ */
+public class WireFrameDecoder {
+    private final MessageSink messageQueue;
+    private final Socket clientSocket;
+    private final HelloHandler helloHandler;
+    private byte[] pending = new byte[256];
+    private int pendingLength = 0;
+
+    private static final Logger logger = Logger.getLogger(WireFrameDecoder.class.getName());
+
+    /**
+     * Callback for answering a binary negotiation handshake on the connection.
+     */
+    public interface HelloHandler {
+        void onHello() throws IOException;
+    }
+
+    /**
+     * Constructor for WireFrameDecoder.
+     * @param messageQueue The queue or router decoded messages are added to.
+     * @param clientSocket The connection the bytes come from, attached to each message.
+     * @param helloHandler Called when the client asks whether binary frames are understood.
+     */
+    public WireFrameDecoder(MessageSink messageQueue, Socket clientSocket, HelloHandler helloHandler) {
+        this.messageQueue = messageQueue;
+        this.clientSocket = clientSocket;
+        this.helloHandler = helloHandler;
+    }
+
+    /**
+     * Consume newly read bytes, adding every completed message to the queue.
+     * @param bytes The bytes read, from position to limit. The buffer is fully consumed.
+     * @throws IOException if the stream is corrupt and the connection should be closed.
+     * @throws InterruptedException if interrupted while adding to the queue.
+     */
+    public void consume(ByteBuffer bytes) throws IOException, InterruptedException {
+        int length = bytes.remaining();
+        ensureCapacity(pendingLength + length);
+        bytes.get(pending, pendingLength, length);
+        pendingLength += length;
+
+        int start = 0;
+        while (start < pendingLength) {
+            int consumed = pending[start] == BinaryMessageCodec.FRAME_MARKER ? decodeFrame(start) : decodeLine(start);
+            if (consumed == 0) {
+                break;
+            }
+            start += consumed;
+        }
+
+        // Keep only the unfinished message at the front of the buffer
+        System.arraycopy(pending, start, pending, 0, pendingLength - start);
+        pendingLength -= start;
+    }
+
+    /**
+     * Decode one text line starting at the given offset.
+     * @return The number of bytes consumed, or 0 if the line is not complete yet.
+     */
+    private int decodeLine(int start) throws InterruptedException {
+        for (int i = start; i < pendingLength; i++) {
+            if (pending[i] == '\n') {
+                int end = i;
+                if (end > start && pending[end - 1] == '\r') {
+                    end--;
+                }
+                String line = new String(pending, start, end - start, StandardCharsets.UTF_8);
+                messageQueue.produceMessage(new ClientMessage(line, clientSocket));
+                return i + 1 - start;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Decode one binary frame starting at the given offset.
+     * @return The number of bytes consumed, or 0 if the frame is not complete yet.
+     */
+    private int decodeFrame(int start) throws IOException, InterruptedException {
+        ByteBuffer frame = ByteBuffer.wrap(pending, start + 1, pendingLength - start - 1);
+        int payloadLength;
+        try {
+            payloadLength = BinaryMessageCodec.getVarint(frame);
+        } catch (BufferUnderflowException e) {
+            return 0;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt frame length", e);
+        }
+        if (payloadLength < 0 || payloadLength > BinaryMessageCodec.MAX_PAYLOAD_LENGTH) {
+            throw new IOException("Frame length out of range: " + payloadLength);
+        }
+        if (frame.remaining() < payloadLength) {
+            return 0;
+        }
+
+        ByteBuffer payload = frame.slice();
+        payload.limit(payloadLength);
+        int consumed = frame.position() + payloadLength - start;
+        if (BinaryMessageCodec.isHello(payload)) {
+            helloHandler.onHello();
+            return consumed;
+        }
+        Optional<PaxosMessage> message = BinaryMessageCodec.decode(payload);
+        if (message.isPresent()) {
+            messageQueue.produceMessage(new ClientMessage(message.get(), clientSocket));
+        } else {
+            logger.warning("Dropping malformed binary message");
+        }
+        return consumed;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(capacity, pending.length * 2));
+        }
+    }
+}
@@ -2,9 +2,18 @@ package paxos.participants;
 
 import paxos.messages.*;
 import paxos.network.MessageQueue;
+import paxos.network.MessageRouter;
 import paxos.network.NetworkServer;
+import paxos.storage.CheckpointedLog;
+import paxos.storage.MappedSlotStore;
+import paxos.storage.RecoveringSlotStore;
+import paxos.storage.SlotStore;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.*;
 
 
@@ -15,9 +24,25 @@ import java.util.logging.*;
  * decide whether to accept them, and relay their decisions back to the proposers and learners.
  */
 public class PaxosAcceptor extends PaxosParticipant {
-    private int highestPrepareNumber = -1;
-    private int acceptedProposalNumber = -1;
+    // Recovered slots written into the slot store at the end of each batch
+    private static final int INDEXED_SLOTS_PER_BATCH = 4096;
+
+    private long highestPrepareNumber = -1;
+    private long acceptedProposalNumber = -1;
     private String acceptedValue = null;
+    // Multi-Paxos: what was accepted for each instance. highestPrepareNumber is the promise covering all of them.
+    // On the heap unless the config has a slot store directory. While slots recovered from the write-ahead log
+    // are still being indexed, a RecoveringSlotStore around it
+    private SlotStore acceptedInstances = new SlotTable();
+    // Set when the config has a write-ahead log directory
+    private CheckpointedLog writeAheadLog;
+    private long startupToReadyMillis = 0;
+    // Replies held back until the records they depend on are on disk
+    private final List<Runnable> pendingSends = new ArrayList<>();
+    // Set when the node's snapshots compact this acceptor's state
+    private SnapshotManager snapshotManager;
+    // First slot to keep, requested by the snapshot thread and applied on the processing thread
+    private volatile int requestedTruncation = 1;
 
     private static final Logger logger = Logger.getLogger(PaxosAcceptor.class.getName());
 
@@ -40,15 +65,35 @@ public class PaxosAcceptor extends PaxosParticipant {
     }
 
     public PaxosAcceptor(Node serverNode, List<Node> nodes, DelayProfile delayProfile) {
-        super(serverNode, nodes, delayProfile);
+        this(serverNode, nodes, delayProfile, new PaxosConfig());
+    }
+
+    public PaxosAcceptor(Node serverNode, List<Node> nodes, DelayProfile delayProfile, PaxosConfig config) {
+        super(serverNode, nodes, delayProfile, config);
         // Server for receiving messages
         this.serverNode = serverNode;
         // Message queue for receiving messages
-        this.messageQueue = new MessageQueue();
+        this.messageQueue = config.createMessageQueue();
         // Server for receiving messages
-        this.server = new NetworkServer(serverNode.getAcceptorPort(), this.messageQueue);
+        this.server = config.createServer(serverNode.getAcceptorPort(), this.messageQueue);
         // Retain list of nodes that this participant is connected to
         this.nodes = nodes;
+        openStorage();
+    }
+
+    /**
+     * Constructor for a PaxosAcceptor that shares its node's server with the node's other roles.
+     * @param router The router of the shared server. The caller starts and stops the shared server.
+     */
+    public PaxosAcceptor(Node serverNode, List<Node> nodes, DelayProfile delayProfile, PaxosConfig config, MessageRouter router) {
+        super(serverNode, nodes, delayProfile, config);
+        this.serverNode = serverNode;
+        // Message queue for receiving messages, fed by the shared server's router
+        this.messageQueue = config.createMessageQueue();
+        router.route(this.messageQueue, PaxosMessage.Type.PREPARE, PaxosMessage.Type.ACCEPT);
+        // Retain list of nodes that this participant is connected to
+        this.nodes = nodes;
+        openStorage();
     }
 
     /**
@@ -62,55 +107,400 @@ public class PaxosAcceptor extends PaxosParticipant {
         super(serverPort, nodes, server, messageQueue);
     }
 
+    /**
+     * Open the configured storage: the memory-mapped slot store, then the write-ahead log, restoring the
+     * promises and accepts it holds. Recovery reads the newest checkpoint and scans the segments after it in
+     * parallel. The acceptor is ready as soon as the scan is done: the slots it recovered are answered from
+     * memory and written into the slot store a batch at a time.
+     */
+    private void openStorage() {
+        long startNanos = System.nanoTime();
+        if (config.getSlotStoreDirectory() != null) {
+            try {
+                this.acceptedInstances = new MappedSlotStore(config.getSlotStoreDirectory().resolve("acceptor-" + serverNode.getNodeName()), config.getSegmentBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open slot store for acceptor " + serverNode.getNodeName(), e);
+            }
+        }
+        if (config.getWalDirectory() == null) {
+            return;
+        }
+        CheckpointedLog.RecoveredState recovered = new CheckpointedLog.RecoveredState();
+        try {
+            this.writeAheadLog = CheckpointedLog.open(config.getWalDirectory().resolve("acceptor-" + serverNode.getNodeName()),
+                    config.getWalSegmentBytes(), config.getCheckpointIntervalSegments(), acceptedInstances::put, recovered);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open write-ahead log for acceptor " + serverNode.getNodeName(), e);
+        }
+        highestPrepareNumber = recovered.getPromise();
+        acceptedProposalNumber = recovered.getAcceptedProposalNumber();
+        acceptedValue = recovered.getAcceptedValue();
+        RecoveringSlotStore recovering = new RecoveringSlotStore(acceptedInstances, recovered);
+        if (!recovering.isIndexed()) {
+            acceptedInstances = recovering;
+        }
+        startupToReadyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Ready after " + startupToReadyMillis + " ms, recovered promise " + highestPrepareNumber
+                + " and " + recovered.getRecordCount() + " records from " + recovered.getSegmentCount() + " write-ahead log segments");
+    }
+
     public void start() {
         // Start message processing thread
-        this.server.startServer();
+        if (this.server != null) {
+            this.server.startServer();
+        }
         // Start server thread
         this.startMessageProcessingThread();
     }
     
     /**
      * Processes a prepare request from a proposer. If the proposal number is higher than any seen before,
-     * it promises not to accept any lower-numbered proposals.
+     * it promises not to accept any lower-numbered proposals. Otherwise it answers with a NACK carrying the
+     * promised proposal number, so the proposer can retry above it at once.
      *
      * @param prepareMessage The prepare message received from a proposer.
      */
     public void onPrepareRequest(PaxosMessage prepareMessage, String participantID) {
+        if (prepareMessage.getInstance() > 0) {
+            onMultiPaxosPrepareRequest(prepareMessage, participantID);
+            return;
+        }
         Node sender = this.findNodeByID(participantID);
         logger.info("NODE " + serverNode.getNodeName() + ": " + "Received prepare request with proposal number: " + prepareMessage.getProposalNumber() + " from proposer " + participantID);
         if (prepareMessage.getProposalNumber() > highestPrepareNumber) {
             highestPrepareNumber = prepareMessage.getProposalNumber();
+            if (writeAheadLog != null) {
+                writeAheadLog.appendPromise(highestPrepareNumber);
+            }
 
             // Send a promise to not accept any lower-numbered proposals
             PaxosMessage promise = PaxosMessage.promiseMessage(prepareMessage.getProposalNumber(), acceptedValue, acceptedProposalNumber, this.getServerNodeID());
-            sendMessage(promise, sender.getHost(), sender.getProposerPort());
+            whenDurable(() -> sendMessage(promise, sender.getHost(), sender.getProposerPort()));
             logger.info("NODE " + serverNode.getNodeName() + ": " + "Sent promise with proposal number: " + prepareMessage.getProposalNumber() + " to proposer " + participantID);
+        } else {
+            sendNack(prepareMessage, sender);
         }
     }
     
 
     /**
      * Processes an accept request from a proposer. If the accept request contains a proposal number
-     * greater than or equal to the highest promised number, it accepts the proposal.
+     * greater than or equal to the highest promised number, it accepts the proposal. Otherwise it answers
+     * with a NACK carrying the promised proposal number.
      *
      * @param acceptMessage The accept message received from a proposer.
      */
     public void onAcceptRequest(PaxosMessage acceptMessage, String participantID) {
+        if (acceptMessage.getInstance() > 0) {
+            onMultiPaxosAcceptRequest(acceptMessage, participantID);
+            return;
+        }
         Node sender = this.findNodeByID(participantID);
         logger.info("NODE " + serverNode.getNodeName() + ": " + "Received accept request with proposal number: " + acceptMessage.getProposalNumber() + " and value: " + acceptMessage.getValue() + " from proposer " + participantID);
         if (acceptMessage.getProposalNumber() >= highestPrepareNumber) {
             acceptedProposalNumber = acceptMessage.getProposalNumber();
             acceptedValue = acceptMessage.getValue();
+            if (writeAheadLog != null) {
+                writeAheadLog.appendAccept(0, acceptedProposalNumber, acceptedValue);
+            }
             
             // Send an accepted message to indicate the proposal has been accepted
-            PaxosMessage accepted = PaxosMessage.acceptedMessage(acceptMessage.getProposalNumber(), acceptMessage.getValue(), participantID);
-            // Broadcast the accepted message to all learners (or to the proposer, who will then inform the learners)
-            sendMessage(accepted, sender.getHost(), sender.getProposerPort());
+            PaxosMessage accepted = PaxosMessage.acceptedMessage(acceptMessage.getProposalNumber(), acceptMessage.getValue(), this.getServerNodeID());
+            whenDurable(() -> {
+                sendMessage(accepted, sender.getHost(), sender.getProposerPort());
+                // Tell the learners as well, according to the dissemination strategy
+                disseminateAccepted(accepted, sender);
+            });
             logger.info("NODE " + serverNode.getNodeName() + ": " + "Sent accepted message with proposal number: " + acceptMessage.getProposalNumber() + " and value: " + acceptMessage.getValue() + " to proposer " + participantID);
 
+        } else {
+            sendNack(acceptMessage, sender);
+        }
+    }
+
+    /**
+     * Processes a Multi-Paxos prepare request. A promise covers the requested instance and every later one.
+     * The accepted values of later instances are reported first, each in its own PROMISE, followed by the
+     * PROMISE for the requested instance. They travel over the same connection, so the proposer has every
+     * report from this acceptor by the time it counts the promise. A prepare request that is not above the
+     * current promise is answered with a NACK.
+     *
+     * @param prepareMessage The prepare message received from a proposer.
+     */
+    private void onMultiPaxosPrepareRequest(PaxosMessage prepareMessage, String participantID) {
+        Node sender = this.findNodeByID(participantID);
+        long ballot = prepareMessage.getProposalNumber();
+        int instance = prepareMessage.getInstance();
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Received prepare request with proposal number: " + ballot + " from instance " + instance + " from proposer " + participantID);
+        if (instance < getFirstRetainedSlot()) {
+            // The proposer lags behind a snapshot, so the instances it asks about are gone here
+            sendSnapshot(sender);
+            return;
+        }
+        if (ballot <= highestPrepareNumber) {
+            sendNack(prepareMessage, sender);
+            return;
+        }
+        highestPrepareNumber = ballot;
+        if (writeAheadLog != null) {
+            writeAheadLog.appendPromise(ballot);
+        }
+
+        List<PaxosMessage> promises = new ArrayList<>();
+        for (int slot = instance + 1; slot <= acceptedInstances.getHighestSlot(); slot++) {
+            if (acceptedInstances.contains(slot)) {
+                promises.add(PaxosMessage.promiseMessage(ballot, acceptedInstances.getValue(slot), acceptedInstances.getProposalNumber(slot), this.getServerNodeID(), slot));
+            }
+        }
+        promises.add(PaxosMessage.promiseMessage(ballot, acceptedInstances.getValue(instance),
+                acceptedInstances.getProposalNumber(instance), this.getServerNodeID(), instance));
+        whenDurable(() -> promises.forEach(promise -> sendMessage(promise, sender.getHost(), sender.getProposerPort())));
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Sent promise with proposal number: " + ballot + " from instance " + instance + " to proposer " + participantID);
+    }
+
+    /**
+     * Processes a Multi-Paxos accept request. A request below the current promise is answered with a NACK
+     * carrying the promised proposal number, which tells the proposer that it is no longer the leader.
+     * A request for an instance compacted into a snapshot is answered with the snapshot.
+     *
+     * @param acceptMessage The accept message received from a proposer.
+     */
+    private void onMultiPaxosAcceptRequest(PaxosMessage acceptMessage, String participantID) {
+        onMultiPaxosAcceptRequest(acceptMessage.getProposalNumber(), acceptMessage.getInstance(), acceptMessage.getValue(),
+                this.findNodeByID(participantID));
+    }
+
+    private void onMultiPaxosAcceptRequest(long ballot, int instance, String value, Node sender) {
+        if (ballot < highestPrepareNumber) {
+            sendNack(PaxosMessage.Type.ACCEPT, ballot, instance, sender);
+            return;
+        }
+        if (instance < getFirstRetainedSlot()) {
+            // The leader lags behind a snapshot, so the instance is already decided and gone here
+            sendSnapshot(sender);
+            return;
+        }
+        highestPrepareNumber = ballot;
+        acceptedInstances.put(instance, ballot, value);
+        if (writeAheadLog != null) {
+            writeAheadLog.appendAccept(instance, ballot, value);
+        }
+        PaxosMessage accepted = PaxosMessage.acceptedMessage(ballot, value, this.getServerNodeID(), instance);
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Accepted value " + value + " for instance " + instance + " with proposal number: " + ballot);
+        whenDurable(() -> {
+            sendMessage(accepted, sender.getHost(), sender.getProposerPort());
+            disseminateAccepted(accepted, sender);
+        });
+    }
+
+    /**
+     * Refuse a prepare or accept request whose proposal number is below the promise, telling the proposer
+     * which proposal number it has to beat.
+     */
+    private void sendNack(PaxosMessage request, Node sender) {
+        sendNack(request.getType(), request.getProposalNumber(), request.getInstance(), sender);
+    }
+
+    private void sendNack(PaxosMessage.Type type, long proposalNumber, int instance, Node sender) {
+        PaxosMessage nack = PaxosMessage.nackMessage(highestPrepareNumber, proposalNumber, this.getServerNodeID(), instance);
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Rejected " + type + " with proposal number: " + proposalNumber
+                + " for instance " + instance + ", promised " + highestPrepareNumber);
+        // Held with the other replies, so it never overtakes an earlier reply to the same proposer
+        whenDurable(() -> sendMessage(nack, sender.getHost(), sender.getProposerPort()));
+    }
+
+    /**
+     * Send now, or with a write-ahead log, once the batch being handled has been flushed to disk.
+     * Replies are held in order, so a rejection never overtakes an earlier reply to the same proposer.
+     */
+    private void whenDurable(Runnable send) {
+        if (writeAheadLog == null) {
+            send.run();
+        } else {
+            pendingSends.add(send);
+        }
+    }
+
+    /**
+     * Stream the newest snapshot of the node to a proposer, one chunk per message, in order with the other replies.
+     */
+    private void sendSnapshot(Node proposer) {
+        Snapshot snapshot = snapshotManager == null ? null : snapshotManager.getLatestSnapshot();
+        if (snapshot == null) {
+            logger.warning("NODE " + serverNode.getNodeName() + ": " + "No snapshot to send to proposer " + proposer.getNodeName() + " for compacted instances");
+            return;
+        }
+        int chunkBytes = config.getSnapshotChunkBytes();
+        int chunkCount = snapshot.getChunkCount(chunkBytes);
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Sending snapshot at slot " + snapshot.getSlot() + " in " + chunkCount + " chunks to proposer " + proposer.getNodeName());
+        // Held with the other replies, so the chunks keep their place among the replies to the same proposer
+        whenDurable(() -> {
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                sendMessage(snapshot.toChunk(chunk, chunkBytes, this.getServerNodeID()), proposer.getHost(), proposer.getProposerPort());
+            }
+        });
+    }
+
+    /**
+     * Get the first instance not covered by a snapshot. Compaction may not have been applied to it yet.
+     */
+    private int getFirstRetainedSlot() {
+        return Math.max(requestedTruncation, acceptedInstances.getFirstSlot());
+    }
+
+    /**
+     * Let the node's snapshots compact this acceptor: instances below a snapshot are dropped, and a proposer that
+     * asks about them is sent the snapshot instead.
+     * @param snapshotManager The snapshot manager of the node's log.
+     */
+    public void setSnapshotManager(SnapshotManager snapshotManager) {
+        this.snapshotManager = snapshotManager;
+        snapshotManager.addCompactionListener(firstSlotKept -> requestedTruncation = Math.max(requestedTruncation, firstSlotKept));
+    }
+
+    /**
+     * Group commit: one flush makes every promise and accept of the batch durable, then their replies go out.
+     * Compaction requested since the last batch is also applied here, on the processing thread.
+     */
+    @Override
+    protected void onBatchEnd() {
+        if (requestedTruncation > acceptedInstances.getFirstSlot()) {
+            acceptedInstances.truncateBefore(requestedTruncation);
+        }
+        if (acceptedInstances instanceof RecoveringSlotStore) {
+            indexRecoveredSlots(INDEXED_SLOTS_PER_BATCH);
+        }
+        if (writeAheadLog == null || pendingSends.isEmpty()) {
+            return;
+        }
+        try {
+            writeAheadLog.sync();
+        } catch (IOException e) {
+            // Replying without the records on disk could break a promise after a crash, so stay silent
+            logger.severe("NODE " + serverNode.getNodeName() + ": " + "Failed to flush write-ahead log, dropping " + pendingSends.size() + " replies: " + e.getMessage());
+            pendingSends.clear();
+            return;
+        }
+        for (Runnable send : pendingSends) {
+            send.run();
+        }
+        pendingSends.clear();
+        if (writeAheadLog.checkpointNeeded()) {
+            writeCheckpoint();
+        }
+    }
+
+    /**
+     * Write recovered slots into the slot store, then use the slot store on its own once all are in.
+     */
+    private void indexRecoveredSlots(int maxSlots) {
+        RecoveringSlotStore recovering = (RecoveringSlotStore) acceptedInstances;
+        if (recovering.indexNext(maxSlots)) {
+            acceptedInstances = recovering.getStore();
+            logger.info("NODE " + serverNode.getNodeName() + ": " + "Indexed every slot recovered from the write-ahead log");
+        }
+    }
+
+    /**
+     * Checkpoint the acceptor's state so the write-ahead log segments before it can be deleted.
+     */
+    private void writeCheckpoint() {
+        if (acceptedInstances instanceof RecoveringSlotStore) {
+            // The checkpoint replaces the segments holding the recovered slots
+            indexRecoveredSlots(Integer.MAX_VALUE);
+        }
+        try {
+            writeAheadLog.checkpoint(highestPrepareNumber, acceptedProposalNumber, acceptedValue, acceptedInstances);
+        } catch (IOException e) {
+            // The segments are kept, so nothing is lost, recovery just reads more of the log
+            logger.warning("NODE " + serverNode.getNodeName() + ": " + "Failed to write checkpoint: " + e.getMessage());
         }
     }
 
+    @Override
+    public void stop() {
+        super.stop();
+        if (writeAheadLog != null) {
+            try {
+                writeAheadLog.close();
+            } catch (IOException e) {
+                logger.warning("NODE " + serverNode.getNodeName() + ": " + "Failed to close write-ahead log: " + e.getMessage());
+            }
+        }
+        SlotStore store = acceptedInstances instanceof RecoveringSlotStore ? ((RecoveringSlotStore) acceptedInstances).getStore() : acceptedInstances;
+        if (store instanceof MappedSlotStore) {
+            ((MappedSlotStore) store).close();
+        }
+    }
+
+    /**
+     * Get the write-ahead log, for example to read its append and sync counts.
+     * @return The log, or null if acceptor state is kept in memory only.
+     */
+    public CheckpointedLog getWriteAheadLog() {
+        return writeAheadLog;
+    }
+
+    /**
+     * Get the time from the start of recovery until the acceptor could answer messages.
+     * @return The time in milliseconds, 0 without a write-ahead log.
+     */
+    public long getStartupToReadyMillis() {
+        return startupToReadyMillis;
+    }
+
+    /**
+     * Get the store holding what was accepted for each Multi-Paxos instance.
+     * @return The slot store.
+     */
+    public SlotStore getSlotStore() {
+        return acceptedInstances;
+    }
+
+    /**
+     * Send an accepted message to the learners: to all of them, to the distinguished learner only, or to none.
+     * A learner that listens on the same address as the proposer already gets the reply sent there.
+     *
+     * @param accepted The accepted message.
+     * @param proposer The proposer the accepted message was sent to.
+     */
+    private void disseminateAccepted(PaxosMessage accepted, Node proposer) {
+        List<Node> learners = new ArrayList<>();
+        switch (config.getLearnerDissemination()) {
+            case ALL_TO_ALL:
+                learners.addAll(this.nodes);
+                break;
+            case DISTINGUISHED:
+                Node distinguished = getDistinguishedLearner();
+                if (distinguished != null) {
+                    learners.add(distinguished);
+                }
+                break;
+            case NONE:
+            default:
+                return;
+        }
+        learners.removeIf(node -> !node.hasLearner()
+                || (node.getHost().equals(proposer.getHost()) && node.getLearnerPort() == proposer.getProposerPort()));
+        if (!learners.isEmpty()) {
+            broadcast(accepted, learners, Node::getLearnerPort);
+        }
+    }
+
+    @Override
+    protected boolean receiveView(PaxosMessageView view) {
+        // Accept requests are most of what an acceptor receives under a stable leader, and only the value is kept
+        if (view.getType() != PaxosMessage.Type.ACCEPT || view.getInstance() <= 0) {
+            return false;
+        }
+        int ordinal = nodeOrdinal(view);
+        if (ordinal < 0) {
+            return false;
+        }
+        onMultiPaxosAcceptRequest(view.getProposalNumber(), view.getInstance(), view.getValue(), this.nodes.get(ordinal));
+        return true;
+    }
+
     @Override
     public void receiveMessage(PaxosMessage message, String participantID) {
         // Handle received Paxos messages
@@ -129,4 +519,13 @@ public class PaxosAcceptor extends PaxosParticipant {
     public String getAcceptedValue() {
         return acceptedValue;
     }
+
+    /**
+     * Get the value accepted for a Multi-Paxos instance.
+     * @param instance The instance.
+     * @return The accepted value, or null if nothing was accepted for the instance.
+     */
+    public String getAcceptedValue(int instance) {
+        return acceptedInstances.getValue(instance);
+    }
 }
@@ -0,0 +1,518 @@
+package paxos.participants;
+
+import paxos.messages.WireFormat;
+import paxos.network.MessageQueue;
+import paxos.network.MessageSink;
+import paxos.network.MpscRingBuffer;
+import paxos.network.NetworkServer;
+import paxos.storage.CheckpointedLog;
+import paxos.storage.MappedSlotStore;
+import paxos.utils.ExecutionMode;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the tunable settings shared by the Paxos participants of a node.
+ * A freshly constructed config reproduces the default behaviour.
+ */
+public class PaxosConfig {
+    public static final int DEFAULT_PIPELINE_WINDOW = 64;
+    public static final long DEFAULT_PROPOSAL_TIMEOUT_MILLIS = 1000;
+    public static final long DEFAULT_RETRY_BACKOFF_MILLIS = 20;
+    public static final long DEFAULT_MAX_RETRY_BACKOFF_MILLIS = 1000;
+    public static final long DEFAULT_THRIFTY_FALLBACK_MILLIS = 200;
+    public static final long DEFAULT_BATCH_MAX_DELAY_MICROS = 500;
+    public static final int DEFAULT_BATCH_MAX_BYTES = 16 * 1024;
+    public static final int DEFAULT_GROUP_COMMIT_MAX_MESSAGES = 256;
+    public static final int DEFAULT_SNAPSHOT_INTERVAL_SLOTS = 10000;
+    public static final int DEFAULT_SNAPSHOT_CHUNK_BYTES = 64 * 1024;
+
+    private NetworkServer.Mode serverMode = NetworkServer.Mode.THREAD_PER_CONNECTION;
+    private int ioThreads = 2;
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+    private int queueCapacity = Integer.MAX_VALUE;
+    private MessageQueue.OverflowPolicy overflowPolicy = MessageQueue.OverflowPolicy.BLOCK;
+    private MessageQueue.Backend queueBackend = MessageQueue.Backend.LINKED;
+    private MpscRingBuffer.WaitStrategy waitStrategy = MpscRingBuffer.WaitStrategy.PARK;
+    private WireFormat wireFormat = WireFormat.TEXT;
+    private boolean sharedListener = false;
+    private boolean multiPaxos = false;
+    private int pipelineWindow = DEFAULT_PIPELINE_WINDOW;
+    private long proposalTimeoutMillis = DEFAULT_PROPOSAL_TIMEOUT_MILLIS;
+    private long retryBackoffMillis = DEFAULT_RETRY_BACKOFF_MILLIS;
+    private long maxRetryBackoffMillis = DEFAULT_MAX_RETRY_BACKOFF_MILLIS;
+    private boolean thrifty = false;
+    private long thriftyFallbackMillis = DEFAULT_THRIFTY_FALLBACK_MILLIS;
+    private long batchMaxDelayMicros = DEFAULT_BATCH_MAX_DELAY_MICROS;
+    private int batchMaxBytes = DEFAULT_BATCH_MAX_BYTES;
+    private PaxosLearner.Dissemination learnerDissemination = PaxosLearner.Dissemination.NONE;
+    private String distinguishedLearner = null;
+    private Map<String, Integer> quorumWeights = null;
+    // 0 when the quorum size of the phase follows from the other phase, or is a simple majority
+    private int phase1QuorumSize = 0;
+    private int phase2QuorumSize = 0;
+    private Path walDirectory = null;
+    private int groupCommitMaxMessages = DEFAULT_GROUP_COMMIT_MAX_MESSAGES;
+    private long walSegmentBytes = CheckpointedLog.DEFAULT_SEGMENT_BYTES;
+    private int checkpointIntervalSegments = CheckpointedLog.DEFAULT_CHECKPOINT_INTERVAL_SEGMENTS;
+    private Path slotStoreDirectory = null;
+    private int segmentBytes = MappedSlotStore.DEFAULT_SEGMENT_BYTES;
+    private int snapshotIntervalSlots = DEFAULT_SNAPSHOT_INTERVAL_SLOTS;
+    private int snapshotChunkBytes = DEFAULT_SNAPSHOT_CHUNK_BYTES;
+    private Path snapshotDirectory = null;
+
+    /**
+     * Create the server a participant receives its messages through.
+     * @param port The port to listen on.
+     * @param messageQueue The queue or router that received messages are added to.
+     * @return The server, not yet started.
+     */
+    public NetworkServer createServer(int port, MessageSink messageQueue) {
+        return NetworkServer.create(serverMode, port, messageQueue, ioThreads, executionMode);
+    }
+
+    /**
+     * Create the queue a participant's server hands received messages to.
+     * @return The message queue.
+     */
+    public MessageQueue createMessageQueue() {
+        int capacity = queueCapacity;
+        if (queueBackend == MessageQueue.Backend.MPSC_RING && capacity == Integer.MAX_VALUE) {
+            // The ring is preallocated, so an unbounded queue becomes a default sized ring
+            capacity = MessageQueue.DEFAULT_RING_CAPACITY;
+        }
+        return new MessageQueue(capacity, overflowPolicy, queueBackend, waitStrategy);
+    }
+
+    public NetworkServer.Mode getServerMode() {
+        return serverMode;
+    }
+
+    /**
+     * Set how servers handle client connections.
+     * @param serverMode The server mode.
+     */
+    public void setServerMode(NetworkServer.Mode serverMode) {
+        this.serverMode = serverMode;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * Set the number of selector threads per server. Only used in NIO mode.
+     * @param ioThreads The number of I/O threads.
+     */
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Set the kind of threads used for client handlers, message processing loops and proposal tasks.
+     * @param executionMode The execution mode.
+     */
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Set the maximum number of messages waiting in each participant's queue.
+     * @param queueCapacity The queue capacity.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public MessageQueue.OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Set what a full queue does with a new message.
+     * @param overflowPolicy The overflow policy.
+     */
+    public void setOverflowPolicy(MessageQueue.OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public MessageQueue.Backend getQueueBackend() {
+        return queueBackend;
+    }
+
+    /**
+     * Set the data structure behind each participant's queue.
+     * @param queueBackend The queue backend.
+     */
+    public void setQueueBackend(MessageQueue.Backend queueBackend) {
+        this.queueBackend = queueBackend;
+    }
+
+    public MpscRingBuffer.WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * Set how the ring queue backend waits when empty or full.
+     * @param waitStrategy The wait strategy.
+     */
+    public void setWaitStrategy(MpscRingBuffer.WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    /**
+     * Set the encoding participants send messages in.
+     * @param wireFormat The wire format.
+     */
+    public void setWireFormat(WireFormat wireFormat) {
+        this.wireFormat = wireFormat;
+    }
+
+    public boolean isSharedListener() {
+        return sharedListener;
+    }
+
+    /**
+     * Set whether the roles of a node share one server and port, with messages routed to each role by type.
+     * @param sharedListener true for one listener per node, false for one per role.
+     */
+    public void setSharedListener(boolean sharedListener) {
+        this.sharedListener = sharedListener;
+    }
+
+    public boolean isMultiPaxos() {
+        return multiPaxos;
+    }
+
+    /**
+     * Set whether proposers run Multi-Paxos, keeping leadership across instances and skipping phase 1 while leader.
+     * @param multiPaxos true for Multi-Paxos, false for a single decision per proposal.
+     */
+    public void setMultiPaxos(boolean multiPaxos) {
+        this.multiPaxos = multiPaxos;
+    }
+
+    public int getPipelineWindow() {
+        return pipelineWindow;
+    }
+
+    /**
+     * Set how many Multi-Paxos instances a leader keeps in flight at once.
+     * @param pipelineWindow The maximum number of instances started but not yet chosen.
+     */
+    public void setPipelineWindow(int pipelineWindow) {
+        if (pipelineWindow < 1) {
+            throw new IllegalArgumentException("Pipeline window must be positive");
+        }
+        this.pipelineWindow = pipelineWindow;
+    }
+
+    public long getProposalTimeoutMillis() {
+        return proposalTimeoutMillis;
+    }
+
+    /**
+     * Set how long a leader waits for a Multi-Paxos instance to be chosen before resending its accept request,
+     * and how long a proposer waits for a round to succeed before retrying it. The round timeout doubles with
+     * each failed round of the same proposal.
+     * @param proposalTimeoutMillis The timeout in milliseconds.
+     */
+    public void setProposalTimeoutMillis(long proposalTimeoutMillis) {
+        this.proposalTimeoutMillis = proposalTimeoutMillis;
+    }
+
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    /**
+     * Set the backoff before a proposer retries its first failed round. The backoff doubles with each further
+     * failed round, and the proposer waits a random time up to it, so that dueling proposers fall out of step.
+     * @param retryBackoffMillis The backoff in milliseconds.
+     */
+    public void setRetryBackoffMillis(long retryBackoffMillis) {
+        if (retryBackoffMillis < 1) {
+            throw new IllegalArgumentException("Retry backoff must be positive");
+        }
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    public long getMaxRetryBackoffMillis() {
+        return maxRetryBackoffMillis;
+    }
+
+    /**
+     * Set the most a proposer's retry backoff grows to.
+     * @param maxRetryBackoffMillis The maximum backoff in milliseconds.
+     */
+    public void setMaxRetryBackoffMillis(long maxRetryBackoffMillis) {
+        if (maxRetryBackoffMillis < 1) {
+            throw new IllegalArgumentException("Maximum retry backoff must be positive");
+        }
+        this.maxRetryBackoffMillis = maxRetryBackoffMillis;
+    }
+
+    public boolean isThrifty() {
+        return thrifty;
+    }
+
+    /**
+     * Set whether proposers are thrifty, sending prepare and accept requests only to a quorum of the acceptors
+     * that have answered fastest lately instead of to every acceptor.
+     * @param thrifty true to send to a quorum first, false to send to every acceptor.
+     */
+    public void setThrifty(boolean thrifty) {
+        this.thrifty = thrifty;
+    }
+
+    public long getThriftyFallbackMillis() {
+        return thriftyFallbackMillis;
+    }
+
+    /**
+     * Set how long a thrifty proposer waits for its chosen quorum to answer before sending the request to the
+     * remaining acceptors as well. It should be shorter than the proposal timeout to save the round.
+     * @param thriftyFallbackMillis The fallback timeout in milliseconds.
+     */
+    public void setThriftyFallbackMillis(long thriftyFallbackMillis) {
+        if (thriftyFallbackMillis < 1) {
+            throw new IllegalArgumentException("Thrifty fallback timeout must be positive");
+        }
+        this.thriftyFallbackMillis = thriftyFallbackMillis;
+    }
+
+    public long getBatchMaxDelayMicros() {
+        return batchMaxDelayMicros;
+    }
+
+    /**
+     * Set how long a batcher holds a value while the proposer is busy before proposing its batch.
+     * @param batchMaxDelayMicros The delay in microseconds.
+     */
+    public void setBatchMaxDelayMicros(long batchMaxDelayMicros) {
+        this.batchMaxDelayMicros = batchMaxDelayMicros;
+    }
+
+    public int getBatchMaxBytes() {
+        return batchMaxBytes;
+    }
+
+    /**
+     * Set the encoded size at which a batcher proposes its batch without waiting.
+     * @param batchMaxBytes The batch size in bytes.
+     */
+    public void setBatchMaxBytes(int batchMaxBytes) {
+        this.batchMaxBytes = batchMaxBytes;
+    }
+
+    public PaxosLearner.Dissemination getLearnerDissemination() {
+        return learnerDissemination;
+    }
+
+    /**
+     * Set how acceptors tell learners about accepted values.
+     * @param learnerDissemination The dissemination strategy.
+     */
+    public void setLearnerDissemination(PaxosLearner.Dissemination learnerDissemination) {
+        this.learnerDissemination = learnerDissemination;
+    }
+
+    public String getDistinguishedLearner() {
+        return distinguishedLearner;
+    }
+
+    /**
+     * Set the node whose learner collects the ACCEPTED messages and forwards decisions to the other learners.
+     * Only used with distinguished learner dissemination.
+     * @param distinguishedLearner The node name, or null for the first node.
+     */
+    public void setDistinguishedLearner(String distinguishedLearner) {
+        this.distinguishedLearner = distinguishedLearner;
+    }
+
+    public Map<String, Integer> getQuorumWeights() {
+        return quorumWeights;
+    }
+
+    /**
+     * Set a voting weight per node, so that a quorum is any set of acceptors holding more than half of the total
+     * weight rather than more than half of the nodes. Nodes not listed weigh 1.
+     * @param quorumWeights The weight of each node by node name, or null for a simple majority.
+     */
+    public void setQuorumWeights(Map<String, Integer> quorumWeights) {
+        if (quorumWeights == null) {
+            this.quorumWeights = null;
+            return;
+        }
+        for (Map.Entry<String, Integer> entry : quorumWeights.entrySet()) {
+            if (entry.getValue() == null || entry.getValue() < 0) {
+                throw new IllegalArgumentException("Quorum weight of " + entry.getKey() + " must not be negative");
+            }
+        }
+        this.quorumWeights = new HashMap<>(quorumWeights);
+    }
+
+    public int getPhase1QuorumSize() {
+        return phase1QuorumSize;
+    }
+
+    public int getPhase2QuorumSize() {
+        return phase2QuorumSize;
+    }
+
+    /**
+     * Set the Flexible Paxos quorum sizes: how many promises a proposer needs before phase 2, and how many
+     * acceptances choose a value. Any phase 1 quorum only has to intersect any phase 2 quorum, so a small phase 2
+     * quorum, which commits at the pace of the fastest acceptors, can be paired with a large phase 1 quorum that
+     * is only needed when the leader changes. With quorum weights, the sizes are total weights.
+     * A size of 0 is the smallest that still intersects the other phase's quorum, or a simple majority if both
+     * are 0. Participants and council elections check that the sizes add up to more than the node count.
+     * @param phase1QuorumSize The phase 1 quorum size, or 0.
+     * @param phase2QuorumSize The phase 2 quorum size, or 0.
+     */
+    public void setQuorumSizes(int phase1QuorumSize, int phase2QuorumSize) {
+        if (phase1QuorumSize < 0 || phase2QuorumSize < 0) {
+            throw new IllegalArgumentException("Quorum sizes must not be negative");
+        }
+        this.phase1QuorumSize = phase1QuorumSize;
+        this.phase2QuorumSize = phase2QuorumSize;
+    }
+
+    public Path getWalDirectory() {
+        return walDirectory;
+    }
+
+    /**
+     * Set the directory acceptors keep their write-ahead logs in. An acceptor with a log recovers its promises
+     * and accepts from it on startup and only replies once they are on disk.
+     * @param walDirectory The directory, or null to keep acceptor state in memory only.
+     */
+    public void setWalDirectory(Path walDirectory) {
+        this.walDirectory = walDirectory;
+    }
+
+    public int getGroupCommitMaxMessages() {
+        return groupCommitMaxMessages;
+    }
+
+    /**
+     * Set the most messages a participant handles before flushing its write-ahead log. A batch also ends
+     * whenever the participant's queue is empty, so under light load every message is flushed at once.
+     * @param groupCommitMaxMessages The maximum number of messages covered by one flush.
+     */
+    public void setGroupCommitMaxMessages(int groupCommitMaxMessages) {
+        if (groupCommitMaxMessages < 1) {
+            throw new IllegalArgumentException("Group commit batch size must be positive");
+        }
+        this.groupCommitMaxMessages = groupCommitMaxMessages;
+    }
+
+    public long getWalSegmentBytes() {
+        return walSegmentBytes;
+    }
+
+    /**
+     * Set the size past which an acceptor starts a new write-ahead log segment. Recovery scans the segments
+     * written since the last checkpoint in parallel, so smaller segments recover faster on more cores.
+     * @param walSegmentBytes The segment size in bytes.
+     */
+    public void setWalSegmentBytes(long walSegmentBytes) {
+        if (walSegmentBytes < 1) {
+            throw new IllegalArgumentException("Write-ahead log segment size must be positive");
+        }
+        this.walSegmentBytes = walSegmentBytes;
+    }
+
+    public int getCheckpointIntervalSegments() {
+        return checkpointIntervalSegments;
+    }
+
+    /**
+     * Set how many write-ahead log segments an acceptor writes between checkpoints of its state. A checkpoint
+     * lets the segments before it be deleted, and bounds how much of the log recovery has to scan.
+     * @param checkpointIntervalSegments The number of segments between checkpoints.
+     */
+    public void setCheckpointIntervalSegments(int checkpointIntervalSegments) {
+        if (checkpointIntervalSegments < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be at least one segment");
+        }
+        this.checkpointIntervalSegments = checkpointIntervalSegments;
+    }
+
+    public Path getSlotStoreDirectory() {
+        return slotStoreDirectory;
+    }
+
+    /**
+     * Set the directory acceptors keep their per-instance state in, as memory-mapped segment files.
+     * @param slotStoreDirectory The directory, or null to keep per-instance state on the heap.
+     */
+    public void setSlotStoreDirectory(Path slotStoreDirectory) {
+        this.slotStoreDirectory = slotStoreDirectory;
+    }
+
+    public int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    /**
+     * Set the size of each memory-mapped segment file of an acceptor's slot store.
+     * @param segmentBytes The segment size in bytes.
+     */
+    public void setSegmentBytes(int segmentBytes) {
+        this.segmentBytes = segmentBytes;
+    }
+
+    public int getSnapshotIntervalSlots() {
+        return snapshotIntervalSlots;
+    }
+
+    /**
+     * Set how many slots a snapshot manager applies between snapshots.
+     * @param snapshotIntervalSlots The interval in slots, or 0 to take no snapshots.
+     */
+    public void setSnapshotIntervalSlots(int snapshotIntervalSlots) {
+        this.snapshotIntervalSlots = snapshotIntervalSlots;
+    }
+
+    public int getSnapshotChunkBytes() {
+        return snapshotChunkBytes;
+    }
+
+    /**
+     * Set the largest number of snapshot bytes sent in one SNAPSHOT message.
+     * @param snapshotChunkBytes The chunk size in bytes.
+     */
+    public void setSnapshotChunkBytes(int snapshotChunkBytes) {
+        if (snapshotChunkBytes < 1) {
+            throw new IllegalArgumentException("Snapshot chunk size must be positive");
+        }
+        this.snapshotChunkBytes = snapshotChunkBytes;
+    }
+
+    public Path getSnapshotDirectory() {
+        return snapshotDirectory;
+    }
+
+    /**
+     * Set the directory snapshot managers keep their newest snapshot in.
+     * @param snapshotDirectory The directory, or null to keep snapshots in memory only.
+     */
+    public void setSnapshotDirectory(Path snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+}
@@ -0,0 +1,257 @@
+package paxos.participants;
+
+import paxos.messages.PaxosMessage;
+import paxos.messages.PaxosMessageView;
+import paxos.network.MessageRouter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.*;
+
+/**
+ * Represents the Paxos Learner.
+ * Learners find out which value has been chosen. A value is chosen once a quorum of acceptors has accepted it
+ * with the same proposal number, or when the distinguished learner reports the decision in a DECIDED message.
+ *
+ * The single decision is instance 0. Multi-Paxos instances are recorded in a replicated log, which delivers
+ * them in slot order.
+ */
+public class PaxosLearner extends PaxosParticipant {
+    // Acceptors that accepted each proposal number, per undecided instance
+    private final Map<Integer, Map<Long, QuorumTracker>> acceptances = new HashMap<>();
+    // First instance kept by the latest compaction of the node's log, applied on the processing thread
+    private volatile int requestedTruncation = 1;
+    private int truncatedBefore = 1;
+    private volatile String learnedValue = null;
+    private final ReplicatedLog replicatedLog = new ReplicatedLog();
+
+    private static final Logger logger = Logger.getLogger(PaxosLearner.class.getName());
+
+    /**
+     * Enum for how acceptors tell learners about accepted values.
+     */
+    public enum Dissemination {
+        // Acceptors only reply to the proposer, learners hear nothing
+        NONE,
+        // Every acceptor sends its ACCEPTED to every learner, the lowest latency at N*N messages
+        ALL_TO_ALL,
+        // Acceptors send ACCEPTED to the distinguished learner only, which sends DECIDED to the others: 2N messages
+        DISTINGUISHED
+    }
+
+    public PaxosLearner(Node serverNode, List<Node> nodes, DelayProfile delayProfile, PaxosConfig config) {
+        super(serverNode, nodes, delayProfile, config);
+        this.serverNode = serverNode;
+        // Message queue for receiving messages
+        this.messageQueue = config.createMessageQueue();
+        // Server for receiving messages
+        this.server = config.createServer(serverNode.getLearnerPort(), this.messageQueue);
+        // Retain list of nodes that this participant is connected to
+        this.nodes = nodes;
+    }
+
+    /**
+     * Constructor for a PaxosLearner that shares its node's server with the node's other roles.
+     * @param router The router of the shared server. The caller starts and stops the shared server.
+     */
+    public PaxosLearner(Node serverNode, List<Node> nodes, DelayProfile delayProfile, PaxosConfig config, MessageRouter router) {
+        super(serverNode, nodes, delayProfile, config);
+        this.serverNode = serverNode;
+        // Message queue for receiving messages, fed by the shared server's router
+        this.messageQueue = config.createMessageQueue();
+        router.route(this.messageQueue, PaxosMessage.Type.ACCEPTED, PaxosMessage.Type.DECIDED);
+        // Retain list of nodes that this participant is connected to
+        this.nodes = nodes;
+    }
+
+    public void start() {
+        if (this.server != null) {
+            this.server.startServer();
+        }
+        this.startMessageProcessingThread();
+    }
+
+    /**
+     * Processes an accepted message from an acceptor. Once a quorum of acceptors has accepted the same proposal
+     * number for an instance, its value is learned.
+     *
+     * @param acceptedMessage The accepted message received from an acceptor.
+     */
+    public void onAccepted(PaxosMessage acceptedMessage, String participantID) {
+        if (acceptedMessage.getValue() == null) {
+            // A rejection
+            return;
+        }
+        if (countAcceptance(acceptedMessage.getProposalNumber(), acceptedMessage.getInstance(), nodeOrdinal(participantID))) {
+            onQuorum(acceptedMessage.getProposalNumber(), acceptedMessage.getInstance(), acceptedMessage.getValue());
+        }
+    }
+
+    @Override
+    protected boolean receiveView(PaxosMessageView view) {
+        // Acceptances are most of what a learner receives, and the value is only needed once it is learned
+        if (view.getType() != PaxosMessage.Type.ACCEPTED) {
+            return false;
+        }
+        if (countAcceptance(view.getProposalNumber(), view.getInstance(), nodeOrdinal(view))) {
+            onQuorum(view.getProposalNumber(), view.getInstance(), view.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * Count an acceptor's acceptance of a proposal number for an instance.
+     * @return true if the acceptances have just reached a quorum, false otherwise or if the instance is learned.
+     */
+    private boolean countAcceptance(long proposalNumber, int instance, int ordinal) {
+        if (isDecided(instance)) {
+            // Decided without this learner reaching a quorum, for example by a snapshot
+            forget(instance);
+            return false;
+        }
+        Map<Long, QuorumTracker> trackers = acceptances.get(instance);
+        if (trackers == null) {
+            trackers = new HashMap<>();
+            acceptances.put(instance, trackers);
+        }
+        QuorumTracker acceptors = trackers.get(proposalNumber);
+        if (acceptors == null) {
+            acceptors = quorumSystem().acquire(QuorumSystem.Phase.ACCEPT);
+            trackers.put(proposalNumber, acceptors);
+        }
+        if (acceptors.add(ordinal) && acceptors.isReached()) {
+            forget(instance);
+            return true;
+        }
+        return false;
+    }
+
+    private void onQuorum(long proposalNumber, int instance, String value) {
+        learn(instance, value);
+        if (config.getLearnerDissemination() == Dissemination.DISTINGUISHED && isDistinguished()) {
+            forwardDecision(proposalNumber, instance, value);
+        }
+    }
+
+    /**
+     * Processes a decision forwarded by the distinguished learner.
+     *
+     * @param decidedMessage The decided message received from the distinguished learner.
+     */
+    public void onDecided(PaxosMessage decidedMessage, String participantID) {
+        int instance = decidedMessage.getInstance();
+        if (isDecided(instance)) {
+            return;
+        }
+        forget(instance);
+        learn(instance, decidedMessage.getValue());
+    }
+
+    /**
+     * Stop counting acceptances for an instance, giving its trackers back to be reused.
+     */
+    private void forget(int instance) {
+        Map<Long, QuorumTracker> trackers = acceptances.remove(instance);
+        if (trackers != null) {
+            for (QuorumTracker tracker : trackers.values()) {
+                quorumSystem().release(tracker);
+            }
+        }
+    }
+
+    /**
+     * Let the node's snapshots compact this learner: acceptances still counted for instances below a snapshot
+     * are dropped, as those instances are decided.
+     * @param snapshotManager The snapshot manager of this learner's log.
+     */
+    public void setSnapshotManager(SnapshotManager snapshotManager) {
+        snapshotManager.addCompactionListener(firstSlotKept -> requestedTruncation = Math.max(requestedTruncation, firstSlotKept));
+    }
+
+    /**
+     * Compaction requested since the last batch is applied here, on the processing thread.
+     */
+    @Override
+    protected void onBatchEnd() {
+        int firstSlotKept = requestedTruncation;
+        if (firstSlotKept <= truncatedBefore) {
+            return;
+        }
+        truncatedBefore = firstSlotKept;
+        Iterator<Map.Entry<Integer, Map<Long, QuorumTracker>>> entries = acceptances.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Integer, Map<Long, QuorumTracker>> entry = entries.next();
+            if (entry.getKey() > 0 && entry.getKey() < firstSlotKept) {
+                for (QuorumTracker tracker : entry.getValue().values()) {
+                    quorumSystem().release(tracker);
+                }
+                entries.remove();
+            }
+        }
+    }
+
+    private void learn(int instance, String value) {
+        if (instance > 0) {
+            replicatedLog.decide(instance, value);
+        } else {
+            learnedValue = value;
+        }
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Learned value " + value + " for instance " + instance);
+    }
+
+    /**
+     * Tell the learners of the other nodes about a decision.
+     */
+    private void forwardDecision(long proposalNumber, int instance, String value) {
+        List<Node> learners = new ArrayList<>(this.nodes.size());
+        for (Node node : this.nodes) {
+            if (node.hasLearner() && !node.getNodeName().equals(this.getServerNodeID())) {
+                learners.add(node);
+            }
+        }
+        PaxosMessage decided = PaxosMessage.decidedMessage(proposalNumber, value, this.getServerNodeID(), instance);
+        broadcast(decided, learners, Node::getLearnerPort);
+    }
+
+    private boolean isDistinguished() {
+        Node distinguished = getDistinguishedLearner();
+        return distinguished != null && distinguished.getNodeName().equals(this.getServerNodeID());
+    }
+
+    private boolean isDecided(int instance) {
+        return instance > 0 ? replicatedLog.isDecided(instance) : learnedValue != null;
+    }
+
+    @Override
+    public void receiveMessage(PaxosMessage message, String participantID) {
+        switch (message.getType()) {
+            case ACCEPTED:
+                onAccepted(message, participantID);
+                break;
+            case DECIDED:
+                onDecided(message, participantID);
+                break;
+            default:
+                logger.warning("NODE " + serverNode.getNodeName() + ": " + "Received unsupported message type: " + message.getType());
+        }
+    }
+
+    /**
+     * Get the value learned for the single decision.
+     * @return The learned value, or null if nothing has been learned yet.
+     */
+    public String getLearnedValue() {
+        return learnedValue;
+    }
+
+    /**
+     * Get the log of Multi-Paxos values this learner has learned. Set a listener on it to receive them in slot order.
+     * @return The replicated log.
+     */
+    public ReplicatedLog getReplicatedLog() {
+        return replicatedLog;
+    }
+}
@@ -1,8 +1,17 @@
 package paxos.participants;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
 import java.util.logging.*;
 
 import paxos.messages.*;
@@ -20,9 +29,18 @@ public abstract class PaxosParticipant {
     protected Node serverNode;
     protected int participantID;
     protected DelayProfile delayProfile;
+    protected PaxosConfig config = new PaxosConfig();
     protected List<Node> nodes = new ArrayList<>();
     protected MessageQueue messageQueue;
     private Thread messageProcessingThread;
+    // Runs asynchronous sends, created on first use
+    private ExecutorService sendExecutor;
+    // Holds asynchronous sends back for the simulated delay without a thread each, created on first use
+    private ScheduledExecutorService delayTimer;
+    // Last write queued to each peer, by host and port, so that writes to a peer keep their order
+    private final Map<String, CompletableFuture<Void>> lastWrites = new ConcurrentHashMap<>();
+    // Quorum rule for the connected nodes, created on first use
+    private QuorumSystem quorumSystem;
     
     private static final Logger logger = Logger.getLogger(PaxosParticipant.class.getName());
 
@@ -41,6 +59,11 @@ public abstract class PaxosParticipant {
         this.participantID = Integer.parseInt(serverNode.getNodeName().substring(1));
     }
 
+    public PaxosParticipant(Node serverNode, List<Node> nodes, DelayProfile delayProfile, PaxosConfig config) {
+        this(serverNode, nodes, delayProfile);
+        this.config = config;
+    }
+
     /**
      * Constructor for PaxosParticipant. Mainly used for testing.
      * @param serverPort The port for receiving messages.
@@ -60,27 +83,40 @@ public abstract class PaxosParticipant {
      * Start a thread to process messages from the message queue.
      */
     public void startMessageProcessingThread() {
-        messageProcessingThread = new Thread(() -> {
+        messageProcessingThread = config.getExecutionMode().newThread(() -> {
+            // Reused for every text message parsed on this thread
+            PaxosMessageView view = new PaxosMessageView();
+            // Messages handled since the end of the last batch
+            int batched = 0;
             try {
                 while (!Thread.currentThread().isInterrupted()) {
                     // Wait for a message to be added to the queue
                     ClientMessage clientMessage = messageQueue.consumeMessage();
-                    String message = clientMessage.getMessage();
                     // Socket clientSocket = clientMessage.getClientSocket();
-                    // Parse the message
-                    Optional<PaxosMessage> messageOpt = PaxosMessage.parseMessageFromString(message);
-                    if (messageOpt.isPresent()) {
-                        PaxosMessage paxosMessage = messageOpt.get();
+                    // Binary frames arrive decoded, text lines still need parsing
+                    PaxosMessage paxosMessage = clientMessage.getPaxosMessage();
+                    if (paxosMessage == null && TextMessageParser.parse(clientMessage.getMessage(), view)) {
+                        // Frequent messages are handled from the view, the rest are turned into messages
+                        if (!this.receiveView(view)) {
+                            paxosMessage = view.toMessage();
+                        }
+                    } else if (paxosMessage == null) {
+                        logger.warning("Failed to parse message: " + clientMessage.getMessage());
+                    }
+                    if (paxosMessage != null) {
                         // Process the message
                         this.receiveMessage(paxosMessage, paxosMessage.getParticipantID());
-                    } else {
-                        logger.warning("Failed to parse message: " + message);
+                    }
+                    // A batch is every message that was already waiting, up to the group commit limit
+                    if (++batched >= config.getGroupCommitMaxMessages() || messageQueue.getDepth() == 0) {
+                        this.onBatchEnd();
+                        batched = 0;
                     }
                 }
             } catch (InterruptedException e) {
                 this.stopMessageProcessingThread();
             }
-        });
+        }, "message-processing-" + participantID);
 
         messageProcessingThread.start();
     }
@@ -100,11 +136,41 @@ public abstract class PaxosParticipant {
 
     public void stop() {
         this.stopMessageProcessingThread();
-        this.server.stop();
+        // A role that shares its node's server leaves stopping it to the node
+        if (this.server != null) {
+            this.server.stop();
+        }
+        synchronized (this) {
+            if (delayTimer != null) {
+                // Sends still waiting out a simulated delay are dropped
+                delayTimer.shutdownNow();
+            }
+            if (sendExecutor != null) {
+                sendExecutor.shutdownNow();
+            }
+        }
     }
 
     public abstract void receiveMessage(PaxosMessage message, String participantID);
 
+    /**
+     * Handle a parsed text message straight from the view, reading only the fields the handler needs, so that
+     * frequent messages do not each create a PaxosMessage and its strings. Called on the message processing
+     * thread, and the view is only valid until this returns.
+     * @param view The parsed message.
+     * @return true if the message was handled, false to have it handled by receiveMessage.
+     */
+    protected boolean receiveView(PaxosMessageView view) {
+        return false;
+    }
+
+    /**
+     * Called on the message processing thread after a batch of messages has been handled, before waiting for
+     * the next message. A participant can use it to do once per batch what would be costly once per message.
+     */
+    protected void onBatchEnd() {
+    }
+
     /**
      * Send message to another participant.
      * @param message The PaxosMessage to be sent.
@@ -112,57 +178,155 @@ public abstract class PaxosParticipant {
     public void sendMessage(PaxosMessage message, String host, int port) {
         // Simulate delay
         this.simulateDelay();
-        NetworkClient.sendMessage(message.toString(), host, port);
+        NetworkClient.sendMessage(message, host, port, config.getWireFormat());
+    }
+
+    /**
+     * Send message to another participant without waiting. The simulated delay is waited out on a timer, so it
+     * holds no thread. Messages to the same peer are written in the order they were sent.
+     * @param message The PaxosMessage to be sent.
+     * @return A future completed once the message was written, or the failure to write it was logged.
+     */
+    public CompletableFuture<Void> sendMessageAsync(PaxosMessage message, String host, int port) {
+        return sendAsync(EncodedMessage.encode(message, config.getWireFormat()), host, port);
+    }
+
+    /**
+     * Send a message to every connected node concurrently. The message is encoded once and the same bytes are
+     * written to each peer. Each link waits out its own simulated delay in parallel, so a round takes as long as
+     * the slowest link rather than the sum of all links. Messages to the same peer keep their order.
+     * @param message The PaxosMessage to be sent.
+     * @param port Picks the port of each node to send to, for example Node::getAcceptorPort.
+     * @return A future completed once every send has completed.
+     */
+    public CompletableFuture<Void> broadcast(PaxosMessage message, ToIntFunction<Node> port) {
+        return broadcast(message, this.nodes, port);
+    }
+
+    /**
+     * Send a message to the given nodes concurrently, encoding it once.
+     * @param message The PaxosMessage to be sent.
+     * @param targets The nodes to send to.
+     * @param port Picks the port of each node to send to, for example Node::getLearnerPort.
+     * @return A future completed once every send has completed.
+     */
+    public CompletableFuture<Void> broadcast(PaxosMessage message, Collection<Node> targets, ToIntFunction<Node> port) {
+        EncodedMessage encoded = EncodedMessage.encode(message, config.getWireFormat());
+        List<CompletableFuture<Void>> sends = new ArrayList<>(targets.size());
+        for (Node node : targets) {
+            sends.add(sendAsync(encoded, node.getHost(), port.applyAsInt(node)));
+        }
+        return CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Wait out the simulated delay on the timer, then write the message on a sender thread once the previous write
+     * to the same peer has finished. Delays overlap, so a slow link still carries several messages at once, but
+     * the peer receives them in the order they were sent. Only writes hold a sender thread, so the thread count
+     * does not grow with the message rate times the delay.
+     */
+    private CompletableFuture<Void> sendAsync(EncodedMessage message, String host, int port) {
+        long delayMillis = simulatedDelayMillis();
+        if (delayMillis < 0) {
+            // Never sent, and not queued on the link, so a silent participant keeps nothing per message
+            return new CompletableFuture<>();
+        }
+        try {
+            ExecutorService executor = sendExecutor();
+            CompletableFuture<Void> delayed = new CompletableFuture<>();
+            if (delayMillis == 0) {
+                delayed.complete(null);
+            } else {
+                delayTimer().schedule(() -> delayed.complete(null), delayMillis, TimeUnit.MILLISECONDS);
+            }
+            return lastWrites.compute(host + ":" + port, (link, previous) -> {
+                // A failed write does not hold back the next one
+                CompletableFuture<Void> written = previous == null ? delayed
+                        : delayed.runAfterBoth(previous.exceptionally(e -> null), () -> { });
+                return written.thenRunAsync(() -> NetworkClient.sendMessage(message, host, port), executor);
+            });
+        } catch (RejectedExecutionException e) {
+            // The participant has been stopped
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    private synchronized ExecutorService sendExecutor() {
+        if (sendExecutor == null) {
+            sendExecutor = config.getExecutionMode().newTaskExecutor();
+        }
+        return sendExecutor;
+    }
+
+    private synchronized ScheduledExecutorService delayTimer() {
+        if (delayTimer == null) {
+            delayTimer = Executors.newSingleThreadScheduledExecutor(
+                    task -> config.getExecutionMode().newThread(task, "send-delay-" + serverNode.getNodeName()));
+        }
+        return delayTimer;
     }
 
     public void simulateDelay() {
+        long delayMillis = simulatedDelayMillis();
+        if (delayMillis == 0) {
+            return;
+        }
+        try {
+            Thread.sleep(delayMillis < 0 ? 100000000 : delayMillis); // 100000000 ms for no response
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get how long the delay profile holds back each message sent.
+     * @return The delay in milliseconds, or -1 if messages are never answered.
+     */
+    private long simulatedDelayMillis() {
+        if (this.delayProfile == null) {
+            return 0;
+        }
         switch (this.delayProfile) {
             case SMALL_DELAY:
-                try {
-                    logger.info("NODE " + serverNode.getNodeName() + ": " + "Simulating small delay.");
-                    Thread.sleep(100); // 100 ms
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-                break;
+                logger.info("NODE " + serverNode.getNodeName() + ": " + "Simulating small delay.");
+                return 100; // 100 ms
             case LARGE_DELAY:
-                try {
-                    logger.info("NODE " + serverNode.getNodeName() + ": " + "Simulating large delay.");
-                    Thread.sleep(1000); // 1 s
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-                break;
+                logger.info("NODE " + serverNode.getNodeName() + ": " + "Simulating large delay.");
+                return 1000; // 1 s
             case NO_RESPONSE:
-                try {
-                    logger.info("NODE " + serverNode.getNodeName() + ": " + "Simulating no response.");
-                    Thread.sleep(100000000); // 100000000 ms
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-                break;
+                logger.info("NODE " + serverNode.getNodeName() + ": " + "Simulating no response.");
+                return -1;
             case IMMEDIATE_RESPONSE:
             default:
                 // No delay
-                break;
+                return 0;
         }
     }
 
-    // Use composite proposal number to ensure that the proposer with the highest proposal number is chosen
-    protected boolean compareProposalNumbers(int proposalNumber1, int proposalNumber2, int ID1, int ID2) {
-        // Compare the proposal numbers
-        if (proposalNumber1 > proposalNumber2) {
-            return true;
-        } else if (proposalNumber1 == proposalNumber2) {
-            // If the proposal numbers are equal, compare the proposer IDs
-            return ID1 > ID2;
-        } else {
-            return false;
+    public void setConnectedNodes(List<Node> nodes) {
+        this.nodes = nodes;
+        this.quorumSystem = null;
+    }
+
+    /**
+     * Get the quorum rule for the connected nodes, as described by the config.
+     * @return The quorum system, which also pools this participant's quorum trackers.
+     */
+    protected QuorumSystem quorumSystem() {
+        if (quorumSystem == null) {
+            quorumSystem = QuorumSystem.of(config, nodes);
         }
+        return quorumSystem;
     }
 
-    public void setConnectedNodes(List<Node> nodes) {
-        this.nodes = nodes;
+    /**
+     * Get the queue of received messages, for example to read its depth and drop gauges.
+     * @return The message queue.
+     */
+    public MessageQueue getMessageQueue() {
+        return this.messageQueue;
     }
 
     public String getServerNodeID() {
@@ -179,18 +343,82 @@ public abstract class PaxosParticipant {
         return null;
     }
 
+    /**
+     * Get the index of a node in the connected node list, which is the node's ordinal in quorum trackers.
+     * @param nodeName The node name.
+     * @return The index, or -1 if the node is not connected.
+     */
+    public int nodeOrdinal(String nodeName) {
+        for (int ordinal = 0; ordinal < this.nodes.size(); ordinal++) {
+            if (this.nodes.get(ordinal).getNodeName().equals(nodeName)) {
+                return ordinal;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the index of a message's sender in the connected node list, without creating a String.
+     * @param view The parsed message.
+     * @return The index, or -1 if the sender is not connected.
+     */
+    public int nodeOrdinal(PaxosMessageView view) {
+        for (int ordinal = 0; ordinal < this.nodes.size(); ordinal++) {
+            if (view.participantIDEquals(this.nodes.get(ordinal).getNodeName())) {
+                return ordinal;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the node whose learner collects the ACCEPTED messages under distinguished learner dissemination.
+     * @return The configured distinguished learner, or the first connected node if none is configured.
+     */
+    public Node getDistinguishedLearner() {
+        if (config.getDistinguishedLearner() != null) {
+            return findNodeByID(config.getDistinguishedLearner());
+        }
+        return this.nodes.isEmpty() ? null : this.nodes.get(0);
+    }
+
     // Node class to hold information about each node
     public static class Node {
         private String nodeName;
         private String host;
         private int acceptorPort;
         private int proposerPort;
+        // 0 if the node hosts no learner
+        private int learnerPort;
+
+        /**
+         * Constructor for a node whose roles share one port.
+         * @param nodeName The node name.
+         * @param host The node host.
+         * @param port The port of the node's shared server.
+         */
+        public Node(String nodeName, String host, int port) {
+            this(nodeName, host, port, port, port);
+        }
 
         public Node(String nodeName, String host, int acceptorPort, int proposerPort) {
+            this(nodeName, host, acceptorPort, proposerPort, 0);
+        }
+
+        /**
+         * Constructor for a node that also hosts a learner on its own port.
+         * @param nodeName The node name.
+         * @param host The node host.
+         * @param acceptorPort The port of the node's acceptor.
+         * @param proposerPort The port of the node's proposer.
+         * @param learnerPort The port of the node's learner, or 0 if the node hosts no learner.
+         */
+        public Node(String nodeName, String host, int acceptorPort, int proposerPort, int learnerPort) {
             this.nodeName = nodeName;
             this.host = host;
             this.acceptorPort = acceptorPort;
             this.proposerPort = proposerPort;
+            this.learnerPort = learnerPort;
         }
 
         public String getHost() {
@@ -205,6 +433,14 @@ public abstract class PaxosParticipant {
             return proposerPort;
         }
 
+        public int getLearnerPort() {
+            return learnerPort;
+        }
+
+        public boolean hasLearner() {
+            return learnerPort != 0;
+        }
+
         public String getNodeName() {
             return nodeName;
         }
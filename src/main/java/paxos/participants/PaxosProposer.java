@@ -1,10 +1,27 @@
 package paxos.participants;
 
+import paxos.messages.Ballot;
 import paxos.messages.PaxosMessage;
+import paxos.messages.PaxosMessageView;
 import paxos.network.MessageQueue;
+import paxos.network.MessageRouter;
 import paxos.network.NetworkServer;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.logging.*;
 
 /**
@@ -13,21 +30,77 @@ import java.util.logging.*;
  * It sends out propose requests to acceptors and responds to replies from them.
  */
 public class PaxosProposer extends PaxosParticipant {
-    // Track the number of promises received for a given proposal
-    private int promisesReceived;
-    // Track the number of acceptances received for a given proposal
-    private int acceptancesReceived;
+    // Acceptors that promised the current proposal, each counted once
+    private QuorumTracker promises;
+    // Acceptors that accepted the current proposal, each counted once
+    private QuorumTracker acceptances;
     // Track if prepare phase has reached a quorum
     private boolean acceptPhaseInitiated = false;
     // Track if accept phase has reached a quorum
     private boolean commitPhaseInitiated = false;
     // Track the highest proposal number that this proposer has seen
-    private int highestProposalNumberSeen;
+    private long highestProposalNumberSeen;
+    // Highest proposal number reported accepted in the promises of the current round
+    private long highestAcceptedProposalNumber = Ballot.NONE;
     // Proposal value to be accepted (may be updated based on promises received)
     private String proposedValue;
-    private int lastProposalNumberUsed = 0;
+    // The value startProposal was called with, proposed again when a round is retried
+    private String requestedValue;
+    private long lastProposalNumberUsed = Ballot.NONE;
     
     private String acceptedValue = "";
+    // Completed with the first value this proposer sees chosen
+    private final CompletableFuture<String> chosen = new CompletableFuture<>();
+
+    // Value proposed by a new leader for an instance that must be filled but has no value to recover
+    public static final String NO_OP = "NO_OP";
+    // Caps the doubling of the round timeout and of the retry backoff
+    private static final int MAX_BACKOFF_DOUBLINGS = 16;
+
+    // Retry state, guarded by the proposer's lock
+    // Last ballot this proposer issued
+    private long issuedBallot = Ballot.NONE;
+    // Highest proposal number reported by an acceptor, which the next ballot jumps above
+    private long highestBallotSeen = Ballot.NONE;
+    // Rounds of the current proposal that have failed in a row
+    private int failedRounds = 0;
+    private ScheduledFuture<?> roundTimeout;
+    private ScheduledFuture<?> pendingRetry;
+    // Rounds abandoned because another proposer's higher ballot was reported
+    private int duelingRounds = 0;
+    // Rounds abandoned because no quorum answered in time
+    private int timedOutRounds = 0;
+    // Accept requests sent again because their instance was not chosen in time
+    private int resentAccepts = 0;
+    // Requests sent to the remaining acceptors because a thrifty quorum was slow to answer
+    private int thriftyFallbacks = 0;
+    // Ranks acceptors by reply time in thrifty mode, created on first use
+    private ThriftySelector thriftySelector;
+
+    // Multi-Paxos state, guarded by the proposer's lock
+    private long ballot = Ballot.NONE;
+    private boolean leader = false;
+    private boolean preparing = false;
+    private int prepareRounds = 0;
+    // First instance covered by the current prepare request
+    private int prepareInstance = 1;
+    private int nextInstance = 1;
+    // Acceptors that promised the current prepare request
+    private QuorumTracker promisers;
+    // Highest-numbered value reported by the promising acceptors, per instance
+    private final TreeMap<Integer, PaxosMessage> recoveredValues = new TreeMap<>();
+    private final TreeMap<Integer, Proposal> inFlight = new TreeMap<>();
+    // Instances a new leader must finish before starting new ones, sent as the pipeline window has room
+    private final TreeMap<Integer, String> recoveringInstances = new TreeMap<>();
+    // Values waiting for leadership or for room in the pipeline window
+    private final Deque<String> waitingValues = new ArrayDeque<>();
+    private int peakInFlight = 0;
+    // Times out rounds and instances that are not chosen in time, and runs retries, created on first use
+    private ScheduledExecutorService proposalTimer;
+    private final ReplicatedLog replicatedLog = new ReplicatedLog();
+    // Set when the log is applied to a state machine with snapshots
+    private SnapshotManager snapshotManager;
+    private final Snapshot.Assembler snapshotAssembler = new Snapshot.Assembler();
 
     private static final Logger logger = Logger.getLogger(PaxosProposer.class.getName());
 
@@ -50,39 +123,150 @@ public class PaxosProposer extends PaxosParticipant {
     }
 
     public PaxosProposer(Node serverNode, List<Node> nodes, DelayProfile delayProfile) {
-        super(serverNode, nodes, delayProfile);
+        this(serverNode, nodes, delayProfile, new PaxosConfig());
+    }
+
+    public PaxosProposer(Node serverNode, List<Node> nodes, DelayProfile delayProfile, PaxosConfig config) {
+        super(serverNode, nodes, delayProfile, config);
+        // Retain list of nodes that this participant is connected to
+        this.nodes = nodes;
+        // Fail before listening if the configured quorums do not fit the nodes
+        quorumSystem();
         // Server for receiving messages
         this.serverNode = serverNode;
         // Message queue for receiving messages
-        this.messageQueue = new MessageQueue();
+        this.messageQueue = config.createMessageQueue();
         // Server for receiving messages
-        this.server = new NetworkServer(serverNode.getProposerPort(), this.messageQueue);
+        this.server = config.createServer(serverNode.getProposerPort(), this.messageQueue);
+    }
+
+    /**
+     * Constructor for a PaxosProposer that shares its node's server with the node's other roles.
+     * @param router The router of the shared server. The caller starts and stops the shared server.
+     */
+    public PaxosProposer(Node serverNode, List<Node> nodes, DelayProfile delayProfile, PaxosConfig config, MessageRouter router) {
+        super(serverNode, nodes, delayProfile, config);
         // Retain list of nodes that this participant is connected to
         this.nodes = nodes;
+        // Fail before routing if the configured quorums do not fit the nodes
+        quorumSystem();
+        this.serverNode = serverNode;
+        // Message queue for receiving messages, fed by the shared server's router
+        this.messageQueue = config.createMessageQueue();
+        router.route(this.messageQueue, PaxosMessage.Type.PROMISE, PaxosMessage.Type.ACCEPTED, PaxosMessage.Type.SNAPSHOT, PaxosMessage.Type.NACK);
+    }
+
+    public synchronized void startProposal(String proposedValue) {
+        if (config.isMultiPaxos()) {
+            propose(proposedValue);
+            return;
+        }
+        this.requestedValue = proposedValue;
+        failedRounds = 0;
+        cancelRetry();
+        startRound();
     }
 
-    public void startProposal(String proposedValue) {
-        // Reset the number of promises received
-        this.promisesReceived = 0;
-        // Reset the number of acceptances received
-        this.acceptancesReceived = 0;
+    /**
+     * Start a classic round for the requested value, with a ballot above every one seen, and give it until the
+     * round timeout to be chosen.
+     */
+    private void startRound() {
+        // Start counting promises and acceptances afresh
+        quorumSystem().release(promises);
+        this.promises = quorumSystem().acquire(QuorumSystem.Phase.PREPARE);
+        quorumSystem().release(acceptances);
+        this.acceptances = quorumSystem().acquire(QuorumSystem.Phase.ACCEPT);
         // Reset the proposed value
-        this.proposedValue = proposedValue;
-        // Increment the proposal number
-        lastProposalNumberUsed++;
+        this.proposedValue = requestedValue;
+        // Move to the next proposal number owned by this proposer
+        lastProposalNumberUsed = nextBallot();
         // Reset the highest proposal number seen
         this.highestProposalNumberSeen = lastProposalNumberUsed;
+        this.highestAcceptedProposalNumber = Ballot.NONE;
         // Reset the acceptPhaseInitiated flag
         this.acceptPhaseInitiated = false;
         // Reset the commitPhaseInitiated flag
         this.commitPhaseInitiated = false;
+        long proposalNumber = lastProposalNumberUsed;
+        roundTimeout = proposalTimer().schedule(() -> onRoundTimeout(proposalNumber), roundTimeoutMillis(), TimeUnit.MILLISECONDS);
         // Send prepare requests to all acceptors
         sendPrepareRequests(lastProposalNumberUsed);
     }
 
+    /**
+     * Pick the next ballot, above every ballot issued or reported so far. Each proposer owns the ballots ending
+     * in its participant ID, so two proposers never share one, and jumping straight above the highest reported
+     * ballot saves the rounds that counting up one at a time would lose to it.
+     */
+    private long nextBallot() {
+        issuedBallot = Ballot.above(Math.max(issuedBallot, highestBallotSeen), participantID);
+        return issuedBallot;
+    }
+
+    private long roundTimeoutMillis() {
+        return config.getProposalTimeoutMillis() << Math.min(failedRounds, MAX_BACKOFF_DOUBLINGS);
+    }
+
+    /**
+     * Give up on the current round and retry it after a random backoff. The backoff bound doubles with each
+     * failed round, so proposers that keep preempting each other soon pick retry times far enough apart for one
+     * of them to finish its round first.
+     */
+    private void retryAfterBackoff(Runnable retry) {
+        failedRounds++;
+        cancelRoundTimeout();
+        long bound = Math.min(config.getMaxRetryBackoffMillis(),
+                config.getRetryBackoffMillis() << Math.min(failedRounds - 1, MAX_BACKOFF_DOUBLINGS));
+        long delay = ThreadLocalRandom.current().nextLong(bound + 1);
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Retrying in " + delay + " ms after " + failedRounds + " failed rounds");
+        pendingRetry = proposalTimer().schedule(() -> {
+            synchronized (this) {
+                pendingRetry = null;
+                retry.run();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelRoundTimeout() {
+        if (roundTimeout != null) {
+            roundTimeout.cancel(false);
+            roundTimeout = null;
+        }
+    }
+
+    private void cancelRetry() {
+        cancelRoundTimeout();
+        if (pendingRetry != null) {
+            pendingRetry.cancel(false);
+            pendingRetry = null;
+        }
+    }
+
+    /**
+     * Retry a classic round that has not been chosen in time, for example because its messages were lost or a
+     * quorum is slow to answer.
+     */
+    private synchronized void onRoundTimeout(long proposalNumber) {
+        if (proposalNumber != lastProposalNumberUsed || commitPhaseInitiated || pendingRetry != null) {
+            return;
+        }
+        timedOutRounds++;
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Proposal number " + proposalNumber + " not chosen in time");
+        retryAfterBackoff(this::retryRound);
+    }
+
+    private void retryRound() {
+        if (!commitPhaseInitiated) {
+            startRound();
+        }
+    }
+
     public void start() {
         // Start message processing thread
-        this.server.startServer();
+        if (this.server != null) {
+            this.server.startServer();
+        }
         // Start server thread
         this.startMessageProcessingThread();
     }
@@ -90,19 +274,19 @@ public class PaxosProposer extends PaxosParticipant {
     
 
     /**
-     * Sends a prepare request to all acceptors.
+     * Sends a prepare request to all acceptors, or in thrifty mode to a quorum of them.
      * The prepare request is the first phase of the Paxos protocol where the proposer
      * solicits acceptors to agree to consider a particular proposal identified by a unique generation number.
+     * @return A future completed once the request has been sent to every acceptor it goes to first.
      */
-    public void sendPrepareRequests(int proposalNumber) {
+    public CompletableFuture<Void> sendPrepareRequests(long proposalNumber) {
         // Create a prepare message
         PaxosMessage prepare = PaxosMessage.prepareMessage(proposalNumber, this.getServerNodeID());
 
         // Send prepare request to all acceptors
-        for (Node node : nodes) {
-            logger.info("NODE " + serverNode.getNodeName() + ": " + "Sending prepare request with proposal number " + proposalNumber + " to acceptor " + node.getNodeName());
-            this.sendMessage(prepare, node.getHost(), node.getAcceptorPort());
-        }
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Sending prepare requests to all acceptors with proposal number " + proposalNumber);
+        return sendToAcceptors(prepare, QuorumSystem.Phase.PREPARE,
+                () -> proposalNumber == lastProposalNumberUsed && !acceptPhaseInitiated && !commitPhaseInitiated ? promises : null);
     }
     
     /**
@@ -110,27 +294,32 @@ public class PaxosProposer extends PaxosParticipant {
      * This method processes the promises from acceptors to not accept any more proposals numbered less than the one sent.
      * @param promise The promise message from an acceptor.
      */
-    public void onPrepareResponse(PaxosMessage promise, String participantID) {
+    public synchronized void onPrepareResponse(PaxosMessage promise, String participantID) {
         Node sender = this.findNodeByID(participantID);
-        // Check if the proposal number is greater than the highest proposal number seen so far
-        if (promise.getProposalNumber() == lastProposalNumberUsed && !acceptPhaseInitiated && !commitPhaseInitiated) {
-            // Update the number of promises received
-            this.promisesReceived++;
-
+        // Check if the promise is for the current proposal number, counting each acceptor's promise once
+        if (promise.getProposalNumber() == lastProposalNumberUsed && !acceptPhaseInitiated && !commitPhaseInitiated
+                && promises.add(nodeOrdinal(participantID))) {
             logger.info("NODE " + serverNode.getNodeName() + ": " + "Received promise from acceptor " + sender.getNodeName() + " for proposal number " + promise.getProposalNumber());
 
-            // Check if a promise contains a value (which means the acceptor has already accepted a proposal)
-            if (!promise.getValue().isEmpty()) {
-                // Set the proposed value to the highest-numbered proposal's value
-                if (promise.getProposalNumber() > this.highestProposalNumberSeen) {
-                    logger.info("NODE " + serverNode.getNodeName() + ": " + "Received promise with value: " + promise.getValue() + " from acceptor " + sender.getNodeName() + " for proposal number " + promise.getProposalNumber());
-                    this.proposedValue = promise.getValue();
-                    this.highestProposalNumberSeen = promise.getProposalNumber();
-                }
+            // Check if a promise contains a value (which means the acceptor has already accepted a proposal).
+            // The value is <acceptedValue>:<acceptedProposalNumber>, with a negative number if nothing was accepted
+            String combinedValue = promise.getValue();
+            int separator = combinedValue.lastIndexOf(':');
+            long acceptedProposalNumber = Ballot.NONE;
+            try {
+                acceptedProposalNumber = Long.parseLong(combinedValue.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                logger.warning("NODE " + serverNode.getNodeName() + ": " + "Invalid promise value: " + combinedValue);
+            }
+            // Set the proposed value to the highest-numbered proposal's value
+            if (separator >= 0 && acceptedProposalNumber > this.highestAcceptedProposalNumber) {
+                logger.info("NODE " + serverNode.getNodeName() + ": " + "Received promise with value: " + combinedValue.substring(0, separator) + " from acceptor " + sender.getNodeName() + " accepted with proposal number " + acceptedProposalNumber);
+                this.proposedValue = combinedValue.substring(0, separator);
+                this.highestAcceptedProposalNumber = acceptedProposalNumber;
             }
 
-            // Check if the number of promises received has reached a quorum
-            if (hasReachedQuorum(promisesReceived)) {
+            // Check if the promises received have reached a quorum
+            if (promises.isReached()) {
                 logger.info("NODE " + serverNode.getNodeName() + ": " + "Received a quorum of promises for proposal number " + promise.getProposalNumber() + ". Entering accept phase.");
                 // Set the accept phase initiated flag
                 this.acceptPhaseInitiated = true;
@@ -143,22 +332,12 @@ public class PaxosProposer extends PaxosParticipant {
         }
     }
     
-    /**
-     * Helper method which checks if the count has reached a quorum.
-     * @param count The count to check.
-     * @return True if the count has reached a quorum, false otherwise.
-     */
-    private boolean hasReachedQuorum(int count) {
-        // Determine if the count reaches a quorum. This could be a simple majority, for example.
-        return count > (this.nodes.size() / 2);
-    }
-
     /**
      * Sends an accept request to all acceptors.
      * After receiving promises from a majority of acceptors, the proposer sends an accept request to each of them
      * for a proposal with a number no less than the one specified in the promises, and with a value of its choice.
      */
-    private void sendAcceptRequests(int proposalNumber, String value) {
+    private void sendAcceptRequests(long proposalNumber, String value) {
         // Log the action of sending accept requests
         logger.info("NODE " + serverNode.getNodeName() + ": " + "Sending accept requests to all acceptors for proposal number " + proposalNumber + " with value: " + value);
 
@@ -166,9 +345,8 @@ public class PaxosProposer extends PaxosParticipant {
         PaxosMessage acceptMessage = PaxosMessage.acceptRequestMessage(proposalNumber, value, this.getServerNodeID());
 
         // Send the accept message to all nodes (acceptors)
-        for (Node node : this.nodes) {
-            sendMessage(acceptMessage, node.getHost(), node.getAcceptorPort());
-        }
+        sendToAcceptors(acceptMessage, QuorumSystem.Phase.ACCEPT,
+                () -> proposalNumber == lastProposalNumberUsed && !commitPhaseInitiated ? acceptances : null);
     }
     
     /**
@@ -176,18 +354,18 @@ public class PaxosProposer extends PaxosParticipant {
      * This method processes the acceptances of its proposal by the acceptors.
      * @param acceptance The acceptance message from an acceptor.
      */
-    public void onAcceptResponse(PaxosMessage acceptedMessage, String participantID) {
+    public synchronized void onAcceptResponse(PaxosMessage acceptedMessage, String participantID) {
         Node sender = this.findNodeByID(participantID);
         // Check if the accepted message corresponds to the current proposal number
-        if (acceptedMessage.getProposalNumber() == this.highestProposalNumberSeen && !commitPhaseInitiated && acceptPhaseInitiated) {
-            // Increment the count of acceptances received
-            int acceptances = this.acceptancesReceived++;
-
+        // With a shared listener, the node's proposer also sees ACCEPTED messages meant for its learner, so only
+        // count acceptances of the value this proposer asked for, once per acceptor
+        if (acceptedMessage.getProposalNumber() == this.highestProposalNumberSeen && !commitPhaseInitiated && acceptPhaseInitiated
+                && acceptedMessage.getValue().equals(this.proposedValue) && acceptances.add(nodeOrdinal(participantID))) {
             // Log the receipt of the acceptance
             logger.info("NODE " + serverNode.getNodeName() + ": " + "Received acceptance from acceptor " + sender.getNodeName() + " for proposal number " + this.highestProposalNumberSeen);
 
             // If the acceptances have reached a quorum, the proposal is chosen
-            if (hasReachedQuorum(acceptances)) {
+            if (acceptances.isReached()) {
                 logger.info("NODE " + serverNode.getNodeName() + ": " + "Received a quorum of acceptances for proposal number " + this.highestProposalNumberSeen + ". Proposal chosen.");
                 // The value is now chosen; notify all nodes and perform any additional logic required
                 onProposalChosen(acceptedMessage.getValue());
@@ -204,17 +382,445 @@ public class PaxosProposer extends PaxosParticipant {
         acceptedValue = value;
         // Set the commit phase initiated flag
         this.commitPhaseInitiated = true;
+        if (!config.isMultiPaxos()) {
+            cancelRetry();
+        }
+        chosen.complete(value);
+    }
+
+    /**
+     * Handles a NACK from an acceptor that has promised a higher proposal number. The round can no longer
+     * succeed with that acceptor, so it is abandoned at once, instead of waiting for a quorum that may never
+     * form, and retried above the promised number after a backoff.
+     * @param nack The NACK message from an acceptor.
+     */
+    public synchronized void onNack(PaxosMessage nack, String participantID) {
+        long rejectedProposalNumber;
+        try {
+            rejectedProposalNumber = Long.parseLong(nack.getValue());
+        } catch (NumberFormatException e) {
+            logger.warning("NODE " + serverNode.getNodeName() + ": " + "Invalid NACK value: " + nack.getValue());
+            return;
+        }
+        highestBallotSeen = Math.max(highestBallotSeen, nack.getProposalNumber());
+        if (nack.getInstance() > 0) {
+            onHigherProposalNumber(nack.getProposalNumber(), participantID);
+            return;
+        }
+        if (rejectedProposalNumber != lastProposalNumberUsed || commitPhaseInitiated || pendingRetry != null) {
+            logger.info("NODE " + serverNode.getNodeName() + ": " + "Received outdated NACK from acceptor " + participantID + " for proposal number " + rejectedProposalNumber);
+            return;
+        }
+        duelingRounds++;
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Acceptor " + participantID + " rejected proposal number " + rejectedProposalNumber
+                + " having promised " + nack.getProposalNumber() + ". Retrying above it.");
+        retryAfterBackoff(this::retryRound);
+    }
+
+    /**
+     * Propose a value for the next Multi-Paxos instance.
+     * A leader sends only the accept request. Otherwise the value waits while the proposer runs phase 1 once,
+     * for every instance from the first one not known to be chosen, and then stays leader for later proposals
+     * until an acceptor reports a higher proposal number.
+     * Up to the configured pipeline window of instances are in flight at once; further values wait for a slot.
+     * @param value The value to propose.
+     */
+    public synchronized void propose(String value) {
+        waitingValues.add(value);
+        if (leader) {
+            sendWaitingValues();
+        } else if (!preparing && pendingRetry == null) {
+            startLeaderElection();
+        }
+    }
+
+    private void startLeaderElection() {
+        // Unique per proposer, so two proposers never share a ballot
+        ballot = nextBallot();
+        leader = false;
+        preparing = true;
+        prepareRounds++;
+        prepareInstance = replicatedLog.getFirstUndecidedSlot();
+        quorumSystem().release(promisers);
+        promisers = quorumSystem().acquire(QuorumSystem.Phase.PREPARE);
+        recoveredValues.clear();
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Sending prepare requests with proposal number " + ballot + " for instances from " + prepareInstance);
+        cancelRoundTimeout();
+        long prepareBallot = ballot;
+        roundTimeout = proposalTimer().schedule(() -> onPrepareTimeout(prepareBallot), roundTimeoutMillis(), TimeUnit.MILLISECONDS);
+        sendToAcceptors(PaxosMessage.prepareMessage(ballot, this.getServerNodeID(), prepareInstance), QuorumSystem.Phase.PREPARE,
+                () -> preparing && ballot == prepareBallot ? promisers : null);
+    }
+
+    /**
+     * Retry phase 1 when a quorum has not promised in time.
+     */
+    private synchronized void onPrepareTimeout(long prepareBallot) {
+        if (!preparing || prepareBallot != ballot) {
+            return;
+        }
+        timedOutRounds++;
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Proposal number " + prepareBallot + " not promised in time");
+        preparing = false;
+        retryAfterBackoff(this::retryLeaderElection);
+    }
+
+    private void retryLeaderElection() {
+        if (!leader && !preparing && hasUnchosenValues()) {
+            startLeaderElection();
+        }
+    }
+
+    private synchronized void onMultiPaxosPromise(PaxosMessage promise, String participantID) {
+        if (!preparing || promise.getProposalNumber() != ballot) {
+            logger.info("NODE " + serverNode.getNodeName() + ": " + "Received outdated promise from acceptor " + participantID + " for proposal number " + promise.getProposalNumber());
+            return;
+        }
+        // The value is <acceptedValue>:<acceptedProposalNumber>
+        String combinedValue = promise.getValue();
+        int separator = combinedValue.lastIndexOf(':');
+        long acceptedProposalNumber;
+        try {
+            acceptedProposalNumber = Long.parseLong(combinedValue.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            logger.warning("NODE " + serverNode.getNodeName() + ": " + "Invalid promise value: " + combinedValue);
+            return;
+        }
+        if (acceptedProposalNumber >= 0) {
+            PaxosMessage recovered = recoveredValues.get(promise.getInstance());
+            if (recovered == null || acceptedProposalNumber > recovered.getProposalNumber()) {
+                recoveredValues.put(promise.getInstance(), PaxosMessage.acceptRequestMessage(acceptedProposalNumber,
+                        combinedValue.substring(0, separator), participantID, promise.getInstance()));
+            }
+        }
+        if (promise.getInstance() != prepareInstance) {
+            // A report for a later instance, the promise itself follows on the same connection
+            return;
+        }
+        if (promisers.add(nodeOrdinal(participantID)) && promisers.isReached()) {
+            becomeLeader();
+        }
+    }
+
+    private boolean hasUnchosenValues() {
+        return !inFlight.isEmpty() || !recoveringInstances.isEmpty() || !waitingValues.isEmpty();
+    }
+
+    /**
+     * Take over as leader: finish every instance that may already hold a value, then send the waiting values.
+     * The instances to finish are queued like waiting values, so recovery also keeps within the pipeline window.
+     */
+    private void becomeLeader() {
+        preparing = false;
+        leader = true;
+        failedRounds = 0;
+        cancelRoundTimeout();
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Became leader with proposal number " + ballot);
+
+        int lastInstance = Math.max(nextInstance - 1, recoveredValues.isEmpty() ? 0 : recoveredValues.lastKey());
+        // Instances before the prepared ones are decided
+        recoveringInstances.headMap(prepareInstance).clear();
+        for (int instance = prepareInstance; instance <= lastInstance; instance++) {
+            if (replicatedLog.isDecided(instance)) {
+                recoveringInstances.remove(instance);
+                continue;
+            }
+            PaxosMessage recovered = recoveredValues.get(instance);
+            Proposal previous = inFlight.remove(instance);
+            String previousValue = recoveringInstances.remove(instance);
+            if (previous != null) {
+                if (previous.timeout != null) {
+                    previous.timeout.cancel(false);
+                }
+                quorumSystem().release(previous.acceptances);
+                previousValue = previous.value;
+            }
+            if (recovered != null) {
+                // A value may already be chosen here, so it must be proposed again
+                if (previousValue != null && !previousValue.equals(recovered.getValue()) && !NO_OP.equals(previousValue)) {
+                    waitingValues.add(previousValue);
+                }
+                recoveringInstances.put(instance, recovered.getValue());
+            } else {
+                recoveringInstances.put(instance, previousValue != null ? previousValue : NO_OP);
+            }
+        }
+        nextInstance = lastInstance + 1;
+        sendWaitingValues();
+    }
+
+    /**
+     * Finish the recovered instances, then start new instances for waiting values, while the pipeline window has room.
+     */
+    private void sendWaitingValues() {
+        while (!recoveringInstances.isEmpty() && inFlight.size() < config.getPipelineWindow()) {
+            Map.Entry<Integer, String> recovering = recoveringInstances.pollFirstEntry();
+            sendMultiPaxosAccept(recovering.getKey(), recovering.getValue());
+        }
+        while (!waitingValues.isEmpty() && inFlight.size() < config.getPipelineWindow()) {
+            sendMultiPaxosAccept(nextInstance++, waitingValues.poll());
+        }
+    }
+
+    private void sendMultiPaxosAccept(int instance, String value) {
+        Proposal proposal = new Proposal(value, quorumSystem().acquire(QuorumSystem.Phase.ACCEPT));
+        Proposal previous = inFlight.put(instance, proposal);
+        if (previous != null) {
+            quorumSystem().release(previous.acceptances);
+        }
+        peakInFlight = Math.max(peakInFlight, inFlight.size());
+        long acceptBallot = ballot;
+        sendToAcceptors(PaxosMessage.acceptRequestMessage(ballot, value, this.getServerNodeID(), instance), QuorumSystem.Phase.ACCEPT,
+                () -> leader && ballot == acceptBallot && inFlight.get(instance) == proposal ? proposal.acceptances : null);
+        proposal.timeout = proposalTimer().schedule(() -> onProposalTimeout(instance, proposal),
+                config.getProposalTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Resend the accept request of an instance that was not chosen in time, for example after a lost message.
+     */
+    private synchronized void onProposalTimeout(int instance, Proposal proposal) {
+        if (!leader || inFlight.get(instance) != proposal) {
+            // Chosen, replaced by a newer proposal for the instance, or no longer leader
+            return;
+        }
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Instance " + instance + " not chosen in time, resending accept request with proposal number " + ballot);
+        resentAccepts++;
+        broadcast(PaxosMessage.acceptRequestMessage(ballot, proposal.value, this.getServerNodeID(), instance), Node::getAcceptorPort);
+        proposal.timeout = proposalTimer().schedule(() -> onProposalTimeout(instance, proposal),
+                config.getProposalTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send a request to the acceptors. In thrifty mode it only goes to the quorum of acceptors that have answered
+     * fastest lately, and to the remaining acceptors as well if that quorum has not answered by the fallback timeout.
+     * @param message The request.
+     * @param phase The phase the request is answered in.
+     * @param pending Gives the tracker still counting answers to the request, or null once they are not needed.
+     * @return A future completed once the request has been sent to the first acceptors.
+     */
+    private synchronized CompletableFuture<Void> sendToAcceptors(PaxosMessage message, QuorumSystem.Phase phase, Supplier<QuorumTracker> pending) {
+        if (!config.isThrifty()) {
+            return broadcast(message, Node::getAcceptorPort);
+        }
+        long now = System.nanoTime();
+        BitSet selected = thriftySelector().select(phase, now);
+        List<Node> targets = new ArrayList<>(selected.cardinality());
+        List<Node> remaining = new ArrayList<>(nodes.size() - selected.cardinality());
+        for (int ordinal = 0; ordinal < nodes.size(); ordinal++) {
+            if (selected.get(ordinal)) {
+                thriftySelector.recordSent(ordinal, now);
+                targets.add(nodes.get(ordinal));
+            } else {
+                remaining.add(nodes.get(ordinal));
+            }
+        }
+        if (!remaining.isEmpty()) {
+            proposalTimer().schedule(() -> onThriftyFallback(message, remaining, pending),
+                    config.getThriftyFallbackMillis(), TimeUnit.MILLISECONDS);
+        }
+        return broadcast(message, targets, Node::getAcceptorPort);
+    }
+
+    /**
+     * Send a thrifty request to the acceptors it was held back from, if its quorum has not answered yet.
+     */
+    private synchronized void onThriftyFallback(PaxosMessage message, List<Node> remaining, Supplier<QuorumTracker> pending) {
+        QuorumTracker tracker = pending.get();
+        if (tracker == null || tracker.isReached()) {
+            return;
+        }
+        thriftyFallbacks++;
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Thrifty quorum slow to answer proposal number " + message.getProposalNumber()
+                + ", sending to " + remaining.size() + " more acceptors");
+        long now = System.nanoTime();
+        for (Node node : remaining) {
+            thriftySelector().recordSent(nodeOrdinal(node.getNodeName()), now);
+        }
+        broadcast(message, remaining, Node::getAcceptorPort);
+    }
+
+    private ThriftySelector thriftySelector() {
+        if (thriftySelector == null || thriftySelector.getSystem() != quorumSystem()) {
+            thriftySelector = new ThriftySelector(quorumSystem());
+        }
+        return thriftySelector;
+    }
+
+    /**
+     * Time an acceptor's reply, so that a thrifty proposer prefers the acceptors that answer fastest.
+     */
+    private synchronized void onAcceptorReply(int ordinal) {
+        thriftySelector().recordReply(ordinal, System.nanoTime());
+    }
+
+    private ScheduledExecutorService proposalTimer() {
+        if (proposalTimer == null) {
+            proposalTimer = Executors.newSingleThreadScheduledExecutor(
+                    task -> config.getExecutionMode().newThread(task, "proposal-timer-" + participantID));
+        }
+        return proposalTimer;
+    }
+
+    /**
+     * An acceptor has promised a higher proposal number, so another proposer has taken over. Step down, and
+     * if values are still waiting, start phase 1 again after a backoff with a ballot above the one reported.
+     */
+    private void onHigherProposalNumber(long promisedProposalNumber, String participantID) {
+        highestBallotSeen = Math.max(highestBallotSeen, promisedProposalNumber);
+        if (promisedProposalNumber <= ballot || !(leader || preparing)) {
+            return;
+        }
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Acceptor " + participantID + " reported higher proposal number " + promisedProposalNumber + ". Stepping down as leader.");
+        duelingRounds++;
+        leader = false;
+        preparing = false;
+        if (hasUnchosenValues()) {
+            retryAfterBackoff(this::retryLeaderElection);
+        } else {
+            cancelRoundTimeout();
+        }
+    }
+
+    /**
+     * Count an acceptor's acceptance of a Multi-Paxos instance. Only the numbers and the sender are read, so that
+     * the acceptances a leader receives can be counted straight from the parsed text.
+     */
+    private synchronized void onMultiPaxosAccepted(long proposalNumber, int instance, int ordinal) {
+        if (proposalNumber > ballot) {
+            onHigherProposalNumber(proposalNumber, ordinal >= 0 ? nodes.get(ordinal).getNodeName() : "unknown");
+            return;
+        }
+        Proposal proposal = inFlight.get(instance);
+        if (proposal == null || proposalNumber != ballot) {
+            return;
+        }
+        if (proposal.acceptances.add(ordinal) && proposal.acceptances.isReached()) {
+            inFlight.remove(instance);
+            proposal.timeout.cancel(false);
+            quorumSystem().release(proposal.acceptances);
+            replicatedLog.decide(instance, proposal.value);
+            logger.info("NODE " + serverNode.getNodeName() + ": " + "Value " + proposal.value + " chosen for instance " + instance + " with proposal number " + ballot);
+            if (!commitPhaseInitiated) {
+                this.highestProposalNumberSeen = ballot;
+                onProposalChosen(proposal.value);
+            }
+            // The decided instance frees a slot in the pipeline window
+            sendWaitingValues();
+        }
+    }
+
+    /**
+     * Handles a chunk of a snapshot, sent by an acceptor that has compacted the instances this proposer asked about.
+     * Once every chunk has arrived, the snapshot is installed and phase 1 restarts from the first instance after it,
+     * or a leader fills the pipeline slots of the instances it covers.
+     * @param chunk The snapshot chunk.
+     */
+    private synchronized void onSnapshotChunk(PaxosMessage chunk, String participantID) {
+        Snapshot snapshot;
+        try {
+            snapshot = snapshotAssembler.add(chunk);
+        } catch (IllegalArgumentException e) {
+            logger.warning("NODE " + serverNode.getNodeName() + ": " + "Invalid snapshot chunk from acceptor " + participantID + ": " + e.getMessage());
+            return;
+        }
+        if (snapshot == null) {
+            return;
+        }
+        boolean installed = snapshotManager != null ? snapshotManager.install(snapshot) : replicatedLog.installSnapshot(snapshot.getSlot());
+        if (!installed) {
+            return;
+        }
+        logger.info("NODE " + serverNode.getNodeName() + ": " + "Caught up to slot " + snapshot.getSlot() + " with a snapshot from acceptor " + participantID);
+        // Instances covered by the snapshot are decided, whatever this proposer sent for them. The snapshot does
+        // not say which values were chosen, so values sent for them are proposed again in later instances
+        Map<Integer, String> coveredRecovering = recoveringInstances.headMap(snapshot.getSlot(), true);
+        TreeMap<Integer, String> uncertain = new TreeMap<>(coveredRecovering);
+        coveredRecovering.clear();
+        Iterator<Map.Entry<Integer, Proposal>> covered = inFlight.headMap(snapshot.getSlot(), true).entrySet().iterator();
+        while (covered.hasNext()) {
+            Map.Entry<Integer, Proposal> entry = covered.next();
+            Proposal proposal = entry.getValue();
+            if (proposal.timeout != null) {
+                proposal.timeout.cancel(false);
+            }
+            uncertain.put(entry.getKey(), proposal.value);
+            quorumSystem().release(proposal.acceptances);
+            covered.remove();
+        }
+        for (String value : uncertain.descendingMap().values()) {
+            if (!NO_OP.equals(value)) {
+                waitingValues.addFirst(value);
+            }
+        }
+        nextInstance = Math.max(nextInstance, snapshot.getSlot() + 1);
+        if (preparing) {
+            startLeaderElection();
+        } else if (leader) {
+            // The covered instances free their slots in the pipeline window
+            sendWaitingValues();
+        }
+    }
+
+    /**
+     * Apply this proposer's log to a state machine with snapshots, so that a snapshot received from an acceptor
+     * also restores the state machine.
+     * @param snapshotManager The snapshot manager of this proposer's log.
+     */
+    public void setSnapshotManager(SnapshotManager snapshotManager) {
+        this.snapshotManager = snapshotManager;
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        synchronized (this) {
+            if (proposalTimer != null) {
+                proposalTimer.shutdownNow();
+            }
+        }
+    }
+
+    @Override
+    protected boolean receiveView(PaxosMessageView view) {
+        // Acceptances of Multi-Paxos instances are most of what a leader receives
+        if (view.getType() != PaxosMessage.Type.ACCEPTED || view.getInstance() <= 0) {
+            return false;
+        }
+        int ordinal = nodeOrdinal(view);
+        if (config.isThrifty()) {
+            onAcceptorReply(ordinal);
+        }
+        onMultiPaxosAccepted(view.getProposalNumber(), view.getInstance(), ordinal);
+        return true;
     }
 
     @Override
     public void receiveMessage(PaxosMessage message, String participantID) {
+        if (config.isThrifty() && message.getType() != PaxosMessage.Type.SNAPSHOT) {
+            onAcceptorReply(nodeOrdinal(participantID));
+        }
         // Handle received Paxos messages
         switch (message.getType()) {
             case PROMISE:
-                onPrepareResponse(message, participantID);
+                if (message.getInstance() > 0) {
+                    onMultiPaxosPromise(message, participantID);
+                } else {
+                    onPrepareResponse(message, participantID);
+                }
                 break;
             case ACCEPTED:
-                onAcceptResponse(message, participantID);
+                if (message.getInstance() > 0) {
+                    onMultiPaxosAccepted(message.getProposalNumber(), message.getInstance(), nodeOrdinal(participantID));
+                } else {
+                    onAcceptResponse(message, participantID);
+                }
+                break;
+            case SNAPSHOT:
+                onSnapshotChunk(message, participantID);
+                break;
+            case NACK:
+                onNack(message, participantID);
                 break;
             default:
                 logger.warning("NODE " + serverNode.getNodeName() + ": " + "Received unsupported message type: " + message.getType());
@@ -228,4 +834,121 @@ public class PaxosProposer extends PaxosParticipant {
     public boolean isFinished() {
         return commitPhaseInitiated;
     }
+
+    /**
+     * Get a future for the value chosen, for example to wait for the single decision without polling isFinished.
+     * @return A future completed with the first value this proposer sees chosen.
+     */
+    public CompletableFuture<String> whenChosen() {
+        return chosen;
+    }
+
+    /**
+     * Get the number of rounds abandoned because another proposer's higher ballot was reported, a measure of
+     * how much proposers are dueling.
+     * @return The dueling round count.
+     */
+    public synchronized int getDuelingRounds() {
+        return duelingRounds;
+    }
+
+    /**
+     * Get the number of rounds retried because no quorum answered before the round timeout.
+     * @return The timed out round count.
+     */
+    public synchronized int getTimedOutRounds() {
+        return timedOutRounds;
+    }
+
+    /**
+     * Get the number of accept requests sent again because their instance was not chosen before the proposal timeout.
+     * @return The resent accept request count.
+     */
+    public synchronized int getResentAccepts() {
+        return resentAccepts;
+    }
+
+    /**
+     * Get the number of thrifty requests that were sent to the remaining acceptors after the fallback timeout.
+     * @return The thrifty fallback count.
+     */
+    public synchronized int getThriftyFallbacks() {
+        return thriftyFallbacks;
+    }
+
+    /**
+     * Get the value chosen for a Multi-Paxos instance, as far as this proposer knows.
+     * @param instance The instance.
+     * @return The chosen value, or null if this proposer has not seen it chosen.
+     */
+    public String getChosenValue(int instance) {
+        return replicatedLog.get(instance);
+    }
+
+    /**
+     * Get the number of Multi-Paxos instances this proposer has seen chosen.
+     * @return The chosen instance count.
+     */
+    public int getChosenCount() {
+        return replicatedLog.getDecidedCount();
+    }
+
+    /**
+     * Get the log of values this proposer has seen chosen. Set a listener on it to receive them in slot order.
+     * @return The replicated log.
+     */
+    public ReplicatedLog getReplicatedLog() {
+        return replicatedLog;
+    }
+
+    public synchronized boolean isLeader() {
+        return leader;
+    }
+
+    /**
+     * Get the number of Multi-Paxos phase 1 rounds this proposer has started.
+     * @return The prepare round count.
+     */
+    public synchronized int getPrepareRounds() {
+        return prepareRounds;
+    }
+
+    /**
+     * Get the number of Multi-Paxos instances started but not yet chosen.
+     * @return The in-flight instance count.
+     */
+    public synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Check whether a value proposed now would be sent at once: this proposer leads, nothing is queued ahead of
+     * the value, and the pipeline window has room.
+     * @return true if a new value would start an instance straight away.
+     */
+    public synchronized boolean hasPipelineRoom() {
+        return leader && recoveringInstances.isEmpty() && waitingValues.isEmpty()
+                && inFlight.size() < config.getPipelineWindow();
+    }
+
+    /**
+     * Get the highest number of Multi-Paxos instances that were in flight at once.
+     * @return The peak in-flight instance count.
+     */
+    public synchronized int getPeakInFlight() {
+        return peakInFlight;
+    }
+
+    // A value sent for one Multi-Paxos instance, with its own quorum tracker and resend timer
+    private static class Proposal {
+        private final String value;
+        // Taken from the proposer's quorum system and given back once the instance is chosen or replaced
+        private final QuorumTracker acceptances;
+        private ScheduledFuture<?> timeout;
+
+        Proposal(String value, QuorumTracker acceptances) {
+            this.value = value;
+            this.acceptances = acceptances;
+        }
+    }
 }
\ No newline at end of file
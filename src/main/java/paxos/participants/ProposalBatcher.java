@@ -0,0 +1,175 @@
+package paxos.participants;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import paxos.utils.Histogram;
+
+/**
+ * Gathers client values and proposes them through a Multi-Paxos proposer as one batch value per instance.
+ *
+ * The flush policy adapts to load. While the proposer leads and its pipeline window has room, a value is
+ * proposed at once, so a lightly loaded system pays no batching delay. Otherwise values accumulate until the batch
+ * reaches the configured size in bytes or its oldest value has waited the configured delay, so batches grow with
+ * the load and each instance carries more values.
+ *
+ * A batch starts with BATCH_MARKER, a control character that client values do not contain, followed by the
+ * number of values it carries. Each value is Base64 encoded in the batch, so values may contain the separators
+ * of the text wire format. Use unpacking to deliver the values of decided batches one by one; a decided value
+ * that is not a well formed batch is delivered unchanged.
+ *
+ * This class is thread-safe. Do not submit from a decision listener: listeners run under the proposer's lock.
+ */
+public class ProposalBatcher {
+    // Marks a decided value as a batch, values proposed directly must not start with it
+    public static final char BATCH_MARKER = '\u0001';
+    private static final char SEPARATOR = ',';
+
+    private final PaxosProposer proposer;
+    private final PaxosConfig config;
+    private final List<String> pending = new ArrayList<>();
+    private int pendingBytes = 0;
+    private ScheduledFuture<?> flushTimer;
+    private final ScheduledExecutorService timer;
+
+    private final Histogram batchSizeHistogram = new Histogram();
+    private final Histogram batchBytesHistogram = new Histogram();
+
+    /**
+     * Constructor for ProposalBatcher.
+     * @param proposer The proposer batches are proposed through. It should run in Multi-Paxos mode.
+     * @param config The config holding the batch size and delay limits.
+     */
+    public ProposalBatcher(PaxosProposer proposer, PaxosConfig config) {
+        this.proposer = proposer;
+        this.config = config;
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+                task -> config.getExecutionMode().newThread(task, "proposal-batcher-" + proposer.getServerNodeID()));
+    }
+
+    /**
+     * Add a value to the current batch, proposing the batch if the flush policy says so.
+     * @param value The client value.
+     */
+    public synchronized void submit(String value) {
+        String encoded = Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        pending.add(encoded);
+        pendingBytes += encoded.length() + 1;
+
+        if (pendingBytes >= config.getBatchMaxBytes() || proposer.hasPipelineRoom()) {
+            // Full batch, or the proposer is idle enough that waiting would only add latency
+            flush();
+        } else if (flushTimer == null) {
+            flushTimer = timer.schedule(this::flush, config.getBatchMaxDelayMicros(), TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * Propose the values gathered so far as one batch.
+     */
+    public synchronized void flush() {
+        if (flushTimer != null) {
+            flushTimer.cancel(false);
+            flushTimer = null;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        StringBuilder batch = new StringBuilder(12 + pendingBytes);
+        batch.append(BATCH_MARKER).append(pending.size());
+        for (String encoded : pending) {
+            batch.append(SEPARATOR).append(encoded);
+        }
+        batchSizeHistogram.record(pending.size());
+        batchBytesHistogram.record(pendingBytes);
+        pending.clear();
+        pendingBytes = 0;
+        // Proposed under the batcher's lock, so batches reach the proposer in submission order
+        proposer.propose(batch.toString());
+    }
+
+    /**
+     * Propose any remaining values and stop the flush timer.
+     */
+    public void close() {
+        flush();
+        timer.shutdownNow();
+    }
+
+    /**
+     * Get the histogram of values per proposed batch.
+     * @return The batch size histogram.
+     */
+    public Histogram getBatchSizeHistogram() {
+        return batchSizeHistogram;
+    }
+
+    /**
+     * Get the histogram of encoded bytes per proposed batch.
+     * @return The batch bytes histogram.
+     */
+    public Histogram getBatchBytesHistogram() {
+        return batchBytesHistogram;
+    }
+
+    /**
+     * Wrap a listener so that each value of a decided batch is delivered separately, in batch order.
+     * Decided values that are not batches, such as PaxosProposer.NO_OP, are delivered unchanged.
+     * @param listener The listener for individual values.
+     * @return A listener to set on the replicated log.
+     */
+    public static ReplicatedLog.DecisionListener unpacking(ReplicatedLog.DecisionListener listener) {
+        return (slot, value) -> {
+            for (String entry : unpack(value)) {
+                listener.onDecided(slot, entry);
+            }
+        };
+    }
+
+    /**
+     * Split a decided value into the values it carries.
+     * @param value The decided value.
+     * @return The values of the batch, or the value itself if it is not a well formed batch.
+     */
+    public static List<String> unpack(String value) {
+        List<String> values = new ArrayList<>();
+        if (value == null || value.isEmpty() || value.charAt(0) != BATCH_MARKER) {
+            values.add(value);
+            return values;
+        }
+        int countEnd = value.indexOf(SEPARATOR);
+        int count;
+        try {
+            count = Integer.parseInt(countEnd < 0 ? value.substring(1) : value.substring(1, countEnd));
+        } catch (NumberFormatException e) {
+            values.add(value);
+            return values;
+        }
+        Base64.Decoder decoder = Base64.getDecoder();
+        int start = countEnd + 1;
+        while (countEnd >= 0 && start <= value.length()) {
+            int end = value.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = value.length();
+            }
+            try {
+                values.add(new String(decoder.decode(value.substring(start, end)), StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                break;
+            }
+            start = end + 1;
+        }
+        if (values.size() != count || start <= value.length()) {
+            // Not a batch this class proposed, so it is a plain value after all
+            values.clear();
+            values.add(value);
+        }
+        return values;
+    }
+}
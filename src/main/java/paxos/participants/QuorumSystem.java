@@ -0,0 +1,188 @@
+package paxos.participants;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which sets of acceptors form a quorum for each phase, and hands out the trackers that count them.
+ *
+ * Each node has a weight, 1 unless configured otherwise, and a phase needs its answering acceptors to reach that
+ * phase's weight threshold. A simple majority is the usual rule for both phases. Flexible Paxos only needs every
+ * phase 1 quorum to intersect every phase 2 quorum, so the thresholds may differ as long as together they exceed
+ * the total weight. The thresholds are computed once, when the system is created for a node list.
+ *
+ * Trackers released after use are kept and handed out again, so a proposer with many instances in flight does
+ * not allocate one per instance. This class is not thread-safe; it belongs to one participant.
+ */
+public final class QuorumSystem {
+    private final int[] weights;
+    private final int totalWeight;
+    private final int phase1Threshold;
+    private final int phase2Threshold;
+    private final ArrayDeque<QuorumTracker> pool = new ArrayDeque<>();
+
+    /**
+     * Enum for the two phases a quorum is counted for.
+     */
+    public enum Phase {
+        // Promises to a prepare request
+        PREPARE,
+        // Acceptances of an accept request
+        ACCEPT
+    }
+
+    /**
+     * Constructor for QuorumSystem.
+     * @param weights The weight of each node, by ordinal.
+     * @param phase1Threshold The weight of promises needed to enter phase 2.
+     * @param phase2Threshold The weight of acceptances needed for a value to be chosen.
+     */
+    public QuorumSystem(int[] weights, int phase1Threshold, int phase2Threshold) {
+        if (weights.length == 0) {
+            throw new IllegalArgumentException("A quorum needs at least one node");
+        }
+        int total = 0;
+        for (int weight : weights) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("Quorum weights must not be negative");
+            }
+            total += weight;
+        }
+        if (phase1Threshold < 1 || phase1Threshold > total || phase2Threshold < 1 || phase2Threshold > total) {
+            throw new IllegalArgumentException("Quorum thresholds must be between 1 and the total weight " + total);
+        }
+        if (phase1Threshold + phase2Threshold <= total) {
+            throw new IllegalArgumentException("Phase 1 and phase 2 quorums of " + phase1Threshold + " and "
+                    + phase2Threshold + " need not intersect with a total weight of " + total);
+        }
+        this.weights = weights.clone();
+        this.totalWeight = total;
+        this.phase1Threshold = phase1Threshold;
+        this.phase2Threshold = phase2Threshold;
+    }
+
+    /**
+     * Create a quorum system where more than half of the nodes form a quorum in both phases.
+     * @param nodeCount The number of nodes.
+     * @return The quorum system.
+     */
+    public static QuorumSystem majority(int nodeCount) {
+        int[] weights = new int[nodeCount];
+        Arrays.fill(weights, 1);
+        return new QuorumSystem(weights, nodeCount / 2 + 1, nodeCount / 2 + 1);
+    }
+
+    /**
+     * Create a quorum system where nodes holding more than half of the total weight form a quorum in both phases.
+     * @param weights The weight of each node, by ordinal.
+     * @return The quorum system.
+     */
+    public static QuorumSystem weighted(int[] weights) {
+        int total = Arrays.stream(weights).sum();
+        return new QuorumSystem(weights, total / 2 + 1, total / 2 + 1);
+    }
+
+    /**
+     * Create a Flexible Paxos quorum system with a quorum size for each phase.
+     * @param nodeCount The number of nodes.
+     * @param phase1Size The number of promises needed to enter phase 2.
+     * @param phase2Size The number of acceptances needed for a value to be chosen.
+     * @return The quorum system.
+     */
+    public static QuorumSystem flexible(int nodeCount, int phase1Size, int phase2Size) {
+        int[] weights = new int[nodeCount];
+        Arrays.fill(weights, 1);
+        return new QuorumSystem(weights, phase1Size, phase2Size);
+    }
+
+    /**
+     * Create the quorum system a config describes for a node list. Nodes weigh what the config gives them, or 1.
+     * Phases without a configured quorum size need the smallest weight that intersects the other phase's quorum,
+     * or more than half of the total weight if neither phase has one.
+     * @param config The config.
+     * @param nodes The nodes, in ordinal order.
+     * @return The quorum system.
+     * @throws IllegalArgumentException If the configured quorum sizes do not fit the nodes or need not intersect.
+     */
+    public static QuorumSystem of(PaxosConfig config, List<PaxosParticipant.Node> nodes) {
+        Map<String, Integer> configured = config.getQuorumWeights();
+        int[] weights = new int[nodes.size()];
+        int total = 0;
+        for (int ordinal = 0; ordinal < weights.length; ordinal++) {
+            weights[ordinal] = configured == null ? 1 : configured.getOrDefault(nodes.get(ordinal).getNodeName(), 1);
+            total += weights[ordinal];
+        }
+        int phase1Threshold = config.getPhase1QuorumSize();
+        int phase2Threshold = config.getPhase2QuorumSize();
+        if (phase1Threshold == 0 && phase2Threshold == 0) {
+            phase1Threshold = total / 2 + 1;
+            phase2Threshold = total / 2 + 1;
+        } else if (phase1Threshold == 0) {
+            phase1Threshold = total - phase2Threshold + 1;
+        } else if (phase2Threshold == 0) {
+            phase2Threshold = total - phase1Threshold + 1;
+        }
+        return new QuorumSystem(weights, phase1Threshold, phase2Threshold);
+    }
+
+    /**
+     * Get an empty tracker for a phase, reusing a released one if there is one.
+     * @param phase The phase the tracker counts answers for.
+     * @return The tracker.
+     */
+    public QuorumTracker acquire(Phase phase) {
+        int threshold = getThreshold(phase);
+        QuorumTracker tracker = pool.poll();
+        if (tracker == null) {
+            return new QuorumTracker(this, weights, threshold);
+        }
+        tracker.reset(threshold);
+        return tracker;
+    }
+
+    /**
+     * Give back a tracker that is no longer used, to be handed out again.
+     * @param tracker The tracker, or null.
+     */
+    public void release(QuorumTracker tracker) {
+        if (tracker != null && tracker.getSystem() == this) {
+            pool.push(tracker);
+        }
+    }
+
+    /**
+     * Get the weight needed for a quorum in a phase.
+     * @param phase The phase.
+     * @return The threshold.
+     */
+    public int getThreshold(Phase phase) {
+        return phase == Phase.PREPARE ? phase1Threshold : phase2Threshold;
+    }
+
+    /**
+     * Get the weight of a node.
+     * @param ordinal The node's index in the node list.
+     * @return The weight.
+     */
+    public int getWeight(int ordinal) {
+        return weights[ordinal];
+    }
+
+    public int getTotalWeight() {
+        return totalWeight;
+    }
+
+    public int getNodeCount() {
+        return weights.length;
+    }
+
+    /**
+     * Get the number of released trackers waiting to be handed out again.
+     * @return The pool size.
+     */
+    public int getPooledCount() {
+        return pool.size();
+    }
+}
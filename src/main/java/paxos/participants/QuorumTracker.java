@@ -0,0 +1,104 @@
+package paxos.participants;
+
+import java.util.Arrays;
+
+/**
+ * Tracks which acceptors have answered one phase of one proposal, as a bitset indexed by node ordinal.
+ *
+ * Adding an acceptor is a word lookup and an OR, and an acceptor that answers twice, for example through a
+ * retransmitted reply, is only counted once. The weight needed for a quorum is fixed by the quorum system the
+ * tracker comes from, so checking for a quorum is a single comparison.
+ *
+ * Trackers are handed out and taken back by a QuorumSystem. This class is not thread-safe.
+ */
+public final class QuorumTracker {
+    private final QuorumSystem system;
+    private final long[] members;
+    // Weight of each node, by ordinal
+    private final int[] weights;
+    private int threshold;
+    private int weight = 0;
+    private int size = 0;
+
+    QuorumTracker(QuorumSystem system, int[] weights, int threshold) {
+        this.system = system;
+        this.weights = weights;
+        this.members = new long[(weights.length + Long.SIZE - 1) / Long.SIZE];
+        this.threshold = threshold;
+    }
+
+    /**
+     * Count an acceptor's answer, unless it has already been counted.
+     * @param ordinal The acceptor's index in the participant's node list.
+     * @return true if the acceptor was not counted before, false if it was or the ordinal is not a node.
+     */
+    public boolean add(int ordinal) {
+        if (ordinal < 0 || ordinal >= weights.length) {
+            return false;
+        }
+        long bit = 1L << ordinal;
+        int word = ordinal >>> 6;
+        if ((members[word] & bit) != 0) {
+            return false;
+        }
+        members[word] |= bit;
+        weight += weights[ordinal];
+        size++;
+        return true;
+    }
+
+    /**
+     * Check if an acceptor's answer has been counted.
+     * @param ordinal The acceptor's index in the participant's node list.
+     * @return true if the acceptor has been counted.
+     */
+    public boolean contains(int ordinal) {
+        return ordinal >= 0 && ordinal < weights.length && (members[ordinal >>> 6] & 1L << ordinal) != 0;
+    }
+
+    /**
+     * Check if the acceptors counted so far form a quorum.
+     * @return true once their total weight reaches the quorum threshold.
+     */
+    public boolean isReached() {
+        return weight >= threshold;
+    }
+
+    /**
+     * Get the number of acceptors counted.
+     * @return The acceptor count.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the total weight of the acceptors counted.
+     * @return The weight.
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Get the weight needed for a quorum.
+     * @return The quorum threshold.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    QuorumSystem getSystem() {
+        return system;
+    }
+
+    /**
+     * Forget every acceptor counted, and set the weight needed for the next quorum.
+     */
+    void reset(int threshold) {
+        Arrays.fill(members, 0);
+        this.threshold = threshold;
+        this.weight = 0;
+        this.size = 0;
+    }
+}
@@ -0,0 +1,152 @@
+package paxos.participants;
+
+import java.util.Arrays;
+
+/**
+ * The sequence of values decided by Multi-Paxos, one per slot.
+ *
+ * Slots can be decided in any order, but decided values are delivered to the listener strictly in slot order:
+ * a value is delivered once every lower slot has been delivered. Slots start at 1.
+ *
+ * Delivered slots can be truncated once a snapshot covers them, and a log that lags behind can skip ahead by
+ * installing a snapshot. Truncated slots still count as decided, but their values are gone.
+ *
+ * This class is thread-safe. The listener is called while the log's lock is held, so it should return quickly.
+ */
+public class ReplicatedLog {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // decided[i] holds slot base + i
+    private String[] decided = new String[INITIAL_CAPACITY];
+    private int base = 1;
+    private int nextToDeliver = 1;
+    private int decidedCount = 0;
+    private DecisionListener listener;
+
+    /**
+     * Callback for values delivered from the log in slot order.
+     */
+    public interface DecisionListener {
+        void onDecided(int slot, String value);
+    }
+
+    /**
+     * Set the listener decided values are delivered to. Values delivered before it was set are not replayed.
+     * @param listener The listener, or null to stop delivering.
+     */
+    public synchronized void setListener(DecisionListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Record the value decided for a slot and deliver every value that is now in order.
+     * @param slot The slot, at least 1.
+     * @param value The decided value.
+     * @return true if the slot was newly decided, false if it was already decided.
+     */
+    public synchronized boolean decide(int slot, String value) {
+        if (slot < 1) {
+            throw new IllegalArgumentException("Slots start at 1");
+        }
+        int index = slot - base;
+        if (slot < nextToDeliver || (index < decided.length && decided[index] != null)) {
+            return false;
+        }
+        if (index >= decided.length) {
+            decided = Arrays.copyOf(decided, Math.max(index + 1, decided.length * 2));
+        }
+        decided[index] = value;
+        decidedCount++;
+        deliver();
+        return true;
+    }
+
+    /**
+     * Drop the values of delivered slots below the given one, for example once a snapshot covers them.
+     * @param slot The first slot to keep. Slots that have not been delivered yet are always kept.
+     */
+    public synchronized void truncateBefore(int slot) {
+        slot = Math.min(slot, nextToDeliver);
+        if (slot <= base) {
+            return;
+        }
+        int dropped = slot - base;
+        System.arraycopy(decided, dropped, decided, 0, decided.length - dropped);
+        Arrays.fill(decided, decided.length - dropped, decided.length, null);
+        base = slot;
+    }
+
+    /**
+     * Skip ahead to a snapshot: every slot up to the snapshot's slot counts as decided and delivered without
+     * being passed to the listener, and decided slots above it are delivered.
+     * @param slot The last slot covered by the snapshot.
+     * @return true if the log moved ahead, false if it had already delivered the slot.
+     */
+    public synchronized boolean installSnapshot(int slot) {
+        if (slot < nextToDeliver) {
+            return false;
+        }
+        // Slots decided here but not delivered are covered by the snapshot
+        for (int s = nextToDeliver; s <= slot; s++) {
+            int index = s - base;
+            if (index < decided.length && decided[index] != null) {
+                decidedCount--;
+            }
+        }
+        decidedCount += slot - nextToDeliver + 1;
+        int dropped = Math.min(slot + 1 - base, decided.length);
+        System.arraycopy(decided, dropped, decided, 0, decided.length - dropped);
+        Arrays.fill(decided, decided.length - dropped, decided.length, null);
+        base = slot + 1;
+        nextToDeliver = slot + 1;
+        deliver();
+        return true;
+    }
+
+    private void deliver() {
+        while (nextToDeliver - base < decided.length && decided[nextToDeliver - base] != null) {
+            if (listener != null) {
+                listener.onDecided(nextToDeliver, decided[nextToDeliver - base]);
+            }
+            nextToDeliver++;
+        }
+    }
+
+    /**
+     * Get the value decided for a slot.
+     * @param slot The slot.
+     * @return The decided value, or null if the slot is not decided or has been truncated.
+     */
+    public synchronized String get(int slot) {
+        int index = slot - base;
+        return index >= 0 && index < decided.length ? decided[index] : null;
+    }
+
+    public synchronized boolean isDecided(int slot) {
+        return slot > 0 && (slot < base || get(slot) != null);
+    }
+
+    /**
+     * Get the lowest slot whose value is still held. Slots below it have been truncated.
+     * @return The first slot kept.
+     */
+    public synchronized int getFirstSlot() {
+        return base;
+    }
+
+    /**
+     * Get the lowest slot that is not decided yet. Every slot below it has been delivered.
+     * @return The first undecided slot.
+     */
+    public synchronized int getFirstUndecidedSlot() {
+        return nextToDeliver;
+    }
+
+    /**
+     * Get the number of decided slots, including those still waiting for a lower slot.
+     * @return The decided slot count.
+     */
+    public synchronized int getDecidedCount() {
+        return decidedCount;
+    }
+}
@@ -0,0 +1,120 @@
+package paxos.participants;
+
+import paxos.storage.SlotStore;
+
+import java.util.Arrays;
+
+/**
+ * Per-slot accepted proposals of an acceptor, kept in parallel primitive arrays indexed by slot number.
+ *
+ * A slot is a Multi-Paxos instance. Compared with a map of boxed keys and entry objects, a slot costs one long
+ * and one reference, and looking one up is an array index. The arrays grow by doubling as higher slots are used,
+ * and are shifted down when low slots are truncated.
+ *
+ * This class is not thread-safe; it belongs to the acceptor's processing thread.
+ */
+class SlotTable implements SlotStore {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int EMPTY = -1;
+
+    private long[] proposalNumbers;
+    private String[] values;
+    // Index 0 of the arrays holds this slot
+    private int base = 1;
+    private int highestSlot = 0;
+
+    SlotTable() {
+        this.proposalNumbers = new long[INITIAL_CAPACITY];
+        this.values = new String[INITIAL_CAPACITY];
+        Arrays.fill(proposalNumbers, EMPTY);
+    }
+
+    /**
+     * Record the proposal accepted for a slot, replacing any earlier one.
+     * @param slot The slot, at least 1.
+     * @param proposalNumber The proposal number the value was accepted under.
+     * @param value The accepted value.
+     */
+    @Override
+    public void put(int slot, long proposalNumber, String value) {
+        if (slot < 1) {
+            throw new IllegalArgumentException("Slots start at 1");
+        }
+        if (slot < base) {
+            // Already truncated, for example a late accept for a compacted slot
+            return;
+        }
+        ensureCapacity(slot - base + 1);
+        proposalNumbers[slot - base] = proposalNumber;
+        values[slot - base] = value;
+        highestSlot = Math.max(highestSlot, slot);
+    }
+
+    /**
+     * Check if a proposal was accepted for a slot.
+     * @param slot The slot.
+     * @return true if the slot holds an accepted proposal.
+     */
+    @Override
+    public boolean contains(int slot) {
+        return slot >= base && slot <= highestSlot && proposalNumbers[slot - base] != EMPTY;
+    }
+
+    /**
+     * Get the proposal number of the accepted proposal for a slot.
+     * @param slot The slot.
+     * @return The proposal number, or -1 if nothing was accepted.
+     */
+    @Override
+    public long getProposalNumber(int slot) {
+        return contains(slot) ? proposalNumbers[slot - base] : EMPTY;
+    }
+
+    /**
+     * Get the accepted value for a slot.
+     * @param slot The slot.
+     * @return The value, or null if nothing was accepted.
+     */
+    @Override
+    public String getValue(int slot) {
+        return contains(slot) ? values[slot - base] : null;
+    }
+
+    /**
+     * Get the highest slot a proposal was accepted for.
+     * @return The highest slot, or 0 if the table is empty.
+     */
+    @Override
+    public int getHighestSlot() {
+        return highestSlot;
+    }
+
+    @Override
+    public void truncateBefore(int slot) {
+        if (slot <= base) {
+            return;
+        }
+        int dropped = Math.min(slot - base, proposalNumbers.length);
+        System.arraycopy(proposalNumbers, dropped, proposalNumbers, 0, proposalNumbers.length - dropped);
+        System.arraycopy(values, dropped, values, 0, values.length - dropped);
+        Arrays.fill(proposalNumbers, proposalNumbers.length - dropped, proposalNumbers.length, EMPTY);
+        Arrays.fill(values, values.length - dropped, values.length, null);
+        base = slot;
+    }
+
+    @Override
+    public int getFirstSlot() {
+        return base;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= proposalNumbers.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, proposalNumbers.length * 2);
+        int oldCapacity = proposalNumbers.length;
+        proposalNumbers = Arrays.copyOf(proposalNumbers, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+        Arrays.fill(proposalNumbers, oldCapacity, newCapacity, EMPTY);
+    }
+}
@@ -0,0 +1,127 @@
+package paxos.participants;
+
+import paxos.messages.PaxosMessage;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A state machine snapshot covering every slot up to and including its slot.
+ *
+ * A snapshot is sent to a peer as SNAPSHOT messages, each carrying one chunk. The chunks can arrive in any order;
+ * an Assembler puts them back together.
+ */
+public final class Snapshot {
+    private final int slot;
+    private final byte[] state;
+
+    /**
+     * Constructor for Snapshot.
+     * @param slot The last slot covered.
+     * @param state The serialized state machine.
+     */
+    public Snapshot(int slot, byte[] state) {
+        this.slot = slot;
+        this.state = state;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public byte[] getState() {
+        return state;
+    }
+
+    /**
+     * Get the number of chunks the snapshot is sent in. An empty snapshot is still sent as one chunk.
+     * @param chunkBytes The largest number of state bytes per chunk.
+     * @return The chunk count.
+     */
+    public int getChunkCount(int chunkBytes) {
+        return Math.max(1, (state.length + chunkBytes - 1) / chunkBytes);
+    }
+
+    /**
+     * Create the message carrying one chunk.
+     * @param chunkIndex The chunk, from 0 to getChunkCount - 1.
+     * @param chunkBytes The largest number of state bytes per chunk.
+     * @param participantID The sender.
+     * @return The SNAPSHOT message.
+     */
+    public PaxosMessage toChunk(int chunkIndex, int chunkBytes, String participantID) {
+        int start = chunkIndex * chunkBytes;
+        byte[] chunk = Arrays.copyOfRange(state, start, Math.min(state.length, start + chunkBytes));
+        String value = getChunkCount(chunkBytes) + ":" + Base64.getEncoder().encodeToString(chunk);
+        return PaxosMessage.snapshotChunkMessage(chunkIndex, value, participantID, slot);
+    }
+
+    /**
+     * Collects the chunks of snapshots sent by several peers.
+     *
+     * This class is not thread-safe.
+     */
+    public static class Assembler {
+        // The transfer in progress from each sender
+        private final Map<String, Transfer> transfers = new HashMap<>();
+
+        /**
+         * Add a received chunk.
+         * @param chunk The SNAPSHOT message.
+         * @return The snapshot if this chunk completed it, otherwise null.
+         * @throws IllegalArgumentException if the chunk is malformed.
+         */
+        public Snapshot add(PaxosMessage chunk) {
+            String value = chunk.getValue();
+            int separator = value == null ? -1 : value.indexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid snapshot chunk: " + value);
+            }
+            int chunkCount = Integer.parseInt(value.substring(0, separator));
+            long chunkIndex = chunk.getProposalNumber();
+            if (chunkCount < 1 || chunkIndex < 0 || chunkIndex >= chunkCount) {
+                throw new IllegalArgumentException("Snapshot chunk " + chunkIndex + " out of range " + chunkCount);
+            }
+
+            Transfer transfer = transfers.get(chunk.getParticipantID());
+            if (transfer == null || transfer.slot != chunk.getInstance() || transfer.chunks.length != chunkCount) {
+                // A newer snapshot replaces an unfinished transfer from the same sender
+                transfer = new Transfer(chunk.getInstance(), chunkCount);
+                transfers.put(chunk.getParticipantID(), transfer);
+            }
+            if (transfer.chunks[(int) chunkIndex] == null) {
+                transfer.chunks[(int) chunkIndex] = Base64.getDecoder().decode(value.substring(separator + 1));
+                transfer.received++;
+            }
+            if (transfer.received < chunkCount) {
+                return null;
+            }
+
+            transfers.remove(chunk.getParticipantID());
+            int length = 0;
+            for (byte[] part : transfer.chunks) {
+                length += part.length;
+            }
+            byte[] state = new byte[length];
+            int position = 0;
+            for (byte[] part : transfer.chunks) {
+                System.arraycopy(part, 0, state, position, part.length);
+                position += part.length;
+            }
+            return new Snapshot(transfer.slot, state);
+        }
+
+        private static class Transfer {
+            private final int slot;
+            private final byte[][] chunks;
+            private int received = 0;
+
+            Transfer(int slot, int chunkCount) {
+                this.slot = slot;
+                this.chunks = new byte[chunkCount][];
+            }
+        }
+    }
+}
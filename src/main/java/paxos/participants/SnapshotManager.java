@@ -0,0 +1,236 @@
+package paxos.participants;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.*;
+
+/**
+ * Applies the values of a replicated log to a state machine, and keeps the log short with snapshots.
+ *
+ * Every snapshot interval slots, the state machine captures its state on the thread that delivers values. The
+ * snapshot is then written, optionally to the snapshot directory, on a background thread, so that the message
+ * processing thread never waits for it. Once a snapshot is complete, the log is truncated below it and the
+ * compaction listeners are told, for example an acceptor that can drop its per-instance state.
+ *
+ * A node that lags behind can install a snapshot received from a peer instead of learning every slot.
+ *
+ * This class is thread-safe.
+ */
+public class SnapshotManager implements ReplicatedLog.DecisionListener, AutoCloseable {
+    private static final String FILE_PREFIX = "snapshot-";
+    private static final String FILE_SUFFIX = ".snap";
+    private static final int CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final ReplicatedLog log;
+    private final StateMachine stateMachine;
+    private final PaxosConfig config;
+    private final ExecutorService snapshotExecutor;
+    private final List<CompactionListener> compactionListeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot latestSnapshot;
+    // Guarded by the log's lock, which is held while values are delivered
+    private int lastSnapshotSlot = 0;
+    private boolean snapshotInProgress = false;
+    private volatile long snapshotCount = 0;
+
+    private static final Logger logger = Logger.getLogger(SnapshotManager.class.getName());
+
+    /**
+     * Callback for when the log has been compacted below a snapshot.
+     */
+    public interface CompactionListener {
+        void onCompacted(int firstSlotKept);
+    }
+
+    /**
+     * Constructor for SnapshotManager. Installs the newest snapshot found in the snapshot directory, if any,
+     * and becomes the log's listener.
+     * @param log The log whose values are applied.
+     * @param stateMachine The state machine values are applied to.
+     * @param config The config holding the snapshot interval and directory.
+     */
+    public SnapshotManager(ReplicatedLog log, StateMachine stateMachine, PaxosConfig config) {
+        this.log = log;
+        this.stateMachine = stateMachine;
+        this.config = config;
+        this.snapshotExecutor = Executors.newSingleThreadExecutor(
+                task -> config.getExecutionMode().newThread(task, "snapshot-writer"));
+        Snapshot stored = loadLatestSnapshot();
+        if (stored != null) {
+            install(stored);
+        }
+        log.setListener(this);
+    }
+
+    /**
+     * Register a listener for log compaction.
+     * @param listener Called on the snapshot thread with the first slot kept.
+     */
+    public void addCompactionListener(CompactionListener listener) {
+        compactionListeners.add(listener);
+    }
+
+    @Override
+    public void onDecided(int slot, String value) {
+        // Called with the log's lock held
+        stateMachine.apply(slot, value);
+        int interval = config.getSnapshotIntervalSlots();
+        if (interval > 0 && !snapshotInProgress && slot - lastSnapshotSlot >= interval) {
+            startSnapshot(slot);
+        }
+    }
+
+    private void startSnapshot(int slot) {
+        StateMachine.SnapshotWriter writer = stateMachine.captureSnapshot();
+        snapshotInProgress = true;
+        lastSnapshotSlot = slot;
+        snapshotExecutor.execute(() -> {
+            try {
+                Snapshot snapshot = new Snapshot(slot, writer.write());
+                store(snapshot);
+                latestSnapshot = snapshot;
+                logger.info("Took snapshot at slot " + slot + " of " + snapshot.getState().length + " bytes");
+                compact(slot + 1);
+                snapshotCount++;
+            } catch (IOException e) {
+                logger.warning("Failed to take snapshot at slot " + slot + ": " + e.getMessage());
+            } finally {
+                synchronized (log) {
+                    snapshotInProgress = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Install a snapshot from a peer, if it is ahead of the log. Decided values above the snapshot are applied
+     * after it.
+     * @param snapshot The snapshot.
+     * @return true if the snapshot was installed, false if the log had already passed it.
+     */
+    public boolean install(Snapshot snapshot) {
+        synchronized (log) {
+            if (snapshot.getSlot() < log.getFirstUndecidedSlot()) {
+                return false;
+            }
+            stateMachine.restoreSnapshot(snapshot.getState());
+            latestSnapshot = snapshot;
+            lastSnapshotSlot = snapshot.getSlot();
+            log.installSnapshot(snapshot.getSlot());
+        }
+        logger.info("Installed snapshot at slot " + snapshot.getSlot());
+        snapshotExecutor.execute(() -> {
+            try {
+                store(snapshot);
+            } catch (IOException e) {
+                logger.warning("Failed to store snapshot at slot " + snapshot.getSlot() + ": " + e.getMessage());
+            }
+            compact(snapshot.getSlot() + 1);
+        });
+        return true;
+    }
+
+    private void compact(int firstSlotKept) {
+        log.truncateBefore(firstSlotKept);
+        for (CompactionListener listener : compactionListeners) {
+            listener.onCompacted(firstSlotKept);
+        }
+    }
+
+    /**
+     * Write a snapshot to the snapshot directory, replacing the older ones. The file is written under a temporary
+     * name and renamed, so a crash never leaves a partial snapshot.
+     */
+    private void store(Snapshot snapshot) throws IOException {
+        Path directory = config.getSnapshotDirectory();
+        if (directory == null) {
+            return;
+        }
+        Files.createDirectories(directory);
+        Path file = directory.resolve(FILE_PREFIX + snapshot.getSlot() + FILE_SUFFIX);
+        Path temporary = directory.resolve(FILE_PREFIX + snapshot.getSlot() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer contents = ByteBuffer.wrap(snapshot.getState());
+            while (contents.hasRemaining()) {
+                channel.write(contents);
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path older : files) {
+                if (slotOf(older) < snapshot.getSlot()) {
+                    Files.deleteIfExists(older);
+                }
+            }
+        }
+    }
+
+    private Snapshot loadLatestSnapshot() {
+        Path directory = config.getSnapshotDirectory();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return null;
+        }
+        Path latest = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                if (latest == null || slotOf(file) > slotOf(latest)) {
+                    latest = file;
+                }
+            }
+            return latest == null ? null : new Snapshot(slotOf(latest), Files.readAllBytes(latest));
+        } catch (IOException e) {
+            logger.warning("Failed to load snapshot from " + directory + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static int slotOf(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+    }
+
+    /**
+     * Get the newest snapshot taken or installed.
+     * @return The snapshot, or null if there is none yet.
+     */
+    public Snapshot getLatestSnapshot() {
+        return latestSnapshot;
+    }
+
+    /**
+     * Get the number of snapshots taken, not counting installed ones.
+     * @return The snapshot count.
+     */
+    public long getSnapshotCount() {
+        return snapshotCount;
+    }
+
+    /**
+     * Stop the snapshot thread, waiting for a snapshot being written to finish.
+     */
+    @Override
+    public void close() {
+        snapshotExecutor.shutdown();
+        try {
+            if (!snapshotExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warning("Abandoned a snapshot still being written");
+                snapshotExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            snapshotExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package paxos.participants;
+
+import java.io.IOException;
+
+/**
+ * The application state that decided values are applied to, in slot order.
+ *
+ * A SnapshotManager applies values and takes snapshots of the state, so that the log below a snapshot can be
+ * truncated and peers that lag behind can be sent the snapshot instead of every slot.
+ */
+public interface StateMachine {
+    /**
+     * Apply a decided value.
+     * @param slot The slot the value was decided for.
+     * @param value The value.
+     */
+    void apply(int slot, String value);
+
+    /**
+     * Capture the state as of the last applied value. This is called on the thread that applies values and must
+     * return quickly, for example by handing over an immutable copy or a copy-on-write view. The slow part, turning
+     * the captured state into bytes, is done by the returned writer on a background thread.
+     * @return A writer for the captured state.
+     */
+    SnapshotWriter captureSnapshot();
+
+    /**
+     * Replace the state with a snapshot.
+     * @param state The snapshot bytes, as produced by a SnapshotWriter.
+     */
+    void restoreSnapshot(byte[] state);
+
+    /**
+     * Serializes a captured state.
+     */
+    interface SnapshotWriter {
+        byte[] write() throws IOException;
+    }
+}
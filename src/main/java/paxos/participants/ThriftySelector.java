@@ -0,0 +1,125 @@
+package paxos.participants;
+
+import java.util.BitSet;
+
+/**
+ * Picks the acceptors a thrifty proposer sends a request to: the fewest that form a quorum, preferring those
+ * that have answered fastest lately.
+ *
+ * Each acceptor's reply time is smoothed over its recent requests. Only one request per acceptor is timed at a
+ * time. An acceptor answers requests in the order it receives them, and participants write to a peer in the
+ * order they send, so a reply is never counted against a request sent after it. A late reply to an earlier,
+ * untimed request can end the timing early, which only makes that acceptor look a little faster.
+ * An acceptor whose timed request is still unanswered ranks as if it had taken at least as long as it has been
+ * waiting, so an acceptor that stops answering soon falls behind the others. Acceptors that have never been
+ * sent a request rank first, so that every acceptor gets measured.
+ *
+ * A selector belongs to the quorum system it was created for. This class is not thread-safe.
+ */
+public final class ThriftySelector {
+    // Weight of the newest reply time in the smoothed reply time, as a right shift: 1/4
+    private static final int SMOOTHING_SHIFT = 2;
+
+    private final QuorumSystem system;
+    // Smoothed reply time of each acceptor, by ordinal, in nanoseconds
+    private final long[] replyNanos;
+    // When the timed request to each acceptor was sent, or 0 if none is outstanding
+    private final long[] sentNanos;
+    private final boolean[] measured;
+    // Reused by select, ordinals fastest first
+    private final int[] ranked;
+    private final long[] rankedNanos;
+
+    /**
+     * Constructor for ThriftySelector.
+     * @param system The quorum system of the acceptors to select from.
+     */
+    public ThriftySelector(QuorumSystem system) {
+        this.system = system;
+        int nodeCount = system.getNodeCount();
+        this.replyNanos = new long[nodeCount];
+        this.sentNanos = new long[nodeCount];
+        this.measured = new boolean[nodeCount];
+        this.ranked = new int[nodeCount];
+        this.rankedNanos = new long[nodeCount];
+    }
+
+    /**
+     * Pick the acceptors to send a request for a phase to.
+     * @param phase The phase the request is answered in.
+     * @param now The current time, from System.nanoTime.
+     * @return The ordinals of the fastest acceptors whose weight reaches the phase's quorum threshold.
+     */
+    public BitSet select(QuorumSystem.Phase phase, long now) {
+        int nodeCount = ranked.length;
+        // Insertion sort, the node list of a council is short
+        for (int ordinal = 0; ordinal < nodeCount; ordinal++) {
+            long nanos = expectedNanos(ordinal, now);
+            int position = ordinal;
+            while (position > 0 && rankedNanos[position - 1] > nanos) {
+                ranked[position] = ranked[position - 1];
+                rankedNanos[position] = rankedNanos[position - 1];
+                position--;
+            }
+            ranked[position] = ordinal;
+            rankedNanos[position] = nanos;
+        }
+        BitSet selected = new BitSet(nodeCount);
+        int threshold = system.getThreshold(phase);
+        int weight = 0;
+        for (int position = 0; position < nodeCount && weight < threshold; position++) {
+            int ordinal = ranked[position];
+            if (system.getWeight(ordinal) > 0) {
+                selected.set(ordinal);
+                weight += system.getWeight(ordinal);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Note that a request was sent to an acceptor, timing it unless an earlier request is still unanswered.
+     * @param ordinal The acceptor's index in the participant's node list.
+     * @param now The current time, from System.nanoTime.
+     */
+    public void recordSent(int ordinal, long now) {
+        if (ordinal >= 0 && ordinal < sentNanos.length && sentNanos[ordinal] == 0) {
+            // 0 marks no outstanding request
+            sentNanos[ordinal] = now == 0 ? 1 : now;
+        }
+    }
+
+    /**
+     * Note a reply from an acceptor, ending its timed request.
+     * @param ordinal The acceptor's index in the participant's node list.
+     * @param now The current time, from System.nanoTime.
+     */
+    public void recordReply(int ordinal, long now) {
+        if (ordinal < 0 || ordinal >= sentNanos.length || sentNanos[ordinal] == 0) {
+            return;
+        }
+        long elapsed = Math.max(0, now - sentNanos[ordinal]);
+        sentNanos[ordinal] = 0;
+        if (measured[ordinal]) {
+            replyNanos[ordinal] += (elapsed - replyNanos[ordinal]) >> SMOOTHING_SHIFT;
+        } else {
+            replyNanos[ordinal] = elapsed;
+            measured[ordinal] = true;
+        }
+    }
+
+    /**
+     * Get how long an acceptor is expected to take to reply.
+     * @param ordinal The acceptor's index in the participant's node list.
+     * @param now The current time, from System.nanoTime.
+     * @return The smoothed reply time, or the wait for the outstanding request if longer, in nanoseconds.
+     */
+    public long expectedNanos(int ordinal, long now) {
+        long waiting = sentNanos[ordinal] == 0 ? 0 : now - sentNanos[ordinal];
+        return Math.max(replyNanos[ordinal], waiting);
+    }
+
+    QuorumSystem getSystem() {
+        return system;
+    }
+}
@@ -0,0 +1,524 @@
+package paxos.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.CRC32;
+import java.util.logging.*;
+
+/**
+ * An acceptor's write-ahead log, split into segments, with checkpoints.
+ *
+ * Records are appended to the newest segment, a WriteAheadLog, with the same group commit. Once a segment grows
+ * past the segment size, the next sync starts a new one. Every few segments the acceptor writes a checkpoint of
+ * its whole state, and the segments before it are deleted, so recovery reads the checkpoint and only the
+ * segments written after it.
+ *
+ * Recovery scans those segments in parallel on a fork-join pool. Replaying in any order is safe because
+ * promises and accepts only ever grow: the state of a slot is the accept with the highest proposal number,
+ * wherever it was logged.
+ *
+ * Files are named segment-N.wal and checkpoint-N.ckpt. checkpoint-N covers every segment before segment-N.
+ * A checkpoint is written under a temporary name and renamed, and ends with a CRC32 of its contents.
+ *
+ * This class is not thread-safe.
+ */
+public class CheckpointedLog implements AutoCloseable {
+    public static final long DEFAULT_SEGMENT_BYTES = 16L * 1024 * 1024;
+    public static final int DEFAULT_CHECKPOINT_INTERVAL_SEGMENTS = 8;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String CHECKPOINT_SUFFIX = ".ckpt";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int checkpointIntervalSegments;
+    private WriteAheadLog segment;
+    private long segmentSequence;
+    // First segment not covered by the newest checkpoint
+    private long checkpointSequence;
+    // Counts of the segments closed before the current one
+    private long closedAppendCount = 0;
+    private long closedSyncCount = 0;
+    private long checkpointCount = 0;
+
+    private static final Logger logger = Logger.getLogger(CheckpointedLog.class.getName());
+
+    /**
+     * The state read back by recovery.
+     */
+    public static class RecoveredState {
+        private long promise = -1;
+        private long acceptedProposalNumber = -1;
+        private String acceptedValue = null;
+        // Highest accept of each slot logged after the checkpoint
+        private final Map<Integer, SlotRecord> slots = new HashMap<>();
+        private long recordCount = 0;
+        private int segmentCount = 0;
+        // Length of the intact records of the newest segment, -1 in partial states without it
+        private long tailLength = -1;
+
+        private void onRecord(byte type, int instance, long proposalNumber, String value) {
+            recordCount++;
+            if (type == WriteAheadLog.PROMISE) {
+                promise = Math.max(promise, proposalNumber);
+            } else if (instance > 0) {
+                // A Multi-Paxos accept also raised the promise
+                promise = Math.max(promise, proposalNumber);
+                SlotRecord previous = slots.get(instance);
+                if (previous == null || proposalNumber >= previous.proposalNumber) {
+                    slots.put(instance, new SlotRecord(proposalNumber, value));
+                }
+            } else if (proposalNumber >= acceptedProposalNumber) {
+                acceptedProposalNumber = proposalNumber;
+                acceptedValue = value;
+            }
+        }
+
+        /**
+         * Combine the state of another range of segments into this one.
+         */
+        private RecoveredState merge(RecoveredState other) {
+            promise = Math.max(promise, other.promise);
+            if (other.acceptedProposalNumber > acceptedProposalNumber) {
+                acceptedProposalNumber = other.acceptedProposalNumber;
+                acceptedValue = other.acceptedValue;
+            }
+            for (Map.Entry<Integer, SlotRecord> entry : other.slots.entrySet()) {
+                slots.merge(entry.getKey(), entry.getValue(),
+                        (mine, theirs) -> theirs.proposalNumber > mine.proposalNumber ? theirs : mine);
+            }
+            recordCount += other.recordCount;
+            segmentCount += other.segmentCount;
+            tailLength = Math.max(tailLength, other.tailLength);
+            return this;
+        }
+
+        public long getPromise() {
+            return promise;
+        }
+
+        public long getAcceptedProposalNumber() {
+            return acceptedProposalNumber;
+        }
+
+        public String getAcceptedValue() {
+            return acceptedValue;
+        }
+
+        /**
+         * Get the slots accepted after the checkpoint, in slot order.
+         * @return The slots.
+         */
+        public int[] getSlots() {
+            int[] sorted = new int[slots.size()];
+            int i = 0;
+            for (int slot : slots.keySet()) {
+                sorted[i++] = slot;
+            }
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        /**
+         * Get the highest accept logged for a slot after the checkpoint.
+         * @param slot The slot.
+         * @return The accept, or null if the slot was not logged after the checkpoint.
+         */
+        public SlotRecord getSlot(int slot) {
+            return slots.get(slot);
+        }
+
+        public long getRecordCount() {
+            return recordCount;
+        }
+
+        public int getSegmentCount() {
+            return segmentCount;
+        }
+    }
+
+    /**
+     * An accepted proposal read back from the log.
+     */
+    public static class SlotRecord {
+        private final long proposalNumber;
+        private final String value;
+
+        SlotRecord(long proposalNumber, String value) {
+            this.proposalNumber = proposalNumber;
+            this.value = value;
+        }
+
+        public long getProposalNumber() {
+            return proposalNumber;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Scans a range of segments, splitting it in halves until each task scans one segment.
+     */
+    private static class ScanTask extends RecursiveTask<RecoveredState> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> segments;
+        private final int from;
+        private final int to;
+
+        ScanTask(List<Path> segments, int from, int to) {
+            this.segments = segments;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected RecoveredState compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                ScanTask left = new ScanTask(segments, from, middle);
+                left.fork();
+                RecoveredState right = new ScanTask(segments, middle, to).compute();
+                return left.join().merge(right);
+            }
+            RecoveredState state = new RecoveredState();
+            try {
+                long length = WriteAheadLog.scan(segments.get(from), state::onRecord);
+                state.segmentCount = 1;
+                if (from == segments.size() - 1) {
+                    state.tailLength = length;
+                } else if (length < Files.size(segments.get(from))) {
+                    logger.warning("Segment " + segments.get(from) + " has a corrupt record, the records after it are lost");
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to scan " + segments.get(from), e);
+            }
+            return state;
+        }
+    }
+
+    /**
+     * Callback for the slots of a checkpoint, read back before the segments are scanned.
+     */
+    public interface CheckpointHandler {
+        void onSlot(int slot, long proposalNumber, String value);
+    }
+
+    private CheckpointedLog(Path directory, long segmentBytes, int checkpointIntervalSegments) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.checkpointIntervalSegments = checkpointIntervalSegments;
+    }
+
+    /**
+     * Open a log, recovering its state: the newest checkpoint first, then the segments written after it,
+     * scanned in parallel.
+     * @param directory The directory of the log, created if it does not exist.
+     * @param segmentBytes The size past which a segment is closed and a new one started.
+     * @param checkpointIntervalSegments The number of segments after which checkpointNeeded reports true.
+     * @param handler Called for every slot held in the checkpoint, before the segments are scanned.
+     * @param recovered Receives the recovered state: the checkpoint's promise and single decision, overridden by
+     *                  the segments, and the slots logged after the checkpoint.
+     * @return The log, ready for appends.
+     * @throws IOException if the log cannot be read or a checkpoint is corrupt.
+     */
+    public static CheckpointedLog open(Path directory, long segmentBytes, int checkpointIntervalSegments,
+                                       CheckpointHandler handler, RecoveredState recovered) throws IOException {
+        Files.createDirectories(directory);
+        CheckpointedLog log = new CheckpointedLog(directory, segmentBytes, checkpointIntervalSegments);
+
+        long checkpointSequence = log.readCheckpoint(handler, recovered);
+        log.checkpointSequence = checkpointSequence;
+        List<Path> segments = new ArrayList<>();
+        for (long sequence : listSequences(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            Path segment = log.segmentPath(sequence);
+            if (sequence < checkpointSequence) {
+                // Left over from a crash between a checkpoint and the clean-up after it
+                Files.deleteIfExists(segment);
+            } else {
+                segments.add(segment);
+            }
+        }
+
+        if (segments.isEmpty()) {
+            log.segmentSequence = checkpointSequence;
+            log.segment = new WriteAheadLog(log.segmentPath(checkpointSequence), 0);
+            return log;
+        }
+        RecoveredState tail;
+        try {
+            tail = ForkJoinPool.commonPool().invoke(new ScanTask(segments, 0, segments.size()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        recovered.merge(tail);
+        log.segmentSequence = sequenceOf(segments.get(segments.size() - 1), SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        log.segment = new WriteAheadLog(log.segmentPath(log.segmentSequence), tail.tailLength);
+        logger.info("Recovered " + tail.recordCount + " records from " + segments.size() + " segments of " + directory);
+        return log;
+    }
+
+    /**
+     * Buffer a promise. It is not durable until the next sync.
+     * @param proposalNumber The promised proposal number.
+     */
+    public void appendPromise(long proposalNumber) {
+        segment.appendPromise(proposalNumber);
+    }
+
+    /**
+     * Buffer an accept. It is not durable until the next sync.
+     * @param instance The instance, 0 for the single decision.
+     * @param proposalNumber The accepted proposal number.
+     * @param value The accepted value.
+     */
+    public void appendAccept(int instance, long proposalNumber, String value) {
+        segment.appendAccept(instance, proposalNumber, value);
+    }
+
+    /**
+     * Write every buffered record and force it to disk with one flush. A segment that has grown past the
+     * segment size is then closed, and the next record starts a new one.
+     * @throws IOException if the write or flush fails.
+     */
+    public void sync() throws IOException {
+        segment.sync();
+        if (segment.getSize() >= segmentBytes) {
+            startSegment(segmentSequence + 1);
+        }
+    }
+
+    private void startSegment(long sequence) throws IOException {
+        closedAppendCount += segment.getAppendCount();
+        closedSyncCount += segment.getSyncCount();
+        segment.close();
+        segment = new WriteAheadLog(segmentPath(sequence), 0);
+        segmentSequence = sequence;
+    }
+
+    /**
+     * Check if enough segments were written since the newest checkpoint that a new one is due.
+     * @return true if a checkpoint is due.
+     */
+    public boolean checkpointNeeded() {
+        return segmentSequence - checkpointSequence >= checkpointIntervalSegments;
+    }
+
+    /**
+     * Write a checkpoint of the acceptor's state, start a new segment, and delete the segments it covers.
+     * Records buffered so far are synced first. With a MappedSlotStore the slots are already on disk, so the
+     * store is forced instead of copying its slots into the checkpoint.
+     * @param promise The highest promised proposal number.
+     * @param acceptedProposalNumber The proposal number of the single decision's accepted value.
+     * @param acceptedValue The single decision's accepted value.
+     * @param slots The acceptor's slots.
+     * @throws IOException if the checkpoint cannot be written. The log then keeps appending to the current segment.
+     */
+    public void checkpoint(long promise, long acceptedProposalNumber, String acceptedValue, SlotStore slots) throws IOException {
+        segment.sync();
+        boolean slotsInStore = slots instanceof MappedSlotStore;
+        if (slotsInStore) {
+            ((MappedSlotStore) slots).force();
+        }
+
+        long nextSequence = segmentSequence + 1;
+        ByteBuffer contents = ByteBuffer.allocate(4096);
+        contents.putLong(promise);
+        contents.putLong(acceptedProposalNumber);
+        contents = putValue(contents, acceptedValue);
+        contents.put((byte) (slotsInStore ? 1 : 0));
+        if (!slotsInStore) {
+            for (int slot = slots.getFirstSlot(); slot <= slots.getHighestSlot(); slot++) {
+                if (slots.contains(slot)) {
+                    contents = ensureCapacity(contents, 12);
+                    contents.putInt(slot);
+                    contents.putLong(slots.getProposalNumber(slot));
+                    contents = putValue(contents, slots.getValue(slot));
+                }
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(contents.array(), 0, contents.position());
+        contents = ensureCapacity(contents, 4);
+        contents.putInt((int) crc.getValue());
+        contents.flip();
+
+        Path temporary = directory.resolve(CHECKPOINT_PREFIX + nextSequence + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (contents.hasRemaining()) {
+                channel.write(contents);
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, checkpointPath(nextSequence), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        // The checkpoint covers everything logged so far, so the old segments can go
+        startSegment(nextSequence);
+        checkpointSequence = nextSequence;
+        for (long sequence : listSequences(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (sequence < nextSequence) {
+                Files.deleteIfExists(segmentPath(sequence));
+            }
+        }
+        for (long sequence : listSequences(directory, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX)) {
+            if (sequence < nextSequence) {
+                Files.deleteIfExists(checkpointPath(sequence));
+            }
+        }
+        checkpointCount++;
+        logger.info("Wrote checkpoint " + nextSequence + " of " + directory);
+    }
+
+    /**
+     * Read the newest checkpoint into the recovered state.
+     * @return The sequence of the first segment not covered by the checkpoint, 0 without a checkpoint.
+     */
+    private long readCheckpoint(CheckpointHandler handler, RecoveredState recovered) throws IOException {
+        List<Long> sequences = listSequences(directory, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX);
+        if (sequences.isEmpty()) {
+            return 0;
+        }
+        long sequence = sequences.get(sequences.size() - 1);
+        Path file = checkpointPath(sequence);
+        ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (contents.limit() < 4) {
+            throw new IOException("Corrupt checkpoint " + file);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(contents.array(), 0, contents.limit() - 4);
+        if ((int) crc.getValue() != contents.getInt(contents.limit() - 4)) {
+            throw new IOException("Corrupt checkpoint " + file);
+        }
+        contents.limit(contents.limit() - 4);
+
+        recovered.promise = contents.getLong();
+        recovered.acceptedProposalNumber = contents.getLong();
+        recovered.acceptedValue = getValue(contents);
+        boolean slotsInStore = contents.get() == 1;
+        int slotCount = 0;
+        while (contents.hasRemaining()) {
+            handler.onSlot(contents.getInt(), contents.getLong(), getValue(contents));
+            slotCount++;
+        }
+        logger.info("Read checkpoint " + sequence + " of " + directory + (slotsInStore ? ", slots are in the slot store" : " with " + slotCount + " slots"));
+        return sequence;
+    }
+
+    private static ByteBuffer putValue(ByteBuffer buffer, String value) {
+        byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        buffer = ensureCapacity(buffer, 4 + (bytes == null ? 0 : bytes.length));
+        buffer.putInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            buffer.put(bytes);
+        }
+        return buffer;
+    }
+
+    private static String getValue(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int length) {
+        if (buffer.remaining() >= length) {
+            return buffer;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(SEGMENT_PREFIX + sequence + SEGMENT_SUFFIX);
+    }
+
+    private Path checkpointPath(long sequence) {
+        return directory.resolve(CHECKPOINT_PREFIX + sequence + CHECKPOINT_SUFFIX);
+    }
+
+    private static List<Long> listSequences(Path directory, String prefix, String suffix) throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                sequences.add(sequenceOf(file, prefix, suffix));
+            }
+        }
+        sequences.sort(null);
+        return sequences;
+    }
+
+    private static long sequenceOf(Path file, String prefix, String suffix) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    /**
+     * Check if records were appended since the last sync.
+     * @return true if a sync is needed to make every append durable.
+     */
+    public boolean hasPendingRecords() {
+        return segment.hasPendingRecords();
+    }
+
+    /**
+     * Get the number of records appended since the log was opened.
+     * @return The append count.
+     */
+    public long getAppendCount() {
+        return closedAppendCount + segment.getAppendCount();
+    }
+
+    /**
+     * Get the number of flushes to disk since the log was opened.
+     * @return The sync count.
+     */
+    public long getSyncCount() {
+        return closedSyncCount + segment.getSyncCount();
+    }
+
+    /**
+     * Get the number of checkpoints written since the log was opened.
+     * @return The checkpoint count.
+     */
+    public long getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Close the current segment. Records appended since the last sync are lost.
+     * @throws IOException if closing fails.
+     */
+    @Override
+    public void close() throws IOException {
+        segment.close();
+    }
+}
@@ -0,0 +1,367 @@
+package paxos.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.logging.*;
+
+/**
+ * Slot store kept in fixed-size memory-mapped files, so the heap does not grow with the log.
+ *
+ * Accepted proposals are appended to data segments. When a segment is full, the next one is started. An offset
+ * index, also memory-mapped, maps each slot to its newest record, so a lookup is two array indexes. Accepting
+ * a slot again appends a new record and moves its index entry. The heap only holds one small entry per file.
+ *
+ * Slots below the truncation point given to truncateBefore are dropped. Data segments and index files that
+ * only hold dropped slots are recycled for later slots instead of creating new files.
+ *
+ * Every file names its role in a header, so a store reopened on the same directory finds its contents again.
+ * Writes go to the page cache; the acceptor's write-ahead log provides durability across an OS crash.
+ *
+ * A data segment is: sequence number (int, -1 when free), write position (int), highest slot (int), reserved
+ * (int), then records of slot (int), proposal number (long), value byte length (int, -1 for null), UTF-8 bytes.
+ * An index file is: index number (int, -1 when free), reserved (int), then an entry per slot of segment
+ * sequence number + 1 (int, 0 when empty) and record offset (int).
+ *
+ * This class is not thread-safe.
+ */
+public class MappedSlotStore implements SlotStore, AutoCloseable {
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    // Slots covered by one index file, 2 MiB of entries
+    static final int SLOTS_PER_INDEX = 1 << 18;
+
+    private static final int SEGMENT_HEADER_LENGTH = 16;
+    private static final int RECORD_HEADER_LENGTH = 16;
+    private static final int INDEX_HEADER_LENGTH = 8;
+    private static final int INDEX_ENTRY_LENGTH = 8;
+    private static final int FREE = -1;
+
+    private final Path directory;
+    private final int segmentBytes;
+    // Segments in sequence order, the last one is being written
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private int firstSegmentSequence = 0;
+    private int nextSegmentSequence = 0;
+    // Index files in index number order
+    private final List<MappedByteBuffer> indexes = new ArrayList<>();
+    private int firstIndexNumber = 0;
+    private final Deque<MappedByteBuffer> freeSegments = new ArrayDeque<>();
+    private final Deque<MappedByteBuffer> freeIndexes = new ArrayDeque<>();
+    private final MappedByteBuffer meta;
+    private int nextFileId = 0;
+    private int firstSlot = 1;
+    private int highestSlot = 0;
+    private long recycledCount = 0;
+    // Reused to decode values, so a read allocates nothing but the returned String
+    private byte[] scratch = new byte[256];
+
+    private static final Logger logger = Logger.getLogger(MappedSlotStore.class.getName());
+
+    /**
+     * Open a store, creating the directory if it does not exist.
+     * @param directory The directory holding the store's files.
+     * @param segmentBytes The size of each data segment. A record must fit into one segment.
+     * @throws IOException if the files cannot be created or mapped.
+     */
+    public MappedSlotStore(Path directory, int segmentBytes) throws IOException {
+        if (segmentBytes < SEGMENT_HEADER_LENGTH + RECORD_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentBytes);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.meta = map(directory.resolve("store.meta"), 8);
+        this.firstSlot = Math.max(1, meta.getInt(0));
+        load();
+    }
+
+    @Override
+    public void put(int slot, long proposalNumber, String value) {
+        if (slot < 1) {
+            throw new IllegalArgumentException("Slots start at 1");
+        }
+        if (slot < firstSlot) {
+            // Already truncated, for example a late accept for a compacted slot
+            return;
+        }
+        if (getProposalNumber(slot) == proposalNumber) {
+            // One proposal number carries one value, so this record is already stored, for example on replay
+            return;
+        }
+        byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        int recordLength = RECORD_HEADER_LENGTH + (bytes == null ? 0 : bytes.length);
+        if (recordLength > segmentBytes - SEGMENT_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Value of " + recordLength + " bytes does not fit into a segment");
+        }
+
+        MappedByteBuffer segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.getInt(4) + recordLength > segmentBytes) {
+            segment = startSegment();
+        }
+        int offset = segment.getInt(4);
+        segment.putInt(offset, slot);
+        segment.putLong(offset + 4, proposalNumber);
+        segment.putInt(offset + 12, bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            segment.put(offset + RECORD_HEADER_LENGTH, bytes);
+        }
+        segment.putInt(4, offset + recordLength);
+        segment.putInt(8, Math.max(segment.getInt(8), slot));
+
+        MappedByteBuffer index = indexFor(slot, true);
+        int entry = entryOffset(slot);
+        index.putInt(entry, segment.getInt(0) + 1);
+        index.putInt(entry + 4, offset);
+        highestSlot = Math.max(highestSlot, slot);
+    }
+
+    @Override
+    public boolean contains(int slot) {
+        return recordSegment(slot) != null;
+    }
+
+    @Override
+    public long getProposalNumber(int slot) {
+        MappedByteBuffer segment = recordSegment(slot);
+        return segment == null ? -1 : segment.getLong(recordOffset(slot) + 4);
+    }
+
+    @Override
+    public String getValue(int slot) {
+        MappedByteBuffer segment = recordSegment(slot);
+        if (segment == null) {
+            return null;
+        }
+        int offset = recordOffset(slot);
+        int length = segment.getInt(offset + 12);
+        if (length < 0) {
+            return null;
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        segment.get(offset + RECORD_HEADER_LENGTH, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int getHighestSlot() {
+        return highestSlot;
+    }
+
+    /**
+     * Drop every slot below the given one and recycle the files that only hold dropped slots.
+     * @param slot The first slot to keep.
+     */
+    @Override
+    public void truncateBefore(int slot) {
+        if (slot <= firstSlot) {
+            return;
+        }
+        firstSlot = slot;
+        meta.putInt(0, firstSlot);
+        // The segment being written is never recycled
+        while (segments.size() > 1 && segments.get(0).getInt(8) < firstSlot) {
+            MappedByteBuffer segment = segments.remove(0);
+            segment.putInt(0, FREE);
+            freeSegments.add(segment);
+            firstSegmentSequence++;
+            recycledCount++;
+        }
+        while (!indexes.isEmpty() && (long) (firstIndexNumber + 1) * SLOTS_PER_INDEX <= firstSlot) {
+            MappedByteBuffer index = indexes.remove(0);
+            index.putInt(0, FREE);
+            freeIndexes.add(index);
+            firstIndexNumber++;
+            recycledCount++;
+        }
+    }
+
+    @Override
+    public int getFirstSlot() {
+        return firstSlot;
+    }
+
+    /**
+     * Get the number of data segments holding slots.
+     * @return The segment count.
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Get the number of times a data segment or index file was recycled.
+     * @return The recycle count.
+     */
+    public long getRecycledCount() {
+        return recycledCount;
+    }
+
+    /**
+     * Write every mapped file back to disk.
+     */
+    public void force() {
+        segments.forEach(MappedByteBuffer::force);
+        indexes.forEach(MappedByteBuffer::force);
+        meta.force();
+    }
+
+    /**
+     * Write the files back and release them. The mappings are unmapped once they are garbage collected.
+     */
+    @Override
+    public void close() {
+        force();
+        segments.clear();
+        indexes.clear();
+        freeSegments.clear();
+        freeIndexes.clear();
+    }
+
+    /**
+     * Find the segment holding a slot's newest record.
+     * @return The segment, or null if the slot holds nothing.
+     */
+    private MappedByteBuffer recordSegment(int slot) {
+        if (slot < firstSlot || slot > highestSlot) {
+            return null;
+        }
+        MappedByteBuffer index = indexFor(slot, false);
+        if (index == null) {
+            return null;
+        }
+        int sequence = index.getInt(entryOffset(slot)) - 1;
+        int position = sequence - firstSegmentSequence;
+        if (sequence < 0 || position < 0 || position >= segments.size()) {
+            return null;
+        }
+        return segments.get(position);
+    }
+
+    private int recordOffset(int slot) {
+        return indexFor(slot, false).getInt(entryOffset(slot) + 4);
+    }
+
+    private static int entryOffset(int slot) {
+        return INDEX_HEADER_LENGTH + (slot % SLOTS_PER_INDEX) * INDEX_ENTRY_LENGTH;
+    }
+
+    private MappedByteBuffer indexFor(int slot, boolean create) {
+        int position = slot / SLOTS_PER_INDEX - firstIndexNumber;
+        if (position < 0) {
+            return null;
+        }
+        if (position >= indexes.size()) {
+            if (!create) {
+                return null;
+            }
+            while (position >= indexes.size()) {
+                indexes.add(startIndex(firstIndexNumber + indexes.size()));
+            }
+        }
+        return indexes.get(position);
+    }
+
+    private MappedByteBuffer startSegment() {
+        MappedByteBuffer segment = freeSegments.poll();
+        if (segment == null) {
+            segment = newFile("segment-", segmentBytes);
+        }
+        if (segments.isEmpty()) {
+            firstSegmentSequence = nextSegmentSequence;
+        }
+        segment.putInt(0, nextSegmentSequence++);
+        segment.putInt(4, SEGMENT_HEADER_LENGTH);
+        segment.putInt(8, 0);
+        segments.add(segment);
+        return segment;
+    }
+
+    private MappedByteBuffer startIndex(int indexNumber) {
+        MappedByteBuffer index = freeIndexes.poll();
+        if (index == null) {
+            index = newFile("index-", INDEX_HEADER_LENGTH + SLOTS_PER_INDEX * INDEX_ENTRY_LENGTH);
+        } else {
+            // A recycled index still holds the entries of the slots it covered before
+            for (int offset = INDEX_HEADER_LENGTH; offset < index.capacity(); offset += 8) {
+                index.putLong(offset, 0);
+            }
+        }
+        if (indexes.isEmpty()) {
+            firstIndexNumber = indexNumber;
+        }
+        index.putInt(0, indexNumber);
+        return index;
+    }
+
+    private MappedByteBuffer newFile(String prefix, int size) {
+        try {
+            return map(directory.resolve(prefix + (nextFileId++) + ".dat"), size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create " + prefix + "file in " + directory, e);
+        }
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // A new file is extended with zeros, which reads as empty entries and headers
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * Map the files of an existing store, sorting them by the role their headers give them.
+     */
+    private void load() throws IOException {
+        List<MappedByteBuffer> foundSegments = new ArrayList<>();
+        List<MappedByteBuffer> foundIndexes = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.dat")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int id = Integer.parseInt(name.substring(name.indexOf('-') + 1, name.length() - 4));
+                nextFileId = Math.max(nextFileId, id + 1);
+                if (name.startsWith("segment-")) {
+                    MappedByteBuffer segment = map(file, segmentBytes);
+                    (segment.getInt(4) == 0 || segment.getInt(0) == FREE ? freeSegments : foundSegments).add(segment);
+                } else if (name.startsWith("index-")) {
+                    MappedByteBuffer index = map(file, INDEX_HEADER_LENGTH + SLOTS_PER_INDEX * INDEX_ENTRY_LENGTH);
+                    (index.getInt(0) == FREE ? freeIndexes : foundIndexes).add(index);
+                }
+            }
+        }
+        foundSegments.sort(Comparator.comparingInt(segment -> segment.getInt(0)));
+        for (MappedByteBuffer segment : foundSegments) {
+            if (segments.isEmpty()) {
+                firstSegmentSequence = segment.getInt(0);
+            }
+            segments.add(segment);
+            nextSegmentSequence = segment.getInt(0) + 1;
+            highestSlot = Math.max(highestSlot, segment.getInt(8));
+        }
+        foundIndexes.sort(Comparator.comparingInt(index -> index.getInt(0)));
+        for (MappedByteBuffer index : foundIndexes) {
+            if (indexes.isEmpty()) {
+                firstIndexNumber = index.getInt(0);
+            }
+            // Fill gaps left by index files that were never needed
+            while (firstIndexNumber + indexes.size() < index.getInt(0)) {
+                indexes.add(startIndex(firstIndexNumber + indexes.size()));
+            }
+            indexes.add(index);
+        }
+        if (!segments.isEmpty()) {
+            logger.info("Opened slot store " + directory + " with " + segments.size() + " segments up to slot " + highestSlot);
+        }
+    }
+}
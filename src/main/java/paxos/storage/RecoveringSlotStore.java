@@ -0,0 +1,113 @@
+package paxos.storage;
+
+/**
+ * A slot store that answers for the slots recovered from a write-ahead log while they are still being written
+ * into the underlying store.
+ *
+ * Reads see the higher of the two proposals for a slot, so an acceptor can answer prepares as soon as recovery
+ * has scanned its log, and index the recovered slots a few at a time between messages. Writes go to the
+ * underlying store.
+ *
+ * This class is not thread-safe.
+ */
+public class RecoveringSlotStore implements SlotStore {
+    private final SlotStore store;
+    private final CheckpointedLog.RecoveredState recovered;
+    private final int[] slots;
+    private final int highestRecoveredSlot;
+    // Index into slots of the next slot to write into the store
+    private int nextToIndex = 0;
+
+    /**
+     * Constructor for RecoveringSlotStore.
+     * @param store The store the recovered slots are written into.
+     * @param recovered The recovered state holding the slots logged after the checkpoint.
+     */
+    public RecoveringSlotStore(SlotStore store, CheckpointedLog.RecoveredState recovered) {
+        this.store = store;
+        this.recovered = recovered;
+        this.slots = recovered.getSlots();
+        this.highestRecoveredSlot = slots.length == 0 ? 0 : slots[slots.length - 1];
+    }
+
+    /**
+     * Write up to the given number of recovered slots into the underlying store, in slot order.
+     * @param maxSlots The most slots to write.
+     * @return true once every recovered slot is in the underlying store.
+     */
+    public boolean indexNext(int maxSlots) {
+        int end = Math.min(slots.length, nextToIndex + maxSlots);
+        for (; nextToIndex < end; nextToIndex++) {
+            int slot = slots[nextToIndex];
+            CheckpointedLog.SlotRecord record = recovered.getSlot(slot);
+            if (slot >= store.getFirstSlot() && record.getProposalNumber() > store.getProposalNumber(slot)) {
+                store.put(slot, record.getProposalNumber(), record.getValue());
+            }
+        }
+        return isIndexed();
+    }
+
+    /**
+     * Check if every recovered slot has been written into the underlying store.
+     * @return true if the underlying store can be used on its own.
+     */
+    public boolean isIndexed() {
+        return nextToIndex == slots.length;
+    }
+
+    /**
+     * Get the store the recovered slots are written into.
+     * @return The underlying store.
+     */
+    public SlotStore getStore() {
+        return store;
+    }
+
+    /**
+     * Get the recovered slot not yet in the underlying store, if it beats what the store holds.
+     */
+    private CheckpointedLog.SlotRecord pendingRecord(int slot) {
+        if (slot > highestRecoveredSlot || slot < store.getFirstSlot() || isIndexed()) {
+            return null;
+        }
+        CheckpointedLog.SlotRecord record = recovered.getSlot(slot);
+        return record != null && record.getProposalNumber() > store.getProposalNumber(slot) ? record : null;
+    }
+
+    @Override
+    public void put(int slot, long proposalNumber, String value) {
+        store.put(slot, proposalNumber, value);
+    }
+
+    @Override
+    public boolean contains(int slot) {
+        return store.contains(slot) || pendingRecord(slot) != null;
+    }
+
+    @Override
+    public long getProposalNumber(int slot) {
+        CheckpointedLog.SlotRecord record = pendingRecord(slot);
+        return record != null ? record.getProposalNumber() : store.getProposalNumber(slot);
+    }
+
+    @Override
+    public String getValue(int slot) {
+        CheckpointedLog.SlotRecord record = pendingRecord(slot);
+        return record != null ? record.getValue() : store.getValue(slot);
+    }
+
+    @Override
+    public int getHighestSlot() {
+        return Math.max(store.getHighestSlot(), isIndexed() ? 0 : highestRecoveredSlot);
+    }
+
+    @Override
+    public void truncateBefore(int slot) {
+        store.truncateBefore(slot);
+    }
+
+    @Override
+    public int getFirstSlot() {
+        return store.getFirstSlot();
+    }
+}
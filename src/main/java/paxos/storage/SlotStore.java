@@ -0,0 +1,58 @@
+package paxos.storage;
+
+/**
+ * Per-slot accepted proposals of an acceptor.
+ *
+ * A slot is a Multi-Paxos instance, starting at 1. Implementations decide where the proposals live, on the heap
+ * or in memory-mapped files, and are not expected to be thread-safe: a store belongs to the acceptor's
+ * processing thread.
+ */
+public interface SlotStore {
+    /**
+     * Record the proposal accepted for a slot, replacing any earlier one.
+     * @param slot The slot, at least 1.
+     * @param proposalNumber The proposal number the value was accepted under.
+     * @param value The accepted value.
+     */
+    void put(int slot, long proposalNumber, String value);
+
+    /**
+     * Check if a proposal was accepted for a slot.
+     * @param slot The slot.
+     * @return true if the slot holds an accepted proposal.
+     */
+    boolean contains(int slot);
+
+    /**
+     * Get the proposal number of the accepted proposal for a slot.
+     * @param slot The slot.
+     * @return The proposal number, or -1 if nothing was accepted.
+     */
+    long getProposalNumber(int slot);
+
+    /**
+     * Get the accepted value for a slot.
+     * @param slot The slot.
+     * @return The value, or null if nothing was accepted.
+     */
+    String getValue(int slot);
+
+    /**
+     * Get the highest slot a proposal was accepted for.
+     * @return The highest slot, or 0 if the store is empty.
+     */
+    int getHighestSlot();
+
+    /**
+     * Drop every slot below the given one, for example once a snapshot covers them. Later puts for dropped
+     * slots are ignored.
+     * @param slot The first slot to keep.
+     */
+    void truncateBefore(int slot);
+
+    /**
+     * Get the first slot that has not been truncated.
+     * @return The first slot kept, 1 if nothing was truncated.
+     */
+    int getFirstSlot();
+}
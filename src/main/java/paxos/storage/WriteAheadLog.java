@@ -0,0 +1,259 @@
+package paxos.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.logging.*;
+
+/**
+ * Append-only log of an acceptor's promises and accepts, so that they survive a crash.
+ *
+ * Appends are buffered in memory. sync() writes everything appended since the last sync and forces it to disk
+ * with a single FileChannel.force, so a caller that appends the records of many messages and then syncs once
+ * pays for one flush per batch instead of one per message (group commit). A reply must only be sent once the
+ * record it depends on has been synced.
+ *
+ * A record is: payload length (int), CRC32 of the payload (int), payload. The payload is the record type
+ * (byte), instance (int), proposal number (long), then the value as an int byte length (-1 for null) and UTF-8
+ * bytes. A torn or corrupt record at the end of the file, left by a crash during a write, is cut off when
+ * the log is opened.
+ *
+ * This class is not thread-safe.
+ */
+public class WriteAheadLog implements AutoCloseable {
+    public static final byte PROMISE = 1;
+    public static final byte ACCEPT = 2;
+
+    private static final int HEADER_LENGTH = 8;
+    private static final int INITIAL_BUFFER_CAPACITY = 4096;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_CAPACITY);
+    // Bytes synced to the file
+    private long syncedLength;
+    private long appendCount = 0;
+    private long syncCount = 0;
+
+    private static final Logger logger = Logger.getLogger(WriteAheadLog.class.getName());
+
+    /**
+     * Callback for the records read back when a log is replayed.
+     */
+    public interface RecordHandler {
+        void onRecord(byte type, int instance, long proposalNumber, String value);
+    }
+
+    /**
+     * Open a log, creating the file if it does not exist, and replay the records it holds.
+     * @param path The log file.
+     * @param handler Called for every intact record, in the order they were appended.
+     * @throws IOException if the file cannot be opened or read.
+     */
+    public WriteAheadLog(Path path, RecordHandler handler) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long validLength = replay(channel, path, handler);
+        truncateTo(validLength);
+    }
+
+    /**
+     * Open a log that has already been replayed with scan, without reading it again.
+     * @param path The log file.
+     * @param validLength The length returned by scan. Anything after it is cut off.
+     * @throws IOException if the file cannot be opened.
+     */
+    public WriteAheadLog(Path path, long validLength) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        truncateTo(validLength);
+    }
+
+    /**
+     * Replay the records of a log file without opening it for appends. Several files can be scanned at once.
+     * @param path The log file.
+     * @param handler Called for every intact record, in the order they were appended.
+     * @return The length of the file up to the end of the last intact record.
+     * @throws IOException if the file cannot be read.
+     */
+    public static long scan(Path path, RecordHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return replay(channel, path, handler);
+        }
+    }
+
+    private void truncateTo(long validLength) throws IOException {
+        if (validLength < channel.size()) {
+            logger.warning("Truncating " + (channel.size() - validLength) + " bytes of incomplete records from " + path);
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+        syncedLength = validLength;
+    }
+
+    /**
+     * Buffer a promise. It is not durable until the next sync.
+     * @param proposalNumber The promised proposal number.
+     */
+    public void appendPromise(long proposalNumber) {
+        append(PROMISE, 0, proposalNumber, null);
+    }
+
+    /**
+     * Buffer an accept. It is not durable until the next sync.
+     * @param instance The instance, 0 for the single decision.
+     * @param proposalNumber The accepted proposal number.
+     * @param value The accepted value.
+     */
+    public void appendAccept(int instance, long proposalNumber, String value) {
+        append(ACCEPT, instance, proposalNumber, value);
+    }
+
+    /**
+     * Write every buffered record and force it to disk with one flush.
+     * @throws IOException if the write or flush fails. The buffered records are then not durable.
+     */
+    public void sync() throws IOException {
+        if (pending.position() == 0) {
+            return;
+        }
+        pending.flip();
+        while (pending.hasRemaining()) {
+            syncedLength += channel.write(pending);
+        }
+        pending.clear();
+        // Metadata is not needed to read the records back, so skip flushing it
+        channel.force(false);
+        syncCount++;
+    }
+
+    /**
+     * Check if records were appended since the last sync.
+     * @return true if a sync is needed to make every append durable.
+     */
+    public boolean hasPendingRecords() {
+        return pending.position() > 0;
+    }
+
+    /**
+     * Get the number of records appended.
+     * @return The append count.
+     */
+    public long getAppendCount() {
+        return appendCount;
+    }
+
+    /**
+     * Get the number of flushes to disk. With group commit it is much lower than the append count.
+     * @return The sync count.
+     */
+    public long getSyncCount() {
+        return syncCount;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Get the length of the log, counting records not synced yet.
+     * @return The length in bytes.
+     */
+    public long getSize() {
+        return syncedLength + pending.position();
+    }
+
+    /**
+     * Close the file. Records appended since the last sync are lost.
+     * @throws IOException if closing fails.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void append(byte type, int instance, long proposalNumber, String value) {
+        byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = 1 + 4 + 8 + 4 + (bytes == null ? 0 : bytes.length);
+        ensureCapacity(HEADER_LENGTH + payloadLength);
+
+        int start = pending.position();
+        pending.position(start + HEADER_LENGTH);
+        pending.put(type);
+        pending.putInt(instance);
+        pending.putLong(proposalNumber);
+        pending.putInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            pending.put(bytes);
+        }
+
+        crc.reset();
+        crc.update(pending.array(), start + HEADER_LENGTH, payloadLength);
+        pending.putInt(start, payloadLength);
+        pending.putInt(start + 4, (int) crc.getValue());
+        appendCount++;
+    }
+
+    private void ensureCapacity(int length) {
+        if (pending.remaining() < length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + length));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+    }
+
+    /**
+     * Read back every intact record.
+     * @return The length of the file up to the end of the last intact record.
+     */
+    private static long replay(FileChannel channel, Path path, RecordHandler handler) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Log file too large to replay: " + path);
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer contents = ByteBuffer.allocate((int) size);
+        while (contents.hasRemaining() && channel.read(contents, contents.position()) >= 0) {
+            // Keep reading until the whole file is in the buffer
+        }
+        contents.flip();
+
+        int recordCount = 0;
+        while (contents.remaining() >= HEADER_LENGTH) {
+            int start = contents.position();
+            int payloadLength = contents.getInt();
+            int checksum = contents.getInt();
+            if (payloadLength < 17 || payloadLength > contents.remaining()) {
+                contents.position(start);
+                break;
+            }
+            crc.reset();
+            crc.update(contents.array(), contents.position(), payloadLength);
+            if ((int) crc.getValue() != checksum) {
+                contents.position(start);
+                break;
+            }
+            byte type = contents.get();
+            int instance = contents.getInt();
+            long proposalNumber = contents.getLong();
+            int valueLength = contents.getInt();
+            String value = null;
+            if (valueLength >= 0) {
+                value = new String(contents.array(), contents.position(), valueLength, StandardCharsets.UTF_8);
+                contents.position(contents.position() + valueLength);
+            }
+            handler.onRecord(type, instance, proposalNumber, value);
+            recordCount++;
+        }
+        if (recordCount > 0) {
+            logger.info("Replayed " + recordCount + " records from " + path);
+        }
+        return contents.position();
+    }
+}
@@ -0,0 +1,74 @@
+package paxos.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * Selects the kind of threads used for network handlers, message processing loops and proposal tasks.
+ *
+ * VIRTUAL uses virtual threads when the running JVM provides them (Java 21+), so one process can host
+ * thousands of participants without running out of platform threads. The virtual thread API is looked up
+ * at runtime, so the code still builds and runs on older JVMs, where VIRTUAL falls back to platform threads.
+ */
+public enum ExecutionMode {
+    PLATFORM,
+    VIRTUAL;
+
+    private static final Logger logger = Logger.getLogger(ExecutionMode.class.getName());
+
+    private static final ThreadFactory virtualThreadFactory = lookupVirtualThreadFactory();
+    private static volatile boolean fallbackLogged = false;
+
+    /**
+     * Create an unstarted thread of this mode's kind.
+     * @param task The task the thread runs.
+     * @param name The thread name.
+     * @return The new thread.
+     */
+    public Thread newThread(Runnable task, String name) {
+        Thread thread = usesVirtualThreads() ? virtualThreadFactory.newThread(task) : new Thread(task);
+        thread.setName(name);
+        return thread;
+    }
+
+    /**
+     * Create an executor that runs each submitted task on a thread of this mode's kind.
+     * @return The executor. The caller is responsible for shutting it down.
+     */
+    public ExecutorService newTaskExecutor() {
+        if (usesVirtualThreads()) {
+            return Executors.newCachedThreadPool(virtualThreadFactory);
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Check if the running JVM can create virtual threads.
+     * @return true if virtual threads are available, false otherwise.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return virtualThreadFactory != null;
+    }
+
+    private boolean usesVirtualThreads() {
+        if (this != VIRTUAL) {
+            return false;
+        }
+        if (!isVirtualThreadSupported() && !fallbackLogged) {
+            fallbackLogged = true;
+            logger.warning("Virtual threads are not available on this JVM, using platform threads instead.");
+        }
+        return isVirtualThreadSupported();
+    }
+
+    private static ThreadFactory lookupVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
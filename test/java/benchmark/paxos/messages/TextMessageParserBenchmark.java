@@ -0,0 +1,136 @@
+package paxos.messages;
+
+import java.lang.management.ManagementFactory;
+import java.util.Optional;
+import java.util.logging.*;
+
+/**
+ * Measures the time and heap allocation per message of the text parsers.
+ *
+ * Compares the original split-based parser, which returns a new message, with TextMessageParser parsing into
+ * a reused PaxosMessageView. PaxosMessage.parseMessageFromString now uses TextMessageParser as well, so the
+ * original parser is kept here as the baseline. Allocation is read from the JVM's per-thread allocation counter.
+ *
+ * Run with: make benchmark_text_parser
+ */
+public class TextMessageParserBenchmark {
+    private static final int WARMUP_ITERATIONS = 2_000_000;
+    private static final int MEASURED_ITERATIONS = 5_000_000;
+
+    private static final String[] MESSAGES = {
+        "PREPARE;12;M4;null",
+        "PROMISE;12;M7;M4:9",
+        "ACCEPT;12;M4;M4",
+        "ACCEPTED;12;M7;M4"
+    };
+
+    // Written to so the JIT cannot remove the parsing
+    private static long sink = 0;
+
+    public static void main(String[] args) {
+        Logger.getLogger("").setLevel(Level.OFF);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadID = Thread.currentThread().getId();
+
+        for (int round = 0; round < 2; round++) {
+            runFactory(WARMUP_ITERATIONS);
+            runView(WARMUP_ITERATIONS, new PaxosMessageView());
+        }
+
+        long bytes = threads.getThreadAllocatedBytes(threadID);
+        long start = System.nanoTime();
+        runFactory(MEASURED_ITERATIONS);
+        report("split parser", System.nanoTime() - start, threads.getThreadAllocatedBytes(threadID) - bytes);
+
+        PaxosMessageView view = new PaxosMessageView();
+        bytes = threads.getThreadAllocatedBytes(threadID);
+        start = System.nanoTime();
+        runView(MEASURED_ITERATIONS, view);
+        report("TextMessageParser (view)", System.nanoTime() - start, threads.getThreadAllocatedBytes(threadID) - bytes);
+
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static void runFactory(int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            sink += splitParse(MESSAGES[i & 3]).get().getProposalNumber();
+        }
+    }
+
+    private static void runView(int iterations, PaxosMessageView view) {
+        for (int i = 0; i < iterations; i++) {
+            if (TextMessageParser.parse(MESSAGES[i & 3], view)) {
+                sink += view.getProposalNumber() + view.getLastAcceptedProposalNumber();
+            }
+        }
+    }
+
+    /**
+     * The parser PaxosMessage.parseMessageFromString used before TextMessageParser, splitting the text into Strings.
+     */
+    private static Optional<PaxosMessage> splitParse(String messageString) {
+        if (messageString == null || messageString.isEmpty()) {
+            return Optional.empty();
+        }
+
+        String[] parts = messageString.split(";");
+        if (parts.length != 4) {
+            return Optional.empty();
+        }
+
+        String typeStr = parts[0];
+        boolean validType = false;
+        for (PaxosMessage.Type type : PaxosMessage.Type.values()) {
+            if (type.name().equals(typeStr)) {
+                validType = true;
+            }
+        }
+        if (!validType) {
+            return Optional.empty();
+        }
+        PaxosMessage.Type type = PaxosMessage.Type.valueOf(typeStr);
+
+        long proposalNumber;
+        try {
+            proposalNumber = Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+
+        String participantID = parts[2];
+        String value = parts[3];
+        long lastAcceptedProposalNumber = -1;
+
+        if (type == PaxosMessage.Type.PROMISE) {
+            String[] valueParts = value.split(":");
+            if (valueParts.length != 2) {
+                return Optional.empty();
+            }
+            value = valueParts[0];
+            try {
+                lastAcceptedProposalNumber = Long.parseLong(valueParts[1]);
+            } catch (NumberFormatException e) {
+                return Optional.empty();
+            }
+        }
+
+        switch (type) {
+            case PREPARE:
+                return Optional.of(PaxosMessage.prepareMessage(proposalNumber, participantID));
+            case PROMISE:
+                return Optional.of(PaxosMessage.promiseMessage(proposalNumber, value, lastAcceptedProposalNumber, participantID));
+            case ACCEPT:
+                return Optional.of(PaxosMessage.acceptRequestMessage(proposalNumber, value, participantID));
+            case ACCEPTED:
+                return Optional.of(PaxosMessage.acceptedMessage(proposalNumber, value, participantID));
+            default:
+                return Optional.empty();
+        }
+    }
+
+    private static void report(String name, long nanos, long allocatedBytes) {
+        System.out.printf("%-26s %8.1f ns/msg %8.1f bytes/msg%n", name,
+                (double) nanos / MEASURED_ITERATIONS, (double) allocatedBytes / MEASURED_ITERATIONS);
+    }
+}
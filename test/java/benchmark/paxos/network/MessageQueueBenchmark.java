@@ -0,0 +1,126 @@
+package paxos.network;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.*;
+
+import paxos.network.MessageQueue.ClientMessage;
+
+/**
+ * Measures the throughput and heap allocation per message of the MessageQueue backends.
+ *
+ * N producer threads add messages to one queue while a single consumer takes them, the way server threads
+ * feed a participant's processing thread. The linked backend is compared with the ring backend under each
+ * wait strategy. Messages are created before timing starts, so the allocation reported is the queue's own,
+ * summed over the producers and the consumer from the JVM's per-thread allocation counters.
+ *
+ * Run with: make benchmark_message_queue
+ * Optional arguments: the number of producers (default 4) and of messages per producer (default 500000).
+ */
+public class MessageQueueBenchmark {
+    private static final int CAPACITY = 4096;
+    private static final int ROUNDS = 3;
+
+    private static final String[] MESSAGES = {
+        "PREPARE;12;M4;null",
+        "PROMISE;12;M7;M4:9",
+        "ACCEPT;12;M4;M4",
+        "ACCEPTED;12;M7;M4"
+    };
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Written to so the JIT cannot remove the consumer
+    private static long sink = 0;
+
+    public static void main(String[] args) throws InterruptedException {
+        Logger.getLogger("").setLevel(Level.OFF);
+        threads.setThreadAllocatedMemoryEnabled(true);
+        int producers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int messagesPerProducer = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+
+        ClientMessage[] messages = new ClientMessage[MESSAGES.length];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = new ClientMessage(MESSAGES[i], null);
+        }
+
+        System.out.println(producers + " producers, 1 consumer, " + messagesPerProducer + " messages per producer");
+        // The last round of each backend is reported, the earlier ones warm it up
+        for (int round = 1; round <= ROUNDS; round++) {
+            boolean report = round == ROUNDS;
+            run("LINKED", new MessageQueue(CAPACITY, MessageQueue.OverflowPolicy.BLOCK),
+                    producers, messagesPerProducer, messages, report);
+            for (MpscRingBuffer.WaitStrategy waitStrategy : MpscRingBuffer.WaitStrategy.values()) {
+                MessageQueue queue = new MessageQueue(CAPACITY, MessageQueue.OverflowPolicy.BLOCK,
+                        MessageQueue.Backend.MPSC_RING, waitStrategy);
+                run("MPSC_RING " + waitStrategy, queue, producers, messagesPerProducer, messages, report);
+            }
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static void run(String name, MessageQueue queue, int producers, int messagesPerProducer,
+            ClientMessage[] messages, boolean report) throws InterruptedException {
+        long total = (long) producers * messagesPerProducer;
+        AtomicLong allocatedBytes = new AtomicLong();
+        CountDownLatch ready = new CountDownLatch(producers + 1);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            workers.add(new Thread(() -> {
+                long bytes = allocatedBytes();
+                ready.countDown();
+                try {
+                    start.await();
+                    for (int i = 0; i < messagesPerProducer; i++) {
+                        queue.produceMessage(messages[i & 3]);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                allocatedBytes.addAndGet(allocatedBytes() - bytes);
+            }, "producer-" + p));
+        }
+        Thread consumer = new Thread(() -> {
+            long bytes = allocatedBytes();
+            long checksum = 0;
+            ready.countDown();
+            try {
+                start.await();
+                for (long i = 0; i < total; i++) {
+                    checksum += queue.consumeMessage().getMessage().length();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            allocatedBytes.addAndGet(allocatedBytes() - bytes);
+            synchronized (MessageQueueBenchmark.class) {
+                sink += checksum;
+            }
+        }, "consumer");
+        workers.add(consumer);
+
+        workers.forEach(Thread::start);
+        ready.await();
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long nanos = System.nanoTime() - begin;
+
+        if (report) {
+            System.out.printf("%-22s %12.0f msg/s %8.1f bytes/msg%n", name,
+                    total * 1e9 / nanos, (double) allocatedBytes.get() / total);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
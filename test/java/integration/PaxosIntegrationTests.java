@@ -1,12 +1,34 @@
 package integration;
 
 import adelaidesuburbs.council.CouncilElection;
+import paxos.messages.WireFormat;
+import paxos.network.MessageQueue;
+import paxos.network.NetworkServer;
+import paxos.participants.PaxosAcceptor;
+import paxos.participants.PaxosConfig;
+import paxos.participants.PaxosLearner;
+import paxos.participants.PaxosParticipant.DelayProfile;
+import paxos.participants.PaxosParticipant.Node;
+import paxos.participants.PaxosProposer;
+import paxos.participants.ProposalBatcher;
+import paxos.participants.SnapshotManager;
+import paxos.participants.StateMachine;
+import paxos.utils.ExecutionMode;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.*;
+import java.util.stream.Stream;
 
 import org.junit.Test;
 import org.junit.Before;
@@ -75,6 +97,848 @@ public class PaxosIntegrationTests {
         council.announceResult();
     }
 
+    @Test
+    public void testTwoProposersConcurrentNioServer() throws InterruptedException {
+        // set file name for each test
+        String logFileName = "logs/testTwoProposersConcurrentNioServer.log";
+        setupLogging(logFileName);
+
+        PaxosConfig config = new PaxosConfig();
+        config.setServerMode(NetworkServer.Mode.NIO);
+
+        boolean useImmediateResponses = true;
+        int proposerCount = 2;
+        CouncilElection council = new CouncilElection(useImmediateResponses, proposerCount, config);
+        council.kickoffElection();
+        council.announceResult();
+    }
+
+    @Test
+    public void testVariousDelaysOneProposerVirtualThreads() {
+        // set file name for each test
+        String logFileName = "logs/testVariousDelaysOneProposerVirtualThreads.log";
+        setupLogging(logFileName);
+
+        PaxosConfig config = new PaxosConfig();
+        config.setExecutionMode(ExecutionMode.VIRTUAL);
+
+        boolean useImmediateResponses = false;
+        int proposerCount = 1;
+        CouncilElection council = new CouncilElection(useImmediateResponses, proposerCount, config);
+        council.kickoffElection();
+        council.announceResult();
+    }
+
+    @Test
+    public void testTwoProposersConcurrentRingQueue() throws InterruptedException {
+        // set file name for each test
+        String logFileName = "logs/testTwoProposersConcurrentRingQueue.log";
+        setupLogging(logFileName);
+
+        PaxosConfig config = new PaxosConfig();
+        config.setQueueBackend(MessageQueue.Backend.MPSC_RING);
+        config.setQueueCapacity(1024);
+
+        boolean useImmediateResponses = true;
+        int proposerCount = 2;
+        CouncilElection council = new CouncilElection(useImmediateResponses, proposerCount, config);
+        council.kickoffElection();
+        council.announceResult();
+    }
+
+    @Test
+    public void testTwoProposersConcurrentNegotiatedBinary() throws InterruptedException {
+        // set file name for each test
+        String logFileName = "logs/testTwoProposersConcurrentNegotiatedBinary.log";
+        setupLogging(logFileName);
+
+        PaxosConfig config = new PaxosConfig();
+        config.setWireFormat(WireFormat.NEGOTIATE);
+        config.setServerMode(NetworkServer.Mode.NIO);
+
+        boolean useImmediateResponses = true;
+        int proposerCount = 2;
+        CouncilElection council = new CouncilElection(useImmediateResponses, proposerCount, config);
+        council.kickoffElection();
+        council.announceResult();
+    }
+
+    @Test
+    public void testTwoProposersConcurrentSharedListener() throws InterruptedException {
+        // set file name for each test
+        String logFileName = "logs/testTwoProposersConcurrentSharedListener.log";
+        setupLogging(logFileName);
+
+        PaxosConfig config = new PaxosConfig();
+        config.setSharedListener(true);
+
+        boolean useImmediateResponses = true;
+        int proposerCount = 2;
+        CouncilElection council = new CouncilElection(useImmediateResponses, proposerCount, config);
+        council.kickoffElection();
+        council.announceResult();
+    }
+
+    @Test
+    public void testTwoProposersConcurrentMultiPaxos() throws InterruptedException {
+        // set file name for each test
+        String logFileName = "logs/testTwoProposersConcurrentMultiPaxos.log";
+        setupLogging(logFileName);
+
+        PaxosConfig config = new PaxosConfig();
+        config.setMultiPaxos(true);
+
+        boolean useImmediateResponses = true;
+        int proposerCount = 2;
+        CouncilElection council = new CouncilElection(useImmediateResponses, proposerCount, config);
+        council.kickoffElection();
+        council.announceResult();
+    }
+
+    @Test
+    public void testMultiPaxosLeaderSkipsPhaseOne() throws InterruptedException {
+        // set file name for each test
+        String logFileName = "logs/testMultiPaxosLeaderSkipsPhaseOne.log";
+        setupLogging(logFileName);
+
+        PaxosConfig config = new PaxosConfig();
+        config.setMultiPaxos(true);
+
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 9; i++) {
+            nodes.add(new Node("M" + i, "localhost", 8100 + i, 9100 + i));
+        }
+        List<PaxosAcceptor> acceptors = new ArrayList<>();
+        for (Node node : nodes) {
+            PaxosAcceptor acceptor = new PaxosAcceptor(node, nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+            acceptor.start();
+            acceptors.add(acceptor);
+        }
+        PaxosProposer proposer = new PaxosProposer(nodes.get(0), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+        proposer.start();
+
+        int decisions = 20;
+        for (int i = 1; i <= decisions; i++) {
+            proposer.propose("V" + i);
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (proposer.getChosenCount() < decisions && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        proposer.stop();
+        acceptors.forEach(PaxosAcceptor::stop);
+
+        assertEquals("Not every instance was chosen", decisions, proposer.getChosenCount());
+        for (int i = 1; i <= decisions; i++) {
+            assertEquals("Instance " + i + " chose the wrong value", "V" + i, proposer.getChosenValue(i));
+        }
+        assertEquals("Leader ran phase 1 more than once", 1, proposer.getPrepareRounds());
+    }
+
+    @Test
+    public void testReplicatedLogDeliversInOrder() throws InterruptedException {
+        // set file name for each test
+        String logFileName = "logs/testReplicatedLogDeliversInOrder.log";
+        setupLogging(logFileName);
+
+        PaxosConfig config = new PaxosConfig();
+        config.setMultiPaxos(true);
+        config.setPipelineWindow(8);
+
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 9; i++) {
+            nodes.add(new Node("M" + i, "localhost", 8200 + i, 9200 + i));
+        }
+        List<PaxosAcceptor> acceptors = new ArrayList<>();
+        for (Node node : nodes) {
+            PaxosAcceptor acceptor = new PaxosAcceptor(node, nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+            acceptor.start();
+            acceptors.add(acceptor);
+        }
+        PaxosProposer proposer = new PaxosProposer(nodes.get(0), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+        List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        proposer.getReplicatedLog().setListener((slot, value) -> delivered.add(slot + "=" + value));
+        proposer.start();
+
+        int decisions = 1000;
+        long start = System.currentTimeMillis();
+        for (int i = 1; i <= decisions; i++) {
+            proposer.propose("V" + i);
+        }
+        long deadline = start + 20000;
+        while (delivered.size() < decisions && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        rootLogger.info("Decided " + delivered.size() + " values in " + elapsed + " ms");
+
+        proposer.stop();
+        acceptors.forEach(PaxosAcceptor::stop);
+
+        assertEquals("Not every value was delivered", decisions, delivered.size());
+        assertTrue("Pipeline window was exceeded", proposer.getPeakInFlight() <= 8);
+        for (int i = 1; i <= decisions; i++) {
+            assertEquals("Values were delivered out of order", i + "=V" + i, delivered.get(i - 1));
+        }
+    }
+
+    @Test
+    public void testBatchedProposalsAreUnpackedInOrder() throws InterruptedException {
+        // set file name for each test
+        String logFileName = "logs/testBatchedProposalsAreUnpackedInOrder.log";
+        setupLogging(logFileName);
+
+        PaxosConfig config = new PaxosConfig();
+        config.setMultiPaxos(true);
+        config.setPipelineWindow(2);
+
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 9; i++) {
+            nodes.add(new Node("M" + i, "localhost", 8300 + i, 9300 + i));
+        }
+        List<PaxosAcceptor> acceptors = new ArrayList<>();
+        for (Node node : nodes) {
+            PaxosAcceptor acceptor = new PaxosAcceptor(node, nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+            acceptor.start();
+            acceptors.add(acceptor);
+        }
+        PaxosProposer proposer = new PaxosProposer(nodes.get(0), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+        List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        proposer.getReplicatedLog().setListener(ProposalBatcher.unpacking((slot, value) -> delivered.add(value)));
+        proposer.start();
+        ProposalBatcher batcher = new ProposalBatcher(proposer, config);
+
+        int values = 5000;
+        for (int i = 1; i <= values; i++) {
+            batcher.submit("V;" + i);
+        }
+        batcher.flush();
+        long deadline = System.currentTimeMillis() + 20000;
+        while (delivered.size() < values && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        rootLogger.info("Batch sizes: " + batcher.getBatchSizeHistogram());
+
+        batcher.close();
+        proposer.stop();
+        acceptors.forEach(PaxosAcceptor::stop);
+
+        assertEquals("Not every value was delivered", values, delivered.size());
+        for (int i = 1; i <= values; i++) {
+            assertEquals("Values were delivered out of order", "V;" + i, delivered.get(i - 1));
+        }
+        assertTrue("Values were not batched", proposer.getChosenCount() < values);
+        assertEquals("Histogram missed batches", proposer.getChosenCount(), batcher.getBatchSizeHistogram().getCount());
+    }
+
+    @Test
+    public void testLearnersLearnEveryValue() throws InterruptedException {
+        // set file name for each test
+        String logFileName = "logs/testLearnersLearnEveryValue.log";
+        setupLogging(logFileName);
+
+        int portBase = 8400;
+        for (PaxosLearner.Dissemination dissemination : new PaxosLearner.Dissemination[] {
+                PaxosLearner.Dissemination.ALL_TO_ALL, PaxosLearner.Dissemination.DISTINGUISHED }) {
+            PaxosConfig config = new PaxosConfig();
+            config.setMultiPaxos(true);
+            config.setLearnerDissemination(dissemination);
+
+            List<Node> nodes = new ArrayList<>();
+            for (int i = 1; i <= 9; i++) {
+                nodes.add(new Node("M" + i, "localhost", portBase + i, portBase + 1000 + i, portBase + 2000 + i));
+            }
+            portBase += 100;
+            List<PaxosAcceptor> acceptors = new ArrayList<>();
+            List<PaxosLearner> learners = new ArrayList<>();
+            for (Node node : nodes) {
+                PaxosAcceptor acceptor = new PaxosAcceptor(node, nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+                acceptor.start();
+                acceptors.add(acceptor);
+                PaxosLearner learner = new PaxosLearner(node, nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+                learner.start();
+                learners.add(learner);
+            }
+            PaxosProposer proposer = new PaxosProposer(nodes.get(0), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+            proposer.start();
+
+            int decisions = 200;
+            for (int i = 1; i <= decisions; i++) {
+                proposer.propose("V" + i);
+            }
+            long deadline = System.currentTimeMillis() + 20000;
+            while (learners.stream().anyMatch(learner -> learner.getReplicatedLog().getDecidedCount() < decisions)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+
+            proposer.stop();
+            acceptors.forEach(PaxosAcceptor::stop);
+            learners.forEach(PaxosLearner::stop);
+
+            for (PaxosLearner learner : learners) {
+                assertEquals("A learner missed values with " + dissemination, decisions, learner.getReplicatedLog().getDecidedCount());
+                for (int i = 1; i <= decisions; i++) {
+                    assertEquals("A learner learned the wrong value with " + dissemination, "V" + i, learner.getReplicatedLog().get(i));
+                }
+            }
+            rootLogger.info("Every learner learned " + decisions + " values with " + dissemination);
+        }
+    }
+
+    @Test
+    public void testTwoProposersSharedListenerWithLearners() {
+        // set file name for each test
+        String logFileName = "logs/testTwoProposersSharedListenerWithLearners.log";
+        setupLogging(logFileName);
+
+        PaxosConfig config = new PaxosConfig();
+        config.setSharedListener(true);
+        config.setLearnerDissemination(PaxosLearner.Dissemination.ALL_TO_ALL);
+
+        CouncilElection council = new CouncilElection(true, 2, config);
+        council.kickoffElection();
+        council.announceResult();
+    }
+
+    @Test
+    public void testAcceptorsRecoverFromWriteAheadLog() throws InterruptedException, IOException {
+        // set file name for each test
+        String logFileName = "logs/testAcceptorsRecoverFromWriteAheadLog.log";
+        setupLogging(logFileName);
+
+        Path walDirectory = Files.createTempDirectory("paxos-wal");
+        PaxosConfig config = new PaxosConfig();
+        config.setMultiPaxos(true);
+        config.setWalDirectory(walDirectory);
+        // Small segments, so that the log rolls and checkpoints several times
+        config.setWalSegmentBytes(4 * 1024);
+        config.setCheckpointIntervalSegments(4);
+
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 9; i++) {
+            nodes.add(new Node("M" + i, "localhost", 8600 + i, 9600 + i));
+        }
+        List<PaxosAcceptor> acceptors = new ArrayList<>();
+        for (Node node : nodes) {
+            PaxosAcceptor acceptor = new PaxosAcceptor(node, nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+            acceptor.start();
+            acceptors.add(acceptor);
+        }
+        PaxosProposer proposer = new PaxosProposer(nodes.get(0), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+        proposer.start();
+
+        int decisions = 1000;
+        for (int i = 1; i <= decisions; i++) {
+            proposer.propose("V" + i);
+        }
+        long deadline = System.currentTimeMillis() + 20000;
+        while (proposer.getChosenCount() < decisions && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        proposer.stop();
+        acceptors.forEach(PaxosAcceptor::stop);
+
+        long appends = 0;
+        long syncs = 0;
+        long checkpoints = 0;
+        for (PaxosAcceptor acceptor : acceptors) {
+            appends += acceptor.getWriteAheadLog().getAppendCount();
+            syncs += acceptor.getWriteAheadLog().getSyncCount();
+            checkpoints += acceptor.getWriteAheadLog().getCheckpointCount();
+        }
+        rootLogger.info("Acceptors appended " + appends + " records with " + syncs + " flushes and " + checkpoints + " checkpoints");
+        assertEquals("Not every value was chosen", decisions, proposer.getChosenCount());
+        assertTrue("Flushes were not shared by several records", syncs < appends);
+        assertTrue("No checkpoint was written", checkpoints > 0);
+
+        // A restarted acceptor still holds what it accepted
+        PaxosAcceptor restarted = new PaxosAcceptor(nodes.get(1), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+        int recovered = 0;
+        for (int i = 1; i <= decisions; i++) {
+            String value = restarted.getAcceptedValue(i);
+            if (value != null) {
+                assertEquals("Recovered the wrong value", proposer.getChosenValue(i), value);
+                recovered++;
+            }
+        }
+        restarted.stop();
+        rootLogger.info("Restarted acceptor recovered " + recovered + " accepted values and was ready after " + restarted.getStartupToReadyMillis() + " ms");
+        assertTrue("Restarted acceptor recovered nothing", recovered > 0);
+
+        try (Stream<Path> files = Files.walk(walDirectory)) {
+            files.sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testAcceptorsWithMappedSlotStore() throws InterruptedException, IOException {
+        // set file name for each test
+        String logFileName = "logs/testAcceptorsWithMappedSlotStore.log";
+        setupLogging(logFileName);
+
+        Path storeDirectory = Files.createTempDirectory("paxos-slots");
+        PaxosConfig config = new PaxosConfig();
+        config.setMultiPaxos(true);
+        config.setSlotStoreDirectory(storeDirectory);
+        config.setSegmentBytes(64 * 1024);
+
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 9; i++) {
+            nodes.add(new Node("M" + i, "localhost", 8700 + i, 9700 + i));
+        }
+        List<PaxosAcceptor> acceptors = new ArrayList<>();
+        for (Node node : nodes) {
+            PaxosAcceptor acceptor = new PaxosAcceptor(node, nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+            acceptor.start();
+            acceptors.add(acceptor);
+        }
+        PaxosProposer proposer = new PaxosProposer(nodes.get(0), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+        proposer.start();
+
+        int decisions = 1000;
+        for (int i = 1; i <= decisions; i++) {
+            proposer.propose("V" + i);
+        }
+        long deadline = System.currentTimeMillis() + 20000;
+        while (proposer.getChosenCount() < decisions && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        proposer.stop();
+        acceptors.forEach(PaxosAcceptor::stop);
+        assertEquals("Not every value was chosen", decisions, proposer.getChosenCount());
+
+        // The mapped files outlive the acceptor
+        PaxosAcceptor restarted = new PaxosAcceptor(nodes.get(1), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+        int stored = 0;
+        for (int i = 1; i <= decisions; i++) {
+            String value = restarted.getAcceptedValue(i);
+            if (value != null) {
+                assertEquals("Stored the wrong value", proposer.getChosenValue(i), value);
+                stored++;
+            }
+        }
+        restarted.stop();
+        rootLogger.info("Reopened slot store held " + stored + " accepted values");
+        assertTrue("Reopened slot store held nothing", stored > 0);
+
+        try (Stream<Path> files = Files.walk(storeDirectory)) {
+            files.sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * State machine that counts the values applied to it and remembers the last one.
+     */
+    private static class CountingStateMachine implements StateMachine {
+        private int count = 0;
+        private String lastValue = null;
+
+        @Override
+        public synchronized void apply(int slot, String value) {
+            count++;
+            lastValue = value;
+        }
+
+        @Override
+        public synchronized SnapshotWriter captureSnapshot() {
+            String captured = count + ":" + lastValue;
+            return () -> captured.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public synchronized void restoreSnapshot(byte[] state) {
+            String restored = new String(state, StandardCharsets.UTF_8);
+            int separator = restored.indexOf(':');
+            count = Integer.parseInt(restored.substring(0, separator));
+            lastValue = restored.substring(separator + 1);
+        }
+
+        synchronized int getCount() {
+            return count;
+        }
+
+        synchronized String getLastValue() {
+            return lastValue;
+        }
+    }
+
+    @Test
+    public void testLaggingProposerCatchesUpFromSnapshot() throws InterruptedException {
+        // set file name for each test
+        String logFileName = "logs/testLaggingProposerCatchesUpFromSnapshot.log";
+        setupLogging(logFileName);
+
+        PaxosConfig config = new PaxosConfig();
+        config.setMultiPaxos(true);
+        config.setLearnerDissemination(PaxosLearner.Dissemination.ALL_TO_ALL);
+        config.setSnapshotIntervalSlots(100);
+        config.setSnapshotChunkBytes(4);
+
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            nodes.add(new Node("M" + i, "localhost", 8800 + i, 9800 + i, 10800 + i));
+        }
+        List<PaxosAcceptor> acceptors = new ArrayList<>();
+        List<PaxosLearner> learners = new ArrayList<>();
+        List<SnapshotManager> snapshotManagers = new ArrayList<>();
+        for (Node node : nodes) {
+            PaxosLearner learner = new PaxosLearner(node, nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+            SnapshotManager snapshotManager = new SnapshotManager(learner.getReplicatedLog(), new CountingStateMachine(), config);
+            learner.setSnapshotManager(snapshotManager);
+            PaxosAcceptor acceptor = new PaxosAcceptor(node, nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+            acceptor.setSnapshotManager(snapshotManager);
+            acceptor.start();
+            learner.start();
+            acceptors.add(acceptor);
+            learners.add(learner);
+            snapshotManagers.add(snapshotManager);
+        }
+
+        PaxosProposer proposer = new PaxosProposer(nodes.get(0), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+        proposer.start();
+        int decisions = 500;
+        for (int i = 1; i <= decisions; i++) {
+            proposer.propose("V" + i);
+        }
+        long deadline = System.currentTimeMillis() + 20000;
+        while ((learners.stream().anyMatch(learner -> learner.getReplicatedLog().getDecidedCount() < decisions)
+                || snapshotManagers.stream().anyMatch(manager -> manager.getSnapshotCount() == 0))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        proposer.stop();
+        assertEquals("Not every value was chosen", decisions, proposer.getChosenCount());
+
+        // A proposer that missed every decision is sent a snapshot instead of the compacted instances
+        CountingStateMachine lateStateMachine = new CountingStateMachine();
+        PaxosProposer lateProposer = new PaxosProposer(nodes.get(1), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+        SnapshotManager lateSnapshotManager = new SnapshotManager(lateProposer.getReplicatedLog(), lateStateMachine, config);
+        lateProposer.setSnapshotManager(lateSnapshotManager);
+        lateProposer.start();
+        lateProposer.propose("late");
+        deadline = System.currentTimeMillis() + 20000;
+        while (lateStateMachine.getCount() < decisions + 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        lateProposer.stop();
+        lateSnapshotManager.close();
+        acceptors.forEach(PaxosAcceptor::stop);
+        learners.forEach(PaxosLearner::stop);
+        snapshotManagers.forEach(SnapshotManager::close);
+
+        assertNotNull("No snapshot was installed", lateSnapshotManager.getLatestSnapshot());
+        assertEquals("Late proposer's state machine missed values", decisions + 1, lateStateMachine.getCount());
+        assertEquals("Late value was not chosen after the snapshot", "late", lateStateMachine.getLastValue());
+        assertEquals("Late value was chosen in the wrong instance", "late", lateProposer.getChosenValue(decisions + 1));
+        rootLogger.info("Late proposer installed the snapshot at slot " + lateSnapshotManager.getLatestSnapshot().getSlot()
+                + " and chose its value in instance " + (decisions + 1));
+    }
+
+    @Test
+    public void testStaleLeaderCatchesUpFromCompactedAcceptors() throws InterruptedException {
+        // set file name for each test
+        String logFileName = "logs/testStaleLeaderCatchesUpFromCompactedAcceptors.log";
+        setupLogging(logFileName);
+
+        PaxosConfig config = new PaxosConfig();
+        config.setMultiPaxos(true);
+        config.setLearnerDissemination(PaxosLearner.Dissemination.ALL_TO_ALL);
+        config.setSnapshotIntervalSlots(100);
+        config.setProposalTimeoutMillis(200);
+
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            nodes.add(new Node("M" + i, "localhost", 8930 + i, 9930 + i, 10930 + i));
+        }
+        List<PaxosAcceptor> acceptors = new ArrayList<>();
+        List<PaxosLearner> learners = new ArrayList<>();
+        List<SnapshotManager> snapshotManagers = new ArrayList<>();
+        for (Node node : nodes) {
+            PaxosLearner learner = new PaxosLearner(node, nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+            SnapshotManager snapshotManager = new SnapshotManager(learner.getReplicatedLog(), new CountingStateMachine(), config);
+            learner.setSnapshotManager(snapshotManager);
+            PaxosAcceptor acceptor = new PaxosAcceptor(node, nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+            acceptor.setSnapshotManager(snapshotManager);
+            acceptor.start();
+            learner.start();
+            acceptors.add(acceptor);
+            learners.add(learner);
+            snapshotManagers.add(snapshotManager);
+        }
+
+        // The first leader chooses one value, then hears nothing while another leader moves far ahead
+        CountingStateMachine staleStateMachine = new CountingStateMachine();
+        PaxosProposer staleLeader = new PaxosProposer(nodes.get(0), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+        SnapshotManager staleSnapshotManager = new SnapshotManager(staleLeader.getReplicatedLog(), staleStateMachine, config);
+        staleLeader.setSnapshotManager(staleSnapshotManager);
+        staleLeader.start();
+        staleLeader.propose("first");
+        long deadline = System.currentTimeMillis() + 10000;
+        while (staleLeader.getChosenCount() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue("First leader was not elected", staleLeader.isLeader());
+
+        PaxosProposer newLeader = new PaxosProposer(nodes.get(1), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+        newLeader.start();
+        int decisions = 300;
+        for (int i = 1; i <= decisions; i++) {
+            newLeader.propose("V" + i);
+        }
+        deadline = System.currentTimeMillis() + 20000;
+        while ((learners.stream().anyMatch(learner -> learner.getReplicatedLog().getDecidedCount() < decisions + 1)
+                || snapshotManagers.stream().anyMatch(manager -> manager.getSnapshotCount() == 0))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        newLeader.stop();
+
+        // The stale leader still believes it leads, and its next instance has been compacted away everywhere
+        staleLeader.propose("stale");
+        deadline = System.currentTimeMillis() + 20000;
+        while ((staleStateMachine.getCount() < decisions + 2 || staleLeader.getInFlightCount() > 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        staleLeader.stop();
+        staleSnapshotManager.close();
+        acceptors.forEach(PaxosAcceptor::stop);
+        learners.forEach(PaxosLearner::stop);
+        snapshotManagers.forEach(SnapshotManager::close);
+
+        assertTrue("Stale leader was not told of the higher ballot", staleLeader.getDuelingRounds() >= 1);
+        assertNotNull("No snapshot was installed", staleSnapshotManager.getLatestSnapshot());
+        assertEquals("Stale leader's state machine missed values", decisions + 2, staleStateMachine.getCount());
+        assertEquals("Stale value was not chosen after the snapshot", "stale", staleStateMachine.getLastValue());
+        assertEquals("Stale leader kept instances in flight", 0, staleLeader.getInFlightCount());
+        rootLogger.info("Stale leader installed the snapshot at slot " + staleSnapshotManager.getLatestSnapshot().getSlot()
+                + " after " + staleLeader.getDuelingRounds() + " dueling rounds");
+    }
+
+    @Test
+    public void testRejectedProposerRetriesAboveThePromise() throws Exception {
+        // set file name for each test
+        String logFileName = "logs/testRejectedProposerRetriesAboveThePromise.log";
+        setupLogging(logFileName);
+
+        PaxosConfig config = new PaxosConfig();
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            nodes.add(new Node("M" + i, "localhost", 8900 + i, 9900 + i));
+        }
+        List<PaxosAcceptor> acceptors = new ArrayList<>();
+        for (Node node : nodes) {
+            PaxosAcceptor acceptor = new PaxosAcceptor(node, nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+            acceptor.start();
+            acceptors.add(acceptor);
+        }
+        PaxosProposer first = new PaxosProposer(nodes.get(1), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+        PaxosProposer second = new PaxosProposer(nodes.get(0), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+        first.start();
+        second.start();
+
+        first.startProposal("M2");
+        String firstChosen = first.whenChosen().get(10, TimeUnit.SECONDS);
+        // The second proposer's first ballot is below the first proposer's, which a quorum has already promised
+        second.startProposal("M1");
+        String secondChosen = second.whenChosen().get(10, TimeUnit.SECONDS);
+
+        first.stop();
+        second.stop();
+        acceptors.forEach(PaxosAcceptor::stop);
+
+        assertEquals("Wrong value chosen", "M2", firstChosen);
+        assertEquals("Retried round chose a different value", firstChosen, secondChosen);
+        assertTrue("Rejected round was not retried", second.getDuelingRounds() >= 1);
+        rootLogger.info("Second proposer retried " + second.getDuelingRounds() + " rejected rounds and chose " + secondChosen);
+    }
+
+    @Test
+    public void testDuelingProposersConverge() throws Exception {
+        // set file name for each test
+        String logFileName = "logs/testDuelingProposersConverge.log";
+        setupLogging(logFileName);
+
+        PaxosConfig config = new PaxosConfig();
+        config.setProposalTimeoutMillis(200);
+        config.setRetryBackoffMillis(5);
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            nodes.add(new Node("M" + i, "localhost", 8910 + i, 9910 + i));
+        }
+        List<PaxosAcceptor> acceptors = new ArrayList<>();
+        for (Node node : nodes) {
+            PaxosAcceptor acceptor = new PaxosAcceptor(node, nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+            acceptor.start();
+            acceptors.add(acceptor);
+        }
+        List<PaxosProposer> proposers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            PaxosProposer proposer = new PaxosProposer(nodes.get(i), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+            proposer.start();
+            proposers.add(proposer);
+        }
+
+        // Every proposer starts at once, so their rounds preempt each other until the backoff separates them
+        for (PaxosProposer proposer : proposers) {
+            proposer.startProposal(proposer.getServerNodeID());
+        }
+        List<String> chosenValues = new ArrayList<>();
+        int duelingRounds = 0;
+        for (PaxosProposer proposer : proposers) {
+            chosenValues.add(proposer.whenChosen().get(10, TimeUnit.SECONDS));
+            duelingRounds += proposer.getDuelingRounds();
+        }
+
+        proposers.forEach(PaxosProposer::stop);
+        acceptors.forEach(PaxosAcceptor::stop);
+
+        for (String value : chosenValues) {
+            assertEquals("Proposers chose different values", chosenValues.get(0), value);
+        }
+        rootLogger.info("Proposers chose " + chosenValues.get(0) + " after " + duelingRounds + " dueling rounds");
+    }
+
+    @Test
+    public void testThriftyLeaderAvoidsSilentAcceptors() throws InterruptedException {
+        // set file name for each test
+        String logFileName = "logs/testThriftyLeaderAvoidsSilentAcceptors.log";
+        setupLogging(logFileName);
+
+        PaxosConfig config = new PaxosConfig();
+        config.setMultiPaxos(true);
+        config.setThrifty(true);
+        config.setThriftyFallbackMillis(100);
+
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 9; i++) {
+            nodes.add(new Node("M" + i, "localhost", 8920 + i, 9920 + i));
+        }
+        List<PaxosAcceptor> acceptors = new ArrayList<>();
+        for (Node node : nodes) {
+            // M2 and M3 never answer, so only the fallback gets a quorum while they are still in the first selection
+            boolean silent = node.getNodeName().equals("M2") || node.getNodeName().equals("M3");
+            PaxosAcceptor acceptor = new PaxosAcceptor(node, nodes, silent ? DelayProfile.NO_RESPONSE : DelayProfile.IMMEDIATE_RESPONSE, config);
+            acceptor.start();
+            acceptors.add(acceptor);
+        }
+        PaxosProposer proposer = new PaxosProposer(nodes.get(0), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+        proposer.start();
+
+        int decisions = 20;
+        for (int i = 1; i <= decisions; i++) {
+            proposer.propose("V" + i);
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (proposer.getChosenCount() < decisions && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        proposer.stop();
+        acceptors.forEach(PaxosAcceptor::stop);
+
+        assertEquals("Not every instance was chosen", decisions, proposer.getChosenCount());
+        for (int i = 1; i <= decisions; i++) {
+            assertEquals("Instance " + i + " chose the wrong value", "V" + i, proposer.getChosenValue(i));
+        }
+        assertTrue("Silent acceptors stayed on the critical path", proposer.getThriftyFallbacks() < decisions);
+        rootLogger.info("Thrifty leader chose " + decisions + " values with " + proposer.getThriftyFallbacks() + " fallbacks");
+    }
+
+    @Test
+    public void testPipelineWindowHoldsValuesUntilChosen() throws InterruptedException {
+        // set file name for each test
+        String logFileName = "logs/testPipelineWindowHoldsValuesUntilChosen.log";
+        setupLogging(logFileName);
+
+        int window = 2;
+        long proposalTimeoutMillis = 300;
+        PaxosConfig config = new PaxosConfig();
+        config.setMultiPaxos(true);
+        config.setPipelineWindow(window);
+        config.setProposalTimeoutMillis(proposalTimeoutMillis);
+
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            nodes.add(new Node("M" + i, "localhost", 8940 + i, 9940 + i));
+        }
+        // M3's acceptor is not running yet, so M1 and M2 form the only quorum
+        List<PaxosAcceptor> acceptors = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            PaxosAcceptor acceptor = new PaxosAcceptor(nodes.get(i), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+            acceptor.start();
+            acceptors.add(acceptor);
+        }
+        PaxosProposer proposer = new PaxosProposer(nodes.get(0), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+        proposer.start();
+        proposer.propose("warmup");
+        long deadline = System.currentTimeMillis() + 10000;
+        while (proposer.getChosenCount() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue("Leader was not elected", proposer.isLeader());
+
+        // Without M2 no instance can be chosen, and the accept requests sent to M3 are lost
+        acceptors.get(1).stop();
+        AtomicLong firstChosenAt = new AtomicLong();
+        proposer.getReplicatedLog().setListener((slot, value) -> firstChosenAt.compareAndSet(0, System.currentTimeMillis()));
+        long proposedAt = System.currentTimeMillis();
+        for (int i = 1; i <= window + 1; i++) {
+            proposer.propose("V" + i);
+        }
+        Thread.sleep(proposalTimeoutMillis / 3);
+        assertEquals("Pipeline window was not filled", window, proposer.getInFlightCount());
+        assertEquals("Pipeline window was exceeded", window, proposer.getPeakInFlight());
+        assertNull("Value beyond the window was sent", proposer.getChosenValue(window + 2));
+        assertEquals("Instance was chosen without a quorum", 1, proposer.getChosenCount());
+
+        // Only the resend timer sends the lost accept requests again, this time reaching M3
+        PaxosAcceptor lateAcceptor = new PaxosAcceptor(nodes.get(2), nodes, DelayProfile.IMMEDIATE_RESPONSE, config);
+        lateAcceptor.start();
+        acceptors.add(lateAcceptor);
+        deadline = System.currentTimeMillis() + 10000;
+        while (proposer.getChosenCount() < window + 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        proposer.stop();
+        acceptors.forEach(PaxosAcceptor::stop);
+
+        assertEquals("Not every value was chosen", window + 2, proposer.getChosenCount());
+        for (int i = 1; i <= window + 1; i++) {
+            assertEquals("Instance " + (i + 1) + " chose the wrong value", "V" + i, proposer.getChosenValue(i + 1));
+        }
+        assertTrue("Lost accept requests were not resent", proposer.getResentAccepts() >= window);
+        assertTrue("Instance was chosen before the proposal timeout", firstChosenAt.get() - proposedAt >= proposalTimeoutMillis);
+        assertEquals("Pipeline window was exceeded", window, proposer.getPeakInFlight());
+        rootLogger.info("Leader kept " + proposer.getPeakInFlight() + " instances in flight and resent "
+                + proposer.getResentAccepts() + " accept requests after " + (firstChosenAt.get() - proposedAt) + " ms");
+    }
+
+    @Test
+    public void testLargeDelayBroadcastIsParallel() throws Exception {
+        // set file name for each test
+        String logFileName = "logs/testLargeDelayBroadcastIsParallel.log";
+        setupLogging(logFileName);
+
+        try (ServerSocket acceptorSocket = new ServerSocket(0)) {
+            List<Node> nodes = new ArrayList<>();
+            for (int i = 1; i <= 9; i++) {
+                nodes.add(new Node("M" + i, "localhost", acceptorSocket.getLocalPort(), 0));
+            }
+            PaxosProposer proposer = new PaxosProposer(nodes.get(0), nodes, DelayProfile.LARGE_DELAY);
+
+            // Each of the 9 links waits 1 s, so serial sends would take at least 9 s
+            long start = System.currentTimeMillis();
+            proposer.sendPrepareRequests(1).get(5, TimeUnit.SECONDS);
+            long elapsed = System.currentTimeMillis() - start;
+            proposer.stop();
+
+            assertTrue("Round took " + elapsed + " ms, links were delayed one after another", elapsed < 3000);
+        }
+    }
+
     private static void setupLogging(String logFileName) {
         try {
             FileHandler fileHandler = new FileHandler(logFileName, true);
@@ -0,0 +1,88 @@
+package paxos.messages;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the Ballot module.
+ */
+public class BallotTest {
+    private List<String> logMessages;
+
+    @Before
+    public void setUp() {
+        logMessages = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        logMessages.forEach(System.out::println);
+    }
+
+    /**
+     * Ballots order by round, then by node ID.
+     *
+     * Description: Pack rounds and node IDs into ballots and compare them as longs.
+     * Expectation: A higher round always wins, the node ID breaks ties within a round, and both fields unpack.
+     */
+    @Test
+    public void testBallotsOrderByRoundThenNodeId() {
+        logMessages.add("\n--- TEST: testBallotsOrderByRoundThenNodeId ---\n");
+
+        try {
+            assertTrue("Higher round lost", Ballot.of(2, 1) > Ballot.of(1, Ballot.MAX_NODE_ID));
+            assertTrue("Node ID did not break the tie", Ballot.of(5, 9) > Ballot.of(5, 2));
+            assertTrue("Ballot is not above NONE", Ballot.of(0, 0) > Ballot.NONE);
+            long ballot = Ballot.of(1L << 40, 42);
+            assertEquals("Wrong round", 1L << 40, Ballot.round(ballot));
+            assertEquals("Wrong node ID", 42, Ballot.nodeId(ballot));
+            logMessages.add("Ballots ordered by round, then node ID");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing ballot order");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Next ballot jumps above the one to beat.
+     *
+     * Description: Ask for the next ballot of a node above NONE, above a lower and a higher node ID in the same
+     * round, and above its own ballot.
+     * Expectation: The result is always the node's smallest ballot above the one given.
+     */
+    @Test
+    public void testAboveIsTheNextOwnedBallot() {
+        logMessages.add("\n--- TEST: testAboveIsTheNextOwnedBallot ---\n");
+
+        try {
+            assertEquals("Wrong first ballot", Ballot.of(0, 3), Ballot.above(Ballot.NONE, 3));
+            assertEquals("Same round was skipped", Ballot.of(7, 3), Ballot.above(Ballot.of(7, 2), 3));
+            assertEquals("Round was not advanced", Ballot.of(8, 3), Ballot.above(Ballot.of(7, 4), 3));
+            assertEquals("Own ballot was reused", Ballot.of(8, 3), Ballot.above(Ballot.of(7, 3), 3));
+            logMessages.add("Next ballots were the smallest owned ballots above the one given");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing next ballots");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Node ID that does not fit is rejected.
+     *
+     * Description: Pack a node ID one above MAX_NODE_ID.
+     * Expectation: IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNodeIdOutOfRangeIsRejected() {
+        logMessages.add("\n--- TEST: testNodeIdOutOfRangeIsRejected ---\n");
+
+        Ballot.of(1, Ballot.MAX_NODE_ID + 1);
+    }
+}
@@ -0,0 +1,120 @@
+package paxos.messages;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.*;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the BinaryMessageCodec module.
+ */
+public class BinaryMessageCodecTest {
+    List<String> logMessages;
+
+    @Before
+    public void setUp() {
+        Logger rootLogger = Logger.getLogger("");
+        rootLogger.setLevel(Level.OFF);
+        logMessages = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        logMessages.forEach(System.out::println);
+    }
+
+    /**
+     * Test that every message type survives an encode/decode round trip.
+     */
+    @Test
+    public void testRoundTrip() {
+        logMessages.add("\n--- TEST: testRoundTrip ---\n");
+
+        List<PaxosMessage> messages = new ArrayList<>();
+        messages.add(PaxosMessage.prepareMessage(1, "M1"));
+        messages.add(PaxosMessage.promiseMessage(300, "M2", -1, "M4"));
+        messages.add(PaxosMessage.acceptRequestMessage(Integer.MAX_VALUE, "Café", "M3"));
+        messages.add(PaxosMessage.acceptedMessage(-5, "", "M9"));
+        messages.add(PaxosMessage.acceptRequestMessage(4, "M2", "M2", 1234567));
+        messages.add(PaxosMessage.prepareMessage(Ballot.of(1L << 40, 7), "M7", 3));
+        messages.add(PaxosMessage.nackMessage(Long.MAX_VALUE, Long.MIN_VALUE, "M5", 2));
+
+        try {
+            for (PaxosMessage message : messages) {
+                Optional<PaxosMessage> decoded = BinaryMessageCodec.decode(payloadOf(BinaryMessageCodec.encode(message)));
+                assertTrue("Message did not decode: " + message, decoded.isPresent());
+                assertEquals("Type changed", message.getType(), decoded.get().getType());
+                assertEquals("Proposal number changed", message.getProposalNumber(), decoded.get().getProposalNumber());
+                assertEquals("Participant ID changed", message.getParticipantID(), decoded.get().getParticipantID());
+                assertEquals("Value changed", message.getValue(), decoded.get().getValue());
+                assertEquals("Instance changed", message.getInstance(), decoded.get().getInstance());
+            }
+            logMessages.add("Test passed: every message type round trips.\n");
+        } catch (AssertionError e) {
+            logMessages.add("Test failed: round trip changed a message.");
+            logMessages.add(e.getMessage() + "\n");
+            throw e;
+        }
+    }
+
+    /**
+     * Test that the binary frame is smaller than the text line for a typical message.
+     */
+    @Test
+    public void testFrameIsCompact() {
+        logMessages.add("\n--- TEST: testFrameIsCompact ---\n");
+
+        PaxosMessage message = PaxosMessage.acceptRequestMessage(12345, "M1", "M1");
+        int binaryLength = BinaryMessageCodec.encode(message).remaining();
+        int textLength = (message.toString() + "\n").length();
+
+        try {
+            assertTrue("Binary frame (" + binaryLength + ") not smaller than text (" + textLength + ")", binaryLength < textLength);
+            logMessages.add("Test passed: binary frame is smaller than text.\n");
+        } catch (AssertionError e) {
+            logMessages.add("Test failed: binary frame is not compact.");
+            logMessages.add(e.getMessage() + "\n");
+            throw e;
+        }
+    }
+
+    /**
+     * Test that truncated and corrupt payloads are rejected.
+     */
+    @Test
+    public void testMalformedPayloadRejected() {
+        logMessages.add("\n--- TEST: testMalformedPayloadRejected ---\n");
+
+        ByteBuffer payload = payloadOf(BinaryMessageCodec.encode(PaxosMessage.acceptRequestMessage(7, "value", "M1")));
+        ByteBuffer truncated = payload.duplicate();
+        truncated.limit(truncated.limit() - 2);
+        ByteBuffer badType = ByteBuffer.wrap(new byte[] { 0x7F, 0, 0, 0 });
+
+        try {
+            assertFalse("Truncated payload decoded", BinaryMessageCodec.decode(truncated).isPresent());
+            assertFalse("Unknown type decoded", BinaryMessageCodec.decode(badType).isPresent());
+            logMessages.add("Test passed: malformed payloads are rejected.\n");
+        } catch (AssertionError e) {
+            logMessages.add("Test failed: malformed payload accepted.");
+            logMessages.add(e.getMessage() + "\n");
+            throw e;
+        }
+    }
+
+    /**
+     * Strip the frame marker and length, leaving the payload.
+     */
+    private static ByteBuffer payloadOf(ByteBuffer frame) {
+        ByteBuffer copy = frame.duplicate();
+        assertEquals("Missing frame marker", BinaryMessageCodec.FRAME_MARKER, copy.get());
+        int length = BinaryMessageCodec.getVarint(copy);
+        assertEquals("Frame length is wrong", length, copy.remaining());
+        return copy.slice();
+    }
+}
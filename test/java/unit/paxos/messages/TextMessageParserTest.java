@@ -0,0 +1,178 @@
+package paxos.messages;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.*;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the TextMessageParser module.
+ */
+public class TextMessageParserTest {
+    List<String> logMessages;
+
+    @Before
+    public void setUp() {
+        Logger rootLogger = Logger.getLogger("");
+        rootLogger.setLevel(Level.OFF);
+        logMessages = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        logMessages.forEach(System.out::println);
+    }
+
+    /**
+     * Test that the parser fills the view with every field of a PROMISE.
+     */
+    @Test
+    public void testParsePromise() {
+        logMessages.add("\n--- TEST: testParsePromise ---\n");
+
+        PaxosMessageView view = new PaxosMessageView();
+
+        try {
+            assertTrue("Valid PROMISE was rejected", TextMessageParser.parse("PROMISE;42;M3;M5:-7", view));
+            assertEquals("Type is wrong", PaxosMessage.Type.PROMISE, view.getType());
+            assertEquals("Proposal number is wrong", 42, view.getProposalNumber());
+            assertTrue("Participant ID is wrong", view.participantIDEquals("M3"));
+            assertTrue("Value is wrong", view.valueEquals("M5"));
+            assertEquals("Last accepted proposal number is wrong", -7, view.getLastAcceptedProposalNumber());
+            assertEquals("Message text changed", "PROMISE;42;M3;M5:-7", view.toMessage().toString());
+            logMessages.add("Test passed: PROMISE was parsed into the view.\n");
+        } catch (AssertionError e) {
+            logMessages.add("Test failed: PROMISE was not parsed into the view.");
+            logMessages.add(e.getMessage() + "\n");
+            throw e;
+        }
+    }
+
+    /**
+     * Test that the parser accepts and rejects exactly what the split-based parser did,
+     * over hand-picked edge cases and random strings built from separator-heavy characters.
+     */
+    @Test
+    public void testMatchesSplitParser() {
+        logMessages.add("\n--- TEST: testMatchesSplitParser ---\n");
+
+        List<String> inputs = new ArrayList<>();
+        String[] cases = {
+            "", ";", ";;;", ";;;;", "PREPARE", "PREPARE;1;M1;null", "PREPARE;1;M1;null;;;", "PREPARE;1;M1;",
+            "PREPARE;1;M1;;", "PREPARE;1;;x", ";1;M1;x", "prepare;1;M1;x", "PREPAR;1;M1;x", "ACCEPTS;1;M1;x",
+            "ACCEPT;+5;M1;x", "ACCEPT;-;M1;x", "ACCEPT;+;M1;x", "ACCEPT;;M1;x", "ACCEPT;2147483647;M1;x",
+            "ACCEPT;2147483648;M1;x", "ACCEPTED;-2147483648;M1;x", "ACCEPTED;-2147483649;M1;x",
+            "ACCEPT;9223372036854775807;M1;x", "ACCEPT;9223372036854775808;M1;x", "ACCEPTED;-9223372036854775807;M1;x",
+            "ACCEPTED;-9223372036854775808;M1;x", "PROMISE;1;M1;v:4294967296", "ACCEPT;1;M1;v;2147483648",
+            "ACCEPT;١٢;M1;x", "ACCEPT;1 ;M1;x", "ACCEPT;1;M1;a;b", "PROMISE;1;M1;v:3",
+            "PROMISE;1;M1;v:3::", "PROMISE;1;M1;:3", "PROMISE;1;M1;v:", "PROMISE;1;M1;v", "PROMISE;1;M1;::",
+            "PROMISE;1;M1;v:3:4", "PROMISE;1;M1;null:-1", "PROMISE;1;M1;v:+0;;", "ACCEPT;1;M1;v;7",
+            "ACCEPT;1;M1;v;x", "ACCEPT;1;M1;;7", "PROMISE;1;M1;v:2;7", "PROMISE;1;M1;v:2:;7;", "ACCEPT;1;M1;v;7;8",
+            "NACK;9;M1;3", "NACK;9;M1;3;7", "NACKS;9;M1;3", "NAC;9;M1;3"
+        };
+        for (String input : cases) {
+            inputs.add(input);
+        }
+        Random random = new Random(7);
+        String[] tokens = { ";", ":", "1", "-", "+", "M1", "v", "PROMISE", "ACCEPT", "ACCEPTED", "PREPARE", "DECIDED", "SNAPSHOT", "NACK", "9", "" };
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(10);
+            for (int j = 0; j < length; j++) {
+                sb.append(tokens[random.nextInt(tokens.length)]);
+            }
+            inputs.add(sb.toString());
+        }
+
+        PaxosMessageView view = new PaxosMessageView();
+        try {
+            for (String input : inputs) {
+                PaxosMessage expected = parseWithSplit(input);
+                boolean parsed = TextMessageParser.parse(input, view);
+                assertEquals("Acceptance differs for \"" + input + "\"", expected != null, parsed);
+                if (parsed) {
+                    assertEquals("Result differs for \"" + input + "\"", expected.toString(), view.toMessage().toString());
+                }
+            }
+            logMessages.add("Test passed: " + inputs.size() + " inputs parsed the same as the split-based parser.\n");
+        } catch (AssertionError e) {
+            logMessages.add("Test failed: parsers disagree.");
+            logMessages.add(e.getMessage() + "\n");
+            throw e;
+        }
+    }
+
+    /**
+     * The split-based parser this parser replaced, kept as the reference for what must be accepted.
+     * Extended with the optional instance field and long proposal numbers.
+     */
+    private static PaxosMessage parseWithSplit(String messageString) {
+        if (messageString == null || messageString.isEmpty()) {
+            return null;
+        }
+        String[] parts = messageString.split(";");
+        if (parts.length != 4 && parts.length != 5) {
+            return null;
+        }
+        int instance = 0;
+        if (parts.length == 5) {
+            try {
+                instance = Integer.parseInt(parts[4]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        PaxosMessage.Type type = null;
+        for (PaxosMessage.Type candidate : PaxosMessage.Type.values()) {
+            if (candidate.name().equals(parts[0])) {
+                type = candidate;
+            }
+        }
+        if (type == null) {
+            return null;
+        }
+        long proposalNumber;
+        try {
+            proposalNumber = Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (proposalNumber == Long.MIN_VALUE) {
+            // Reserved by the parser to mark an invalid number
+            return null;
+        }
+        String value = parts[3];
+        switch (type) {
+            case PREPARE:
+                return PaxosMessage.prepareMessage(proposalNumber, parts[2], instance);
+            case PROMISE:
+                String[] valueParts = value.split(":");
+                if (valueParts.length != 2) {
+                    return null;
+                }
+                try {
+                    long lastAcceptedProposalNumber = Long.parseLong(valueParts[1]);
+                    return lastAcceptedProposalNumber == Long.MIN_VALUE ? null
+                            : PaxosMessage.promiseMessage(proposalNumber, valueParts[0], lastAcceptedProposalNumber, parts[2], instance);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            case ACCEPT:
+                return PaxosMessage.acceptRequestMessage(proposalNumber, value, parts[2], instance);
+            case DECIDED:
+                return PaxosMessage.decidedMessage(proposalNumber, value, parts[2], instance);
+            case SNAPSHOT:
+                return PaxosMessage.snapshotChunkMessage(proposalNumber, value, parts[2], instance);
+            case NACK:
+                return new PaxosMessage(PaxosMessage.Type.NACK, proposalNumber, value, parts[2], instance);
+            case ACCEPTED:
+            default:
+                return PaxosMessage.acceptedMessage(proposalNumber, value, parts[2], instance);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package paxos.network;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import paxos.messages.PaxosMessage;
+import paxos.messages.WireFormat;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ConnectionPool module.
+ */
+public class ConnectionPoolTest {
+    private List<String> logMessages;
+    private ServerSocket serverSocket;
+    private BlockingQueue<String> received;
+    private AtomicInteger acceptedConnections;
+    private ConnectionPool pool;
+    private volatile boolean closeServerSideConnections = false;
+
+    @Before
+    public void setUp() throws IOException {
+        logMessages = new ArrayList<>();
+        received = new LinkedBlockingQueue<>();
+        acceptedConnections = new AtomicInteger();
+        serverSocket = new ServerSocket(0);
+        pool = new ConnectionPool(2, 60000);
+
+        Thread acceptThread = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    acceptedConnections.incrementAndGet();
+                    new Thread(() -> readLines(socket)).start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pool.close();
+        serverSocket.close();
+        logMessages.forEach(System.out::println);
+    }
+
+    /**
+     * Messages to the same peer share a connection.
+     *
+     * Description: Send several messages to one peer through the pool.
+     * Expectation: All messages arrive in order over a single accepted connection.
+     */
+    @Test
+    public void testMessagesReuseConnection() throws Exception {
+        logMessages.add("\n--- TEST: testMessagesReuseConnection ---\n");
+
+        for (int i = 0; i < 10; i++) {
+            pool.send(frame("PREPARE;" + i + ";M1;null"), "localhost", serverSocket.getLocalPort());
+        }
+
+        try {
+            for (int i = 0; i < 10; i++) {
+                assertEquals("Message arrived out of order", "PREPARE;" + i + ";M1;null", received.poll(1, TimeUnit.SECONDS));
+            }
+            assertEquals("Expected a single connection", 1, acceptedConnections.get());
+            assertEquals("Expected one pooled connection", 1, pool.size());
+            logMessages.add("Messages shared one connection");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing connection reuse");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Pool reconnects after the peer goes away.
+     *
+     * Description: Close the pooled connection from the server side and send again.
+     * Expectation: The pool notices the stale connection and delivers the message over a new one.
+     */
+    @Test
+    public void testReconnectAfterPeerClose() throws Exception {
+        logMessages.add("\n--- TEST: testReconnectAfterPeerClose ---\n");
+
+        pool.send(frame("first"), "localhost", serverSocket.getLocalPort());
+        assertEquals("first", received.poll(1, TimeUnit.SECONDS));
+
+        // Closing every pooled connection on the server side mimics a restarted peer
+        closeServerSideConnections = true;
+        pool.send(frame("trigger"), "localhost", serverSocket.getLocalPort());
+        received.poll(1, TimeUnit.SECONDS);
+        Thread.sleep(100);
+        closeServerSideConnections = false;
+
+        pool.send(frame("second"), "localhost", serverSocket.getLocalPort());
+
+        try {
+            assertEquals("Message lost after reconnect", "second", received.poll(1, TimeUnit.SECONDS));
+            assertEquals("Expected a second connection", 2, acceptedConnections.get());
+            logMessages.add("Pool reconnected after peer close");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing reconnect");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Pool stays within its bound.
+     *
+     * Description: Send to more distinct peers than the pool allows.
+     * Expectation: The least recently used connection is evicted and the pool size never exceeds the bound.
+     */
+    @Test
+    public void testPoolIsBounded() throws Exception {
+        logMessages.add("\n--- TEST: testPoolIsBounded ---\n");
+
+        try (ServerSocket second = new ServerSocket(0); ServerSocket third = new ServerSocket(0)) {
+            pool.send(frame("a"), "localhost", serverSocket.getLocalPort());
+            pool.send(frame("b"), "localhost", second.getLocalPort());
+            pool.send(frame("c"), "localhost", third.getLocalPort());
+
+            try {
+                assertEquals("Pool exceeded its bound", 2, pool.size());
+                logMessages.add("Pool stayed within its bound");
+            } catch (AssertionError e) {
+                logMessages.add("Exception thrown when testing pool bound");
+                logMessages.add(e.getMessage());
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * One encoded message can be sent to many peers.
+     *
+     * Description: Encode a message once and send the same instance to two peers, twice each.
+     * Expectation: Every send delivers the full message, and the shared frame is left untouched.
+     */
+    @Test
+    public void testEncodedMessageIsReusable() throws Exception {
+        logMessages.add("\n--- TEST: testEncodedMessageIsReusable ---\n");
+
+        EncodedMessage message = EncodedMessage.encode(PaxosMessage.prepareMessage(3, "M2"), WireFormat.TEXT);
+        int frameLength = message.getTextFrame().remaining();
+
+        try (ServerSocket second = new ServerSocket(0)) {
+            Thread secondAccept = new Thread(() -> {
+                try {
+                    readLines(second.accept());
+                } catch (IOException e) {
+                    // Server closed by the test
+                }
+            });
+            secondAccept.setDaemon(true);
+            secondAccept.start();
+
+            for (int i = 0; i < 2; i++) {
+                pool.send(message.getTextFrame(), message.getBinaryFrame(), "localhost", serverSocket.getLocalPort());
+                pool.send(message.getTextFrame(), message.getBinaryFrame(), "localhost", second.getLocalPort());
+            }
+
+            try {
+                for (int i = 0; i < 4; i++) {
+                    assertEquals("Message was not delivered intact", "PREPARE;3;M2;null", received.poll(1, TimeUnit.SECONDS));
+                }
+                assertEquals("Shared frame was consumed", frameLength, message.getTextFrame().remaining());
+                assertTrue("Frame should be read-only", message.getTextFrame().isReadOnly());
+                logMessages.add("Encoded message was reused for every send");
+            } catch (AssertionError e) {
+                logMessages.add("Exception thrown when testing encoded message reuse");
+                logMessages.add(e.getMessage());
+                throw e;
+            }
+        }
+    }
+
+    private void readLines(Socket socket) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                received.add(line);
+                if (closeServerSideConnections) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // Connection closed by the test
+        }
+    }
+
+    private static ByteBuffer frame(String message) {
+        return ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,184 @@
+package paxos.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import paxos.network.MessageQueue.ClientMessage;
+import paxos.network.MessageQueue.OverflowPolicy;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the MessageQueue module.
+ */
+public class MessageQueueTest {
+    private List<String> logMessages;
+
+    @Before
+    public void setUp() {
+        logMessages = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        logMessages.forEach(System.out::println);
+    }
+
+    /**
+     * Full queue drops the oldest message.
+     *
+     * Description: Overfill a DROP_OLDEST queue.
+     * Expectation: The newest messages are kept and the drop gauge counts the rest.
+     */
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        logMessages.add("\n--- TEST: testDropOldest ---\n");
+
+        MessageQueue queue = new MessageQueue(2, OverflowPolicy.DROP_OLDEST);
+        queue.produceMessage(message("ACCEPT;1;M1;a"));
+        queue.produceMessage(message("ACCEPT;2;M1;b"));
+        queue.produceMessage(message("ACCEPT;3;M1;c"));
+
+        try {
+            assertEquals("Queue exceeded its capacity", 2, queue.getDepth());
+            assertEquals("Drop was not counted", 1, queue.getDroppedCount());
+            assertEquals("Oldest message was not dropped", "ACCEPT;2;M1;b", queue.consumeMessage().getMessage());
+            logMessages.add("Oldest message was dropped");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing drop oldest");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Full queue drops the newest message.
+     *
+     * Description: Overfill a DROP_NEWEST queue.
+     * Expectation: The queued messages are kept and the new one is dropped.
+     */
+    @Test
+    public void testDropNewest() throws InterruptedException {
+        logMessages.add("\n--- TEST: testDropNewest ---\n");
+
+        MessageQueue queue = new MessageQueue(2, OverflowPolicy.DROP_NEWEST);
+        queue.produceMessage(message("ACCEPT;1;M1;a"));
+        queue.produceMessage(message("ACCEPT;2;M1;b"));
+        queue.produceMessage(message("ACCEPT;3;M1;c"));
+
+        try {
+            assertEquals("Drop was not counted", 1, queue.getDroppedCount());
+            assertEquals("Enqueue was not counted", 2, queue.getEnqueuedCount());
+            assertEquals("Queued message was dropped", "ACCEPT;1;M1;a", queue.consumeMessage().getMessage());
+            assertEquals("Queued message was dropped", "ACCEPT;2;M1;b", queue.consumeMessage().getMessage());
+            logMessages.add("Newest message was dropped");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing drop newest");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Full queue sheds PREPAREs before anything else.
+     *
+     * Description: Fill a SHED_PREPARE_FIRST queue with a PREPARE and an ACCEPT, then add more messages.
+     * Expectation: The queued PREPARE makes room for an ACCEPT, and a new PREPARE is dropped when no PREPARE is left to shed.
+     */
+    @Test
+    public void testShedPrepareFirst() throws InterruptedException {
+        logMessages.add("\n--- TEST: testShedPrepareFirst ---\n");
+
+        MessageQueue queue = new MessageQueue(2, OverflowPolicy.SHED_PREPARE_FIRST);
+        queue.produceMessage(message("PREPARE;1;M1;null"));
+        queue.produceMessage(message("ACCEPT;1;M1;a"));
+        queue.produceMessage(message("ACCEPTED;1;M1;a"));
+        queue.produceMessage(message("PREPARE;2;M2;null"));
+
+        try {
+            assertEquals("Drops were not counted", 2, queue.getDroppedCount());
+            assertEquals("ACCEPT was shed", "ACCEPT;1;M1;a", queue.consumeMessage().getMessage());
+            assertEquals("ACCEPTED was shed", "ACCEPTED;1;M1;a", queue.consumeMessage().getMessage());
+            logMessages.add("PREPAREs were shed first");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing shed prepare first");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Full queue blocks the producer.
+     *
+     * Description: Produce into a full BLOCK queue from another thread.
+     * Expectation: The producer waits until the consumer makes room.
+     */
+    @Test
+    public void testBlockProducer() throws InterruptedException {
+        logMessages.add("\n--- TEST: testBlockProducer ---\n");
+
+        MessageQueue queue = new MessageQueue(1, OverflowPolicy.BLOCK);
+        queue.produceMessage(message("ACCEPT;1;M1;a"));
+
+        CountDownLatch produced = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                queue.produceMessage(message("ACCEPT;2;M1;b"));
+                produced.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+
+        try {
+            assertFalse("Producer did not block", produced.await(200, TimeUnit.MILLISECONDS));
+            queue.consumeMessage();
+            assertTrue("Producer was not released", produced.await(1, TimeUnit.SECONDS));
+            assertEquals("Nothing should be dropped", 0, queue.getDroppedCount());
+            logMessages.add("Producer blocked until room was made");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing blocking producer");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Enqueue rate falls to zero once messages stop.
+     *
+     * Description: Enqueue 10 messages, then read the rate after one window and again after a second, idle one.
+     * Expectation: The first window reports a positive rate and the idle window reports 0.
+     */
+    @Test
+    public void testEnqueueRateDecaysWhenIdle() throws InterruptedException {
+        logMessages.add("\n--- TEST: testEnqueueRateDecaysWhenIdle ---\n");
+
+        MessageQueue queue = new MessageQueue(16, OverflowPolicy.BLOCK);
+        for (int i = 1; i <= 10; i++) {
+            queue.produceMessage(message("ACCEPT;" + i + ";M1;a"));
+        }
+
+        try {
+            Thread.sleep(1100);
+            double busyRate = queue.getEnqueueRate();
+            assertTrue("Rate of the busy window was not measured", busyRate > 0);
+            Thread.sleep(1100);
+            assertEquals("Rate did not fall once messages stopped", 0, queue.getEnqueueRate(), 0);
+            logMessages.add("Rate fell from " + busyRate + " to 0 messages per second");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing enqueue rate decay");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    private static ClientMessage message(String text) {
+        return new ClientMessage(text, null);
+    }
+}
@@ -0,0 +1,67 @@
+package paxos.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.*;
+
+import paxos.messages.PaxosMessage;
+import paxos.network.MessageQueue.ClientMessage;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the MessageRouter module.
+ */
+public class MessageRouterTest {
+    private List<String> logMessages;
+
+    @Before
+    public void setUp() {
+        Logger.getLogger("").setLevel(Level.OFF);
+        logMessages = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        logMessages.forEach(System.out::println);
+    }
+
+    /**
+     * Router hands each message to the queue of the role that handles its type.
+     *
+     * Description: Route acceptor and proposer types to two queues, then produce text, binary and unknown messages.
+     * Expectation: Each message lands in the right queue, and the unknown message is counted and dropped.
+     */
+    @Test
+    public void testRoutesByType() throws InterruptedException {
+        logMessages.add("\n--- TEST: testRoutesByType ---\n");
+
+        MessageRouter router = new MessageRouter();
+        MessageQueue acceptorQueue = new MessageQueue();
+        MessageQueue proposerQueue = new MessageQueue();
+        router.route(acceptorQueue, PaxosMessage.Type.PREPARE, PaxosMessage.Type.ACCEPT);
+        router.route(proposerQueue, PaxosMessage.Type.PROMISE, PaxosMessage.Type.ACCEPTED);
+
+        router.produceMessage(new ClientMessage("PREPARE;1;M1;null", null));
+        router.produceMessage(new ClientMessage("ACCEPTED;1;M2;M1", null));
+        router.produceMessage(new ClientMessage(PaxosMessage.acceptRequestMessage(1, "M1", "M1"), null));
+        router.produceMessage(new ClientMessage("HELLO;1;M1;null", null));
+
+        try {
+            assertEquals("Acceptor queue got the wrong messages", 2, acceptorQueue.getDepth());
+            assertEquals("PREPARE;1;M1;null", acceptorQueue.consumeMessage().getMessage());
+            assertEquals(PaxosMessage.Type.ACCEPT, acceptorQueue.consumeMessage().getPaxosMessage().getType());
+            assertEquals("Proposer queue got the wrong messages", 1, proposerQueue.getDepth());
+            assertEquals("ACCEPTED;1;M2;M1", proposerQueue.consumeMessage().getMessage());
+            assertEquals("Unknown message was not counted", 1, router.getUnroutedCount());
+            logMessages.add("Messages were routed by type");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing routing");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+}
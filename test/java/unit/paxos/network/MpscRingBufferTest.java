@@ -0,0 +1,111 @@
+package paxos.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import paxos.network.MpscRingBuffer.WaitStrategy;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the MpscRingBuffer module.
+ */
+public class MpscRingBufferTest {
+    private List<String> logMessages;
+
+    @Before
+    public void setUp() {
+        logMessages = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        logMessages.forEach(System.out::println);
+    }
+
+    /**
+     * Ring rounds its capacity up and rejects offers when full.
+     *
+     * Description: Fill a ring created with a capacity that is not a power of two.
+     * Expectation: Capacity is rounded up, further offers fail, and elements come out in order.
+     */
+    @Test
+    public void testCapacityAndOrdering() {
+        logMessages.add("\n--- TEST: testCapacityAndOrdering ---\n");
+
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(3, WaitStrategy.BUSY_SPIN);
+
+        try {
+            assertEquals("Capacity was not rounded up", 4, ring.capacity());
+            for (int i = 0; i < 4; i++) {
+                assertTrue("Offer failed before the ring was full", ring.offer(i));
+            }
+            assertFalse("Offer succeeded on a full ring", ring.offer(4));
+            assertEquals("Size is wrong", 4, ring.size());
+            for (int i = 0; i < 4; i++) {
+                assertEquals("Elements came out of order", Integer.valueOf(i), ring.poll());
+            }
+            assertNull("Poll on an empty ring returned an element", ring.poll());
+            logMessages.add("Ring kept its bound and order");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing capacity and ordering");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Ring delivers every element from many producers.
+     *
+     * Description: Several producers put into a small ring while one consumer takes, for each wait strategy.
+     * Expectation: Every element arrives once, and each producer's elements arrive in the order they were put.
+     */
+    @Test
+    public void testManyProducersOneConsumer() throws InterruptedException {
+        logMessages.add("\n--- TEST: testManyProducersOneConsumer ---\n");
+
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            int producers = 4;
+            int perProducer = 20000;
+            MpscRingBuffer<long[]> ring = new MpscRingBuffer<>(64, waitStrategy);
+
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                final int producer = p;
+                Thread thread = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < perProducer; i++) {
+                            ring.put(new long[] { producer, i });
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+
+            long[] nextExpected = new long[producers];
+            for (int i = 0; i < producers * perProducer; i++) {
+                long[] element = ring.take();
+                int producer = (int) element[0];
+                try {
+                    assertEquals("Producer order was broken with " + waitStrategy, nextExpected[producer], element[1]);
+                } catch (AssertionError e) {
+                    logMessages.add("Exception thrown when testing many producers");
+                    logMessages.add(e.getMessage());
+                    throw e;
+                }
+                nextExpected[producer]++;
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertNull("Ring should be empty", ring.poll());
+            logMessages.add("Every element arrived with " + waitStrategy);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package paxos.network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the NioNetworkServer module.
+ */
+public class NioNetworkServerTest {
+    private List<String> logMessages;
+    private MessageQueue messageQueue;
+    private NioNetworkServer server;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        logMessages = new ArrayList<>();
+        messageQueue = new MessageQueue();
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = new NioNetworkServer(port, messageQueue, 2);
+        server.startServer();
+        // The listening channel is opened on the server thread
+        Thread.sleep(200);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        logMessages.forEach(System.out::println);
+    }
+
+    /**
+     * Server frames messages from many connections.
+     *
+     * Description: Open several connections and write lines split across arbitrary write boundaries.
+     * Expectation: Every complete line ends up in the message queue exactly once.
+     */
+    @Test
+    public void testMessagesFromManyConnections() throws Exception {
+        logMessages.add("\n--- TEST: testMessagesFromManyConnections ---\n");
+
+        int connections = 20;
+        int messagesPerConnection = 50;
+        List<Socket> sockets = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            sockets.add(new Socket("localhost", port));
+        }
+        for (int c = 0; c < connections; c++) {
+            OutputStream out = sockets.get(c).getOutputStream();
+            for (int m = 0; m < messagesPerConnection; m++) {
+                byte[] line = ("ACCEPT;" + m + ";M" + c + ";value\r\n").getBytes(StandardCharsets.UTF_8);
+                // Split each line over two writes so framing has to stitch partial reads together
+                out.write(line, 0, 3);
+                out.flush();
+                out.write(line, 3, line.length - 3);
+            }
+            out.flush();
+        }
+
+        Set<String> received = new HashSet<>();
+        for (int i = 0; i < connections * messagesPerConnection; i++) {
+            received.add(messageQueue.consumeMessage().getMessage());
+        }
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+
+        try {
+            assertEquals("Not every message was received", connections * messagesPerConnection, received.size());
+            assertTrue("Line ending was not stripped", received.contains("ACCEPT;0;M0;value"));
+            logMessages.add("Every message was received");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing messages from many connections");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Server thread count does not grow with connections.
+     *
+     * Description: Open many connections to the server.
+     * Expectation: No new threads are started per connection.
+     */
+    @Test
+    public void testThreadCountStaysFlat() throws IOException, InterruptedException {
+        logMessages.add("\n--- TEST: testThreadCountStaysFlat ---\n");
+
+        int threadsBefore = Thread.activeCount();
+        List<Socket> sockets = new ArrayList<>();
+        for (int c = 0; c < 50; c++) {
+            sockets.add(new Socket("localhost", port));
+        }
+        Thread.sleep(200);
+        int threadsAfter = Thread.activeCount();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+
+        try {
+            assertEquals("Threads were started per connection", threadsBefore, threadsAfter);
+            logMessages.add("Thread count stayed flat");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing thread count");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package paxos.network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import paxos.messages.BinaryMessageCodec;
+import paxos.messages.PaxosMessage;
+import paxos.network.MessageQueue.ClientMessage;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the WireFrameDecoder module.
+ */
+public class WireFrameDecoderTest {
+    private List<String> logMessages;
+    private MessageQueue messageQueue;
+    private AtomicInteger hellos;
+    private WireFrameDecoder decoder;
+
+    @Before
+    public void setUp() {
+        logMessages = new ArrayList<>();
+        messageQueue = new MessageQueue();
+        hellos = new AtomicInteger();
+        decoder = new WireFrameDecoder(messageQueue, null, hellos::incrementAndGet);
+    }
+
+    @After
+    public void tearDown() {
+        logMessages.forEach(System.out::println);
+    }
+
+    /**
+     * Decoder handles text and binary messages on one connection.
+     *
+     * Description: Feed a HELLO, a text line and a binary frame, one byte at a time.
+     * Expectation: The HELLO is answered, and both messages are queued in order.
+     */
+    @Test
+    public void testMixedTextAndBinary() throws Exception {
+        logMessages.add("\n--- TEST: testMixedTextAndBinary ---\n");
+
+        ByteBuffer stream = ByteBuffer.allocate(256);
+        stream.put(BinaryMessageCodec.helloFrame());
+        stream.put("PREPARE;1;M1;null\r\n".getBytes(StandardCharsets.UTF_8));
+        stream.put(BinaryMessageCodec.encode(PaxosMessage.acceptRequestMessage(2, "M1", "M2")));
+        stream.flip();
+        while (stream.hasRemaining()) {
+            decoder.consume(ByteBuffer.wrap(new byte[] { stream.get() }));
+        }
+
+        try {
+            assertEquals("HELLO was not answered", 1, hellos.get());
+            assertEquals("Text message was not decoded", "PREPARE;1;M1;null", messageQueue.consumeMessage().getMessage());
+            ClientMessage binary = messageQueue.consumeMessage();
+            assertNotNull("Binary message was not decoded", binary.getPaxosMessage());
+            assertEquals("Binary message changed", "ACCEPT;2;M2;M1", binary.getMessage());
+            assertEquals("Unexpected extra messages", 0, messageQueue.getDepth());
+            logMessages.add("Text and binary messages were decoded");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing mixed text and binary");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+}
@@ -1,63 +1,212 @@
-import paxos.messages.PaxosMessage;
+package paxos.participants;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.logging.*;
+
+import paxos.messages.PaxosMessage;
+import paxos.messages.PaxosMessageView;
+import paxos.messages.TextMessageParser;
+import paxos.participants.PaxosParticipant.DelayProfile;
+import paxos.participants.PaxosParticipant.Node;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
 
 /**
- * Represents a Paxos Learner.
+ * Unit tests for the PaxosLearner module.
  */
-public class PaxosLearner extends PaxosParticipant {
-    // Keep track of the accepted values and the number of times they have been accepted.
-    private Map<String, Integer> acceptedValuesCount = new HashMap<>();
-    private String learnedValue = null; // The value that has been learned (chosen).
+public class PaxosLearnerTest {
+    private List<String> logMessages;
+    private List<Node> nodes;
+    private PaxosLearner learner;
 
-    public PaxosLearner(int serverPort, List<Node> nodes) {
-        super(serverPort, nodes);
+    @Before
+    public void setUp() {
+        logMessages = new ArrayList<>();
+        nodes = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            // No learner ports, so nothing is sent over the network
+            nodes.add(new Node("M" + i, "localhost", 8000 + i, 9000 + i));
+        }
+        learner = new PaxosLearner(nodes.get(0), nodes, DelayProfile.IMMEDIATE_RESPONSE, new PaxosConfig());
     }
 
-    public PaxosLearner(int serverPort, List<Node> nodes, NetworkServer server, MessageQueue messageQueue) {
-        super(serverPort, nodes, server, messageQueue);
+    @After
+    public void tearDown() {
+        logMessages.forEach(System.out::println);
     }
 
     /**
-     * Processes an accepted message from an acceptor. If enough acceptors have accepted the same proposal, the learner
-     * learns the value.
+     * Learner learns a value once a quorum of acceptors accepted it.
      *
-     * @param acceptedMessage The accepted message received from an acceptor.
+     * Description: Deliver ACCEPTED messages for the single decision, repeating one acceptor.
+     * Expectation: Nothing is learned until three distinct acceptors have accepted the same proposal number.
      */
-    public void onAccepted(PaxosMessage acceptedMessage) {
-        logger.info("Received accepted message with value: " + acceptedMessage.getValue());
-        acceptedValuesCount.merge(acceptedMessage.getValue(), 1, Integer::sum);
+    @Test
+    public void testLearnsOnQuorum() {
+        logMessages.add("\n--- TEST: testLearnsOnQuorum ---\n");
 
-        // Determine if a majority has been reached for a single value
-        if (acceptedValuesCount.get(acceptedMessage.getValue()) > (nodes.size() / 2)) {
-            learnedValue = acceptedMessage.getValue();
-            logger.info("Consensus reached on value: " + learnedValue);
+        try {
+            learner.receiveMessage(PaxosMessage.acceptedMessage(1, "M1", "M1"), "M1");
+            learner.receiveMessage(PaxosMessage.acceptedMessage(1, "M1", "M2"), "M2");
+            learner.receiveMessage(PaxosMessage.acceptedMessage(1, "M1", "M2"), "M2");
+            assertNull("Value was learned from a repeated acceptor", learner.getLearnedValue());
+            learner.receiveMessage(PaxosMessage.acceptedMessage(1, "M1", "M3"), "M3");
+            assertEquals("Value was not learned from a quorum", "M1", learner.getLearnedValue());
+            logMessages.add("Learned " + learner.getLearnedValue() + " from a quorum");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing learning on a quorum");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
 
-            // Further actions can be taken here, such as notifying other components of the system about the learned value
+    /**
+     * Learner does not combine acceptances of different proposals.
+     *
+     * Description: Deliver ACCEPTED messages for one Multi-Paxos instance under two proposal numbers, and a rejection.
+     * Expectation: The instance is only learned once a quorum accepted under one proposal number.
+     */
+    @Test
+    public void testProposalNumbersAreCountedSeparately() {
+        logMessages.add("\n--- TEST: testProposalNumbersAreCountedSeparately ---\n");
+
+        try {
+            learner.receiveMessage(PaxosMessage.acceptedMessage(7, "A", "M1", 1), "M1");
+            learner.receiveMessage(PaxosMessage.acceptedMessage(7, "A", "M2", 1), "M2");
+            learner.receiveMessage(PaxosMessage.acceptedMessage(13, "B", "M3", 1), "M3");
+            learner.receiveMessage(PaxosMessage.acceptedMessage(13, null, "M4", 1), "M4");
+            assertFalse("Instance was learned without a quorum", learner.getReplicatedLog().isDecided(1));
+            learner.receiveMessage(PaxosMessage.acceptedMessage(13, "B", "M4", 1), "M4");
+            learner.receiveMessage(PaxosMessage.acceptedMessage(13, "B", "M5", 1), "M5");
+            assertEquals("Wrong value was learned", "B", learner.getReplicatedLog().get(1));
+            assertNull("Single decision was learned", learner.getLearnedValue());
+            logMessages.add("Learned instance 1 under proposal number 13");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing separate proposal numbers");
+            logMessages.add(e.getMessage());
+            throw e;
         }
     }
 
-    @Override
-    public void receiveMessage(PaxosMessage message) {
-        // Handle received Paxos messages
-        switch (message.getType()) {
-            case ACCEPTED:
-                onAccepted(message);
-                break;
-            default:
-                logger.warning("Received unsupported message type: " + message.getType());
+    /**
+     * Learner takes a forwarded decision without a quorum.
+     *
+     * Description: Deliver DECIDED messages from the distinguished learner, out of slot order.
+     * Expectation: Each instance is learned at once and the log delivers them in slot order.
+     */
+    @Test
+    public void testLearnsForwardedDecision() {
+        logMessages.add("\n--- TEST: testLearnsForwardedDecision ---\n");
+
+        List<String> delivered = new ArrayList<>();
+        learner.getReplicatedLog().setListener((slot, value) -> delivered.add(slot + "=" + value));
+
+        try {
+            learner.receiveMessage(PaxosMessage.decidedMessage(7, "B", "M1", 2), "M1");
+            assertTrue("Slot 2 was delivered before slot 1", delivered.isEmpty());
+            learner.receiveMessage(PaxosMessage.decidedMessage(7, "A", "M1", 1), "M1");
+            learner.receiveMessage(PaxosMessage.decidedMessage(7, "C", "M1", 1), "M1");
+            assertEquals("Decisions were not delivered in order", List.of("1=A", "2=B"), delivered);
+            logMessages.add("Delivered " + delivered);
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing forwarded decisions");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Learner counts acceptances straight from parsed text.
+     *
+     * Description: Parse ACCEPTED messages for a Multi-Paxos instance into one reused view and hand the view to the
+     * learner, with a repeated acceptor, then hand it a PREPARE.
+     * Expectation: The acceptances are handled from the view and the value is learned at the third distinct
+     * acceptor, while the PREPARE is left to receiveMessage.
+     */
+    @Test
+    public void testLearnsFromParsedView() {
+        logMessages.add("\n--- TEST: testLearnsFromParsedView ---\n");
+
+        PaxosMessageView view = new PaxosMessageView();
+        String[] messages = {"ACCEPTED;9;M2;X;4", "ACCEPTED;9;M2;X;4", "ACCEPTED;9;M3;X;4", "ACCEPTED;9;M5;X;4"};
+        try {
+            for (int i = 0; i < messages.length; i++) {
+                assertTrue("Message was not parsed", TextMessageParser.parse(messages[i], view));
+                assertTrue("Acceptance was not handled from the view", learner.receiveView(view));
+                assertEquals("Instance was learned too early", i == messages.length - 1, learner.getReplicatedLog().isDecided(4));
+            }
+            assertEquals("Wrong value learned", "X", learner.getReplicatedLog().get(4));
+            assertTrue("Message was not parsed", TextMessageParser.parse("PREPARE;9;M2;null;4", view));
+            assertFalse("Unsupported message was handled from the view", learner.receiveView(view));
+            logMessages.add("Learned " + learner.getReplicatedLog().get(4) + " from parsed views");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing learning from parsed views");
+            logMessages.add(e.getMessage());
+            throw e;
         }
     }
 
     /**
-     * Retrieves the value that has been learned by the learner, if any.
+     * Acceptances below an installed snapshot are dropped.
      *
-     * @return The learned value or null if no value has been learned yet.
+     * Description: Count one acceptance each for instances 3, 4 and 7, install a snapshot at slot 5, and deliver
+     * more acceptances for instances 3 and 7.
+     * Expectation: The trackers of instances 3 and 4 go back to the pool, the late acceptance takes none, and
+     * instance 7 is still learned.
      */
-    public String getLearnedValue() {
-        return learnedValue;
+    @Test
+    public void testSnapshotReleasesPartialAcceptances() throws InterruptedException {
+        logMessages.add("\n--- TEST: testSnapshotReleasesPartialAcceptances ---\n");
+
+        StateMachine stateMachine = new StateMachine() {
+            @Override
+            public void apply(int slot, String value) {
+            }
+
+            @Override
+            public SnapshotWriter captureSnapshot() {
+                return () -> new byte[0];
+            }
+
+            @Override
+            public void restoreSnapshot(byte[] state) {
+            }
+        };
+        PaxosMessageView view = new PaxosMessageView();
+        try (SnapshotManager snapshotManager = new SnapshotManager(learner.getReplicatedLog(), stateMachine, new PaxosConfig())) {
+            learner.setSnapshotManager(snapshotManager);
+            for (String message : new String[] {"ACCEPTED;9;M2;X;3", "ACCEPTED;9;M2;Y;4", "ACCEPTED;9;M2;Z;7"}) {
+                assertTrue("Message was not parsed", TextMessageParser.parse(message, view));
+                learner.receiveView(view);
+            }
+            QuorumSystem system = learner.quorumSystem();
+            assertEquals("Trackers were released early", 0, system.getPooledCount());
+
+            assertTrue("Snapshot was not installed", snapshotManager.install(new Snapshot(5, new byte[0])));
+            // Compaction is reported on the snapshot thread and applied at the end of a batch
+            long deadline = System.currentTimeMillis() + 5000;
+            while (system.getPooledCount() < 2 && System.currentTimeMillis() < deadline) {
+                learner.onBatchEnd();
+                Thread.sleep(5);
+            }
+            assertEquals("Trackers below the snapshot were not released", 2, system.getPooledCount());
+
+            assertTrue("Message was not parsed", TextMessageParser.parse("ACCEPTED;9;M3;X;3", view));
+            learner.receiveView(view);
+            assertEquals("Late acceptance of a compacted instance took a tracker", 2, system.getPooledCount());
+            for (String message : new String[] {"ACCEPTED;9;M3;Z;7", "ACCEPTED;9;M4;Z;7"}) {
+                assertTrue("Message was not parsed", TextMessageParser.parse(message, view));
+                learner.receiveView(view);
+            }
+            assertEquals("Instance above the snapshot was not learned", "Z", learner.getReplicatedLog().get(7));
+            logMessages.add("Released " + system.getPooledCount() + " trackers below the snapshot");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing snapshot compaction");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
     }
 }
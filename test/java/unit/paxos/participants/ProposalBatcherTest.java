@@ -0,0 +1,114 @@
+package paxos.participants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import paxos.utils.Histogram;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ProposalBatcher module and its histograms.
+ */
+public class ProposalBatcherTest {
+    private List<String> logMessages;
+
+    @Before
+    public void setUp() {
+        logMessages = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        logMessages.forEach(System.out::println);
+    }
+
+    /**
+     * Decided batches are unpacked into their values.
+     *
+     * Description: Unpack a batch holding values with wire format separators, and a plain value.
+     * Expectation: Batch values come back unchanged and in order, and the plain value passes through.
+     */
+    @Test
+    public void testUnpacking() {
+        logMessages.add("\n--- TEST: testUnpacking ---\n");
+
+        String batch = ProposalBatcher.BATCH_MARKER + "3,YTtiOmM=,,w6k=";
+        List<String> delivered = new ArrayList<>();
+        ReplicatedLog.DecisionListener listener = ProposalBatcher.unpacking((slot, value) -> delivered.add(slot + "=" + value));
+        listener.onDecided(1, batch);
+        listener.onDecided(2, PaxosProposer.NO_OP);
+
+        try {
+            assertEquals("Batch was not unpacked in order", List.of("1=a;b:c", "1=", "1=é", "2=NO_OP"), delivered);
+            logMessages.add("Batches were unpacked");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing unpacking");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Values that are not well formed batches pass through unchanged.
+     *
+     * Description: Unpack plain values that look like the old batch prefix, and marked values with a bad count,
+     * bad Base64 or a wrong number of entries.
+     * Expectation: Each value is returned unchanged as the only entry, and nothing is thrown.
+     */
+    @Test
+    public void testMalformedBatchesPassThrough() {
+        logMessages.add("\n--- TEST: testMalformedBatchesPassThrough ---\n");
+
+        String marker = String.valueOf(ProposalBatcher.BATCH_MARKER);
+        List<String> values = List.of("BATCH,not base64!", "BATCH,", "", marker, marker + "x,YQ==",
+                marker + "1,not base64!", marker + "2,YQ==", marker + "1,YQ==,Yg==", marker + "1");
+        try {
+            for (String value : values) {
+                assertEquals("Value was not passed through", List.of(value), ProposalBatcher.unpack(value));
+            }
+            assertEquals("Well formed batch was not unpacked", List.of("a", "b"), ProposalBatcher.unpack(marker + "2,YQ==,Yg=="));
+            logMessages.add("Passed through " + values.size() + " malformed values");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing malformed batches");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Histogram buckets values by powers of two.
+     *
+     * Description: Record a spread of batch sizes.
+     * Expectation: Count, mean, max and percentile bounds match the recorded values.
+     */
+    @Test
+    public void testHistogram() {
+        logMessages.add("\n--- TEST: testHistogram ---\n");
+
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(1);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(100);
+        }
+
+        try {
+            assertEquals("Count is wrong", 100, histogram.getCount());
+            assertEquals("Mean is wrong", 10.9, histogram.getMean(), 0.001);
+            assertEquals("Max is wrong", 100, histogram.getMax());
+            assertEquals("Median bound is wrong", 1, histogram.getPercentile(50));
+            assertEquals("p99 bound is wrong", 100, histogram.getPercentile(99));
+            assertEquals("Text form is wrong", "[1]=90 [64-127]=10", histogram.toString());
+            logMessages.add("Histogram bucketed the values");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing histogram");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+}
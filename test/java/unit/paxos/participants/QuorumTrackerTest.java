@@ -0,0 +1,225 @@
+package paxos.participants;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import paxos.participants.PaxosParticipant.Node;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the QuorumTracker and QuorumSystem modules.
+ */
+public class QuorumTrackerTest {
+    private List<String> logMessages;
+
+    @Before
+    public void setUp() {
+        logMessages = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        logMessages.forEach(System.out::println);
+    }
+
+    /**
+     * Majority quorum counts each acceptor once.
+     *
+     * Description: Add acceptors of a 9 node majority system to a tracker, repeating some and adding ordinals
+     * that are not nodes, including ordinals in the second word of a 70 node system.
+     * Expectation: Repeats and unknown ordinals are not counted, and the quorum is reached at the fifth acceptor.
+     */
+    @Test
+    public void testMajorityCountsEachAcceptorOnce() {
+        logMessages.add("\n--- TEST: testMajorityCountsEachAcceptorOnce ---\n");
+
+        QuorumTracker tracker = QuorumSystem.majority(9).acquire(QuorumSystem.Phase.ACCEPT);
+        try {
+            assertEquals("Wrong threshold", 5, tracker.getThreshold());
+            for (int ordinal = 0; ordinal < 4; ordinal++) {
+                assertTrue("New acceptor was not counted", tracker.add(ordinal));
+                assertFalse("Repeated acceptor was counted", tracker.add(ordinal));
+            }
+            assertFalse("Unknown ordinal was counted", tracker.add(9));
+            assertFalse("Unknown ordinal was counted", tracker.add(-1));
+            assertFalse("Quorum reached by 4 of 9", tracker.isReached());
+            assertTrue(tracker.add(8));
+            assertTrue("Quorum not reached by 5 of 9", tracker.isReached());
+            assertEquals("Wrong acceptor count", 5, tracker.size());
+
+            QuorumTracker wide = QuorumSystem.majority(70).acquire(QuorumSystem.Phase.PREPARE);
+            assertTrue(wide.add(69));
+            assertFalse("Repeated acceptor was counted", wide.add(69));
+            assertTrue("Acceptor in the second word was lost", wide.contains(69));
+            assertFalse("Acceptor in the first word was set", wide.contains(5));
+            logMessages.add("Counted " + tracker.size() + " distinct acceptors");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing majority quorums");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Weighted quorum needs more than half of the weight.
+     *
+     * Description: Give M1 a weight of 3 in a 5 node config and add acceptors of the resulting system.
+     * Expectation: M1 and one other node form a quorum of 4 out of 7, while four light nodes are needed without M1.
+     */
+    @Test
+    public void testWeightedQuorumFromConfig() {
+        logMessages.add("\n--- TEST: testWeightedQuorumFromConfig ---\n");
+
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            nodes.add(new Node("M" + i, "localhost", 8000 + i, 9000 + i));
+        }
+        Map<String, Integer> weights = new HashMap<>();
+        weights.put("M1", 3);
+        PaxosConfig config = new PaxosConfig();
+        config.setQuorumWeights(weights);
+        QuorumSystem system = QuorumSystem.of(config, nodes);
+
+        try {
+            assertEquals("Wrong total weight", 7, system.getTotalWeight());
+            QuorumTracker heavy = system.acquire(QuorumSystem.Phase.ACCEPT);
+            heavy.add(0);
+            assertFalse("Quorum reached by M1 alone", heavy.isReached());
+            heavy.add(3);
+            assertTrue("Quorum not reached by M1 and M4", heavy.isReached());
+
+            QuorumTracker light = system.acquire(QuorumSystem.Phase.ACCEPT);
+            for (int ordinal = 1; ordinal < 4; ordinal++) {
+                light.add(ordinal);
+            }
+            assertFalse("Quorum reached by 3 light nodes", light.isReached());
+            light.add(4);
+            assertTrue("Quorum not reached by 4 light nodes", light.isReached());
+            logMessages.add("Weighted quorum reached at weight " + heavy.getWeight() + " of " + system.getTotalWeight());
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing weighted quorums");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Flexible quorums use a size per phase.
+     *
+     * Description: Create a 9 node system with a phase 1 quorum of 7 and a phase 2 quorum of 3.
+     * Expectation: Three acceptances are a phase 2 quorum, while a prepare needs seven promises.
+     */
+    @Test
+    public void testFlexibleQuorumSizesPerPhase() {
+        logMessages.add("\n--- TEST: testFlexibleQuorumSizesPerPhase ---\n");
+
+        QuorumSystem system = QuorumSystem.flexible(9, 7, 3);
+        QuorumTracker promises = system.acquire(QuorumSystem.Phase.PREPARE);
+        QuorumTracker acceptances = system.acquire(QuorumSystem.Phase.ACCEPT);
+        try {
+            for (int ordinal = 0; ordinal < 3; ordinal++) {
+                promises.add(ordinal);
+                acceptances.add(ordinal);
+            }
+            assertTrue("Phase 2 quorum not reached by 3", acceptances.isReached());
+            assertFalse("Phase 1 quorum reached by 3", promises.isReached());
+            for (int ordinal = 3; ordinal < 7; ordinal++) {
+                promises.add(ordinal);
+            }
+            assertTrue("Phase 1 quorum not reached by 7", promises.isReached());
+            logMessages.add("Flexible quorums of " + promises.size() + " and " + acceptances.size());
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing flexible quorums");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Quorums that need not intersect are rejected.
+     *
+     * Description: Create a 9 node flexible system with quorums of 5 and 4.
+     * Expectation: IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonIntersectingQuorumsAreRejected() {
+        logMessages.add("\n--- TEST: testNonIntersectingQuorumsAreRejected ---\n");
+
+        QuorumSystem.flexible(9, 5, 4);
+    }
+
+    /**
+     * Configured quorum sizes fill in the other phase.
+     *
+     * Description: Set only a phase 2 quorum size of 3 in a 9 node config, then set sizes of 5 and 4.
+     * Expectation: The phase 1 quorum becomes 7, and the sizes of 5 and 4 are rejected for the node list.
+     */
+    @Test
+    public void testQuorumSizesFromConfig() {
+        logMessages.add("\n--- TEST: testQuorumSizesFromConfig ---\n");
+
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 9; i++) {
+            nodes.add(new Node("M" + i, "localhost", 8000 + i, 9000 + i));
+        }
+        PaxosConfig config = new PaxosConfig();
+        config.setQuorumSizes(0, 3);
+        try {
+            QuorumSystem system = QuorumSystem.of(config, nodes);
+            assertEquals("Wrong phase 1 quorum", 7, system.getThreshold(QuorumSystem.Phase.PREPARE));
+            assertEquals("Wrong phase 2 quorum", 3, system.getThreshold(QuorumSystem.Phase.ACCEPT));
+
+            config.setQuorumSizes(5, 4);
+            try {
+                QuorumSystem.of(config, nodes);
+                fail("Non-intersecting configured quorums were accepted");
+            } catch (IllegalArgumentException e) {
+                logMessages.add("Rejected configured quorums: " + e.getMessage());
+            }
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing configured quorum sizes");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Released trackers are reused empty.
+     *
+     * Description: Acquire a prepare tracker, fill it, release it and acquire an accept tracker.
+     * Expectation: The same tracker is handed out again, with no acceptors and the accept phase threshold.
+     */
+    @Test
+    public void testReleasedTrackerIsReusedEmpty() {
+        logMessages.add("\n--- TEST: testReleasedTrackerIsReusedEmpty ---\n");
+
+        QuorumSystem system = QuorumSystem.flexible(5, 4, 2);
+        QuorumTracker first = system.acquire(QuorumSystem.Phase.PREPARE);
+        for (int ordinal = 0; ordinal < 4; ordinal++) {
+            first.add(ordinal);
+        }
+        system.release(first);
+        QuorumTracker second = system.acquire(QuorumSystem.Phase.ACCEPT);
+        try {
+            assertSame("Released tracker was not reused", first, second);
+            assertEquals("Pool was not emptied", 0, system.getPooledCount());
+            assertEquals("Acceptors were kept", 0, second.size());
+            assertFalse("Acceptor was kept", second.contains(0));
+            assertEquals("Wrong threshold", 2, second.getThreshold());
+            assertTrue("Acceptor was not counted again", second.add(0));
+            system.release(QuorumSystem.majority(5).acquire(QuorumSystem.Phase.ACCEPT));
+            assertEquals("Tracker of another system was pooled", 0, system.getPooledCount());
+            logMessages.add("Reused tracker with threshold " + second.getThreshold());
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing tracker reuse");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+}
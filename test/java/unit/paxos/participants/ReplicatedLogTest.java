@@ -0,0 +1,132 @@
+package paxos.participants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ReplicatedLog and SlotTable modules.
+ */
+public class ReplicatedLogTest {
+    private List<String> logMessages;
+
+    @Before
+    public void setUp() {
+        logMessages = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        logMessages.forEach(System.out::println);
+    }
+
+    /**
+     * Log delivers decided values in slot order.
+     *
+     * Description: Decide slots out of order, including a duplicate, past the initial capacity.
+     * Expectation: The listener sees every slot once, in order, and only after the gap below it is filled.
+     */
+    @Test
+    public void testDeliversInSlotOrder() {
+        logMessages.add("\n--- TEST: testDeliversInSlotOrder ---\n");
+
+        ReplicatedLog log = new ReplicatedLog();
+        List<String> delivered = new ArrayList<>();
+        log.setListener((slot, value) -> delivered.add(slot + "=" + value));
+
+        try {
+            assertTrue(log.decide(2, "b"));
+            assertTrue("Slot 2 was delivered before slot 1", delivered.isEmpty());
+            assertTrue(log.decide(1, "a"));
+            assertFalse("Duplicate decision was accepted", log.decide(2, "x"));
+            assertEquals("Slots 1 and 2 were not delivered in order", List.of("1=a", "2=b"), delivered);
+            for (int slot = 200; slot >= 3; slot--) {
+                log.decide(slot, "v" + slot);
+            }
+            assertEquals("Not every slot was delivered", 200, delivered.size());
+            assertEquals("Last slot delivered out of order", "200=v200", delivered.get(199));
+            assertEquals("First undecided slot is wrong", 201, log.getFirstUndecidedSlot());
+            logMessages.add("Decided values were delivered in slot order");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing delivery order");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Log truncates delivered slots and skips ahead to a snapshot.
+     *
+     * Description: Truncate a log with a gap, then install a snapshot past a slot decided above the gap.
+     * Expectation: Only delivered slots are truncated and still count as decided; the snapshot delivers the
+     * slot decided above it without passing the covered slots to the listener.
+     */
+    @Test
+    public void testTruncateAndInstallSnapshot() {
+        logMessages.add("\n--- TEST: testTruncateAndInstallSnapshot ---\n");
+
+        ReplicatedLog log = new ReplicatedLog();
+        List<String> delivered = new ArrayList<>();
+        log.setListener((slot, value) -> delivered.add(slot + "=" + value));
+        for (int slot = 1; slot <= 100; slot++) {
+            log.decide(slot, "v" + slot);
+        }
+        log.decide(102, "v102");
+        log.decide(111, "v111");
+
+        try {
+            log.truncateBefore(150);
+            assertEquals("Undelivered slots were truncated", 101, log.getFirstSlot());
+            assertNull("Truncated slot kept its value", log.get(50));
+            assertTrue("Truncated slot is not decided", log.isDecided(50));
+            assertEquals("Slot above the gap was lost", "v102", log.get(102));
+
+            delivered.clear();
+            assertTrue("Snapshot ahead of the log was not installed", log.installSnapshot(110));
+            assertEquals("Only the slot above the snapshot should be delivered", List.of("111=v111"), delivered);
+            assertEquals("First undecided slot is wrong", 112, log.getFirstUndecidedSlot());
+            assertEquals("Decided count is wrong", 111, log.getDecidedCount());
+            assertFalse("Snapshot behind the log was installed", log.installSnapshot(105));
+            logMessages.add("Log truncated to " + log.getFirstSlot() + " and skipped ahead to slot 110");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing truncation and snapshots");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Slot table stores accepted proposals per slot.
+     *
+     * Description: Store proposals in sparse slots beyond the initial capacity and overwrite one.
+     * Expectation: Stored slots return their latest proposal, and empty slots report nothing.
+     */
+    @Test
+    public void testSlotTable() {
+        logMessages.add("\n--- TEST: testSlotTable ---\n");
+
+        SlotTable table = new SlotTable();
+        table.put(1, 5, "a");
+        table.put(1000, 7, "b");
+        table.put(1, 9, "c");
+
+        try {
+            assertEquals("Overwritten slot is wrong", "c", table.getValue(1));
+            assertEquals("Overwritten proposal number is wrong", 9, table.getProposalNumber(1));
+            assertEquals("Sparse slot is wrong", "b", table.getValue(1000));
+            assertFalse("Empty slot reported a proposal", table.contains(500));
+            assertEquals("Empty slot reported a proposal number", -1, table.getProposalNumber(500));
+            assertNull("Slot past the end reported a value", table.getValue(2000));
+            assertEquals("Highest slot is wrong", 1000, table.getHighestSlot());
+            logMessages.add("Slot table stored proposals per slot");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing slot table");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package paxos.participants;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import paxos.messages.PaxosMessage;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the SnapshotManager and Snapshot modules.
+ */
+public class SnapshotManagerTest {
+    private List<String> logMessages;
+    private Path directory;
+    private PaxosConfig config;
+
+    /**
+     * State machine that keeps every applied value, and snapshots them joined by commas.
+     */
+    private static class ListStateMachine implements StateMachine {
+        private final List<String> values = new ArrayList<>();
+
+        @Override
+        public void apply(int slot, String value) {
+            values.add(value);
+        }
+
+        @Override
+        public SnapshotWriter captureSnapshot() {
+            List<String> captured = new ArrayList<>(values);
+            return () -> String.join(",", captured).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void restoreSnapshot(byte[] state) {
+            values.clear();
+            String joined = new String(state, StandardCharsets.UTF_8);
+            if (!joined.isEmpty()) {
+                values.addAll(Arrays.asList(joined.split(",")));
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        logMessages = new ArrayList<>();
+        directory = Files.createTempDirectory("snapshot-test");
+        config = new PaxosConfig();
+        config.setSnapshotIntervalSlots(10);
+        config.setSnapshotDirectory(directory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        logMessages.forEach(System.out::println);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static void awaitSnapshots(SnapshotManager manager, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (manager.getSnapshotCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Snapshot is split into chunks and put back together.
+     *
+     * Description: Send two snapshots from two senders as chunks, in reverse order and interleaved, repeating one.
+     * Expectation: Each snapshot is assembled by the chunk that completes it, with the original slot and bytes.
+     */
+    @Test
+    public void testChunksAreAssembled() {
+        logMessages.add("\n--- TEST: testChunksAreAssembled ---\n");
+
+        byte[] state = new byte[1000];
+        for (int i = 0; i < state.length; i++) {
+            state[i] = (byte) i;
+        }
+        Snapshot first = new Snapshot(42, state);
+        Snapshot second = new Snapshot(7, "small".getBytes(StandardCharsets.UTF_8));
+        Snapshot.Assembler assembler = new Snapshot.Assembler();
+
+        try {
+            assertEquals("Wrong chunk count", 4, first.getChunkCount(300));
+            assertNull(assembler.add(first.toChunk(3, 300, "M1")));
+            assertNull(assembler.add(first.toChunk(2, 300, "M1")));
+            assertNull("Repeated chunk completed the snapshot", assembler.add(first.toChunk(2, 300, "M1")));
+            Snapshot other = assembler.add(second.toChunk(0, 300, "M2"));
+            assertNotNull("Single chunk snapshot was not assembled", other);
+            assertEquals("Wrong slot", 7, other.getSlot());
+            assertNull(assembler.add(first.toChunk(1, 300, "M1")));
+            Snapshot assembled = assembler.add(first.toChunk(0, 300, "M1"));
+            assertNotNull("Snapshot was not assembled", assembled);
+            assertEquals("Wrong slot", 42, assembled.getSlot());
+            assertArrayEquals("Wrong state", state, assembled.getState());
+            logMessages.add("Assembled " + assembled.getState().length + " bytes from 4 chunks");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing chunk assembly");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Malformed snapshot chunk is rejected.
+     *
+     * Description: Add a SNAPSHOT message whose value has no chunk count.
+     * Expectation: The assembler throws IllegalArgumentException.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedChunkIsRejected() {
+        logMessages.add("\n--- TEST: testMalformedChunkIsRejected ---\n");
+
+        new Snapshot.Assembler().add(PaxosMessage.snapshotChunkMessage(0, "garbage", "M1", 5));
+    }
+
+    /**
+     * Snapshots are taken in the background and compact the log.
+     *
+     * Description: Decide 25 slots with a snapshot interval of 10, then open a new manager on the same directory.
+     * Expectation: Two snapshots are taken, the log and the compaction listener are truncated past slot 20, only
+     * the newest snapshot file is kept, and the new manager restores the state and the log position from it.
+     */
+    @Test
+    public void testSnapshotsCompactTheLog() throws InterruptedException, IOException {
+        logMessages.add("\n--- TEST: testSnapshotsCompactTheLog ---\n");
+
+        ReplicatedLog log = new ReplicatedLog();
+        ListStateMachine stateMachine = new ListStateMachine();
+        List<Integer> compactions = new ArrayList<>();
+        try (SnapshotManager manager = new SnapshotManager(log, stateMachine, config)) {
+            manager.addCompactionListener(firstSlotKept -> {
+                synchronized (compactions) {
+                    compactions.add(firstSlotKept);
+                }
+            });
+            // A snapshot is skipped while the previous one is still being written, so wait for each
+            for (int slot = 1; slot <= 10; slot++) {
+                log.decide(slot, "v" + slot);
+            }
+            awaitSnapshots(manager, 1);
+            for (int slot = 11; slot <= 25; slot++) {
+                log.decide(slot, "v" + slot);
+            }
+            awaitSnapshots(manager, 2);
+
+            try {
+                assertEquals("Wrong number of snapshots", 2, manager.getSnapshotCount());
+                assertEquals("Wrong snapshot slot", 20, manager.getLatestSnapshot().getSlot());
+                assertEquals("Log was not compacted", 21, log.getFirstSlot());
+                synchronized (compactions) {
+                    assertEquals("Compaction listener was not called", List.of(11, 21), compactions);
+                }
+                try (Stream<Path> files = Files.list(directory)) {
+                    assertEquals("Older snapshots were kept", 1, files.count());
+                }
+                logMessages.add("Took " + manager.getSnapshotCount() + " snapshots, log starts at " + log.getFirstSlot());
+            } catch (AssertionError e) {
+                logMessages.add("Exception thrown when testing background snapshots");
+                logMessages.add(e.getMessage());
+                throw e;
+            }
+        }
+
+        ReplicatedLog restartedLog = new ReplicatedLog();
+        ListStateMachine restartedStateMachine = new ListStateMachine();
+        try (SnapshotManager restarted = new SnapshotManager(restartedLog, restartedStateMachine, config)) {
+            try {
+                assertEquals("State was not restored", 20, restartedStateMachine.values.size());
+                assertEquals("Wrong restored value", "v20", restartedStateMachine.values.get(19));
+                assertEquals("Log did not resume after the snapshot", 21, restartedLog.getFirstUndecidedSlot());
+                logMessages.add("Restored " + restartedStateMachine.values.size() + " values after a restart");
+            } catch (AssertionError e) {
+                logMessages.add("Exception thrown when testing snapshot restore");
+                logMessages.add(e.getMessage());
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Lagging log installs a snapshot from a peer.
+     *
+     * Description: Install a snapshot at slot 30 into a log that has decided slots 1 and 32.
+     * Expectation: The state machine is replaced by the snapshot, then slot 32 waits for slot 31 and both are
+     * applied after it. A snapshot behind the log is refused.
+     */
+    @Test
+    public void testInstallSnapshotFromPeer() {
+        logMessages.add("\n--- TEST: testInstallSnapshotFromPeer ---\n");
+
+        config.setSnapshotIntervalSlots(0);
+        ReplicatedLog log = new ReplicatedLog();
+        ListStateMachine stateMachine = new ListStateMachine();
+        try (SnapshotManager manager = new SnapshotManager(log, stateMachine, config)) {
+            log.decide(1, "local");
+            log.decide(32, "v32");
+
+            try {
+                assertTrue("Snapshot was not installed", manager.install(new Snapshot(30, "a,b,c".getBytes(StandardCharsets.UTF_8))));
+                assertEquals("State was not replaced", List.of("a", "b", "c"), stateMachine.values);
+                log.decide(31, "v31");
+                assertEquals("Later slots were not applied", List.of("a", "b", "c", "v31", "v32"), stateMachine.values);
+                assertFalse("Snapshot behind the log was installed", manager.install(new Snapshot(20, new byte[0])));
+                assertEquals("Installed snapshot is not the latest", 30, manager.getLatestSnapshot().getSlot());
+                logMessages.add("Installed snapshot at slot 30 and applied slots 31 and 32");
+            } catch (AssertionError e) {
+                logMessages.add("Exception thrown when testing snapshot install");
+                logMessages.add(e.getMessage());
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package paxos.participants;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ThriftySelector module.
+ */
+public class ThriftySelectorTest {
+    private static final long MILLIS = 1_000_000L;
+
+    private List<String> logMessages;
+
+    @Before
+    public void setUp() {
+        logMessages = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        logMessages.forEach(System.out::println);
+    }
+
+    /**
+     * Thrifty selection picks the fastest quorum.
+     *
+     * Description: Time one request to each node of a 5 node majority system, with node 0 and node 3 slowest.
+     * Expectation: The three fastest nodes are selected, leaving out nodes 0 and 3.
+     */
+    @Test
+    public void testSelectsFastestQuorum() {
+        logMessages.add("\n--- TEST: testSelectsFastestQuorum ---\n");
+
+        ThriftySelector selector = new ThriftySelector(QuorumSystem.majority(5));
+        long[] replyMillis = {90, 10, 20, 80, 30};
+        for (int ordinal = 0; ordinal < replyMillis.length; ordinal++) {
+            selector.recordSent(ordinal, 1);
+            selector.recordReply(ordinal, 1 + replyMillis[ordinal] * MILLIS);
+        }
+        BitSet selected = selector.select(QuorumSystem.Phase.ACCEPT, 100 * MILLIS);
+        try {
+            assertEquals("Wrong selection", BitSet.valueOf(new long[] {0b10110}), selected);
+            logMessages.add("Selected " + selected);
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing thrifty selection");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * An unanswered request makes a node rank as slow.
+     *
+     * Description: Measure node 1 as the fastest of a 3 node system, then leave its next request unanswered.
+     * Expectation: Node 1 is selected at first, and left out once it has waited longer than the others take.
+     */
+    @Test
+    public void testUnansweredNodeFallsBehind() {
+        logMessages.add("\n--- TEST: testUnansweredNodeFallsBehind ---\n");
+
+        ThriftySelector selector = new ThriftySelector(QuorumSystem.majority(3));
+        long[] replyMillis = {20, 5, 30};
+        for (int ordinal = 0; ordinal < replyMillis.length; ordinal++) {
+            selector.recordSent(ordinal, 1);
+            selector.recordReply(ordinal, 1 + replyMillis[ordinal] * MILLIS);
+        }
+        try {
+            assertTrue("Fastest node not selected", selector.select(QuorumSystem.Phase.ACCEPT, 100 * MILLIS).get(1));
+            selector.recordSent(1, 100 * MILLIS);
+            assertTrue("Node left out too soon", selector.select(QuorumSystem.Phase.ACCEPT, 110 * MILLIS).get(1));
+            BitSet selected = selector.select(QuorumSystem.Phase.ACCEPT, 200 * MILLIS);
+            assertFalse("Unanswered node selected", selected.get(1));
+            assertEquals("Wrong quorum size", 2, selected.cardinality());
+            logMessages.add("Selected " + selected + " with node 1 waiting " + selector.expectedNanos(1, 200 * MILLIS) / MILLIS + " ms");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing unanswered nodes");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Selection follows the quorum size of the phase.
+     *
+     * Description: Select from a 9 node flexible system with a phase 1 quorum of 7 and a phase 2 quorum of 3,
+     * before any node is measured.
+     * Expectation: Seven nodes are selected for a prepare and three for an accept.
+     */
+    @Test
+    public void testSelectionSizePerPhase() {
+        logMessages.add("\n--- TEST: testSelectionSizePerPhase ---\n");
+
+        ThriftySelector selector = new ThriftySelector(QuorumSystem.flexible(9, 7, 3));
+        try {
+            assertEquals("Wrong phase 1 selection", 7, selector.select(QuorumSystem.Phase.PREPARE, 1).cardinality());
+            assertEquals("Wrong phase 2 selection", 3, selector.select(QuorumSystem.Phase.ACCEPT, 1).cardinality());
+            logMessages.add("Selected quorums of 7 and 3");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing selection size");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+}
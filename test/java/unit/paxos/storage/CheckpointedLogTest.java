@@ -0,0 +1,235 @@
+package paxos.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the CheckpointedLog and RecoveringSlotStore modules.
+ */
+public class CheckpointedLogTest {
+    private List<String> logMessages;
+    private Path directory;
+
+    /**
+     * Slot store on the heap, standing in for the acceptor's slot store.
+     */
+    private static class MapSlotStore implements SlotStore {
+        private final TreeMap<Integer, CheckpointedLog.SlotRecord> slots = new TreeMap<>();
+
+        @Override
+        public void put(int slot, long proposalNumber, String value) {
+            slots.put(slot, new CheckpointedLog.SlotRecord(proposalNumber, value));
+        }
+
+        @Override
+        public boolean contains(int slot) {
+            return slots.containsKey(slot);
+        }
+
+        @Override
+        public long getProposalNumber(int slot) {
+            return contains(slot) ? slots.get(slot).getProposalNumber() : -1;
+        }
+
+        @Override
+        public String getValue(int slot) {
+            return contains(slot) ? slots.get(slot).getValue() : null;
+        }
+
+        @Override
+        public int getHighestSlot() {
+            return slots.isEmpty() ? 0 : slots.lastKey();
+        }
+
+        @Override
+        public void truncateBefore(int slot) {
+            slots.headMap(slot).clear();
+        }
+
+        @Override
+        public int getFirstSlot() {
+            return 1;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        logMessages = new ArrayList<>();
+        directory = Files.createTempDirectory("checkpointed-log-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        logMessages.forEach(System.out::println);
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private List<String> fileNames() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> names.add(file.getFileName().toString()));
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Log recovers from a checkpoint and the segments after it.
+     *
+     * Description: Accept 300 slots, with a checkpoint whenever one is due, then accept some slots again under a
+     * higher proposal number and reopen the log.
+     * Expectation: Only the newest checkpoint and the segments after it are kept. The checkpoint's slots and the
+     * recovered segments together hold the newest proposal of every slot, and the promise.
+     */
+    @Test
+    public void testRecoversFromCheckpointAndSegments() throws IOException {
+        logMessages.add("\n--- TEST: testRecoversFromCheckpointAndSegments ---\n");
+
+        MapSlotStore slots = new MapSlotStore();
+        CheckpointedLog.RecoveredState empty = new CheckpointedLog.RecoveredState();
+        try (CheckpointedLog log = CheckpointedLog.open(directory, 512, 3, slots::put, empty)) {
+            log.appendPromise(5);
+            for (int slot = 1; slot <= 300; slot++) {
+                slots.put(slot, 5, "V" + slot);
+                log.appendAccept(slot, 5, "V" + slot);
+                log.sync();
+                if (log.checkpointNeeded()) {
+                    log.checkpoint(5, -1, null, slots);
+                }
+            }
+            log.appendPromise(9);
+            for (int slot = 290; slot <= 300; slot++) {
+                log.appendAccept(slot, 9, "W" + slot);
+            }
+            log.sync();
+            assertTrue("No checkpoint was written", log.getCheckpointCount() > 0);
+        }
+
+        MapSlotStore restored = new MapSlotStore();
+        CheckpointedLog.RecoveredState recovered = new CheckpointedLog.RecoveredState();
+        try (CheckpointedLog log = CheckpointedLog.open(directory, 512, 3, restored::put, recovered)) {
+            try {
+                List<String> names = fileNames();
+                assertEquals("Older checkpoints were kept", 1, names.stream().filter(name -> name.endsWith(".ckpt")).count());
+                assertTrue("Segments were not rolled", recovered.getSegmentCount() > 1);
+                assertEquals("Wrong promise", 9, recovered.getPromise());
+                for (int slot = 1; slot <= 300; slot++) {
+                    CheckpointedLog.SlotRecord record = recovered.getSlot(slot);
+                    String value = record != null ? record.getValue() : restored.getValue(slot);
+                    assertEquals("Wrong value for slot " + slot, slot >= 290 ? "W" + slot : "V" + slot, value);
+                }
+                logMessages.add("Recovered " + names + " with " + recovered.getRecordCount() + " records after the checkpoint");
+            } catch (AssertionError e) {
+                logMessages.add("Exception thrown when testing checkpoint recovery");
+                logMessages.add(e.getMessage());
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Segments scanned in parallel keep the highest proposal of each slot.
+     *
+     * Description: Accept the same slots under rising proposal numbers across many segments, and the single
+     * decision twice, without a checkpoint. Reopen the log.
+     * Expectation: Every segment is scanned and each slot recovers its highest proposal, whatever order the
+     * segments were merged in.
+     */
+    @Test
+    public void testParallelScanKeepsHighestProposal() throws IOException {
+        logMessages.add("\n--- TEST: testParallelScanKeepsHighestProposal ---\n");
+
+        try (CheckpointedLog log = CheckpointedLog.open(directory, 256, Integer.MAX_VALUE, (slot, number, value) -> { }, new CheckpointedLog.RecoveredState())) {
+            log.appendAccept(0, 2, "first");
+            for (int round = 1; round <= 20; round++) {
+                for (int slot = 1; slot <= 10; slot++) {
+                    log.appendAccept(slot, round, "R" + round + "S" + slot);
+                }
+                log.sync();
+            }
+            log.appendAccept(0, 30, "second");
+            log.sync();
+        }
+
+        CheckpointedLog.RecoveredState recovered = new CheckpointedLog.RecoveredState();
+        try (CheckpointedLog log = CheckpointedLog.open(directory, 256, Integer.MAX_VALUE, (slot, number, value) -> fail("Checkpoint found"), recovered)) {
+            try {
+                assertEquals("Not every segment was scanned", fileNames().size(), recovered.getSegmentCount());
+                assertTrue("Too few segments to scan in parallel", recovered.getSegmentCount() > 4);
+                assertEquals("Wrong record count", 202, recovered.getRecordCount());
+                for (int slot = 1; slot <= 10; slot++) {
+                    assertEquals("Wrong proposal number", 20, recovered.getSlot(slot).getProposalNumber());
+                    assertEquals("Wrong value", "R20S" + slot, recovered.getSlot(slot).getValue());
+                }
+                assertEquals("Wrong single decision", "second", recovered.getAcceptedValue());
+                assertEquals("Wrong promise", 20, recovered.getPromise());
+                logMessages.add("Scanned " + recovered.getSegmentCount() + " segments");
+            } catch (AssertionError e) {
+                logMessages.add("Exception thrown when testing parallel scan");
+                logMessages.add(e.getMessage());
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Recovering store answers for recovered slots before they are indexed.
+     *
+     * Description: Wrap a slot store holding older proposals around a recovered state, accept a new slot, and
+     * index the recovered slots a few at a time.
+     * Expectation: Reads return the highest proposal of each slot before, during and after indexing, and the
+     * slot store holds every recovered slot at the end.
+     */
+    @Test
+    public void testRecoveringStoreAnswersBeforeIndexing() throws IOException {
+        logMessages.add("\n--- TEST: testRecoveringStoreAnswersBeforeIndexing ---\n");
+
+        try (CheckpointedLog log = CheckpointedLog.open(directory, 1 << 20, 8, (slot, number, value) -> { }, new CheckpointedLog.RecoveredState())) {
+            for (int slot = 1; slot <= 10; slot++) {
+                log.appendAccept(slot, 7, "new" + slot);
+            }
+            log.sync();
+        }
+        CheckpointedLog.RecoveredState recovered = new CheckpointedLog.RecoveredState();
+        MapSlotStore table = new MapSlotStore();
+        try (CheckpointedLog log = CheckpointedLog.open(directory, 1 << 20, 8, table::put, recovered)) {
+            table.put(3, 4, "old3");
+            table.put(12, 9, "v12");
+            RecoveringSlotStore store = new RecoveringSlotStore(table, recovered);
+
+            try {
+                assertFalse("Recovered slots were already indexed", store.isIndexed());
+                assertEquals("Recovered slot was not answered", "new5", store.getValue(5));
+                assertEquals("Older proposal hid the recovered one", "new3", store.getValue(3));
+                assertEquals("Wrong highest slot", 12, store.getHighestSlot());
+                store.put(11, 9, "v11");
+                assertFalse(store.indexNext(4));
+                assertEquals("Indexed slot changed", "new3", store.getValue(3));
+                assertEquals("Unindexed slot changed", "new9", store.getValue(9));
+                assertTrue("Indexing did not finish", store.indexNext(100));
+                for (int slot = 1; slot <= 10; slot++) {
+                    assertEquals("Slot table missed slot " + slot, "new" + slot, table.getValue(slot));
+                }
+                assertEquals("Accepted slot was lost", "v11", table.getValue(11));
+                logMessages.add("Recovered slots were answered before and after indexing");
+            } catch (AssertionError e) {
+                logMessages.add("Exception thrown when testing the recovering store");
+                logMessages.add(e.getMessage());
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package paxos.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the MappedSlotStore module.
+ */
+public class MappedSlotStoreTest {
+    private List<String> logMessages;
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        logMessages = new ArrayList<>();
+        directory = Files.createTempDirectory("slot-store-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        logMessages.forEach(System.out::println);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private long fileCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    /**
+     * Store keeps the newest proposal of each slot across segments.
+     *
+     * Description: Fill several small segments, accept some slots again, and store a null value.
+     * Expectation: Every slot returns its newest proposal, and empty slots read as empty.
+     */
+    @Test
+    public void testPutAndGetAcrossSegments() throws IOException {
+        logMessages.add("\n--- TEST: testPutAndGetAcrossSegments ---\n");
+
+        try (MappedSlotStore store = new MappedSlotStore(directory, 256)) {
+            for (int slot = 1; slot <= 100; slot++) {
+                store.put(slot, 1, "V" + slot);
+            }
+            store.put(10, 2, "replaced");
+            store.put(20, 2, null);
+            store.put(30, 1, "ignored");
+
+            try {
+                assertTrue("Values did not roll into new segments", store.getSegmentCount() > 1);
+                assertEquals("Wrong highest slot", 100, store.getHighestSlot());
+                assertEquals("Wrong value", "V99", store.getValue(99));
+                assertEquals("Replacement was not stored", "replaced", store.getValue(10));
+                assertEquals("Replacement proposal number was not stored", 2, store.getProposalNumber(10));
+                assertTrue("Null value slot is empty", store.contains(20));
+                assertNull("Null value was not kept", store.getValue(20));
+                assertEquals("Repeated proposal number replaced the value", "V30", store.getValue(30));
+                assertFalse("Empty slot holds a value", store.contains(101));
+                assertEquals("Empty slot has a proposal number", -1, store.getProposalNumber(0));
+                logMessages.add("Stored 100 slots in " + store.getSegmentCount() + " segments");
+            } catch (AssertionError e) {
+                logMessages.add("Exception thrown when testing put and get");
+                logMessages.add(e.getMessage());
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Truncated segments are recycled instead of creating new files.
+     *
+     * Description: Keep writing slots while truncating all but the most recent ones.
+     * Expectation: The number of files stops growing, and truncated slots read as empty.
+     */
+    @Test
+    public void testTruncatedSegmentsAreRecycled() throws IOException {
+        logMessages.add("\n--- TEST: testTruncatedSegmentsAreRecycled ---\n");
+
+        try (MappedSlotStore store = new MappedSlotStore(directory, 512)) {
+            long filesAfterWarmUp = 0;
+            for (int slot = 1; slot <= 5000; slot++) {
+                store.put(slot, 1, "V" + slot);
+                if (slot % 100 == 0) {
+                    store.truncateBefore(slot - 50);
+                }
+                if (slot == 2500) {
+                    filesAfterWarmUp = fileCount();
+                }
+            }
+
+            try {
+                assertEquals("Files kept being created", filesAfterWarmUp, fileCount());
+                assertTrue("Nothing was recycled", store.getRecycledCount() > 0);
+                assertFalse("Truncated slot holds a value", store.contains(4000));
+                assertEquals("Kept slot lost its value", "V4990", store.getValue(4990));
+                logMessages.add("Recycled " + store.getRecycledCount() + " segments with " + fileCount() + " files");
+            } catch (AssertionError e) {
+                logMessages.add("Exception thrown when testing recycling");
+                logMessages.add(e.getMessage());
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Reopened store finds its slots again.
+     *
+     * Description: Write and truncate a store, close it, and open a new store on the same directory.
+     * Expectation: The kept slots, the truncation point and further writes work as before.
+     */
+    @Test
+    public void testReopen() throws IOException {
+        logMessages.add("\n--- TEST: testReopen ---\n");
+
+        try (MappedSlotStore store = new MappedSlotStore(directory, 512)) {
+            for (int slot = 1; slot <= 300; slot++) {
+                store.put(slot, 3, "V" + slot);
+            }
+            store.truncateBefore(200);
+        }
+
+        try (MappedSlotStore store = new MappedSlotStore(directory, 512)) {
+            store.put(301, 3, "V301");
+            try {
+                assertEquals("Truncation point was lost", 200, store.getFirstSlot());
+                assertEquals("Highest slot was lost", 301, store.getHighestSlot());
+                assertEquals("Value was lost", "V250", store.getValue(250));
+                assertEquals("Proposal number was lost", 3, store.getProposalNumber(300));
+                assertEquals("Write after reopening was lost", "V301", store.getValue(301));
+                assertFalse("Truncated slot came back", store.contains(100));
+                logMessages.add("Reopened store with slots " + store.getFirstSlot() + " to " + store.getHighestSlot());
+            } catch (AssertionError e) {
+                logMessages.add("Exception thrown when testing reopening");
+                logMessages.add(e.getMessage());
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package paxos.storage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the WriteAheadLog module.
+ */
+public class WriteAheadLogTest {
+    private List<String> logMessages;
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        logMessages = new ArrayList<>();
+        directory = Files.createTempDirectory("wal-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        logMessages.forEach(System.out::println);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private List<String> replay(Path file) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(file, (type, instance, proposalNumber, value) ->
+                records.add(type + ":" + instance + ":" + proposalNumber + ":" + value))) {
+            return records;
+        }
+    }
+
+    /**
+     * Synced records are replayed in order.
+     *
+     * Description: Append promises and accepts, including a null and a non-ASCII value, sync, and reopen the log.
+     * Expectation: Every record is replayed in the order it was appended.
+     */
+    @Test
+    public void testReplaysSyncedRecords() throws IOException {
+        logMessages.add("\n--- TEST: testReplaysSyncedRecords ---\n");
+
+        Path file = directory.resolve("replay.wal");
+        try (WriteAheadLog log = new WriteAheadLog(file, (type, instance, proposalNumber, value) -> fail("New log had records"))) {
+            log.appendPromise(3);
+            log.appendAccept(0, 3, "M1");
+            log.appendAccept(7, 4, null);
+            log.appendAccept(8, 4, "Sheoak Café");
+            log.sync();
+        }
+
+        try {
+            assertEquals("Records were not replayed in order",
+                    List.of("1:0:3:null", "2:0:3:M1", "2:7:4:null", "2:8:4:Sheoak Café"), replay(file));
+            logMessages.add("Replayed every synced record");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing replay");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * One sync covers every record appended before it.
+     *
+     * Description: Append many records and sync once, then sync again with nothing appended.
+     * Expectation: One flush is counted, and records appended after the last sync are not durable.
+     */
+    @Test
+    public void testGroupCommit() throws IOException {
+        logMessages.add("\n--- TEST: testGroupCommit ---\n");
+
+        Path file = directory.resolve("group.wal");
+        try (WriteAheadLog log = new WriteAheadLog(file, (type, instance, proposalNumber, value) -> { })) {
+            for (int i = 1; i <= 1000; i++) {
+                log.appendAccept(i, 1, "V" + i);
+            }
+            assertTrue("Appends were not pending", log.hasPendingRecords());
+            log.sync();
+            log.sync();
+            log.appendAccept(1001, 1, "lost");
+
+            try {
+                assertEquals("Appends were not counted", 1001, log.getAppendCount());
+                assertEquals("Batch was not flushed once", 1, log.getSyncCount());
+                logMessages.add("Flushed 1000 records with one sync");
+            } catch (AssertionError e) {
+                logMessages.add("Exception thrown when testing group commit");
+                logMessages.add(e.getMessage());
+                throw e;
+            }
+        }
+        assertEquals("Unsynced record survived", 1000, replay(file).size());
+    }
+
+    /**
+     * A torn record at the end of the log is cut off.
+     *
+     * Description: Sync two records, then cut the file in the middle of the second and reopen it twice.
+     * Expectation: The first record is replayed, the torn one is truncated, and later appends follow the first record.
+     */
+    @Test
+    public void testTruncatesTornRecord() throws IOException {
+        logMessages.add("\n--- TEST: testTruncatesTornRecord ---\n");
+
+        Path file = directory.resolve("torn.wal");
+        try (WriteAheadLog log = new WriteAheadLog(file, (type, instance, proposalNumber, value) -> { })) {
+            log.appendPromise(1);
+            log.appendAccept(1, 1, "torn");
+            log.sync();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try {
+            assertEquals("Torn record was replayed", List.of("1:0:1:null"), replay(file));
+            try (WriteAheadLog log = new WriteAheadLog(file, (type, instance, proposalNumber, value) -> { })) {
+                log.appendAccept(2, 1, "after");
+                log.sync();
+            }
+            assertEquals("Append did not follow the intact records", List.of("1:0:1:null", "2:2:1:after"), replay(file));
+            logMessages.add("Torn record was cut off");
+        } catch (AssertionError e) {
+            logMessages.add("Exception thrown when testing a torn record");
+            logMessages.add(e.getMessage());
+            throw e;
+        }
+    }
+}